@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.http.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.Assert;
+
+/**
+ * @author Thomas.Eichstaedt-Engelen
+ * @since 1.9.0
+ */
+public class HttpPollingEngineTest {
+
+    private static final String ETAG = "\"v1\"";
+
+    private HttpServer server;
+    private HttpPollingEngine engine;
+    private String url;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private volatile CountDownLatch release = new CountDownLatch(0);
+
+    @Before
+    public void init() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    notModified.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    byte[] body = "23.5".getBytes("UTF-8");
+                    exchange.getResponseHeaders().set("ETag", ETAG);
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                }
+                exchange.close();
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/temperature";
+        engine = new HttpPollingEngine(4, 2);
+    }
+
+    @After
+    public void shutdown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testConditionalGet() throws InterruptedException {
+        Result first = fetch();
+        Assert.assertEquals("23.5", first.body);
+        Assert.assertTrue(first.changed);
+
+        Result second = fetch();
+        Assert.assertEquals("23.5", second.body);
+        Assert.assertFalse(second.changed);
+        Assert.assertEquals(1, notModified.get());
+        Assert.assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void testUrlIsFetchedOnceAtATime() throws InterruptedException {
+        release = new CountDownLatch(1);
+        BlockingQueue<Result> results = new ArrayBlockingQueue<Result>(2);
+        Assert.assertTrue(engine.submit(url, null, 5000, collect(results)));
+        Assert.assertFalse(engine.submit(url, null, 5000, collect(results)));
+        release.countDown();
+
+        Assert.assertNotNull(results.poll(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testRequestsPerHostAreBounded() throws InterruptedException {
+        release = new CountDownLatch(1);
+        BlockingQueue<Result> results = new ArrayBlockingQueue<Result>(3);
+        Assert.assertTrue(engine.submit(url + "?a", null, 5000, collect(results)));
+        Assert.assertTrue(engine.submit(url + "?b", null, 5000, collect(results)));
+        Assert.assertFalse(engine.submit(url + "?c", null, 5000, collect(results)));
+        release.countDown();
+
+        Assert.assertNotNull(results.poll(5, TimeUnit.SECONDS));
+        Assert.assertNotNull(results.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testKeyIgnoresHeaderOrder() {
+        Properties headers1 = new Properties();
+        headers1.setProperty("X-Token", "abc");
+        headers1.setProperty("Accept", "text/plain");
+        Properties headers2 = new Properties();
+        headers2.setProperty("Accept", "text/plain");
+        headers2.setProperty("X-Token", "abc");
+
+        Assert.assertEquals(HttpPollingEngine.getKey(url, headers1), HttpPollingEngine.getKey(url, headers2));
+        Assert.assertFalse(HttpPollingEngine.getKey(url, headers1).equals(HttpPollingEngine.getKey(url, null)));
+    }
+
+    private Result fetch() throws InterruptedException {
+        BlockingQueue<Result> results = new ArrayBlockingQueue<Result>(1);
+        Assert.assertTrue(engine.submit(url, null, 5000, collect(results)));
+        Result result = results.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(result);
+        return result;
+    }
+
+    private static HttpPollingEngine.Callback collect(final BlockingQueue<Result> results) {
+        return new HttpPollingEngine.Callback() {
+            @Override
+            public void responseReceived(String body, boolean changed) {
+                results.add(new Result(body, changed));
+            }
+        };
+    }
+
+    private static class Result {
+        final String body;
+        final boolean changed;
+
+        Result(String body, boolean changed) {
+            this.body = body;
+            this.changed = changed;
+        }
+    }
+
+}
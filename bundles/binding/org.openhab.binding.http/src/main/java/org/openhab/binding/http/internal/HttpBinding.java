@@ -11,12 +11,16 @@ package org.openhab.binding.http.internal;
 import static org.apache.commons.lang.StringUtils.isNotBlank;
 import static org.openhab.binding.http.internal.HttpGenericBindingProvider.CHANGED_COMMAND_KEY;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -63,6 +67,8 @@ public class HttpBinding extends AbstractActiveBinding<HttpBindingProvider>imple
 
     protected static final String CONFIG_TIMEOUT = "timeout";
     protected static final String CONFIG_GRANULARITY = "granularity";
+    protected static final String CONFIG_MAX_CONNECTIONS = "maxConnections";
+    protected static final String CONFIG_MAX_CONNECTIONS_PER_HOST = "maxConnectionsPerHost";
 
     /** the timeout to use for connecting to a given host (defaults to 5000 milliseconds) */
     private int timeout = 5000;
@@ -70,8 +76,20 @@ public class HttpBinding extends AbstractActiveBinding<HttpBindingProvider>imple
     /** the interval to find new refresh candidates (defaults to 1000 milliseconds) */
     private int granularity = 1000;
 
+    /** the maximum number of concurrent requests of the in-bindings (defaults to 10) */
+    private int maxConnections = 10;
+
+    /** the maximum number of concurrent requests to the same host (defaults to 2) */
+    private int maxConnectionsPerHost = 2;
+
     private Map<String, Long> lastUpdateMap = new HashMap<String, Long>();
 
+    /** the last state of each item, posted again if the response has not changed */
+    private Map<String, LastState> lastStates = new ConcurrentHashMap<String, LastState>();
+
+    /** fetches the in-bindings concurrently */
+    private HttpPollingEngine engine;
+
     /** RegEx to extract a parse a function String <code>'(.*?)\((.*)\)'</code> */
     private static final Pattern EXTRACT_FUNCTION_PATTERN = Pattern.compile("(.*?)\\((.*)\\)");
 
@@ -107,6 +125,13 @@ public class HttpBinding extends AbstractActiveBinding<HttpBindingProvider>imple
         setProperlyConfigured(true);
     }
 
+    @Override
+    public void deactivate() {
+        super.deactivate();
+        shutdownEngine();
+        lastStates.clear();
+    }
+
     protected void addBindingProvider(HttpBindingProvider bindingProvider) {
         super.addBindingProvider(bindingProvider);
     }
@@ -136,6 +161,11 @@ public class HttpBinding extends AbstractActiveBinding<HttpBindingProvider>imple
      */
     @Override
     public void execute() {
+        HttpPollingEngine currentEngine = getEngine();
+
+        // items with the same url and headers are fetched with a single request
+        Map<String, List<InBinding>> requests = new LinkedHashMap<String, List<InBinding>>();
+        long now = System.currentTimeMillis();
 
         for (HttpBindingProvider provider : providers) {
             for (String itemName : provider.getInBindingItemNames()) {
@@ -152,69 +182,135 @@ public class HttpBinding extends AbstractActiveBinding<HttpBindingProvider>imple
                     lastUpdateTimeStamp = 0L;
                 }
 
-                long age = System.currentTimeMillis() - lastUpdateTimeStamp;
+                long age = now - lastUpdateTimeStamp;
                 boolean needsUpdate = age >= refreshInterval;
 
                 if (needsUpdate) {
-
-                    String response = null;
+                    InBinding binding = new InBinding(itemName, provider.getItemType(itemName), url, headers,
+                            transformation);
 
                     // check if special URL is used and data should get from
                     // cache rather than directly from server
                     if (isCacheConfig(url)) {
                         logger.debug("item '{}' is fetched from cache", itemName);
-                        response = getCacheData(url);
+                        processResponse(binding, getCacheData(url), true);
+                        lastUpdateMap.put(itemName, System.currentTimeMillis());
                     } else if (isValidUrl(url)) {
-                        logger.debug("item '{}' is about to be refreshed now", itemName);
-                        response = HttpUtil.executeUrl("GET", url, headers, null, null, timeout);
+                        String key = HttpPollingEngine.getKey(url, headers);
+                        List<InBinding> bindings = requests.get(key);
+                        if (bindings == null) {
+                            bindings = new ArrayList<InBinding>();
+                            requests.put(key, bindings);
+                        }
+                        bindings.add(binding);
                     } else {
                         logger.debug("item '{}' is not a valid URL or is a cache id yet to be initialised ({})",
                                 itemName, url);
-                        continue;
                     }
+                }
+            }
+        }
 
-                    if (response == null) {
-                        logger.error("No response received from '{}'", url);
-                    } else {
-                        String transformedResponse;
-                        try {
-                            String[] parts = splitTransformationConfig(transformation);
-                            String transformationType = parts[0];
-                            String transformationFunction = parts[1];
-
-                            TransformationService transformationService = TransformationHelper
-                                    .getTransformationService(HttpActivator.getContext(), transformationType);
-                            if (transformationService != null) {
-                                transformedResponse = transformationService.transform(transformationFunction, response);
-                            } else {
-                                transformedResponse = response;
-                                logger.warn(
-                                        "couldn't transform response because transformationService of type '{}' is unavailable",
-                                        transformationType);
+        for (final List<InBinding> bindings : requests.values()) {
+            InBinding first = bindings.get(0);
+            if (bindings.size() > 1) {
+                logger.debug("'{}' is fetched once for {} items", first.url, bindings.size());
+            }
+            boolean submitted = currentEngine.submit(first.url, first.headers, timeout,
+                    new HttpPollingEngine.Callback() {
+                        @Override
+                        public void responseReceived(String response, boolean changed) {
+                            for (InBinding binding : bindings) {
+                                processResponse(binding, response, changed);
                             }
-                        } catch (TransformationException te) {
-                            logger.error("transformation throws exception [transformation=" + transformation
-                                    + ", response=" + response + "]", te);
-
-                            // in case of an error we return the response without any
-                            // transformation
-                            transformedResponse = response;
                         }
+                    });
+            // requests which could not be started yet are retried with the next run
+            if (submitted) {
+                for (InBinding binding : bindings) {
+                    logger.debug("item '{}' is about to be refreshed now", binding.itemName);
+                    lastUpdateMap.put(binding.itemName, now);
+                }
+            }
+        }
+    }
 
-                        logger.debug("transformed response is '{}'", transformedResponse);
-
-                        Class<? extends Item> itemType = provider.getItemType(itemName);
-                        State state = createState(itemType, transformedResponse);
+    /**
+     * Transforms the response of an in-binding and posts the resulting state. If the response
+     * has not changed since the last request, the state of the last transformation is posted.
+     *
+     * @param binding the in-binding of the item
+     * @param response the response or <code>null</code> if the request failed
+     * @param changed whether the response has changed since the last request
+     */
+    private void processResponse(InBinding binding, String response, boolean changed) {
+        if (response == null) {
+            logger.error("No response received from '{}'", binding.url);
+            return;
+        }
 
-                        if (state != null) {
-                            eventPublisher.postUpdate(itemName, state);
-                        }
-                    }
+        State state = null;
+        if (!changed) {
+            LastState lastState = lastStates.get(binding.itemName);
+            if (lastState != null && lastState.matches(binding)) {
+                logger.debug("response for item '{}' is unchanged, skipping the transformation", binding.itemName);
+                state = lastState.state;
+            }
+        }
 
-                    lastUpdateMap.put(itemName, System.currentTimeMillis());
+        if (state == null) {
+            String transformation = binding.transformation;
+            String transformedResponse;
+            try {
+                String[] parts = splitTransformationConfig(transformation);
+                String transformationType = parts[0];
+                String transformationFunction = parts[1];
+
+                TransformationService transformationService = TransformationHelper
+                        .getTransformationService(HttpActivator.getContext(), transformationType);
+                if (transformationService != null) {
+                    transformedResponse = transformationService.transform(transformationFunction, response);
+                } else {
+                    transformedResponse = response;
+                    logger.warn(
+                            "couldn't transform response because transformationService of type '{}' is unavailable",
+                            transformationType);
                 }
+            } catch (TransformationException te) {
+                logger.error("transformation throws exception [transformation=" + transformation + ", response="
+                        + response + "]", te);
+
+                // in case of an error we return the response without any
+                // transformation
+                transformedResponse = response;
             }
+
+            logger.debug("transformed response is '{}'", transformedResponse);
+
+            state = createState(binding.itemType, transformedResponse);
+            if (state != null) {
+                lastStates.put(binding.itemName, new LastState(binding, state));
+            }
+        }
+
+        if (state != null) {
+            eventPublisher.postUpdate(binding.itemName, state);
+        }
+    }
+
+    /**
+     * Returns the engine which fetches the in-bindings, creating it if necessary.
+     */
+    private synchronized HttpPollingEngine getEngine() {
+        if (engine == null) {
+            engine = new HttpPollingEngine(maxConnections, maxConnectionsPerHost);
         }
+        return engine;
+    }
+
+    private synchronized void shutdownEngine() {
+        // requests which are still running complete on the shared pool of HttpUtil
+        engine = null;
     }
 
     /**
@@ -412,6 +508,25 @@ public class HttpBinding extends AbstractActiveBinding<HttpBindingProvider>imple
                     granularity = Integer.parseInt(granularityString);
                 }
 
+                int newMaxConnections = maxConnections;
+                String maxConnectionsString = (String) config.get(CONFIG_MAX_CONNECTIONS);
+                if (StringUtils.isNotBlank(maxConnectionsString)) {
+                    newMaxConnections = Integer.parseInt(maxConnectionsString);
+                }
+
+                int newMaxConnectionsPerHost = maxConnectionsPerHost;
+                String maxConnectionsPerHostString = (String) config.get(CONFIG_MAX_CONNECTIONS_PER_HOST);
+                if (StringUtils.isNotBlank(maxConnectionsPerHostString)) {
+                    newMaxConnectionsPerHost = Integer.parseInt(maxConnectionsPerHostString);
+                }
+
+                if (newMaxConnections != maxConnections || newMaxConnectionsPerHost != maxConnectionsPerHost) {
+                    maxConnections = newMaxConnections;
+                    maxConnectionsPerHost = newMaxConnectionsPerHost;
+                    // the engine is recreated with the new limits on the next run
+                    shutdownEngine();
+                }
+
                 // Parse page cache config
 
                 @SuppressWarnings("unchecked")
@@ -422,7 +537,9 @@ public class HttpBinding extends AbstractActiveBinding<HttpBindingProvider>imple
 
                     // the config-key enumeration contains additional keys that we
                     // don't want to process here ...
-                    if (CONFIG_TIMEOUT.equals(key) || CONFIG_GRANULARITY.equals(key) || "service.pid".equals(key)) {
+                    if (CONFIG_TIMEOUT.equals(key) || CONFIG_GRANULARITY.equals(key)
+                            || CONFIG_MAX_CONNECTIONS.equals(key) || CONFIG_MAX_CONNECTIONS_PER_HOST.equals(key)
+                            || "service.pid".equals(key)) {
                         continue;
                     }
 
@@ -488,6 +605,47 @@ public class HttpBinding extends AbstractActiveBinding<HttpBindingProvider>imple
         return headers;
     }
 
+    /**
+     * The configuration of an in-binding which is due to be refreshed
+     */
+    static class InBinding {
+
+        final String itemName;
+        final Class<? extends Item> itemType;
+        final String url;
+        final Properties headers;
+        final String transformation;
+
+        InBinding(String itemName, Class<? extends Item> itemType, String url, Properties headers,
+                String transformation) {
+            this.itemName = itemName;
+            this.itemType = itemType;
+            this.url = url;
+            this.headers = headers;
+            this.transformation = transformation;
+        }
+    }
+
+    /**
+     * The state which has last been posted for an in-binding
+     */
+    static class LastState {
+
+        final Class<? extends Item> itemType;
+        final String transformation;
+        final State state;
+
+        LastState(InBinding binding, State state) {
+            this.itemType = binding.itemType;
+            this.transformation = binding.transformation;
+            this.state = state;
+        }
+
+        boolean matches(InBinding binding) {
+            return itemType == binding.itemType && StringUtils.equals(transformation, binding.transformation);
+        }
+    }
+
     /**
      * Internal data structure for data cache purposes
      *
@@ -0,0 +1,282 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.http.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.io.IOUtils;
+import org.openhab.io.net.http.HttpCallback;
+import org.openhab.io.net.http.HttpResponseHandler;
+import org.openhab.io.net.http.HttpUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fetches the urls of the http-in bindings concurrently through the shared connection pool
+ * of {@link HttpUtil}. The number of concurrent requests, in total and to the same host, is
+ * bounded; a request beyond these limits is not queued but has to be submitted again later,
+ * so that a slow host does not hold up the refresh of the other items.
+ * <p>
+ * Every url (together with its headers) is fetched at most once at a time. The ETag and
+ * Last-Modified headers of the last response are sent with the next request of the same url,
+ * so that the server can answer with <code>304 Not Modified</code>; the callback is told
+ * whether the body has changed since the last response.
+ *
+ * @author Thomas.Eichstaedt-Engelen
+ * @since 1.9.0
+ */
+public class HttpPollingEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpPollingEngine.class);
+
+    /** the number of urls for which the last response is kept */
+    private static final int MAX_RESOURCES = 500;
+
+    /**
+     * Receives the result of a request, on one of the worker threads of {@link HttpUtil}.
+     */
+    public interface Callback {
+
+        /**
+         * @param body the response body or <code>null</code> if the request failed
+         * @param changed <code>false</code> if the body is the same as the one of the last response
+         */
+        void responseReceived(String body, boolean changed);
+    }
+
+    /**
+     * The last response of an url.
+     */
+    private static class Resource {
+        String etag;
+        String lastModified;
+        String body;
+        boolean inFlight;
+    }
+
+    private final Semaphore connectionPermits;
+
+    private final int maxConnectionsPerHost;
+
+    private final Map<String, Semaphore> hostPermits = new HashMap<String, Semaphore>();
+
+    private final Map<String, Resource> resources = new LinkedHashMap<String, Resource>(16, 0.75f, true);
+
+    /**
+     * @param maxConnections the maximum number of concurrent requests
+     * @param maxConnectionsPerHost the maximum number of concurrent requests to the same host
+     */
+    public HttpPollingEngine(int maxConnections, int maxConnectionsPerHost) {
+        this.connectionPermits = new Semaphore(Math.max(1, maxConnections));
+        this.maxConnectionsPerHost = Math.max(1, maxConnectionsPerHost);
+    }
+
+    /**
+     * Fetches the given url in the background, unless it is already being fetched or the
+     * maximum number of concurrent requests to its host has been reached.
+     *
+     * @param url the url to fetch
+     * @param headers the request headers, may be <code>null</code>
+     * @param timeout the socket timeout to wait for data in milliseconds
+     * @param callback receives the response
+     * @return <code>true</code> if the request has been started, <code>false</code> if the url
+     *         should be requested again later
+     */
+    public boolean submit(final String url, final Properties headers, final int timeout, final Callback callback) {
+        final String key = getKey(url, headers);
+        final Semaphore permits = getHostPermits(url);
+        final Resource resource;
+        synchronized (resources) {
+            Resource existing = resources.get(key);
+            if (existing != null && existing.inFlight) {
+                logger.trace("'{}' is still being fetched", url);
+                return false;
+            }
+            if (!permits.tryAcquire()) {
+                logger.debug("too many concurrent requests to the host of '{}', postponing it", url);
+                return false;
+            }
+            if (!connectionPermits.tryAcquire()) {
+                permits.release();
+                logger.debug("too many concurrent requests, postponing '{}'", url);
+                return false;
+            }
+            resource = existing != null ? existing : new Resource();
+            resource.inFlight = true;
+            resources.put(key, resource);
+            if (resources.size() > MAX_RESOURCES) {
+                Iterator<Resource> iterator = resources.values().iterator();
+                while (resources.size() > MAX_RESOURCES && iterator.hasNext()) {
+                    if (!iterator.next().inFlight) {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+
+        Properties requestHeaders = new Properties();
+        if (headers != null) {
+            for (String name : headers.stringPropertyNames()) {
+                requestHeaders.setProperty(name, headers.getProperty(name));
+            }
+        }
+        final String lastBody;
+        synchronized (resources) {
+            lastBody = resource.body;
+            if (lastBody != null && resource.etag != null) {
+                requestHeaders.setProperty("If-None-Match", resource.etag);
+            }
+            if (lastBody != null && resource.lastModified != null) {
+                requestHeaders.setProperty("If-Modified-Since", resource.lastModified);
+            }
+        }
+
+        logger.debug("About to execute '{}'", url);
+        try {
+            HttpUtil.executeUrlAsync("GET", url, requestHeaders, null, null, timeout, RESPONSE_HANDLER,
+                    new HttpCallback<Response>() {
+                        @Override
+                        public void completed(Response response) {
+                            String body = lastBody;
+                            boolean changed = true;
+                            if (response == null) {
+                                body = null;
+                            } else if (response.notModified) {
+                                logger.debug("'{}' has not been modified", url);
+                                changed = false;
+                            } else {
+                                changed = lastBody == null || !lastBody.equals(response.body);
+                                body = response.body;
+                                synchronized (resources) {
+                                    resource.body = response.body;
+                                    resource.etag = response.etag;
+                                    resource.lastModified = response.lastModified;
+                                }
+                            }
+                            done();
+                            callback.responseReceived(body, changed);
+                        }
+
+                        @Override
+                        public void failed(Exception e) {
+                            logger.error("Fatal transport error for '{}': {}", url, e.toString());
+                            done();
+                            callback.responseReceived(null, true);
+                        }
+
+                        private void done() {
+                            synchronized (resources) {
+                                resource.inFlight = false;
+                            }
+                            permits.release();
+                            connectionPermits.release();
+                        }
+                    });
+            return true;
+        } catch (RejectedExecutionException e) {
+            synchronized (resources) {
+                resource.inFlight = false;
+            }
+            permits.release();
+            connectionPermits.release();
+            return false;
+        }
+    }
+
+    private static final class Response {
+        final boolean notModified;
+        final String body;
+        final String etag;
+        final String lastModified;
+
+        Response(boolean notModified, String body, String etag, String lastModified) {
+            this.notModified = notModified;
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Reads the body and the validators of a response.
+     */
+    private static final HttpResponseHandler<Response> RESPONSE_HANDLER = new HttpResponseHandler<Response>() {
+        @Override
+        public Response handleResponse(HttpMethod method, InputStream body) throws IOException {
+            int statusCode = method.getStatusCode();
+            if (statusCode == HttpStatus.SC_NOT_MODIFIED) {
+                return new Response(true, null, null, null);
+            }
+            if (statusCode == HttpStatus.SC_NO_CONTENT || statusCode == HttpStatus.SC_ACCEPTED) {
+                // perfectly fine but we cannot expect any answer...
+                return null;
+            }
+            if (statusCode != HttpStatus.SC_OK) {
+                logger.warn("Method failed: {}", method.getStatusLine());
+            }
+
+            String responseBody = body != null ? IOUtils.toString(body) : "";
+            boolean cacheable = statusCode == HttpStatus.SC_OK;
+            return new Response(false, responseBody, cacheable ? getHeader(method, "ETag") : null,
+                    cacheable ? getHeader(method, "Last-Modified") : null);
+        }
+    };
+
+    private static String getHeader(HttpMethod method, String name) {
+        Header header = method.getResponseHeader(name);
+        return header != null ? header.getValue() : null;
+    }
+
+    private Semaphore getHostPermits(String url) {
+        String host;
+        try {
+            URL parsed = new URL(url);
+            host = parsed.getHost() + ":" + parsed.getPort();
+        } catch (MalformedURLException e) {
+            host = url;
+        }
+        synchronized (hostPermits) {
+            Semaphore permits = hostPermits.get(host);
+            if (permits == null) {
+                permits = new Semaphore(maxConnectionsPerHost);
+                hostPermits.put(host, permits);
+            }
+            return permits;
+        }
+    }
+
+    /**
+     * @return the key which identifies a request, consisting of the url and the headers
+     */
+    static String getKey(String url, Properties headers) {
+        if (headers == null || headers.isEmpty()) {
+            return url;
+        }
+        StringBuilder key = new StringBuilder(url);
+        for (String name : new TreeSet<String>(headers.stringPropertyNames())) {
+            key.append('\n').append(name).append('=').append(headers.getProperty(name));
+        }
+        return key.toString();
+    }
+
+}
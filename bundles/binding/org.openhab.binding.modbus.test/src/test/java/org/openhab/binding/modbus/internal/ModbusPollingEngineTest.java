@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.modbus.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.openhab.binding.modbus.ModbusBindingProvider;
+
+/**
+ * @author agent
+ * @since 1.9.0
+ */
+public class ModbusPollingEngineTest {
+
+    @Test
+    public void testAdjacentAndOverlappingRangesAreMerged() {
+        ModbusSlave first = tcpSlave("first", 1, ModbusBindingProvider.TYPE_HOLDING, 0, 10);
+        ModbusSlave adjacent = tcpSlave("adjacent", 1, ModbusBindingProvider.TYPE_HOLDING, 10, 10);
+        ModbusSlave overlapping = tcpSlave("overlapping", 1, ModbusBindingProvider.TYPE_HOLDING, 15, 10);
+
+        List<List<ModbusSlave>> groups = ModbusPollingEngine.coalesce(Arrays.asList(overlapping, adjacent, first));
+
+        assertEquals(1, groups.size());
+        assertEquals(3, groups.get(0).size());
+        // the request starts at the lowest address of the group
+        assertSame(first, groups.get(0).get(0));
+    }
+
+    @Test
+    public void testGapSplitsTheRequest() {
+        ModbusSlave first = tcpSlave("first", 1, ModbusBindingProvider.TYPE_HOLDING, 0, 10);
+        ModbusSlave second = tcpSlave("second", 1, ModbusBindingProvider.TYPE_HOLDING, 11, 5);
+
+        assertEquals(2, ModbusPollingEngine.coalesce(Arrays.asList(first, second)).size());
+    }
+
+    @Test
+    public void testRegisterLimit() {
+        ModbusSlave first = tcpSlave("first", 1, ModbusBindingProvider.TYPE_INPUT, 0, 100);
+        ModbusSlave fits = tcpSlave("fits", 1, ModbusBindingProvider.TYPE_INPUT, 100, 25);
+        ModbusSlave exceeds = tcpSlave("exceeds", 1, ModbusBindingProvider.TYPE_INPUT, 100, 26);
+
+        assertEquals(1, ModbusPollingEngine.coalesce(Arrays.asList(first, fits)).size());
+        assertEquals(2, ModbusPollingEngine.coalesce(Arrays.asList(first, exceeds)).size());
+    }
+
+    @Test
+    public void testBitLimit() {
+        ModbusSlave first = tcpSlave("first", 1, ModbusBindingProvider.TYPE_COIL, 0, 1500);
+        ModbusSlave fits = tcpSlave("fits", 1, ModbusBindingProvider.TYPE_COIL, 1500, 500);
+        ModbusSlave exceeds = tcpSlave("exceeds", 1, ModbusBindingProvider.TYPE_COIL, 1500, 501);
+
+        assertEquals(1, ModbusPollingEngine.coalesce(Arrays.asList(first, fits)).size());
+        assertEquals(2, ModbusPollingEngine.coalesce(Arrays.asList(first, exceeds)).size());
+    }
+
+    @Test
+    public void testDifferentIdsAreNotMerged() {
+        ModbusSlave first = tcpSlave("first", 1, ModbusBindingProvider.TYPE_HOLDING, 0, 10);
+        ModbusSlave second = tcpSlave("second", 2, ModbusBindingProvider.TYPE_HOLDING, 10, 10);
+
+        assertEquals(2, ModbusPollingEngine.coalesce(Arrays.asList(first, second)).size());
+    }
+
+    @Test
+    public void testDifferentTypesAreNotMerged() {
+        ModbusSlave holding = tcpSlave("holding", 1, ModbusBindingProvider.TYPE_HOLDING, 0, 10);
+        ModbusSlave input = tcpSlave("input", 1, ModbusBindingProvider.TYPE_INPUT, 0, 10);
+        ModbusSlave coil = tcpSlave("coil", 1, ModbusBindingProvider.TYPE_COIL, 0, 10);
+        ModbusSlave discrete = tcpSlave("discrete", 1, ModbusBindingProvider.TYPE_DISCRETE, 0, 10);
+
+        assertEquals(4, ModbusPollingEngine.coalesce(Arrays.asList(holding, input, coil, discrete)).size());
+    }
+
+    @Test
+    public void testDifferentTransportsAreNotMerged() {
+        ModbusSlave tcp = tcpSlave("tcp", 1, ModbusBindingProvider.TYPE_HOLDING, 0, 10);
+        ModbusSlave udp = new ModbusUdpSlave("udp");
+        configure(udp, 1, ModbusBindingProvider.TYPE_HOLDING, 10, 10);
+
+        assertEquals(2, ModbusPollingEngine.coalesce(Arrays.asList(tcp, udp)).size());
+    }
+
+    private static ModbusSlave tcpSlave(String name, int id, String type, int start, int length) {
+        ModbusSlave slave = new ModbusTcpSlave(name);
+        configure(slave, id, type, start, length);
+        return slave;
+    }
+
+    private static void configure(ModbusSlave slave, int id, String type, int start, int length) {
+        slave.setId(id);
+        slave.setType(type);
+        slave.setStart(start);
+        slave.setLength(length);
+    }
+
+}
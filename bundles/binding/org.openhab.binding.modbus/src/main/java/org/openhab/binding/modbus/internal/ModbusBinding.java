@@ -10,10 +10,13 @@ package org.openhab.binding.modbus.internal;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Enumeration;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
@@ -53,7 +56,7 @@ public class ModbusBinding extends AbstractActiveBinding<ModbusBindingProvider>i
     private static final String TCP_PREFIX = "tcp";
     private static final String SERIAL_PREFIX = "serial";
 
-    private static final String VALID_COFIG_KEYS = "connection|id|start|length|type|valuetype|rawdatamultiplier|writemultipleregisters";
+    private static final String VALID_COFIG_KEYS = "connection|id|start|length|type|valuetype|rawdatamultiplier|writemultipleregisters|updateinterval";
     private static final Pattern EXTRACT_MODBUS_CONFIG_PATTERN = Pattern.compile(
             "^(" + TCP_PREFIX + "|" + UDP_PREFIX + "|" + SERIAL_PREFIX + "|)\\.(.*?)\\.(" + VALID_COFIG_KEYS + ")$");
 
@@ -63,12 +66,19 @@ public class ModbusBinding extends AbstractActiveBinding<ModbusBindingProvider>i
     /** slaves update interval in milliseconds, defaults to 200ms */
     public static int pollInterval = 200;
 
+    /** polls the slaves, one lane per physical connection */
+    private volatile ModbusPollingEngine pollingEngine = null;
+
+    /** names of the items bound to each slave, by slave name */
+    private volatile Map<String, List<String>> itemsBySlave = Collections.emptyMap();
+
     @Override
     public void activate() {
     }
 
     @Override
     public void deactivate() {
+        stopPolling();
     }
 
     @Override
@@ -91,7 +101,12 @@ public class ModbusBinding extends AbstractActiveBinding<ModbusBindingProvider>i
             if (provider.providesBindingFor(itemName)) {
                 ModbusBindingConfig config = provider.getConfig(itemName);
                 ModbusSlave slave = modbusSlaves.get(config.slaveName);
-                slave.executeCommand(command, config);
+                ModbusPollingEngine engine = pollingEngine;
+                if (engine != null) {
+                    engine.executeCommand(slave, command, config);
+                } else {
+                    slave.executeCommand(command, config);
+                }
             }
         }
     }
@@ -209,16 +224,68 @@ public class ModbusBinding extends AbstractActiveBinding<ModbusBindingProvider>i
     }
 
     /**
-     * updates all slaves from the modbusSlaves
+     * Returns names of the items bound to the given slave
+     *
+     * @param slaveName slave name from cfg file
+     * @return list of item names
+     */
+    public Collection<String> getItemNames(String slaveName) {
+        List<String> items = itemsBySlave.get(slaveName);
+        return items != null ? items : Collections.<String> emptyList();
+    }
+
+    /**
+     * Rebuilds the index of the items bound to each slave
+     */
+    private void indexItems() {
+        Map<String, List<String>> index = new HashMap<String, List<String>>();
+        for (ModbusBindingProvider provider : providers) {
+            for (String itemName : provider.getItemNames()) {
+                ModbusBindingConfig config = provider.getConfig(itemName);
+                if (config == null) {
+                    continue;
+                }
+                List<String> items = index.get(config.slaveName);
+                if (items == null) {
+                    items = new ArrayList<String>();
+                    index.put(config.slaveName, items);
+                }
+                if (!items.contains(itemName)) {
+                    items.add(itemName);
+                }
+            }
+        }
+        itemsBySlave = index;
+    }
+
+    @Override
+    public void bindingChanged(BindingProvider provider, String itemName) {
+        indexItems();
+        super.bindingChanged(provider, itemName);
+    }
+
+    @Override
+    public void allBindingsChanged(BindingProvider provider) {
+        indexItems();
+        super.allBindingsChanged(provider);
+    }
+
+    /**
+     * starts polling the slaves which are due
      */
     @Override
     protected void execute() {
-        Collection<ModbusSlave> slaves = new HashSet<ModbusSlave>();
-        synchronized (slaves) {
-            slaves.addAll(modbusSlaves.values());
+        ModbusPollingEngine engine = pollingEngine;
+        if (engine != null) {
+            engine.poll();
         }
-        for (ModbusSlave slave : slaves) {
-            slave.update(this);
+    }
+
+    private void stopPolling() {
+        ModbusPollingEngine engine = pollingEngine;
+        pollingEngine = null;
+        if (engine != null) {
+            engine.shutdown();
         }
     }
 
@@ -231,15 +298,18 @@ public class ModbusBinding extends AbstractActiveBinding<ModbusBindingProvider>i
 
     protected void addBindingProvider(ModbusBindingProvider bindingProvider) {
         super.addBindingProvider(bindingProvider);
+        indexItems();
     }
 
     protected void removeBindingProvider(ModbusBindingProvider bindingProvider) {
         super.removeBindingProvider(bindingProvider);
+        indexItems();
     }
 
     @Override
     public void updated(Dictionary<String, ?> config) throws ConfigurationException {
         // remove all known items if configuration changed
+        stopPolling();
         clearSlaves();
         if (config != null) {
             Enumeration<String> keys = config.keys();
@@ -340,6 +410,8 @@ public class ModbusBinding extends AbstractActiveBinding<ModbusBindingProvider>i
                     }
                 } else if ("rawdatamultiplier".equals(configKey)) {
                     modbusSlave.setRawDataMultiplier(Double.valueOf(value.toString()));
+                } else if ("updateinterval".equals(configKey)) {
+                    modbusSlave.setUpdateInterval(Integer.valueOf(value));
                 } else {
                     throw new ConfigurationException(configKey, "the given configKey '" + configKey + "' is unknown");
                 }
@@ -350,6 +422,7 @@ public class ModbusBinding extends AbstractActiveBinding<ModbusBindingProvider>i
             for (ModbusSlave slave : modbusSlaves.values()) {
                 slave.connect();
             }
+            pollingEngine = new ModbusPollingEngine(this, modbusSlaves.values());
 
             setProperlyConfigured(true);
         }
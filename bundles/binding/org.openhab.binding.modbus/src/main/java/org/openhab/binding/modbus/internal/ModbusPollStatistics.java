@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.modbus.internal;
+
+/**
+ * Counts the polls of a {@link ModbusSlave} and how long they took.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class ModbusPollStatistics {
+
+    private long polls;
+
+    private long errors;
+
+    private long consecutiveErrors;
+
+    private long lastLatency;
+
+    private long maxLatency;
+
+    private long totalLatency;
+
+    /**
+     * Records the outcome of a poll.
+     *
+     * @param latency the duration of the poll in milliseconds
+     * @param success <code>false</code> if the slave could not be read
+     * @return the number of polls in a row which have failed before this one
+     */
+    public synchronized long record(long latency, boolean success) {
+        long failedBefore = consecutiveErrors;
+        polls++;
+        lastLatency = latency;
+        maxLatency = Math.max(maxLatency, latency);
+        totalLatency += latency;
+        if (success) {
+            consecutiveErrors = 0;
+        } else {
+            errors++;
+            consecutiveErrors++;
+        }
+        return failedBefore;
+    }
+
+    public synchronized long getPolls() {
+        return polls;
+    }
+
+    public synchronized long getErrors() {
+        return errors;
+    }
+
+    public synchronized long getConsecutiveErrors() {
+        return consecutiveErrors;
+    }
+
+    public synchronized long getLastLatency() {
+        return lastLatency;
+    }
+
+    public synchronized long getMaxLatency() {
+        return maxLatency;
+    }
+
+    public synchronized long getAverageLatency() {
+        return polls == 0 ? 0 : totalLatency / polls;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "polls=" + polls + ", errors=" + errors + ", consecutiveErrors=" + consecutiveErrors
+                + ", lastLatency=" + lastLatency + "ms, averageLatency=" + getAverageLatency() + "ms, maxLatency="
+                + maxLatency + "ms";
+    }
+
+}
@@ -0,0 +1,285 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.modbus.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.openhab.binding.modbus.ModbusBindingProvider;
+import org.openhab.binding.modbus.internal.ModbusGenericBindingProvider.ModbusBindingConfig;
+import org.openhab.core.types.Command;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Polls the Modbus slaves with one lane per physical connection, i.e. per TCP or UDP endpoint
+ * and per serial port. The slaves of a lane are read one after the other on the lane's own
+ * thread, so that an unreachable device only holds up the slaves behind the same connection.
+ * <p>
+ * Every slave is polled again its update interval after its last poll has started, but not
+ * before the lane has finished its previous round. Slaves of a lane which are due at the same
+ * time, share the unit id and the data type and whose ranges are adjacent or overlap are read
+ * with a single request.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class ModbusPollingEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusPollingEngine.class);
+
+    /** the maximum number of registers to read with a single request */
+    static final int MAX_REGISTERS = 125;
+
+    /** the maximum number of coils or discrete inputs to read with a single request */
+    static final int MAX_BITS = 2000;
+
+    /** how often the statistics of the slaves are logged, in milliseconds */
+    private static final long STATISTICS_INTERVAL = 60000;
+
+    /** how long to wait for running polls on shutdown, in milliseconds */
+    private static final long SHUTDOWN_TIMEOUT = 5000;
+
+    private final ModbusBinding binding;
+
+    private final Map<String, Lane> lanes = new LinkedHashMap<String, Lane>();
+
+    private final Map<ModbusSlave, Lane> lanesBySlave = new HashMap<ModbusSlave, Lane>();
+
+    private final ExecutorService executor;
+
+    private long lastStatistics = System.currentTimeMillis();
+
+    /**
+     * @param binding the binding which receives the polled data
+     * @param slaves the slaves to poll
+     */
+    public ModbusPollingEngine(ModbusBinding binding, Collection<ModbusSlave> slaves) {
+        this.binding = binding;
+        for (ModbusSlave slave : slaves) {
+            String key = slave.getConnectionKey();
+            Lane lane = lanes.get(key);
+            if (lane == null) {
+                lane = new Lane(key);
+                lanes.put(key, lane);
+            }
+            lane.slaves.add(slave);
+            lanesBySlave.put(slave, lane);
+        }
+        logger.debug("polling {} modbus slaves on {} connections", slaves.size(), lanes.size());
+        executor = Executors.newFixedThreadPool(Math.max(1, lanes.size()), new ThreadFactory() {
+            private int counter = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Modbus Polling Service-" + counter++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts polling every lane which has a slave that is due and is not being polled yet.
+     */
+    public void poll() {
+        long now = System.currentTimeMillis();
+        for (Lane lane : lanes.values()) {
+            if (lane.nextPoll <= now && lane.running.compareAndSet(false, true)) {
+                try {
+                    executor.execute(lane);
+                } catch (RejectedExecutionException e) {
+                    lane.running.set(false);
+                }
+            }
+        }
+        if (logger.isDebugEnabled() && now - lastStatistics >= STATISTICS_INTERVAL) {
+            lastStatistics = now;
+            for (ModbusSlave slave : lanesBySlave.keySet()) {
+                logger.debug("modbus slave '{}': {}", slave.getName(), slave.getStatistics());
+            }
+        }
+    }
+
+    /**
+     * Writes a command to a slave, in between the requests of the slave's connection.
+     *
+     * @param slave the slave to write to
+     * @param command the command received from openHAB
+     * @param config the binding config of the item
+     */
+    public void executeCommand(ModbusSlave slave, Command command, ModbusBindingConfig config) {
+        Lane lane = lanesBySlave.get(slave);
+        if (lane == null) {
+            slave.executeCommand(command, config);
+            return;
+        }
+        synchronized (lane) {
+            slave.executeCommand(command, config);
+        }
+    }
+
+    /**
+     * Stops polling and waits for the polls which are running, so that the connections of the
+     * slaves are no longer in use when this method returns.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                logger.warn("modbus polls are still running {} ms after shutdown", SHUTDOWN_TIMEOUT);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Groups slaves which can be read with a single request. The first slave of every group has
+     * the lowest start address of the group.
+     *
+     * @param slaves the slaves to group
+     * @return the groups of slaves
+     */
+    static List<List<ModbusSlave>> coalesce(Collection<ModbusSlave> slaves) {
+        List<ModbusSlave> sorted = new ArrayList<ModbusSlave>(slaves);
+        Collections.sort(sorted, new Comparator<ModbusSlave>() {
+            @Override
+            public int compare(ModbusSlave s1, ModbusSlave s2) {
+                if (s1.getId() != s2.getId()) {
+                    return s1.getId() < s2.getId() ? -1 : 1;
+                }
+                String type1 = String.valueOf(s1.getType());
+                String type2 = String.valueOf(s2.getType());
+                if (!type1.equals(type2)) {
+                    return type1.compareTo(type2);
+                }
+                return s1.getStart() < s2.getStart() ? -1 : (s1.getStart() == s2.getStart() ? 0 : 1);
+            }
+        });
+
+        List<List<ModbusSlave>> groups = new ArrayList<List<ModbusSlave>>();
+        List<ModbusSlave> group = null;
+        int groupEnd = 0;
+        for (ModbusSlave slave : sorted) {
+            if (group != null && canJoin(group.get(0), groupEnd, slave)) {
+                group.add(slave);
+                groupEnd = Math.max(groupEnd, slave.getStart() + slave.getLength());
+            } else {
+                group = new ArrayList<ModbusSlave>();
+                group.add(slave);
+                groups.add(group);
+                groupEnd = slave.getStart() + slave.getLength();
+            }
+        }
+        return groups;
+    }
+
+    private static boolean canJoin(ModbusSlave first, int groupEnd, ModbusSlave slave) {
+        if (slave.getType() == null || !slave.getType().equals(first.getType()) || slave.getId() != first.getId()
+                || slave.getClass() != first.getClass() || slave.getStart() > groupEnd) {
+            return false;
+        }
+        int max = ModbusBindingProvider.TYPE_COIL.equals(slave.getType())
+                || ModbusBindingProvider.TYPE_DISCRETE.equals(slave.getType()) ? MAX_BITS : MAX_REGISTERS;
+        return Math.max(groupEnd, slave.getStart() + slave.getLength()) - first.getStart() <= max;
+    }
+
+    private static long getUpdateInterval(ModbusSlave slave) {
+        return slave.getUpdateInterval() > 0 ? slave.getUpdateInterval() : ModbusBinding.pollInterval;
+    }
+
+    /**
+     * The slaves behind one physical connection. Its lock is held for every request on the
+     * connection, so that commands are written in between the requests of a poll.
+     */
+    private class Lane implements Runnable {
+
+        final String key;
+
+        final List<ModbusSlave> slaves = new ArrayList<ModbusSlave>();
+
+        /** when the slaves are due, only accessed by the running poll of the lane */
+        final Map<ModbusSlave, Long> slaveNextPoll = new HashMap<ModbusSlave, Long>();
+
+        final AtomicBoolean running = new AtomicBoolean();
+
+        /** when the first slave of the lane is due */
+        volatile long nextPoll;
+
+        Lane(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            try {
+                List<ModbusSlave> due = new ArrayList<ModbusSlave>();
+                long now = System.currentTimeMillis();
+                for (ModbusSlave slave : slaves) {
+                    Long next = slaveNextPoll.get(slave);
+                    if (next == null || next <= now) {
+                        due.add(slave);
+                    }
+                }
+                for (List<ModbusSlave> group : coalesce(due)) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    // commands only wait for the current request, not for the whole round
+                    synchronized (this) {
+                        poll(group);
+                    }
+                }
+
+                long next = Long.MAX_VALUE;
+                for (ModbusSlave slave : due) {
+                    slaveNextPoll.put(slave, now + getUpdateInterval(slave));
+                }
+                for (Long slaveNext : slaveNextPoll.values()) {
+                    next = Math.min(next, slaveNext);
+                }
+                nextPoll = next;
+            } catch (RuntimeException e) {
+                logger.error("error polling modbus connection '{}'", key, e);
+            } finally {
+                running.set(false);
+            }
+        }
+
+        private void poll(List<ModbusSlave> group) {
+            long started = System.currentTimeMillis();
+            boolean success = group.get(0).update(binding, group);
+            long latency = System.currentTimeMillis() - started;
+            if (group.size() > 1) {
+                logger.trace("read {} modbus slaves on '{}' with a single request", group.size(), key);
+            }
+            for (ModbusSlave slave : group) {
+                long failedBefore = slave.getStatistics().record(latency, success);
+                if (success && failedBefore > 0) {
+                    logger.info("modbus slave '{}' is reachable again after {} failed polls", slave.getName(),
+                            failedBefore);
+                }
+            }
+        }
+    }
+
+}
@@ -139,6 +139,11 @@ public class ModbusSerialSlave extends ModbusSlave {
         return true;
     }
 
+    @Override
+    String getConnectionKey() {
+        return "serial:" + port;
+    }
+
     @Override
     public void resetConnection() {
         if (connection != null) {
@@ -8,7 +8,10 @@
  */
 package org.openhab.binding.modbus.internal;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import org.openhab.binding.modbus.ModbusBindingProvider;
 import org.openhab.binding.modbus.internal.ModbusGenericBindingProvider.ModbusBindingConfig;
@@ -97,6 +100,11 @@ public abstract class ModbusSlave implements ModbusSlaveConnection {
      */
     private double rawDataMultiplier = 1.0;
 
+    /** poll interval of this slave in milliseconds, 0 to poll it with the binding's poll interval */
+    private int updateInterval = 0;
+
+    private final ModbusPollStatistics statistics = new ModbusPollStatistics();
+
     private Object storage;
     protected ModbusTransaction transaction = null;
 
@@ -283,55 +291,117 @@ public abstract class ModbusSlave implements ModbusSlaveConnection {
      * Reads data from the connected device and updates items with the new data
      *
      * @param binding ModbusBindig that stores providers information
+     * @return <code>false</code> if the device could not be read
+     */
+    public boolean update(ModbusBinding binding) {
+        return update(binding, Collections.singletonList(this));
+    }
+
+    /**
+     * Reads the data of the given slaves with a single request through the connection of this
+     * slave and updates their items. The slaves have to share the unit id and the type of this
+     * slave and their ranges have to form one contiguous range starting at the start of this slave.
+     *
+     * @param binding ModbusBindig that stores providers information
+     * @param slaves the slaves to read, including this one
+     * @return <code>false</code> if the device could not be read
      */
-    public void update(ModbusBinding binding) {
+    boolean update(ModbusBinding binding, List<ModbusSlave> slaves) {
         if (!connect()) {
             resetConnection();
             logger.info("ModbusSlave not connected");
-            return;
+            return false;
         }
 
-        try {
-
-            Object local = null;
+        int end = getStart() + getLength();
+        for (ModbusSlave slave : slaves) {
+            end = Math.max(end, slave.getStart() + slave.getLength());
+        }
 
-            if (ModbusBindingProvider.TYPE_COIL.equals(getType())) {
-                ModbusRequest request = new ReadCoilsRequest(getStart(), getLength());
-                if (this instanceof ModbusSerialSlave) {
-                    request.setHeadless();
-                }
-                request.setUnitID(id);
-                ReadCoilsResponse responce = (ReadCoilsResponse) getModbusData(request);
-                local = responce.getCoils();
-            } else if (ModbusBindingProvider.TYPE_DISCRETE.equals(getType())) {
-                ModbusRequest request = new ReadInputDiscretesRequest(getStart(), getLength());
-                ReadInputDiscretesResponse responce = (ReadInputDiscretesResponse) getModbusData(request);
-                local = responce.getDiscretes();
-            } else if (ModbusBindingProvider.TYPE_HOLDING.equals(getType())) {
-                ModbusRequest request = new ReadMultipleRegistersRequest(getStart(), getLength());
-                ReadMultipleRegistersResponse responce = (ReadMultipleRegistersResponse) getModbusData(request);
-                local = responce.getRegisters();
-            } else if (ModbusBindingProvider.TYPE_INPUT.equals(getType())) {
-                ModbusRequest request = new ReadInputRegistersRequest(getStart(), getLength());
-                ReadInputRegistersResponse responce = (ReadInputRegistersResponse) getModbusData(request);
-                local = responce.getRegisters();
-            }
-            if (storage == null) {
-                storage = local;
-            } else {
-                synchronized (storage) {
-                    storage = local;
+        try {
+            Object local = readData(getStart(), end - getStart());
+            for (ModbusSlave slave : slaves) {
+                slave.setStorage(slice(local, slave.getStart() - getStart(), slave.getLength()));
+                Collection<String> items = binding.getItemNames(slave.getName());
+                for (String item : items) {
+                    slave.updateItem(binding, item);
                 }
             }
-            Collection<String> items = binding.getItemNames();
-            for (String item : items) {
-                updateItem(binding, item);
-            }
+            return true;
         } catch (Exception e) {
             resetConnection();
             logger.info("ModbusSlave error getting responce from slave");
+            return false;
         }
+    }
 
+    /**
+     * Reads a range of data of the type of this slave from the device
+     *
+     * @param start the reference of the first coil or register to read
+     * @param length the number of coils or registers to read
+     * @return a {@link BitVector} for "coil" and "discrete", an array of {@link InputRegister}s otherwise
+     */
+    private Object readData(int start, int length) {
+        Object local = null;
+
+        if (ModbusBindingProvider.TYPE_COIL.equals(getType())) {
+            ModbusRequest request = new ReadCoilsRequest(start, length);
+            if (this instanceof ModbusSerialSlave) {
+                request.setHeadless();
+            }
+            request.setUnitID(id);
+            ReadCoilsResponse responce = (ReadCoilsResponse) getModbusData(request);
+            local = responce.getCoils();
+        } else if (ModbusBindingProvider.TYPE_DISCRETE.equals(getType())) {
+            ModbusRequest request = new ReadInputDiscretesRequest(start, length);
+            ReadInputDiscretesResponse responce = (ReadInputDiscretesResponse) getModbusData(request);
+            local = responce.getDiscretes();
+        } else if (ModbusBindingProvider.TYPE_HOLDING.equals(getType())) {
+            ModbusRequest request = new ReadMultipleRegistersRequest(start, length);
+            ReadMultipleRegistersResponse responce = (ReadMultipleRegistersResponse) getModbusData(request);
+            local = responce.getRegisters();
+        } else if (ModbusBindingProvider.TYPE_INPUT.equals(getType())) {
+            ModbusRequest request = new ReadInputRegistersRequest(start, length);
+            ReadInputRegistersResponse responce = (ReadInputRegistersResponse) getModbusData(request);
+            local = responce.getRegisters();
+        }
+        return local;
+    }
+
+    /**
+     * @return the part of the data read with {@link #readData(int, int)} which starts at the given offset
+     */
+    private static Object slice(Object data, int offset, int length) {
+        if (data instanceof BitVector) {
+            BitVector bits = (BitVector) data;
+            if (offset == 0 && bits.size() == length) {
+                return bits;
+            }
+            BitVector slice = new BitVector(length);
+            for (int i = 0; i < length && offset + i < bits.size(); i++) {
+                slice.setBit(i, bits.getBit(offset + i));
+            }
+            return slice;
+        }
+        if (data instanceof InputRegister[]) {
+            InputRegister[] registers = (InputRegister[]) data;
+            if (offset == 0 && registers.length == length) {
+                return registers;
+            }
+            return Arrays.copyOfRange(registers, offset, offset + length);
+        }
+        return data;
+    }
+
+    private void setStorage(Object local) {
+        if (storage == null) {
+            storage = local;
+        } else {
+            synchronized (storage) {
+                storage = local;
+            }
+        }
     }
 
     /**
@@ -424,4 +494,22 @@ public abstract class ModbusSlave implements ModbusSlaveConnection {
     double getRawDataMultiplier() {
         return rawDataMultiplier;
     }
+
+    int getUpdateInterval() {
+        return updateInterval;
+    }
+
+    void setUpdateInterval(int updateInterval) {
+        this.updateInterval = updateInterval;
+    }
+
+    ModbusPollStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return identifies the physical connection of this slave; slaves with the same key are
+     *         never accessed at the same time
+     */
+    abstract String getConnectionKey();
 }
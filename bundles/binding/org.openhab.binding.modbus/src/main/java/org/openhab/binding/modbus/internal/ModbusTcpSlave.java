@@ -80,6 +80,11 @@ public class ModbusTcpSlave extends ModbusIPSlave {
         return true;
     }
 
+    @Override
+    String getConnectionKey() {
+        return "tcp:" + getHost() + ":" + getPort();
+    }
+
     @Override
     public void resetConnection() {
         if (connection != null) {
@@ -68,6 +68,11 @@ public class ModbusUdpSlave extends ModbusIPSlave {
         return true;
     }
 
+    @Override
+    String getConnectionKey() {
+        return "udp:" + getHost() + ":" + getPort();
+    }
+
     @Override
     public void resetConnection() {
         if (connection != null) {
@@ -22,10 +22,16 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Dictionary;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.lang.StringUtils;
 import org.openhab.core.binding.AbstractActiveBinding;
@@ -87,6 +93,11 @@ public abstract class AbstractDatagramChannelBinding<P extends ChannelBindingPro
     protected DatagramChannel listenerChannel = null;
     protected SelectionKey listenerKey = null;
 
+    // buffer that is reused for every read on the selector thread
+    private ByteBuffer reusableReadBuffer = null;
+    // number of bytes that the last read has put in the read buffer
+    private int readBufferFill = 0;
+
     // Queue to store BufferElements that need to be written to the network
     protected List<WriteBufferElement> writeQueue = Collections.synchronizedList(new ArrayList<WriteBufferElement>());
 
@@ -153,6 +164,37 @@ public abstract class AbstractDatagramChannelBinding<P extends ChannelBindingPro
             this.port = port;
         }
 
+        /**
+         * Hands the response of a blocking write/read operation over to the thread waiting in awaitResponse()
+         *
+         * @param response the data received from the remote end
+         */
+        public synchronized void setResponse(ByteBuffer response) {
+            this.buffer = response;
+            notifyAll();
+        }
+
+        /**
+         * Waits for the response of a blocking write/read operation, and resets the channel for the next one
+         *
+         * @param timeOut time to wait for the response, in milliseconds
+         * @return the response, or null if the remote end did not respond in time
+         */
+        public synchronized ByteBuffer awaitResponse(long timeOut) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeOut;
+            try {
+                long remaining = timeOut;
+                while (buffer == null && remaining > 0) {
+                    wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+                return buffer;
+            } finally {
+                buffer = null;
+                isBlocking = false;
+            }
+        }
+
         @Override
         public String toString() {
             try {
@@ -209,217 +251,203 @@ public abstract class AbstractDatagramChannelBinding<P extends ChannelBindingPro
      * getAll() - return a collection of all the Channels that match the given criteria
      * contains() - return true if a channel that matches the provided criteria exists in the ChannelTracker
      * replace() - replaces the underlying Java NIO channel on the Channels that match the provided criteria
+     * setChannel() - binds a Channel to another Java NIO channel
+     *
+     * The Channels are indexed by remote address, by Item, by {Item,Command,Direction} and by Java NIO channel, so that
+     * the lookups done by the selector thread do not have to walk all the Channels. Every index maps a key onto an
+     * immutable list of Channels, in the order in which they were added, which is replaced as a whole when the
+     * ChannelTracker is modified. Lookups therefore do not need to lock the ChannelTracker, whereas modifications are
+     * serialized. As a consequence, the Java NIO channel of a tracked Channel must only be changed through the
+     * ChannelTracker.
      * 
      * @author Karel Goderis
      * @since 1.4.0
      * 
      **/
-    protected class ChannelTracker<C extends Channel> extends ArrayList<C> {
+    protected class ChannelTracker<C extends Channel> implements Iterable<C> {
 
-        private static final long serialVersionUID = 1543958347565096785L;
+        private final List<C> channels = new CopyOnWriteArrayList<C>();
 
-        public boolean contains(String item, Command command, Direction direction, InetSocketAddress remote) {
-            synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (item.equals(aChannel.item) && command.equals(aChannel.command)
-                            && direction.equals(aChannel.direction) && remote.equals(aChannel.remote)) {
-                        return true;
-                    }
-                }
+        private final Map<InetSocketAddress, List<C>> byRemote = new ConcurrentHashMap<InetSocketAddress, List<C>>();
 
-                return false;
+        private final Map<String, List<C>> byItem = new ConcurrentHashMap<String, List<C>>();
+
+        private final Map<ChannelKey, List<C>> byCommand = new ConcurrentHashMap<ChannelKey, List<C>>();
+
+        private final Map<DatagramChannel, List<C>> byChannel = new ConcurrentHashMap<DatagramChannel, List<C>>();
+
+        public boolean add(C aChannel) {
+            synchronized (this) {
+                channels.add(aChannel);
+                index(byRemote, aChannel.remote, aChannel);
+                index(byItem, aChannel.item, aChannel);
+                index(byCommand, new ChannelKey(aChannel.item, aChannel.command, aChannel.direction), aChannel);
+                index(byChannel, aChannel.channel, aChannel);
+                return true;
             }
         }
 
-        public Channel get(String item, Command command, Direction direction, InetSocketAddress remote) {
+        public boolean remove(C aChannel) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (item.equals(aChannel.item) && command.equals(aChannel.command)
-                            && direction.equals(aChannel.direction) && remote.equals(aChannel.remote)) {
-                        return aChannel;
-                    }
+                if (!channels.remove(aChannel)) {
+                    return false;
                 }
-
-                return null;
+                unindex(byRemote, aChannel.remote, aChannel);
+                unindex(byItem, aChannel.item, aChannel);
+                unindex(byCommand, new ChannelKey(aChannel.item, aChannel.command, aChannel.direction), aChannel);
+                unindex(byChannel, aChannel.channel, aChannel);
+                return true;
             }
         }
 
-        public Channel get(String item, Command command, Direction direction, String host, String port) {
+        public void clear() {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (item.equals(aChannel.item) && command.equals(aChannel.command)
-                            && direction.equals(aChannel.direction)) {
-                        if (aChannel.host.equals(host) && aChannel.port.equals(port)) {
-                            return aChannel;
-                        }
-                    }
-                }
+                channels.clear();
+                byRemote.clear();
+                byItem.clear();
+                byCommand.clear();
+                byChannel.clear();
+            }
+        }
 
-                return null;
+        public int size() {
+            return channels.size();
+        }
 
-            }
+        public boolean isEmpty() {
+            return channels.isEmpty();
         }
 
-        public Channel get(DatagramChannel theDatagramChannel) {
-            synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (theDatagramChannel.equals(aChannel.channel)) {
-                        return aChannel;
-                    }
+        @Override
+        public Iterator<C> iterator() {
+            return channels.iterator();
+        }
+
+        public boolean contains(String item, Command command, Direction direction, InetSocketAddress remote) {
+            return get(item, command, direction, remote) != null;
+        }
+
+        public Channel get(String item, Command command, Direction direction, InetSocketAddress remote) {
+            for (C aChannel : lookup(byCommand, new ChannelKey(item, command, direction))) {
+                if (remote.equals(aChannel.remote)) {
+                    return aChannel;
                 }
-                return null;
             }
+
+            return null;
         }
 
-        public Channel getFirst(Direction direction, InetSocketAddress remoteAddress) {
-            synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (remoteAddress.equals(aChannel.remote) && aChannel.channel == null
-                            && direction.equals(aChannel.direction)) {
-                        return aChannel;
-                    }
+        public Channel get(String item, Command command, Direction direction, String host, String port) {
+            for (C aChannel : lookup(byCommand, new ChannelKey(item, command, direction))) {
+                if (aChannel.host.equals(host) && aChannel.port.equals(port)) {
+                    return aChannel;
                 }
+            }
 
-                Iterator<C> it2 = iterator();
-                while (it2.hasNext()) {
-                    C aChannel = it2.next();
-                    if (remoteAddress.equals(aChannel.remote)) {
-                        return aChannel;
-                    }
-                }
+            return null;
+        }
+
+        public Channel get(DatagramChannel theDatagramChannel) {
+            List<C> selectedChannels = lookup(byChannel, theDatagramChannel);
+            return selectedChannels.isEmpty() ? null : selectedChannels.get(0);
+        }
 
-                return null;
+        public Channel getFirst(Direction direction, InetSocketAddress remoteAddress) {
+            List<C> selectedChannels = lookup(byRemote, remoteAddress);
+            for (C aChannel : selectedChannels) {
+                if (aChannel.channel == null && direction.equals(aChannel.direction)) {
+                    return aChannel;
+                }
             }
+
+            return selectedChannels.isEmpty() ? null : selectedChannels.get(0);
         }
 
         public Channel getFirst(String itemName, Direction direction, InetSocketAddress remoteAddress) {
-            synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (itemName.equals(aChannel.item) && remoteAddress.equals(aChannel.remote)
-                            && direction.equals(aChannel.direction)) {
-                        return aChannel;
-                    }
+            for (C aChannel : lookup(byItem, itemName)) {
+                if (remoteAddress.equals(aChannel.remote) && direction.equals(aChannel.direction)) {
+                    return aChannel;
                 }
-
-                return null;
             }
+
+            return null;
         }
 
         public Channel getFirstServed(String itemName, Direction direction, InetSocketAddress remoteAddress) {
-            synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (itemName.equals(aChannel.item) && remoteAddress.equals(aChannel.remote)
-                            && aChannel.channel != null && direction.equals(aChannel.direction)) {
-                        return aChannel;
-                    }
+            for (C aChannel : lookup(byItem, itemName)) {
+                if (remoteAddress.equals(aChannel.remote) && aChannel.channel != null
+                        && direction.equals(aChannel.direction)) {
+                    return aChannel;
                 }
-
-                return null;
             }
+
+            return null;
         }
 
-        public void replace(String itemName, Direction direction, DatagramChannel theDatagramChannel,
+        public void replace(String itemName, Direction direction, DatagramChannel oldDatagramChannel,
                 DatagramChannel channel) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (itemName.equals(aChannel.item) && theDatagramChannel.equals(aChannel.channel)
-                            && direction.equals(aChannel.direction)) {
-                        aChannel.channel = channel;
+                List<C> selectedChannels = new ArrayList<C>();
+                for (C aChannel : lookup(byChannel, oldDatagramChannel)) {
+                    if (itemName.equals(aChannel.item) && direction.equals(aChannel.direction)) {
+                        selectedChannels.add(aChannel);
                     }
                 }
-
+                assign(selectedChannels, channel);
             }
         }
 
         public void replace(String itemName, Direction direction, InetSocketAddress remoteAddress,
                 DatagramChannel channel) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (itemName.equals(aChannel.item) && remoteAddress.equals(aChannel.remote)
-                            && direction.equals(aChannel.direction) && !channel.equals(aChannel.channel)) {
-                        aChannel.channel = channel;
+                List<C> selectedChannels = new ArrayList<C>();
+                for (C aChannel : lookup(byItem, itemName)) {
+                    if (remoteAddress.equals(aChannel.remote) && direction.equals(aChannel.direction)
+                            && !channel.equals(aChannel.channel)) {
+                        selectedChannels.add(aChannel);
                     }
                 }
+                assign(selectedChannels, channel);
             }
-
         }
 
         public ArrayList<Channel> getAll(String itemName, Direction direction, DatagramChannel theDatagramChannel) {
-            synchronized (this) {
+            ArrayList<Channel> selectedChannels = new ArrayList<Channel>();
 
-                ArrayList<Channel> selectedChannels = new ArrayList<Channel>();
-
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (itemName.equals(aChannel.item) && theDatagramChannel.equals(aChannel.channel)
-                            && direction.equals(aChannel.direction)) {
-                        selectedChannels.add(aChannel);
-                    }
+            for (C aChannel : lookup(byChannel, theDatagramChannel)) {
+                if (itemName.equals(aChannel.item) && direction.equals(aChannel.direction)) {
+                    selectedChannels.add(aChannel);
                 }
-
-                return selectedChannels;
             }
+
+            return selectedChannels;
         }
 
         public ArrayList<Channel> getAll(Direction direction, InetSocketAddress remote) {
-            synchronized (this) {
+            ArrayList<Channel> selectedChannels = new ArrayList<Channel>();
 
-                ArrayList<Channel> selectedChannels = new ArrayList<Channel>();
-
-                if (useAddressMask) {
-                    Iterator<C> it = iterator();
-                    while (it.hasNext()) {
-                        C aChannel = it.next();
-                        if (direction.equals(aChannel.direction)) {
-                            if (aChannel.host.equals("*") && aChannel.port.equals(Integer.toString(remote.getPort()))) {
-                                selectedChannels.add(aChannel);
-                            } else if (aChannel.port.equals("*") && aChannel.host.equals(remote.getHostString())) {
-                                selectedChannels.add(aChannel);
-                            } else if (aChannel.port.equals("*") && aChannel.host.equals("*")) {
-                                selectedChannels.add(aChannel);
-                            }
-                        }
+            if (useAddressMask) {
+                // masked Channels are not indexed by their remote address
+                for (C aChannel : channels) {
+                    if (direction.equals(aChannel.direction) && matchesMask(aChannel, remote)) {
+                        selectedChannels.add(aChannel);
                     }
-                } else {
-                    Iterator<C> it = iterator();
-                    while (it.hasNext()) {
-                        C aChannel = it.next();
-                        if (remote.equals(aChannel.remote) && direction.equals(aChannel.direction)) {
-                            selectedChannels.add(aChannel);
-                        }
+                }
+            } else {
+                for (C aChannel : lookup(byRemote, remote)) {
+                    if (direction.equals(aChannel.direction)) {
+                        selectedChannels.add(aChannel);
                     }
                 }
-
-                return selectedChannels;
             }
+
+            return selectedChannels;
         }
 
         public void setAll(String itemName, Direction direction, DatagramChannel theDatagramChannel, boolean b) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (itemName.equals(aChannel.item) && theDatagramChannel.equals(aChannel.channel)
-                            && direction.equals(aChannel.direction)) {
+                for (C aChannel : lookup(byChannel, theDatagramChannel)) {
+                    if (itemName.equals(aChannel.item) && direction.equals(aChannel.direction)) {
                         aChannel.isBlocking = b;
                     }
                 }
@@ -427,66 +455,55 @@ public abstract class AbstractDatagramChannelBinding<P extends ChannelBindingPro
         }
 
         public Channel getFirstServed(InetSocketAddress remoteAddress) {
-            synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (remoteAddress.equals(aChannel.remote) && aChannel.channel != null) {
-                        return aChannel;
-                    }
+            for (C aChannel : lookup(byRemote, remoteAddress)) {
+                if (aChannel.channel != null) {
+                    return aChannel;
                 }
-
-                return null;
             }
+
+            return null;
         }
 
         public void replace(Direction direction, SocketChannel oldSocketChannel, DatagramChannel channel) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (oldSocketChannel.equals(aChannel.channel) && direction.equals(aChannel.direction)) {
-                        aChannel.channel = channel;
+                List<C> selectedChannels = new ArrayList<C>();
+                for (C aChannel : lookup(byChannel, oldSocketChannel)) {
+                    if (direction.equals(aChannel.direction)) {
+                        selectedChannels.add(aChannel);
                     }
                 }
+                assign(selectedChannels, channel);
             }
         }
 
         public void replace(Direction direction, InetSocketAddress remoteAddress, DatagramChannel channel) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (remoteAddress.equals(aChannel.remote) && direction.equals(aChannel.direction)
-                            && !channel.equals(aChannel.channel)) {
-                        aChannel.channel = channel;
+                List<C> selectedChannels = new ArrayList<C>();
+                for (C aChannel : lookup(byRemote, remoteAddress)) {
+                    if (direction.equals(aChannel.direction) && !channel.equals(aChannel.channel)) {
+                        selectedChannels.add(aChannel);
                     }
                 }
+                assign(selectedChannels, channel);
             }
         }
 
         public ArrayList<Channel> getAll(Direction direction, DatagramChannel theDatagramChannel) {
-            synchronized (this) {
-                ArrayList<Channel> selectedChannels = new ArrayList<Channel>();
+            ArrayList<Channel> selectedChannels = new ArrayList<Channel>();
 
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (theDatagramChannel.equals(aChannel.channel) && direction.equals(aChannel.direction)) {
-                        selectedChannels.add(aChannel);
-                    }
+            for (C aChannel : lookup(byChannel, theDatagramChannel)) {
+                if (direction.equals(aChannel.direction)) {
+                    selectedChannels.add(aChannel);
                 }
-
-                return selectedChannels;
             }
+
+            return selectedChannels;
         }
 
         public void setAllBlocking(Direction direction, DatagramChannel theDatagramChannel, boolean b) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (theDatagramChannel.equals(aChannel.channel) && direction.equals(aChannel.direction)) {
+                for (C aChannel : lookup(byChannel, theDatagramChannel)) {
+                    if (direction.equals(aChannel.direction)) {
                         aChannel.isBlocking = true;
                     }
                 }
@@ -494,146 +511,206 @@ public abstract class AbstractDatagramChannelBinding<P extends ChannelBindingPro
         }
 
         public Channel getFirstServed(Direction direction, InetSocketAddress remoteAddress) {
-            synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (remoteAddress.equals(aChannel.remote) && aChannel.channel != null
-                            && direction.equals(aChannel.direction)) {
-                        return aChannel;
-                    }
+            for (C aChannel : lookup(byRemote, remoteAddress)) {
+                if (aChannel.channel != null && direction.equals(aChannel.direction)) {
+                    return aChannel;
                 }
-
-                return null;
             }
+
+            return null;
         }
 
         public void replace(DatagramChannel oldDatagramChannel, DatagramChannel channel) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (oldDatagramChannel.equals(aChannel.channel)) {
-                        aChannel.channel = channel;
-                    }
-                }
-
+                assign(new ArrayList<C>(lookup(byChannel, oldDatagramChannel)), channel);
             }
         }
 
         public void replace(InetSocketAddress remoteAddress, DatagramChannel channel) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (remoteAddress.equals(aChannel.remote) && !channel.equals(aChannel.channel)) {
-                        aChannel.channel = channel;
+                List<C> selectedChannels = new ArrayList<C>();
+                for (C aChannel : lookup(byRemote, remoteAddress)) {
+                    if (!channel.equals(aChannel.channel)) {
+                        selectedChannels.add(aChannel);
                     }
                 }
+                assign(selectedChannels, channel);
             }
-
         }
 
         public ArrayList<Channel> getAll(DatagramChannel theDatagramChannel) {
-            synchronized (this) {
-                ArrayList<Channel> selectedChannels = new ArrayList<Channel>();
-
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (theDatagramChannel.equals(aChannel.channel)) {
-                        selectedChannels.add(aChannel);
-                    }
-                }
-
-                return selectedChannels;
-            }
+            return new ArrayList<Channel>(lookup(byChannel, theDatagramChannel));
         }
 
         public void setAllBlocking(DatagramChannel theDatagramChannel, boolean b) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (theDatagramChannel.equals(aChannel.channel)) {
-                        aChannel.isBlocking = b;
-                    }
+                for (C aChannel : lookup(byChannel, theDatagramChannel)) {
+                    aChannel.isBlocking = b;
                 }
             }
         }
 
         public void setAllReconnecting(DatagramChannel theDatagramChannel, boolean b) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (theDatagramChannel.equals(aChannel.channel)) {
-                        aChannel.isReconnecting = b;
-                    }
+                for (C aChannel : lookup(byChannel, theDatagramChannel)) {
+                    aChannel.isReconnecting = b;
                 }
             }
         }
 
-        public Channel getFirstNotServed(Direction direction, InetSocketAddress remoteAddress) {
+        public void setChannel(Channel aChannel, DatagramChannel channel) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (remoteAddress.equals(aChannel.remote) && direction.equals(aChannel.direction)
-                            && (aChannel.channel == null || !aChannel.channel.isOpen())) {
-                        return aChannel;
-                    }
-                }
+                DatagramChannel oldDatagramChannel = aChannel.channel;
+                aChannel.channel = channel;
+                reindex(oldDatagramChannel);
+                reindex(channel);
+            }
+        }
 
-                return null;
+        public Channel getFirstNotServed(Direction direction, InetSocketAddress remoteAddress) {
+            for (C aChannel : lookup(byRemote, remoteAddress)) {
+                if (direction.equals(aChannel.direction) && (aChannel.channel == null || !aChannel.channel.isOpen())) {
+                    return aChannel;
+                }
             }
+
+            return null;
         }
 
         public ArrayList<Channel> getAll(Direction direction, DatagramChannel theDatagramChannel,
                 InetSocketAddress clientAddress) {
-            synchronized (this) {
+            ArrayList<Channel> selectedChannels = new ArrayList<Channel>();
 
-                ArrayList<Channel> selectedChannels = new ArrayList<Channel>();
+            for (C aChannel : lookup(byRemote, clientAddress)) {
+                if (theDatagramChannel.equals(aChannel.channel) && direction.equals(aChannel.direction)) {
+                    selectedChannels.add(aChannel);
+                }
+            }
 
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (clientAddress.equals(aChannel.remote) && theDatagramChannel.equals(aChannel.channel)
-                            && direction.equals(aChannel.direction)) {
-                        selectedChannels.add(aChannel);
-                    }
+            return selectedChannels;
+        }
+
+        public boolean isBlocking(DatagramChannel theDatagramChannel) {
+            return getBlocking(theDatagramChannel) != null;
+        }
+
+        public Channel getBlocking(DatagramChannel theDatagramChannel) {
+            for (C aChannel : lookup(byChannel, theDatagramChannel)) {
+                if (aChannel.isBlocking) {
+                    return aChannel;
                 }
+            }
+            return null;
+        }
 
-                return selectedChannels;
+        private boolean matchesMask(C aChannel, InetSocketAddress remoteAddress) {
+            if (aChannel.host.equals("*") && aChannel.port.equals(Integer.toString(remoteAddress.getPort()))) {
+                return true;
+            } else if (aChannel.port.equals("*") && aChannel.host.equals(remoteAddress.getHostString())) {
+                return true;
+            } else {
+                return aChannel.port.equals("*") && aChannel.host.equals("*");
             }
         }
 
-        public boolean isBlocking(DatagramChannel theDatagramChannel) {
-            synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (theDatagramChannel.equals(aChannel.channel) && aChannel.isBlocking) {
-                        return true;
-                    }
+        private void assign(List<C> selectedChannels, DatagramChannel channel) {
+            Set<DatagramChannel> oldDatagramChannels = new HashSet<DatagramChannel>();
+            for (C aChannel : selectedChannels) {
+                if (aChannel.channel != null) {
+                    oldDatagramChannels.add(aChannel.channel);
                 }
-                return false;
+                aChannel.channel = channel;
+            }
+            for (DatagramChannel oldDatagramChannel : oldDatagramChannels) {
+                reindex(oldDatagramChannel);
+            }
+            if (!selectedChannels.isEmpty()) {
+                reindex(channel);
             }
         }
 
-        public Channel getBlocking(DatagramChannel theDatagramChannel) {
-            synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (theDatagramChannel.equals(aChannel.channel) && aChannel.isBlocking) {
-                        return aChannel;
-                    }
+        private void reindex(DatagramChannel theDatagramChannel) {
+            if (theDatagramChannel == null) {
+                return;
+            }
+            List<C> selectedChannels = new ArrayList<C>();
+            for (C aChannel : channels) {
+                if (theDatagramChannel.equals(aChannel.channel)) {
+                    selectedChannels.add(aChannel);
                 }
-                return null;
+            }
+            if (selectedChannels.isEmpty()) {
+                byChannel.remove(theDatagramChannel);
+            } else {
+                byChannel.put(theDatagramChannel, Collections.unmodifiableList(selectedChannels));
             }
         }
 
+        private <K> void index(Map<K, List<C>> index, K key, C aChannel) {
+            if (key != null) {
+                List<C> selectedChannels = new ArrayList<C>(lookup(index, key));
+                selectedChannels.add(aChannel);
+                index.put(key, Collections.unmodifiableList(selectedChannels));
+            }
+        }
+
+        private <K> void unindex(Map<K, List<C>> index, K key, C aChannel) {
+            if (key != null) {
+                List<C> selectedChannels = new ArrayList<C>(lookup(index, key));
+                selectedChannels.remove(aChannel);
+                if (selectedChannels.isEmpty()) {
+                    index.remove(key);
+                } else {
+                    index.put(key, Collections.unmodifiableList(selectedChannels));
+                }
+            }
+        }
+
+        private List<C> lookup(Map<?, List<C>> index, Object key) {
+            List<C> selectedChannels = key != null ? index.get(key) : null;
+            return selectedChannels != null ? selectedChannels : Collections.<C> emptyList();
+        }
+
+    }
+
+    /**
+     * Key of the {Item,Command,Direction} index of the {@link ChannelTracker}
+     *
+     * @author agent
+     * @since 1.9.0
+     **/
+    private static final class ChannelKey {
+
+        private final String item;
+        private final Command command;
+        private final Direction direction;
+
+        public ChannelKey(String item, Command command, Direction direction) {
+            this.item = item;
+            this.command = command;
+            this.direction = direction;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 31 + (item == null ? 0 : item.hashCode());
+            result = 31 * result + (command == null ? 0 : command.hashCode());
+            return 31 * result + (direction == null ? 0 : direction.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ChannelKey)) {
+                return false;
+            }
+            ChannelKey other = (ChannelKey) obj;
+            return (item == null ? other.item == null : item.equals(other.item))
+                    && (command == null ? other.command == null : command.equals(other.command))
+                    && direction == other.direction;
+        }
     }
 
     /**
@@ -1018,7 +1095,9 @@ public abstract class AbstractDatagramChannelBinding<P extends ChannelBindingPro
     /**
      * 
      * Callback that will be called when data is received on a given channel.
-     * This method should deal with the actual details of the protocol being implemented
+     * This method should deal with the actual details of the protocol being implemented.
+     * The data lies between the position and the limit of the buffer. The buffer is reused
+     * for the next read once this method returns, so it must not be kept.
      */
     abstract protected void parseBuffer(String itemName, Command aCommand, Direction theDirection,
             ByteBuffer byteBuffer);
@@ -1041,21 +1120,12 @@ public abstract class AbstractDatagramChannelBinding<P extends ChannelBindingPro
             if (theBuffer != null) {
                 writeQueue.add(new WriteBufferElement(theChannel, theBuffer, true));
 
-                long currentElapsedTimeMillis = System.currentTimeMillis();
-
-                while (theChannel.buffer == null && (System.currentTimeMillis() - currentElapsedTimeMillis) < timeOut) {
-                    try {
-                        Thread.sleep(50);
-                    } catch (InterruptedException e) {
-                        logger.warn("An Exception occurred while waiting during a blocking buffer write");
-                    }
-                }
-
                 ByteBuffer responseBuffer = null;
-                synchronized (this) {
-                    responseBuffer = theChannel.buffer;
-                    theChannel.buffer = null;
-                    theChannel.isBlocking = false;
+                try {
+                    responseBuffer = theChannel.awaitResponse(timeOut);
+                } catch (InterruptedException e) {
+                    logger.warn("An Exception occurred while waiting during a blocking buffer write");
+                    Thread.currentThread().interrupt();
                 }
                 return responseBuffer;
             } else {
@@ -1072,6 +1142,37 @@ public abstract class AbstractDatagramChannelBinding<P extends ChannelBindingPro
         }
     }
 
+    /**
+     * Returns the buffer to read the next data from the network into. The buffer is reused for every read instead of
+     * allocating maximumBufferSize bytes each time, and is only valid until parseBuffer() returns. The bytes of the
+     * previous read are zeroed, so that the backing array looks the same to the parsers as a newly allocated one.
+     *
+     * @return an empty buffer with a capacity of maximumBufferSize
+     */
+    private ByteBuffer getReadBuffer() {
+        if (reusableReadBuffer == null || reusableReadBuffer.capacity() != maximumBufferSize) {
+            reusableReadBuffer = ByteBuffer.allocate(maximumBufferSize);
+        } else {
+            Arrays.fill(reusableReadBuffer.array(), 0, readBufferFill, (byte) 0);
+            reusableReadBuffer.clear();
+        }
+        readBufferFill = 0;
+        return reusableReadBuffer;
+    }
+
+    /**
+     * Copies the data of the read buffer, so that it can be handed over to another thread
+     *
+     * @param buffer the buffer to copy, from its position up to its limit
+     * @return a new buffer holding the data
+     */
+    private static ByteBuffer copyOf(ByteBuffer buffer) {
+        ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer.duplicate());
+        copy.flip();
+        return copy;
+    }
+
     /**
      * Quartz Job to reconnect a channel
      * 
@@ -1106,7 +1207,7 @@ public abstract class AbstractDatagramChannelBinding<P extends ChannelBindingPro
                         }
 
                         try {
-                            theChannel.channel = DatagramChannel.open();
+                            theBinding.channels.setChannel(theChannel, DatagramChannel.open());
                         } catch (IOException e) {
                             logger.error("An exception occurred while opening a channel: {}", e.getMessage());
                         }
@@ -1299,7 +1400,7 @@ public abstract class AbstractDatagramChannelBinding<P extends ChannelBindingPro
                                         Channel firstChannel = channels.getFirstServed(itemName, direction,
                                                 remoteAddress);
                                         if (firstChannel != null) {
-                                            newChannel.channel = firstChannel.channel;
+                                            channels.setChannel(newChannel, firstChannel.channel);
                                             assigned = true;
                                         }
                                     }
@@ -1307,7 +1408,7 @@ public abstract class AbstractDatagramChannelBinding<P extends ChannelBindingPro
                                     if (bindingShareChannels) {
                                         Channel firstChannel = channels.getFirstServed(direction, remoteAddress);
                                         if (firstChannel != null) {
-                                            newChannel.channel = firstChannel.channel;
+                                            channels.setChannel(newChannel, firstChannel.channel);
                                             assigned = true;
                                         }
                                     }
@@ -1359,7 +1460,7 @@ public abstract class AbstractDatagramChannelBinding<P extends ChannelBindingPro
                                             }
                                         }
 
-                                        newChannel.channel = newDatagramChannel;
+                                        channels.setChannel(newChannel, newDatagramChannel);
                                         logger.debug("Setting up the outbound channel {}", newChannel);
 
                                         try {
@@ -1405,16 +1506,18 @@ public abstract class AbstractDatagramChannelBinding<P extends ChannelBindingPro
 
                 if (selKey.isReadable()) {
                     InetSocketAddress clientAddress = null;
-                    ByteBuffer readBuffer = ByteBuffer.allocate(maximumBufferSize);
+                    ByteBuffer readBuffer = getReadBuffer();
                     int numberBytesRead = 0;
                     boolean error = false;
 
                     if (selKey == listenerKey) {
                         try {
                             clientAddress = (InetSocketAddress) theDatagramChannel.receive(readBuffer);
-                            logger.debug("Received {} on the listener port from {}", new String(readBuffer.array()),
-                                    clientAddress);
                             numberBytesRead = readBuffer.position();
+                            if (logger.isDebugEnabled()) {
+                                logger.debug("Received {} on the listener port from {}",
+                                        new String(readBuffer.array(), 0, numberBytesRead), clientAddress);
+                            }
                         } catch (Exception e) {
                             error = true;
                         }
@@ -1427,10 +1530,13 @@ public abstract class AbstractDatagramChannelBinding<P extends ChannelBindingPro
                             // for example, the buffer needs to be split based on a special character like line feed or
                             // carriage return
                             numberBytesRead = theDatagramChannel.read(readBuffer);
-                            logger.debug("Received {} bytes ({}) on the channel {}->{}",
-                                    new Object[] { numberBytesRead, new String(readBuffer.array()),
-                                            theDatagramChannel.getLocalAddress(),
-                                            theDatagramChannel.getRemoteAddress() });
+                            if (logger.isDebugEnabled()) {
+                                logger.debug("Received {} bytes ({}) on the channel {}->{}",
+                                        new Object[] { numberBytesRead,
+                                                new String(readBuffer.array(), 0, readBuffer.position()),
+                                                theDatagramChannel.getLocalAddress(),
+                                                theDatagramChannel.getRemoteAddress() });
+                            }
                         } catch (NotYetConnectedException e) {
                             try {
                                 logger.warn("The channel for {} has no connection pending ({})",
@@ -1454,6 +1560,7 @@ public abstract class AbstractDatagramChannelBinding<P extends ChannelBindingPro
                             error = true;
                         }
                     }
+                    readBufferFill = readBuffer.position();
 
                     if (numberBytesRead == -1) {
                         try {
@@ -1540,7 +1647,7 @@ public abstract class AbstractDatagramChannelBinding<P extends ChannelBindingPro
 
                                 // find the Channel with this DGC that is holding a Blocking flag
                                 theChannel = channels.getBlocking(theDatagramChannel);
-                                theChannel.buffer = readBuffer;
+                                theChannel.setResponse(copyOf(readBuffer));
 
                             } else {
                                 for (Channel aChannel : channelsToServe) {
@@ -24,10 +24,16 @@ import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Dictionary;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.lang.StringUtils;
 import org.openhab.core.binding.AbstractActiveBinding;
@@ -91,6 +97,11 @@ public abstract class AbstractSocketChannelBinding<P extends ChannelBindingProvi
     protected ServerSocketChannel listenerChannel = null;
     protected SelectionKey listenerKey = null;
 
+    // buffer that is reused for every read on the selector thread
+    private ByteBuffer reusableReadBuffer = null;
+    // number of bytes that the last read has put in the read buffer
+    private int readBufferFill = 0;
+
     // Queue to store BufferElements that need to be written to the network
     protected List<WriteBufferElement> writeQueue = Collections.synchronizedList(new ArrayList<WriteBufferElement>());
 
@@ -155,6 +166,37 @@ public abstract class AbstractSocketChannelBinding<P extends ChannelBindingProvi
             this.port = port;
         }
 
+        /**
+         * Hands the response of a blocking write/read operation over to the thread waiting in awaitResponse()
+         *
+         * @param response the data received from the remote end
+         */
+        public synchronized void setResponse(ByteBuffer response) {
+            this.buffer = response;
+            notifyAll();
+        }
+
+        /**
+         * Waits for the response of a blocking write/read operation, and resets the channel for the next one
+         *
+         * @param timeOut time to wait for the response, in milliseconds
+         * @return the response, or null if the remote end did not respond in time
+         */
+        public synchronized ByteBuffer awaitResponse(long timeOut) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeOut;
+            try {
+                long remaining = timeOut;
+                while (buffer == null && remaining > 0) {
+                    wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+                return buffer;
+            } finally {
+                buffer = null;
+                isBlocking = false;
+            }
+        }
+
         @Override
         public String toString() {
             try {
@@ -212,195 +254,187 @@ public abstract class AbstractSocketChannelBinding<P extends ChannelBindingProvi
      * getAll() - return a collection of all the Channels that match the given criteria
      * contains() - return true if a channel that matches the provided criteria exists in the ChannelTracker
      * replace() - replaces the underlying Java NIO channel on the Channels that match the provided criteria
+     * setChannel() - binds a Channel to another Java NIO channel
+     *
+     * The Channels are indexed by remote address, by Item, by {Item,Command,Direction} and by Java NIO channel, so that
+     * the lookups done by the selector thread do not have to walk all the Channels. Every index maps a key onto an
+     * immutable list of Channels, in the order in which they were added, which is replaced as a whole when the
+     * ChannelTracker is modified. Lookups therefore do not need to lock the ChannelTracker, whereas modifications are
+     * serialized. As a consequence, the Java NIO channel of a tracked Channel must only be changed through the
+     * ChannelTracker.
      * 
      * @author Karel Goderis
      * @since 1.4.0
      * 
      **/
-    protected class ChannelTracker<C extends Channel> extends ArrayList<C> {
+    protected class ChannelTracker<C extends Channel> implements Iterable<C> {
 
-        private static final long serialVersionUID = 1543958347565096785L;
+        private final List<C> channels = new CopyOnWriteArrayList<C>();
 
-        public boolean contains(String item, Command command, Direction direction, InetSocketAddress remote) {
-            synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (item.equals(aChannel.item) && command.equals(aChannel.command)
-                            && direction.equals(aChannel.direction) && remote.equals(aChannel.remote)) {
-                        return true;
-                    }
-                }
+        private final Map<InetSocketAddress, List<C>> byRemote = new ConcurrentHashMap<InetSocketAddress, List<C>>();
 
-                return false;
+        private final Map<String, List<C>> byItem = new ConcurrentHashMap<String, List<C>>();
+
+        private final Map<ChannelKey, List<C>> byCommand = new ConcurrentHashMap<ChannelKey, List<C>>();
+
+        private final Map<SocketChannel, List<C>> byChannel = new ConcurrentHashMap<SocketChannel, List<C>>();
+
+        public boolean add(C aChannel) {
+            synchronized (this) {
+                channels.add(aChannel);
+                index(byRemote, aChannel.remote, aChannel);
+                index(byItem, aChannel.item, aChannel);
+                index(byCommand, new ChannelKey(aChannel.item, aChannel.command, aChannel.direction), aChannel);
+                index(byChannel, aChannel.channel, aChannel);
+                return true;
             }
         }
 
-        public Channel get(String item, Command command, Direction direction, InetSocketAddress remote) {
+        public boolean remove(C aChannel) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (item.equals(aChannel.item) && command.equals(aChannel.command)
-                            && direction.equals(aChannel.direction) && remote.equals(aChannel.remote)) {
-                        return aChannel;
-                    }
+                if (!channels.remove(aChannel)) {
+                    return false;
                 }
-
-                return null;
+                unindex(byRemote, aChannel.remote, aChannel);
+                unindex(byItem, aChannel.item, aChannel);
+                unindex(byCommand, new ChannelKey(aChannel.item, aChannel.command, aChannel.direction), aChannel);
+                unindex(byChannel, aChannel.channel, aChannel);
+                return true;
             }
         }
 
-        public Channel get(String item, Command command, Direction direction, String host, String port) {
+        public void clear() {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (item.equals(aChannel.item) && command.equals(aChannel.command)
-                            && direction.equals(aChannel.direction)) {
-                        if (aChannel.host.equals(host) && aChannel.port.equals(port)) {
-                            return aChannel;
-                        }
-                    }
-                }
+                channels.clear();
+                byRemote.clear();
+                byItem.clear();
+                byCommand.clear();
+                byChannel.clear();
+            }
+        }
 
-                return null;
+        public int size() {
+            return channels.size();
+        }
 
-            }
+        public boolean isEmpty() {
+            return channels.isEmpty();
         }
 
-        public Channel get(SocketChannel theChannel) {
-            synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (theChannel.equals(aChannel.channel)) {
-                        return aChannel;
-                    }
+        @Override
+        public Iterator<C> iterator() {
+            return channels.iterator();
+        }
+
+        public boolean contains(String item, Command command, Direction direction, InetSocketAddress remote) {
+            return get(item, command, direction, remote) != null;
+        }
+
+        public Channel get(String item, Command command, Direction direction, InetSocketAddress remote) {
+            for (C aChannel : lookup(byCommand, new ChannelKey(item, command, direction))) {
+                if (remote.equals(aChannel.remote)) {
+                    return aChannel;
                 }
-                return null;
             }
+
+            return null;
         }
 
-        public Channel getFirst(Direction direction, InetSocketAddress remoteAddress) {
-            synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (remoteAddress.equals(aChannel.remote) && aChannel.channel == null
-                            && direction.equals(aChannel.direction)) {
-                        return aChannel;
-                    }
+        public Channel get(String item, Command command, Direction direction, String host, String port) {
+            for (C aChannel : lookup(byCommand, new ChannelKey(item, command, direction))) {
+                if (aChannel.host.equals(host) && aChannel.port.equals(port)) {
+                    return aChannel;
                 }
+            }
 
-                Iterator<C> it2 = iterator();
-                while (it2.hasNext()) {
-                    C aChannel = it2.next();
-                    if (remoteAddress.equals(aChannel.remote)) {
-                        return aChannel;
-                    }
-                }
+            return null;
+        }
+
+        public Channel get(SocketChannel theChannel) {
+            List<C> selectedChannels = lookup(byChannel, theChannel);
+            return selectedChannels.isEmpty() ? null : selectedChannels.get(0);
+        }
 
-                return null;
+        public Channel getFirst(Direction direction, InetSocketAddress remoteAddress) {
+            List<C> selectedChannels = lookup(byRemote, remoteAddress);
+            for (C aChannel : selectedChannels) {
+                if (aChannel.channel == null && direction.equals(aChannel.direction)) {
+                    return aChannel;
+                }
             }
+
+            return selectedChannels.isEmpty() ? null : selectedChannels.get(0);
         }
 
         public Channel getFirst(String itemName, Direction direction, InetSocketAddress remoteAddress) {
-            synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (itemName.equals(aChannel.item) && remoteAddress.equals(aChannel.remote)
-                            && direction.equals(aChannel.direction)) {
-                        return aChannel;
-                    }
+            for (C aChannel : lookup(byItem, itemName)) {
+                if (remoteAddress.equals(aChannel.remote) && direction.equals(aChannel.direction)) {
+                    return aChannel;
                 }
-
-                return null;
             }
+
+            return null;
         }
 
         public Channel getFirstServed(String itemName, Direction direction, InetSocketAddress remoteAddress) {
-            synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (itemName.equals(aChannel.item) && remoteAddress.equals(aChannel.remote)
-                            && aChannel.channel != null && direction.equals(aChannel.direction)) {
-                        return aChannel;
-                    }
+            for (C aChannel : lookup(byItem, itemName)) {
+                if (remoteAddress.equals(aChannel.remote) && aChannel.channel != null
+                        && direction.equals(aChannel.direction)) {
+                    return aChannel;
                 }
-
-                return null;
             }
+
+            return null;
         }
 
         public void replace(String itemName, Direction direction, SocketChannel oldSocketChannel,
                 SocketChannel channel) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (itemName.equals(aChannel.item) && oldSocketChannel.equals(aChannel.channel)
-                            && direction.equals(aChannel.direction)) {
-                        aChannel.channel = channel;
+                List<C> selectedChannels = new ArrayList<C>();
+                for (C aChannel : lookup(byChannel, oldSocketChannel)) {
+                    if (itemName.equals(aChannel.item) && direction.equals(aChannel.direction)) {
+                        selectedChannels.add(aChannel);
                     }
                 }
-
+                assign(selectedChannels, channel);
             }
         }
 
         public void replace(String itemName, Direction direction, InetSocketAddress remoteAddress,
                 SocketChannel channel) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
+                List<C> selectedChannels = new ArrayList<C>();
+                for (C aChannel : lookup(byItem, itemName)) {
                     if (useAddressMask && (aChannel.host.equals("*") || aChannel.port.equals("*"))
-                            && direction.equals(aChannel.direction) && itemName.equals(aChannel.item)
-                            && !channel.equals(aChannel.channel)) {
-                        if (aChannel.host.equals("*")
-                                && aChannel.port.equals(Integer.toString(remoteAddress.getPort()))) {
-                            aChannel.channel = channel;
-                        } else if (aChannel.port.equals("*") && aChannel.host.equals(remoteAddress.getHostString())) {
-                            aChannel.channel = channel;
-                        } else if (aChannel.port.equals("*") && aChannel.host.equals("*")) {
-                            aChannel.channel = channel;
-                        }
-                    } else if (itemName.equals(aChannel.item) && remoteAddress.equals(aChannel.remote)
                             && direction.equals(aChannel.direction) && !channel.equals(aChannel.channel)) {
-                        aChannel.channel = channel;
+                        if (matchesMask(aChannel, remoteAddress)) {
+                            selectedChannels.add(aChannel);
+                        }
+                    } else if (remoteAddress.equals(aChannel.remote) && direction.equals(aChannel.direction)
+                            && !channel.equals(aChannel.channel)) {
+                        selectedChannels.add(aChannel);
                     }
                 }
+                assign(selectedChannels, channel);
             }
-
         }
 
         public ArrayList<Channel> getAll(String itemName, Direction direction, SocketChannel theSocketChannel) {
-            synchronized (this) {
+            ArrayList<Channel> selectedChannels = new ArrayList<Channel>();
 
-                ArrayList<Channel> selectedChannels = new ArrayList<Channel>();
-
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (itemName.equals(aChannel.item) && theSocketChannel.equals(aChannel.channel)
-                            && direction.equals(aChannel.direction)) {
-                        selectedChannels.add(aChannel);
-                    }
+            for (C aChannel : lookup(byChannel, theSocketChannel)) {
+                if (itemName.equals(aChannel.item) && direction.equals(aChannel.direction)) {
+                    selectedChannels.add(aChannel);
                 }
-
-                return selectedChannels;
             }
+
+            return selectedChannels;
         }
 
         public void setAllBlocking(String itemName, Direction direction, SocketChannel theSocketChannel, boolean b) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (itemName.equals(aChannel.item) && theSocketChannel.equals(aChannel.channel)
-                            && direction.equals(aChannel.direction)) {
+                for (C aChannel : lookup(byChannel, theSocketChannel)) {
+                    if (itemName.equals(aChannel.item) && direction.equals(aChannel.direction)) {
                         aChannel.isBlocking = b;
                     }
                 }
@@ -408,77 +442,60 @@ public abstract class AbstractSocketChannelBinding<P extends ChannelBindingProvi
         }
 
         public Channel getFirstServed(InetSocketAddress remoteAddress) {
-            synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (remoteAddress.equals(aChannel.remote) && aChannel.channel != null) {
-                        return aChannel;
-                    }
+            for (C aChannel : lookup(byRemote, remoteAddress)) {
+                if (aChannel.channel != null) {
+                    return aChannel;
                 }
-
-                return null;
             }
+
+            return null;
         }
 
         public void replace(Direction direction, SocketChannel oldSocketChannel, SocketChannel channel) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (oldSocketChannel.equals(aChannel.channel) && direction.equals(aChannel.direction)) {
-                        aChannel.channel = channel;
+                List<C> selectedChannels = new ArrayList<C>();
+                for (C aChannel : lookup(byChannel, oldSocketChannel)) {
+                    if (direction.equals(aChannel.direction)) {
+                        selectedChannels.add(aChannel);
                     }
                 }
+                assign(selectedChannels, channel);
             }
         }
 
         public void replace(Direction direction, InetSocketAddress remoteAddress, SocketChannel channel) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
+                List<C> selectedChannels = new ArrayList<C>();
+                for (C aChannel : lookup(byRemote, remoteAddress)) {
                     if (useAddressMask && (aChannel.host.equals("*") || aChannel.port.equals("*"))
-                            && remoteAddress.equals(aChannel.remote) && direction.equals(aChannel.direction)
-                            && !channel.equals(aChannel.channel)) {
-                        if (aChannel.host.equals("*")
-                                && aChannel.port.equals(Integer.toString(remoteAddress.getPort()))) {
-                            aChannel.channel = channel;
-                        } else if (aChannel.port.equals("*") && aChannel.host.equals(remoteAddress.getHostString())) {
-                            aChannel.channel = channel;
-                        } else if (aChannel.port.equals("*") && aChannel.host.equals("*")) {
-                            aChannel.channel = channel;
+                            && direction.equals(aChannel.direction) && !channel.equals(aChannel.channel)) {
+                        if (matchesMask(aChannel, remoteAddress)) {
+                            selectedChannels.add(aChannel);
                         }
-                    } else if (remoteAddress.equals(aChannel.remote) && direction.equals(aChannel.direction)
-                            && !channel.equals(aChannel.channel)) {
-                        aChannel.channel = channel;
+                    } else if (direction.equals(aChannel.direction) && !channel.equals(aChannel.channel)) {
+                        selectedChannels.add(aChannel);
                     }
                 }
+                assign(selectedChannels, channel);
             }
         }
 
         public ArrayList<Channel> getAll(Direction direction, SocketChannel theSocketChannel) {
-            synchronized (this) {
-                ArrayList<Channel> selectedChannels = new ArrayList<Channel>();
+            ArrayList<Channel> selectedChannels = new ArrayList<Channel>();
 
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (theSocketChannel.equals(aChannel.channel) && direction.equals(aChannel.direction)) {
-                        selectedChannels.add(aChannel);
-                    }
+            for (C aChannel : lookup(byChannel, theSocketChannel)) {
+                if (direction.equals(aChannel.direction)) {
+                    selectedChannels.add(aChannel);
                 }
-
-                return selectedChannels;
             }
+
+            return selectedChannels;
         }
 
         public void setAllBlocking(Direction direction, SocketChannel theSocketChannel, boolean b) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (theSocketChannel.equals(aChannel.channel) && direction.equals(aChannel.direction)) {
+                for (C aChannel : lookup(byChannel, theSocketChannel)) {
+                    if (direction.equals(aChannel.direction)) {
                         aChannel.isBlocking = b;
                     }
                 }
@@ -486,148 +503,209 @@ public abstract class AbstractSocketChannelBinding<P extends ChannelBindingProvi
         }
 
         public Channel getFirstServed(Direction direction, InetSocketAddress remoteAddress) {
-            synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (remoteAddress.equals(aChannel.remote) && aChannel.channel != null
-                            && direction.equals(aChannel.direction)) {
-                        return aChannel;
-                    }
+            for (C aChannel : lookup(byRemote, remoteAddress)) {
+                if (aChannel.channel != null && direction.equals(aChannel.direction)) {
+                    return aChannel;
                 }
-
-                return null;
             }
+
+            return null;
         }
 
         public void replace(SocketChannel oldSocketChannel, SocketChannel channel) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (oldSocketChannel.equals(aChannel.channel)) {
-                        aChannel.channel = channel;
-                    }
-                }
-
+                assign(new ArrayList<C>(lookup(byChannel, oldSocketChannel)), channel);
             }
         }
 
         public void replace(InetSocketAddress remoteAddress, SocketChannel channel) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
+                // masked Channels are not indexed by their remote address
+                List<C> candidates = useAddressMask ? channels : lookup(byRemote, remoteAddress);
+                List<C> selectedChannels = new ArrayList<C>();
+                for (C aChannel : candidates) {
                     if (useAddressMask && (aChannel.host.equals("*") || aChannel.port.equals("*"))
                             && !channel.equals(aChannel.channel)) {
-                        if (aChannel.host.equals("*")
-                                && aChannel.port.equals(Integer.toString(remoteAddress.getPort()))) {
-                            aChannel.channel = channel;
-                        } else if (aChannel.port.equals("*") && aChannel.host.equals(remoteAddress.getHostString())) {
-                            aChannel.channel = channel;
-                        } else if (aChannel.port.equals("*") && aChannel.host.equals("*")) {
-                            aChannel.channel = channel;
+                        if (matchesMask(aChannel, remoteAddress)) {
+                            selectedChannels.add(aChannel);
                         }
                     } else if (remoteAddress.equals(aChannel.remote) && !channel.equals(aChannel.channel)) {
-                        aChannel.channel = channel;
+                        selectedChannels.add(aChannel);
                     }
                 }
+                assign(selectedChannels, channel);
             }
-
         }
 
         public ArrayList<Channel> getAll(SocketChannel theSocketChannel) {
-            synchronized (this) {
-                ArrayList<Channel> selectedChannels = new ArrayList<Channel>();
-
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (theSocketChannel.equals(aChannel.channel)) {
-                        selectedChannels.add(aChannel);
-                    }
-                }
-
-                return selectedChannels;
-            }
+            return new ArrayList<Channel>(lookup(byChannel, theSocketChannel));
         }
 
         public void setAllBlocking(SocketChannel theSocketChannel, boolean b) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (theSocketChannel.equals(aChannel.channel)) {
-                        aChannel.isBlocking = b;
-                    }
+                for (C aChannel : lookup(byChannel, theSocketChannel)) {
+                    aChannel.isBlocking = b;
                 }
             }
         }
 
         public void setAllReconnecting(SocketChannel theSocketChannel, boolean b) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (theSocketChannel.equals(aChannel.channel)) {
-                        aChannel.isReconnecting = b;
-                    }
+                for (C aChannel : lookup(byChannel, theSocketChannel)) {
+                    aChannel.isReconnecting = b;
                 }
             }
         }
 
-        public Channel getFirstNotServed(Direction direction, InetSocketAddress remoteAddress) {
+        public void setChannel(Channel aChannel, SocketChannel channel) {
             synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (useAddressMask && (aChannel.host.equals("*") || aChannel.port.equals("*"))
-                            && direction.equals(aChannel.direction)
-                            && (aChannel.channel == null || !aChannel.channel.isOpen())) {
-                        if (aChannel.host.equals("*")
-                                && aChannel.port.equals(Integer.toString(remoteAddress.getPort()))) {
-                            return aChannel;
-                        } else if (aChannel.port.equals("*") && aChannel.host.equals(remoteAddress.getHostString())) {
-                            return aChannel;
-                        } else if (aChannel.port.equals("*") && aChannel.host.equals("*")) {
-                            return aChannel;
-                        }
-                    } else if (remoteAddress.equals(aChannel.remote) && direction.equals(aChannel.direction)
-                            && (aChannel.channel == null || !aChannel.channel.isOpen())) {
+                SocketChannel oldSocketChannel = aChannel.channel;
+                aChannel.channel = channel;
+                reindex(oldSocketChannel);
+                reindex(channel);
+            }
+        }
+
+        public Channel getFirstNotServed(Direction direction, InetSocketAddress remoteAddress) {
+            // masked Channels are not indexed by their remote address
+            List<C> candidates = useAddressMask ? channels : lookup(byRemote, remoteAddress);
+            for (C aChannel : candidates) {
+                if (useAddressMask && (aChannel.host.equals("*") || aChannel.port.equals("*"))
+                        && direction.equals(aChannel.direction)
+                        && (aChannel.channel == null || !aChannel.channel.isOpen())) {
+                    if (matchesMask(aChannel, remoteAddress)) {
                         return aChannel;
                     }
+                } else if (remoteAddress.equals(aChannel.remote) && direction.equals(aChannel.direction)
+                        && (aChannel.channel == null || !aChannel.channel.isOpen())) {
+                    return aChannel;
                 }
-
-                return null;
             }
+
+            return null;
         }
 
         public boolean isBlocking(SocketChannel theSocketChannel) {
-            synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (theSocketChannel.equals(aChannel.channel) && aChannel.isBlocking) {
-                        return true;
-                    }
+            return getBlocking(theSocketChannel) != null;
+        }
+
+        public Channel getBlocking(SocketChannel theSocketChannel) {
+            for (C aChannel : lookup(byChannel, theSocketChannel)) {
+                if (aChannel.isBlocking) {
+                    return aChannel;
                 }
-                return false;
             }
+            return null;
         }
 
-        public Channel getBlocking(SocketChannel theSocketChannel) {
-            synchronized (this) {
-                Iterator<C> it = iterator();
-                while (it.hasNext()) {
-                    C aChannel = it.next();
-                    if (theSocketChannel.equals(aChannel.channel) && aChannel.isBlocking) {
-                        return aChannel;
-                    }
+        private boolean matchesMask(C aChannel, InetSocketAddress remoteAddress) {
+            if (aChannel.host.equals("*") && aChannel.port.equals(Integer.toString(remoteAddress.getPort()))) {
+                return true;
+            } else if (aChannel.port.equals("*") && aChannel.host.equals(remoteAddress.getHostString())) {
+                return true;
+            } else {
+                return aChannel.port.equals("*") && aChannel.host.equals("*");
+            }
+        }
+
+        private void assign(List<C> selectedChannels, SocketChannel channel) {
+            Set<SocketChannel> oldSocketChannels = new HashSet<SocketChannel>();
+            for (C aChannel : selectedChannels) {
+                if (aChannel.channel != null) {
+                    oldSocketChannels.add(aChannel.channel);
+                }
+                aChannel.channel = channel;
+            }
+            for (SocketChannel oldSocketChannel : oldSocketChannels) {
+                reindex(oldSocketChannel);
+            }
+            if (!selectedChannels.isEmpty()) {
+                reindex(channel);
+            }
+        }
+
+        private void reindex(SocketChannel theSocketChannel) {
+            if (theSocketChannel == null) {
+                return;
+            }
+            List<C> selectedChannels = new ArrayList<C>();
+            for (C aChannel : channels) {
+                if (theSocketChannel.equals(aChannel.channel)) {
+                    selectedChannels.add(aChannel);
                 }
-                return null;
+            }
+            if (selectedChannels.isEmpty()) {
+                byChannel.remove(theSocketChannel);
+            } else {
+                byChannel.put(theSocketChannel, Collections.unmodifiableList(selectedChannels));
             }
         }
 
+        private <K> void index(Map<K, List<C>> index, K key, C aChannel) {
+            if (key != null) {
+                List<C> selectedChannels = new ArrayList<C>(lookup(index, key));
+                selectedChannels.add(aChannel);
+                index.put(key, Collections.unmodifiableList(selectedChannels));
+            }
+        }
+
+        private <K> void unindex(Map<K, List<C>> index, K key, C aChannel) {
+            if (key != null) {
+                List<C> selectedChannels = new ArrayList<C>(lookup(index, key));
+                selectedChannels.remove(aChannel);
+                if (selectedChannels.isEmpty()) {
+                    index.remove(key);
+                } else {
+                    index.put(key, Collections.unmodifiableList(selectedChannels));
+                }
+            }
+        }
+
+        private List<C> lookup(Map<?, List<C>> index, Object key) {
+            List<C> selectedChannels = key != null ? index.get(key) : null;
+            return selectedChannels != null ? selectedChannels : Collections.<C> emptyList();
+        }
+
+    }
+
+    /**
+     * Key of the {Item,Command,Direction} index of the {@link ChannelTracker}
+     *
+     * @author agent
+     * @since 1.9.0
+     **/
+    private static final class ChannelKey {
+
+        private final String item;
+        private final Command command;
+        private final Direction direction;
+
+        public ChannelKey(String item, Command command, Direction direction) {
+            this.item = item;
+            this.command = command;
+            this.direction = direction;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 31 + (item == null ? 0 : item.hashCode());
+            result = 31 * result + (command == null ? 0 : command.hashCode());
+            return 31 * result + (direction == null ? 0 : direction.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ChannelKey)) {
+                return false;
+            }
+            ChannelKey other = (ChannelKey) obj;
+            return (item == null ? other.item == null : item.equals(other.item))
+                    && (command == null ? other.command == null : command.equals(other.command))
+                    && direction == other.direction;
+        }
     }
 
     /**
@@ -1034,7 +1112,9 @@ public abstract class AbstractSocketChannelBinding<P extends ChannelBindingProvi
     /**
      * 
      * Callback that will be called when data is received on a given channel.
-     * This method should deal with the actual details of the protocol being implemented
+     * This method should deal with the actual details of the protocol being implemented.
+     * The data lies between the position and the limit of the buffer. The buffer is reused
+     * for the next read once this method returns, so it must not be kept.
      */
     abstract protected void parseBuffer(String itemName, Command aCommand, Direction theDirection,
             ByteBuffer byteBuffer);
@@ -1061,21 +1141,12 @@ public abstract class AbstractSocketChannelBinding<P extends ChannelBindingProvi
                     writeQueue.add(new WriteBufferElement(theChannel, theBuffer, true));
                 }
 
-                long currentElapsedTimeMillis = System.currentTimeMillis();
-
-                while (theChannel.buffer == null && (System.currentTimeMillis() - currentElapsedTimeMillis) < timeOut) {
-                    try {
-                        Thread.sleep(100);
-                    } catch (InterruptedException e) {
-                        logger.warn("Exception occurred while waiting during a blocking buffer write");
-                    }
-                }
-
                 ByteBuffer responseBuffer = null;
-                synchronized (this) {
-                    responseBuffer = theChannel.buffer;
-                    theChannel.buffer = null;
-                    theChannel.isBlocking = false;
+                try {
+                    responseBuffer = theChannel.awaitResponse(timeOut);
+                } catch (InterruptedException e) {
+                    logger.warn("Exception occurred while waiting during a blocking buffer write");
+                    Thread.currentThread().interrupt();
                 }
                 return responseBuffer;
             } else {
@@ -1094,6 +1165,37 @@ public abstract class AbstractSocketChannelBinding<P extends ChannelBindingProvi
         }
     }
 
+    /**
+     * Returns the buffer to read the next data from the network into. The buffer is reused for every read instead of
+     * allocating maximumBufferSize bytes each time, and is only valid until parseBuffer() returns. The bytes of the
+     * previous read are zeroed, so that the backing array looks the same to the parsers as a newly allocated one.
+     *
+     * @return an empty buffer with a capacity of maximumBufferSize
+     */
+    private ByteBuffer getReadBuffer() {
+        if (reusableReadBuffer == null || reusableReadBuffer.capacity() != maximumBufferSize) {
+            reusableReadBuffer = ByteBuffer.allocate(maximumBufferSize);
+        } else {
+            Arrays.fill(reusableReadBuffer.array(), 0, readBufferFill, (byte) 0);
+            reusableReadBuffer.clear();
+        }
+        readBufferFill = 0;
+        return reusableReadBuffer;
+    }
+
+    /**
+     * Copies the data of the read buffer, so that it can be handed over to another thread
+     *
+     * @param buffer the buffer to copy, from its position up to its limit
+     * @return a new buffer holding the data
+     */
+    private static ByteBuffer copyOf(ByteBuffer buffer) {
+        ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer.duplicate());
+        copy.flip();
+        return copy;
+    }
+
     /**
      * Quartz Job to reconnect a channel
      * 
@@ -1127,7 +1229,7 @@ public abstract class AbstractSocketChannelBinding<P extends ChannelBindingProvi
                     }
 
                     try {
-                        theChannel.channel = SocketChannel.open();
+                        theBinding.channels.setChannel(theChannel, SocketChannel.open());
                     } catch (IOException e) {
                         logger.error("An exception occurred while opening a channel: {}", e.getMessage());
                     }
@@ -1295,7 +1397,7 @@ public abstract class AbstractSocketChannelBinding<P extends ChannelBindingProvi
                                         Channel firstChannel = channels.getFirstServed(itemName, direction,
                                                 remoteAddress);
                                         if (firstChannel != null) {
-                                            newChannel.channel = firstChannel.channel;
+                                            channels.setChannel(newChannel, firstChannel.channel);
                                             assigned = true;
                                         }
                                     }
@@ -1303,7 +1405,7 @@ public abstract class AbstractSocketChannelBinding<P extends ChannelBindingProvi
                                     if (bindingShareChannels) {
                                         Channel firstChannel = channels.getFirstServed(direction, remoteAddress);
                                         if (firstChannel != null) {
-                                            newChannel.channel = firstChannel.channel;
+                                            channels.setChannel(newChannel, firstChannel.channel);
                                             assigned = true;
                                         }
                                     }
@@ -1311,7 +1413,7 @@ public abstract class AbstractSocketChannelBinding<P extends ChannelBindingProvi
                                     if (directionsShareChannels) {
                                         Channel firstChannel = channels.getFirstServed(remoteAddress);
                                         if (firstChannel != null) {
-                                            newChannel.channel = firstChannel.channel;
+                                            channels.setChannel(newChannel, firstChannel.channel);
                                             assigned = true;
                                         }
                                     }
@@ -1353,7 +1455,7 @@ public abstract class AbstractSocketChannelBinding<P extends ChannelBindingProvi
                                                 }
                                             }
 
-                                            newChannel.channel = newSocketChannel;
+                                            channels.setChannel(newChannel, newSocketChannel);
                                             logger.debug("Setting up the outbound channel {}", newChannel);
 
                                             try {
@@ -1421,7 +1523,7 @@ public abstract class AbstractSocketChannelBinding<P extends ChannelBindingProvi
 
                                     if (firstChannel.channel == null || !firstChannel.channel.isOpen()) {
 
-                                        firstChannel.channel = newChannel;
+                                        channels.setChannel(firstChannel, newChannel);
                                         firstChannel.isBlocking = false;
                                         firstChannel.buffer = null;
 
@@ -1664,7 +1766,7 @@ public abstract class AbstractSocketChannelBinding<P extends ChannelBindingProvi
 
                     } else if (selKey.isReadable()) {
 
-                        ByteBuffer readBuffer = ByteBuffer.allocate(maximumBufferSize);
+                        ByteBuffer readBuffer = getReadBuffer();
                         int numberBytesRead = 0;
                         boolean error = false;
 
@@ -1686,6 +1788,7 @@ public abstract class AbstractSocketChannelBinding<P extends ChannelBindingProvi
                                     theChannel.remote, e.getMessage());
                             error = true;
                         }
+                        readBufferFill = readBuffer.position();
 
                         if (numberBytesRead == -1) {
                             try {
@@ -1737,7 +1840,7 @@ public abstract class AbstractSocketChannelBinding<P extends ChannelBindingProvi
                                 }
 
                             } else {
-                                theChannel.channel = null;
+                                channels.setChannel(theChannel, null);
                             }
                         } else {
 
@@ -1757,7 +1860,7 @@ public abstract class AbstractSocketChannelBinding<P extends ChannelBindingProvi
                                     // that initiated the write opreation - it has to parse the buffer itself
 
                                     theChannel = channels.getBlocking(theSocketChannel);
-                                    theChannel.buffer = readBuffer;
+                                    theChannel.setResponse(copyOf(readBuffer));
                                     theChannel.isBlocking = false;
 
                                 } else {
@@ -1877,7 +1980,7 @@ public abstract class AbstractSocketChannelBinding<P extends ChannelBindingProvi
                                         }
 
                                     } else {
-                                        theElement.channel.channel = null;
+                                        channels.setChannel(theElement.channel, null);
                                     }
                                 } else {
                                     if (theElement != null) {
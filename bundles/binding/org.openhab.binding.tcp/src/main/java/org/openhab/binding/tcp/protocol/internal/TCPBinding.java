@@ -76,8 +76,7 @@ public class TCPBinding extends AbstractSocketChannelBinding<TCPBindingProvider>
 
             ByteBuffer outputBuffer = null;
             try {
-                outputBuffer = ByteBuffer.allocate(tcpCommandName.getBytes(charset).length);
-                outputBuffer.put(tcpCommandName.getBytes(charset));
+                outputBuffer = ByteBuffer.wrap(tcpCommandName.getBytes(charset));
             } catch (UnsupportedEncodingException e) {
                 logger.warn("Exception while attempting an unsupported encoding scheme");
             }
@@ -93,7 +92,7 @@ public class TCPBinding extends AbstractSocketChannelBinding<TCPBindingProvider>
             if (result != null && blocking) {
                 String resultString = "";
                 try {
-                    resultString = new String(result.array(), charset).split("\0")[0];
+                    resultString = decode(result);
                 } catch (UnsupportedEncodingException e) {
                     logger.warn("Exception while attempting an unsupported encoding scheme");
                 }
@@ -145,7 +144,7 @@ public class TCPBinding extends AbstractSocketChannelBinding<TCPBindingProvider>
 
         String theUpdate = "";
         try {
-            theUpdate = new String(byteBuffer.array(), charset).split("\0")[0];
+            theUpdate = decode(byteBuffer);
         } catch (UnsupportedEncodingException e) {
             logger.warn("Exception while attempting an unsupported encoding scheme");
         }
@@ -164,6 +163,24 @@ public class TCPBinding extends AbstractSocketChannelBinding<TCPBindingProvider>
         }
     }
 
+    /**
+     * Decodes the data between the position and the limit of the buffer, up to the first NUL character
+     *
+     * @param byteBuffer the buffer to decode
+     * @return the decoded string
+     * @throws UnsupportedEncodingException if the configured character set is not supported
+     */
+    private static String decode(ByteBuffer byteBuffer) throws UnsupportedEncodingException {
+        byte[] bytes = byteBuffer.array();
+        int start = byteBuffer.arrayOffset() + byteBuffer.position();
+        int end = byteBuffer.arrayOffset() + byteBuffer.limit();
+        int length = 0;
+        while (start + length < end && bytes[start + length] != 0) {
+            length++;
+        }
+        return new String(bytes, start, length, charset);
+    }
+
     protected void addBindingProvider(TCPBindingProvider bindingProvider) {
         super.addBindingProvider(bindingProvider);
     }
@@ -76,8 +76,7 @@ public class UDPBinding extends AbstractDatagramChannelBinding<UDPBindingProvide
 
             ByteBuffer outputBuffer = null;
             try {
-                outputBuffer = ByteBuffer.allocate(UDPCommandName.getBytes(charset).length);
-                outputBuffer.put(UDPCommandName.getBytes(charset));
+                outputBuffer = ByteBuffer.wrap(UDPCommandName.getBytes(charset));
             } catch (UnsupportedEncodingException e) {
                 logger.warn("Exception while attempting an unsupported encoding scheme");
             }
@@ -93,7 +92,7 @@ public class UDPBinding extends AbstractDatagramChannelBinding<UDPBindingProvide
             if (result != null && blocking) {
                 String resultString = "";
                 try {
-                    resultString = new String(result.array(), charset);
+                    resultString = decode(result);
                 } catch (UnsupportedEncodingException e) {
                     logger.warn("Exception while attempting an unsupported encoding scheme");
                 }
@@ -145,7 +144,7 @@ public class UDPBinding extends AbstractDatagramChannelBinding<UDPBindingProvide
 
         String theUpdate = "";
         try {
-            theUpdate = new String(byteBuffer.array(), charset);
+            theUpdate = decode(byteBuffer);
         } catch (UnsupportedEncodingException e) {
             logger.warn("Exception while attempting an unsupported encoding scheme");
         }
@@ -164,6 +163,18 @@ public class UDPBinding extends AbstractDatagramChannelBinding<UDPBindingProvide
         }
     }
 
+    /**
+     * Decodes the data between the position and the limit of the buffer
+     *
+     * @param byteBuffer the buffer to decode
+     * @return the decoded string
+     * @throws UnsupportedEncodingException if the configured character set is not supported
+     */
+    private static String decode(ByteBuffer byteBuffer) throws UnsupportedEncodingException {
+        return new String(byteBuffer.array(), byteBuffer.arrayOffset() + byteBuffer.position(),
+                byteBuffer.remaining(), charset);
+    }
+
     protected void addBindingProvider(UDPBindingProvider bindingProvider) {
         super.addBindingProvider(bindingProvider);
     }
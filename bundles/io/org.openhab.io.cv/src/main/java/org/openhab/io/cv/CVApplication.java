@@ -179,6 +179,7 @@ public class CVApplication extends PackagesResourceConfig {
             httpService.unregister(CV_SERVLET_ALIAS);
             logger.info("Stopped CometVisu API");
         }
+        RrdResource.clearCaches();
 
         if (discoveryService != null) {
             discoveryService.unregisterService(getDefaultServiceDescription());
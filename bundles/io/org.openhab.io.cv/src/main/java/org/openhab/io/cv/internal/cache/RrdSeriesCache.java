@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.cv.internal.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.openhab.io.cv.internal.resources.RrdSeries;
+
+/**
+ * Keeps the recently requested rrd series, keyed by the items, consolidation function,
+ * range and resolution of the request. A rrd file only gets a new row once per step, so
+ * a series is kept until the end of the current step of its archive.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class RrdSeriesCache {
+
+    private static final class Entry {
+        final RrdSeries series;
+        final long expires;
+
+        Entry(RrdSeries series, long expires) {
+            this.series = series;
+            this.expires = expires;
+        }
+    }
+
+    private final int capacity;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /**
+     * @param capacity the maximum number of cached series
+     */
+    public RrdSeriesCache(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * @return the cached series or <code>null</code> if there is none or it has expired
+     */
+    public synchronized RrdSeries get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expires <= System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.series;
+    }
+
+    /**
+     * Caches the series until the end of the current step.
+     *
+     * @param key the key of the request
+     * @param series the series
+     * @param step the step of the series in seconds
+     */
+    public void put(String key, RrdSeries series, long step) {
+        if (step <= 0) {
+            return;
+        }
+        long stepMillis = step * 1000L;
+        long expires = (System.currentTimeMillis() / stepMillis + 1) * stepMillis;
+        synchronized (this) {
+            entries.put(key, new Entry(series, expires));
+            if (entries.size() > capacity) {
+                Iterator<Entry> iterator = entries.values().iterator();
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return a key for the given request parameters
+     */
+    public static String createKey(Iterable<String> itemNames, Object consolidationFunction, String start,
+            String end, long resolution) {
+        StringBuilder key = new StringBuilder();
+        for (String itemName : itemNames) {
+            key.append(itemName).append(',');
+        }
+        return key.append(consolidationFunction).append('|').append(start).append('|').append(end).append('|')
+                .append(resolution).toString();
+    }
+
+}
@@ -14,13 +14,12 @@ import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Map.Entry;
-import java.util.TreeMap;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
@@ -32,7 +31,6 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 
-import org.apache.commons.lang.StringUtils;
 import org.openhab.core.items.GroupItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
@@ -43,6 +41,7 @@ import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.types.State;
 import org.openhab.io.cv.CVApplication;
+import org.openhab.io.cv.internal.cache.RrdSeriesCache;
 import org.rrd4j.ConsolFun;
 import org.rrd4j.core.FetchData;
 import org.rrd4j.core.FetchRequest;
@@ -83,6 +82,11 @@ public class RrdResource {
         // df.setPositivePrefix("+");
     }
 
+    /** the number of requested series which are cached */
+    private static final int MAX_CACHED_SERIES = 50;
+
+    private static final RrdSeriesCache seriesCache = new RrdSeriesCache(MAX_CACHED_SERIES);
+
     @Context
     UriInfo uriInfo;
 
@@ -142,7 +146,7 @@ public class RrdResource {
                 Object data = null;
                 if (persistenceService.getName().equals("rrd4j")) {
                     data = getRrdSeries(persistenceService, item, consilidationFunction, startTime, endTime,
-                            resolution);
+                            resolution, start, end);
                 } else {
                     data = getPersistenceSeries(persistenceService, item, startTime, endTime, resolution);
                 }
@@ -169,37 +173,64 @@ public class RrdResource {
      */
     public Object getRrdSeries(QueryablePersistenceService persistenceService, Item item,
             ConsolFun consilidationFunction, Date timeBegin, Date timeEnd, long resolution) {
-        Map<Long, ArrayList<String>> data = new TreeMap<Long, ArrayList<String>>();
-        try {
-            List<String> itemNames = new ArrayList<String>();
+        return getRrdSeries(persistenceService, item, consilidationFunction, timeBegin, timeEnd, resolution, null,
+                null);
+    }
 
-            if (item instanceof GroupItem) {
-                GroupItem groupItem = (GroupItem) item;
-                for (Item member : groupItem.getMembers()) {
-                    itemNames.add(member.getName());
-                }
-            } else {
-                itemNames.add(item.getName());
+    /**
+     * returns a rrd series data like {@link #getRrdSeries(QueryablePersistenceService, Item, ConsolFun, Date, Date,
+     * long)}, the series is cached for the given range until the rrd files get the next row
+     */
+    private Object getRrdSeries(QueryablePersistenceService persistenceService, Item item,
+            ConsolFun consilidationFunction, Date timeBegin, Date timeEnd, long resolution, String start,
+            String end) {
+        List<String> itemNames = new ArrayList<String>();
+        if (item instanceof GroupItem) {
+            GroupItem groupItem = (GroupItem) item;
+            for (Item member : groupItem.getMembers()) {
+                itemNames.add(member.getName());
             }
-            for (String itemName : itemNames) {
-                addRrdData(data, itemName, consilidationFunction, timeBegin, timeEnd, resolution);
+        } else {
+            itemNames.add(item.getName());
+        }
+
+        String key = null;
+        if (start != null && end != null) {
+            key = RrdSeriesCache.createKey(itemNames, consilidationFunction, start, end, resolution);
+            RrdSeries cached = seriesCache.get(key);
+            if (cached != null) {
+                logger.debug("rrd series for '{}' served from cache", item.getName());
+                return cached;
             }
+        }
 
+        try {
+            List<long[]> timestamps = new ArrayList<long[]>(itemNames.size());
+            List<double[][]> values = new ArrayList<double[][]>(itemNames.size());
+            long step = Long.MAX_VALUE;
+            for (String itemName : itemNames) {
+                FetchData fetchData = fetchRrdData(itemName, consilidationFunction, timeBegin, timeEnd, resolution);
+                timestamps.add(fetchData.getTimestamps());
+                values.add(fetchData.getValues());
+                step = Math.min(step, fetchData.getStep());
+            }
+            RrdSeries series = RrdSeries.merge(timestamps, values);
+            if (key != null && !itemNames.isEmpty()) {
+                seriesCache.put(key, series, step);
+            }
+            return series;
         } catch (FileNotFoundException e) {
             // rrd file does not exist, fallback to generic persistance service
-            logger.debug("no rrd file found '{}'", (RRD_FOLDER + File.separator + item.getName() + ".rrd"));
+            logger.debug("no rrd file found '{}'", e.getMessage());
             return getPersistenceSeries(persistenceService, item, timeBegin, timeEnd, resolution);
         } catch (Exception e) {
             logger.error(e.getLocalizedMessage() + ": fallback to generic persistance service");
             return getPersistenceSeries(persistenceService, item, timeBegin, timeEnd, resolution);
         }
-        return convertToRrd(data);
     }
 
     public Object getPersistenceSeries(QueryablePersistenceService persistenceService, Item item, Date timeBegin,
             Date timeEnd, long resolution) {
-        Map<Long, ArrayList<String>> data = new TreeMap<Long, ArrayList<String>>();
-
         // Define the data filter
         FilterCriteria filter = new FilterCriteria();
         filter.setBeginDate(timeBegin);
@@ -213,75 +244,60 @@ public class RrdResource {
 
         // Iterate through the data
         int dataCounter = 0;
+        int rows = 0;
+        long[] timestamps = new long[64];
+        double[] values = new double[64];
         while (it.hasNext()) {
             dataCounter++;
             HistoricItem historicItem = it.next();
             State state = historicItem.getState();
             if (state instanceof DecimalType) {
-                ArrayList<String> vals = new ArrayList<String>();
-                vals.add(formatDouble(((DecimalType) state).doubleValue(), "null", true));
-                data.put(historicItem.getTimestamp().getTime(), vals);
+                long time = historicItem.getTimestamp().getTime();
+                if (rows > 0 && timestamps[rows - 1] == time) {
+                    // the latest value of a timestamp wins
+                    rows--;
+                } else if (rows == timestamps.length) {
+                    timestamps = Arrays.copyOf(timestamps, rows * 2);
+                    values = Arrays.copyOf(values, rows * 2);
+                }
+                timestamps[rows] = time;
+                values[rows] = ((DecimalType) state).doubleValue();
+                rows++;
             }
         }
         logger.debug("'{}' querying item '{}' from '{}' to '{}' => '{}' results", persistenceService.getName(),
                 filter.getItemName(), filter.getBeginDate(), filter.getEndDate(), dataCounter);
-        return convertToRrd(data);
+        return new RrdSeries(Arrays.copyOf(timestamps, rows), new double[][] { Arrays.copyOf(values, rows) });
     }
 
-    private String convertToRrd(Map<Long, ArrayList<String>> data) {
-        StringBuilder buffer = new StringBuilder();
-        buffer.append("[");
-        for (Long time : data.keySet()) {
-            // change to microseconds
-            buffer.append("[" + time + ",");
-            buffer.append("[");
-            buffer.append("\"" + StringUtils.join(data.get(time), "\",\"") + "\"");
-            buffer.append("]],");
+    /**
+     * Fetches the rows of an rrd file. The file is opened read-only for every request: an instance
+     * which is kept open does not see the rows the rrd4j persistence service writes through its
+     * own instance, repeated requests are served by the series cache instead.
+     */
+    private FetchData fetchRrdData(String itemName, ConsolFun consilidationFunction, Date timeBegin, Date timeEnd,
+            long resolution) throws IOException {
+        File file = new File(RRD_FOLDER + File.separator + itemName + ".rrd");
+        if (!file.exists()) {
+            throw new FileNotFoundException(file.getPath());
         }
-        buffer.deleteCharAt(buffer.length() - 1);
-        buffer.append("]");
-
-        return buffer.toString();
-    }
-
-    private Map<Long, ArrayList<String>> addRrdData(Map<Long, ArrayList<String>> data, String itemName,
-            ConsolFun consilidationFunction, Date timeBegin, Date timeEnd, long resolution) throws IOException {
-        RrdDb rrdDb = new RrdDb(RRD_FOLDER + File.separator + itemName + ".rrd");
-        FetchRequest fetchRequest = rrdDb.createFetchRequest(consilidationFunction, Util.getTimestamp(timeBegin),
-                Util.getTimestamp(timeEnd), resolution);
-        FetchData fetchData = fetchRequest.fetchData();
-        // logger.info(fetchData.toString());
-        long[] timestamps = fetchData.getTimestamps();
-        double[][] values = fetchData.getValues();
-
-        logger.debug("RRD fetch returned '{}' rows and '{}' columns", fetchData.getRowCount(),
-                fetchData.getColumnCount());
-
-        for (int row = 0; row < fetchData.getRowCount(); row++) {
-            // change to microseconds
-            long time = timestamps[row] * 1000L;
-
-            if (!data.containsKey(time)) {
-                data.put(time, new ArrayList<String>());
-            }
-            ArrayList<String> vals = data.get(time);
-            int indexOffset = vals.size();
-            for (int dsIndex = 0; dsIndex < fetchData.getColumnCount(); dsIndex++) {
-                vals.add(dsIndex + indexOffset, formatDouble(values[dsIndex][row], "null", true));
-            }
+        RrdDb rrdDb = new RrdDb(file.getPath(), true);
+        try {
+            FetchRequest fetchRequest = rrdDb.createFetchRequest(consilidationFunction,
+                    Util.getTimestamp(timeBegin), Util.getTimestamp(timeEnd), resolution);
+            FetchData fetchData = fetchRequest.fetchData();
+            logger.debug("RRD fetch returned '{}' rows and '{}' columns", fetchData.getRowCount(),
+                    fetchData.getColumnCount());
+            return fetchData;
+        } finally {
+            rrdDb.close();
         }
-        rrdDb.close();
-
-        return data;
     }
 
-    static String formatDouble(double x, String nanString, boolean forceExponents) {
-        if (Double.isNaN(x)) {
-            return nanString;
-        }
-        if (forceExponents) {
-            return df.format(x);
-        }
-        return "" + x;
+    /**
+     * Drops the cached series.
+     */
+    public static void clearCaches() {
+        seriesCache.clear();
     }
 }
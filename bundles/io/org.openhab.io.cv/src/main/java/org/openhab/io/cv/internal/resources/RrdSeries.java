@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.cv.internal.resources;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * A merged series of one or more rrd files, kept in columns: one array of timestamps and
+ * one array of values per data source, where missing values are {@link Double#NaN}.
+ * <p>
+ * The series is written directly to the response as a JSON array
+ * <code>[[timestamp,["value1","value2",...]],...]</code> with the timestamps in milliseconds.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class RrdSeries implements StreamingOutput {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final long[] timestamps;
+
+    private final double[][] columns;
+
+    /**
+     * @param timestamps the timestamps in milliseconds, in ascending order
+     * @param columns the values of each column, with one value per timestamp
+     */
+    public RrdSeries(long[] timestamps, double[][] columns) {
+        this.timestamps = timestamps;
+        this.columns = columns;
+    }
+
+    public long[] getTimestamps() {
+        return timestamps;
+    }
+
+    public double[][] getColumns() {
+        return columns;
+    }
+
+    /**
+     * Merges the columns of fetched rrd data into one series. If all series have the same
+     * timestamps, which is the usual case for the members of a group, the columns are taken
+     * as they are; otherwise the timestamps are merged and missing values are filled with
+     * {@link Double#NaN}.
+     *
+     * @param timestamps the timestamps of every fetched series in seconds
+     * @param values the values of every fetched series, by column and row
+     * @return the merged series
+     */
+    public static RrdSeries merge(List<long[]> timestamps, List<double[][]> values) {
+        int columnCount = 0;
+        for (double[][] seriesValues : values) {
+            columnCount += seriesValues.length;
+        }
+        double[][] columns = new double[columnCount][];
+        if (timestamps.isEmpty()) {
+            return new RrdSeries(new long[0], columns);
+        }
+
+        long[] merged = timestamps.get(0);
+        for (int i = 1; i < timestamps.size(); i++) {
+            if (!Arrays.equals(merged, timestamps.get(i))) {
+                merged = union(merged, timestamps.get(i));
+            }
+        }
+
+        int column = 0;
+        for (int i = 0; i < timestamps.size(); i++) {
+            long[] seriesTimestamps = timestamps.get(i);
+            for (double[] seriesColumn : values.get(i)) {
+                columns[column++] = Arrays.equals(seriesTimestamps, merged) ? seriesColumn
+                        : align(seriesTimestamps, seriesColumn, merged);
+            }
+        }
+
+        long[] millis = new long[merged.length];
+        for (int row = 0; row < merged.length; row++) {
+            millis[row] = merged[row] * 1000L;
+        }
+        return new RrdSeries(millis, columns);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(OutputStream output) throws IOException {
+        // DecimalFormat is not thread-safe
+        DecimalFormat format = (DecimalFormat) RrdResource.df.clone();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, UTF_8), 8192);
+        writer.write('[');
+        for (int row = 0; row < timestamps.length; row++) {
+            if (row > 0) {
+                writer.write(',');
+            }
+            writer.write('[');
+            writer.write(Long.toString(timestamps[row]));
+            writer.write(",[");
+            for (int column = 0; column < columns.length; column++) {
+                if (column > 0) {
+                    writer.write(',');
+                }
+                writer.write('"');
+                double value = columns[column][row];
+                writer.write(Double.isNaN(value) ? "null" : format.format(value));
+                writer.write('"');
+            }
+            writer.write("]]");
+        }
+        writer.write(']');
+        writer.flush();
+    }
+
+    private static long[] union(long[] a, long[] b) {
+        long[] result = new long[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            long next;
+            if (j >= b.length || (i < a.length && a[i] < b[j])) {
+                next = a[i++];
+            } else if (i >= a.length || b[j] < a[i]) {
+                next = b[j++];
+            } else {
+                next = a[i++];
+                j++;
+            }
+            result[n++] = next;
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    private static double[] align(long[] timestamps, double[] values, long[] merged) {
+        double[] result = new double[merged.length];
+        int source = 0;
+        for (int row = 0; row < merged.length; row++) {
+            while (source < timestamps.length && timestamps[source] < merged[row]) {
+                source++;
+            }
+            result[row] = source < timestamps.length && timestamps[source] == merged[row] ? values[source]
+                    : Double.NaN;
+        }
+        return result;
+    }
+
+}
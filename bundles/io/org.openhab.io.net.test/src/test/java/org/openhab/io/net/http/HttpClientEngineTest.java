@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.net.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.Assert;
+
+/**
+ * @author agent
+ * @since 1.9.0
+ */
+public class HttpClientEngineTest {
+
+    private HttpServer server;
+    private String url;
+
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+    @Before
+    public void init() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                byte[] body = IOUtils.toByteArray(exchange.getRequestBody());
+                if (exchange.getRequestURI().getPath().equals("/gzip")) {
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                    exchange.sendResponseHeaders(200, 0);
+                    OutputStream out = new GZIPOutputStream(exchange.getResponseBody());
+                    out.write("compressed".getBytes("UTF-8"));
+                    out.close();
+                } else {
+                    if (body.length == 0) {
+                        body = "hello".getBytes("UTF-8");
+                    }
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void shutdown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testConnectionsAreReused() {
+        long requests = HttpUtil.getEngine().getRequestCount();
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals("hello", HttpUtil.executeUrl("GET", url + "/keepalive", 5000));
+        }
+        Assert.assertEquals(1, clientPorts.size());
+        Assert.assertEquals(requests + 5, HttpUtil.getEngine().getRequestCount());
+    }
+
+    @Test
+    public void testContentIsSent() {
+        long bytesSent = HttpUtil.getEngine().getBytesSent();
+        Assert.assertEquals("{\"a\":1}", HttpUtil.executeUrl("POST", url + "/echo",
+                IOUtils.toInputStream("{\"a\":1}"), "application/json", 5000));
+        Assert.assertEquals(bytesSent + 7, HttpUtil.getEngine().getBytesSent());
+    }
+
+    @Test
+    public void testStreamingHandler() throws IOException {
+        Integer length = HttpUtil.executeUrl("GET", url + "/gzip", null, null, null, 5000,
+                new HttpResponseHandler<Integer>() {
+                    @Override
+                    public Integer handleResponse(HttpMethod method, InputStream body) throws IOException {
+                        Assert.assertEquals(200, method.getStatusCode());
+                        return IOUtils.toString(body, "UTF-8").length();
+                    }
+                });
+        Assert.assertEquals(Integer.valueOf("compressed".length()), length);
+    }
+
+    @Test
+    public void testAsyncRequest() throws Exception {
+        final BlockingQueue<String> results = new ArrayBlockingQueue<String>(1);
+        Future<String> future = HttpUtil.executeUrlAsync("GET", url + "/async", null, null, null, 5000,
+                new HttpCallback<String>() {
+                    @Override
+                    public void completed(String result) {
+                        results.add(result);
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        results.add("failed: " + e);
+                    }
+                });
+        Assert.assertEquals("hello", future.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals("hello", results.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailedAsyncRequest() throws Exception {
+        final BlockingQueue<Exception> failures = new ArrayBlockingQueue<Exception>(1);
+        long failureCount = HttpUtil.getEngine().getFailureCount();
+        HttpUtil.executeUrlAsync("GET", "http://127.0.0.1:1/unreachable", null, null, null, 1000,
+                new HttpCallback<String>() {
+                    @Override
+                    public void completed(String result) {
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        failures.add(e);
+                    }
+                });
+        Assert.assertTrue(failures.poll(15, TimeUnit.SECONDS) instanceof IOException);
+        Assert.assertEquals(failureCount + 1, HttpUtil.getEngine().getFailureCount());
+    }
+
+}
@@ -0,0 +1,30 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.net.http;
+
+/**
+ * Is notified when an asynchronous request of the {@link HttpClientEngine} has completed.
+ * The methods are called on a worker thread of the engine.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public interface HttpCallback<T> {
+
+    /**
+     * @param result the result of the {@link HttpResponseHandler}
+     */
+    void completed(T result);
+
+    /**
+     * @param e the reason why the request failed
+     */
+    void failed(Exception e);
+
+}
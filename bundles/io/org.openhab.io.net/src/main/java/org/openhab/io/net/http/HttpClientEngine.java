@@ -0,0 +1,337 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.net.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HeaderElement;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpState;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+import org.apache.commons.io.input.CountingInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes HTTP requests over a shared pool of keep-alive connections. The number of
+ * connections, in total and per host, is bounded; a request which exceeds the limit waits
+ * for a connection to be released. Idle connections are closed after a while.
+ * <p>
+ * Requests can be executed synchronously or asynchronously on the worker threads of the
+ * engine, and their responses can be processed as a stream by a {@link HttpResponseHandler}.
+ * The engine counts requests, failures, latency, bytes transferred and how often the
+ * connections of a host were exhausted; the counters are available through the getters and
+ * {@link #toString()}.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class HttpClientEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpClientEngine.class);
+
+    /** the time after which unused connections are closed */
+    private static final long IDLE_CONNECTION_TIMEOUT = 30000;
+
+    /** the maximum time to establish a connection */
+    private static final int CONNECTION_TIMEOUT = 10000;
+
+    /** the maximum time to wait for a free connection */
+    private static final long CONNECTION_MANAGER_TIMEOUT = 60000;
+
+    private final MultiThreadedHttpConnectionManager connectionManager;
+
+    private final HttpClient client;
+
+    private final IdleConnectionTimeoutThread idleConnectionCloser;
+
+    private final ThreadPoolExecutor executor;
+
+    private final int maxConnectionsPerHost;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong saturated = new AtomicLong();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peakActive = new AtomicInteger();
+
+    /**
+     * @param maxConnections the maximum number of open connections
+     * @param maxConnectionsPerHost the maximum number of open connections to the same host
+     */
+    public HttpClientEngine(int maxConnections, int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = Math.max(1, maxConnectionsPerHost);
+        connectionManager = new MultiThreadedHttpConnectionManager();
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setMaxTotalConnections(Math.max(1, maxConnections));
+        params.setDefaultMaxConnectionsPerHost(this.maxConnectionsPerHost);
+        params.setConnectionTimeout(CONNECTION_TIMEOUT);
+        client = new HttpClient(connectionManager);
+        client.getParams().setConnectionManagerTimeout(CONNECTION_MANAGER_TIMEOUT);
+
+        idleConnectionCloser = new IdleConnectionTimeoutThread();
+        idleConnectionCloser.setName("HTTP Idle Connection Closer");
+        idleConnectionCloser.setConnectionTimeout(IDLE_CONNECTION_TIMEOUT);
+        idleConnectionCloser.setTimeoutInterval(IDLE_CONNECTION_TIMEOUT / 2);
+        idleConnectionCloser.addConnectionManager(connectionManager);
+        idleConnectionCloser.start();
+
+        executor = new ThreadPoolExecutor(Math.max(1, maxConnections), Math.max(1, maxConnections), 60,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "HTTP Client Worker " + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Executes the given method and hands the response to the handler. The connection is
+     * released when the handler returns.
+     *
+     * @param method the method to execute
+     * @param hostConfiguration the host and proxy to use
+     * @param state the credentials of the request
+     * @param timeout the socket timeout to wait for data in milliseconds
+     * @param handler processes the response
+     * @return the result of the handler
+     * @throws IOException if the request failed or the response could not be read
+     */
+    public <T> T execute(HttpMethod method, HostConfiguration hostConfiguration, HttpState state, int timeout,
+            HttpResponseHandler<T> handler) throws IOException {
+        method.getParams().setSoTimeout(timeout);
+        if (connectionManager.getConnectionsInUse(hostConfiguration) >= maxConnectionsPerHost) {
+            saturated.incrementAndGet();
+            logger.debug("All connections to '{}' are in use, waiting for a free one", hostConfiguration.getHost());
+        }
+        updatePeak(active.incrementAndGet());
+        requests.incrementAndGet();
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            client.executeMethod(hostConfiguration, method, state);
+            addBytesSent(method);
+
+            CountingInputStream counter = null;
+            InputStream body = method.getResponseBodyAsStream();
+            if (body != null) {
+                counter = new CountingInputStream(body);
+                body = decode(method, counter);
+            }
+            try {
+                T result = handler.handleResponse(method, body);
+                success = true;
+                return result;
+            } finally {
+                if (counter != null) {
+                    bytesReceived.addAndGet(counter.getByteCount());
+                }
+            }
+        } finally {
+            method.releaseConnection();
+            active.decrementAndGet();
+            long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            totalLatency.addAndGet(latency);
+            updateMax(latency);
+            if (!success) {
+                failures.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Executes the given method on a worker thread of the engine.
+     *
+     * @param method the method to execute
+     * @param hostConfiguration the host and proxy to use
+     * @param state the credentials of the request
+     * @param timeout the socket timeout to wait for data in milliseconds
+     * @param handler processes the response
+     * @param callback is notified about the result, may be <code>null</code>
+     * @return the future result of the handler
+     */
+    public <T> Future<T> executeAsync(final HttpMethod method, final HostConfiguration hostConfiguration,
+            final HttpState state, final int timeout, final HttpResponseHandler<T> handler,
+            final HttpCallback<T> callback) {
+        FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                T result;
+                try {
+                    result = execute(method, hostConfiguration, state, timeout, handler);
+                } catch (Exception e) {
+                    if (callback != null) {
+                        callback.failed(e);
+                    }
+                    throw e;
+                }
+                if (callback != null) {
+                    callback.completed(result);
+                }
+                return result;
+            }
+        });
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Stops the worker threads and closes all connections.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        idleConnectionCloser.shutdown();
+        connectionManager.shutdown();
+    }
+
+    /**
+     * @return the number of executed requests
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return the number of requests which failed with an exception
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * @return the average time of a request, including reading the response, in milliseconds
+     */
+    public long getAverageLatency() {
+        long count = requests.get();
+        return count == 0 ? 0 : totalLatency.get() / count;
+    }
+
+    /**
+     * @return the longest time of a request, including reading the response, in milliseconds
+     */
+    public long getMaxLatency() {
+        return maxLatency.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * @return the number of requests which had to wait because all connections to their host were in use
+     */
+    public long getSaturatedCount() {
+        return saturated.get();
+    }
+
+    public int getActiveRequests() {
+        return active.get();
+    }
+
+    public int getPeakActiveRequests() {
+        return peakActive.get();
+    }
+
+    /**
+     * @return the number of connections which are currently in use
+     */
+    public int getConnectionsInUse() {
+        return connectionManager.getConnectionsInUse();
+    }
+
+    /**
+     * @return the number of requests waiting for a worker thread
+     */
+    public int getQueuedRequests() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public String toString() {
+        return "HttpClientEngine [requests=" + requests + ", failures=" + failures + ", averageLatency="
+                + getAverageLatency() + "ms, maxLatency=" + maxLatency + "ms, bytesSent=" + bytesSent
+                + ", bytesReceived=" + bytesReceived + ", connectionsInUse=" + getConnectionsInUse()
+                + ", maxConnections=" + connectionManager.getParams().getMaxTotalConnections() + ", saturated="
+                + saturated + ", peakActive=" + peakActive + ", queued=" + getQueuedRequests() + "]";
+    }
+
+    private InputStream decode(HttpMethod method, InputStream body) throws IOException {
+        Header encodingHeader = method.getResponseHeader("Content-Encoding");
+        if (encodingHeader != null) {
+            for (HeaderElement element : encodingHeader.getElements()) {
+                if (element.toString().matches(".*gzip.*")) {
+                    return new GZIPInputStream(body);
+                } else if (element.toString().matches(".*deflate.*")) {
+                    return new InflaterInputStream(body);
+                }
+            }
+        }
+        return body;
+    }
+
+    private void addBytesSent(HttpMethod method) {
+        if (method instanceof EntityEnclosingMethod) {
+            RequestEntity entity = ((EntityEnclosingMethod) method).getRequestEntity();
+            if (entity != null && entity.getContentLength() > 0) {
+                bytesSent.addAndGet(entity.getContentLength());
+            }
+        }
+    }
+
+    private void updateMax(long latency) {
+        long max;
+        while (latency > (max = maxLatency.get())) {
+            if (maxLatency.compareAndSet(max, latency)) {
+                return;
+            }
+        }
+    }
+
+    private void updatePeak(int current) {
+        int peak;
+        while (current > (peak = peakActive.get())) {
+            if (peakActive.compareAndSet(peak, current)) {
+                return;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.net.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.httpclient.HttpMethod;
+
+/**
+ * Processes the response of a request executed by the {@link HttpClientEngine}, while the
+ * connection is still open. This allows to read large responses without keeping the whole
+ * body in memory.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public interface HttpResponseHandler<T> {
+
+    /**
+     * @param method the executed method, which provides the status code and the response headers
+     * @param body the response body, already decoded if it was sent gzip or deflate compressed, or
+     *            <code>null</code> if the response has no body
+     * @return the result of the request
+     * @throws IOException if the body could not be read
+     */
+    T handleResponse(HttpMethod method, InputStream body) throws IOException;
+
+}
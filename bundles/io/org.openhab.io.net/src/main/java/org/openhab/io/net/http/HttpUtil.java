@@ -13,18 +13,20 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.InflaterInputStream;
 
 import org.apache.commons.httpclient.Credentials;
 import org.apache.commons.httpclient.DefaultHttpMethodRetryHandler;
 import org.apache.commons.httpclient.Header;
-import org.apache.commons.httpclient.HeaderElement;
+import org.apache.commons.httpclient.HostConfiguration;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpState;
 import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.httpclient.URIException;
 import org.apache.commons.httpclient.UsernamePasswordCredentials;
@@ -55,6 +57,9 @@ public class HttpUtil {
     /** {@link Pattern} which matches the credentials out of an URL */
     private static final Pattern URL_CREDENTIALS_PATTERN = Pattern.compile("http://(.*?):(.*?)@.*");
 
+    /** the engine which executes all requests, created on first use */
+    private static volatile HttpClientEngine engine;
+
     /**
      * Executes the given <code>url</code> with the given <code>httpMethod</code>.
      * Furthermore the <code>http.proxyXXX</code> System variables are read and
@@ -107,32 +112,115 @@ public class HttpUtil {
      */
     public static String executeUrl(String httpMethod, String url, Properties httpHeaders, InputStream content,
             String contentType, int timeout) {
-        String proxySet = System.getProperty("http.proxySet");
+        try {
+            return execute(createRequest(httpMethod, url, httpHeaders, content, contentType), timeout);
+        } catch (URIException e) {
+            logger.error("the given url {} is malformed: {}", url, e.getMessage());
+            return null;
+        }
+    }
 
-        String proxyHost = null;
-        int proxyPort = 80;
-        String proxyUser = null;
-        String proxyPassword = null;
-        String nonProxyHosts = null;
+    /**
+     * Executes the given <code>url</code> with the given <code>httpMethod</code> and hands
+     * the response to the given <code>handler</code>, which can read the body as a stream.
+     * Furthermore the <code>http.proxyXXX</code> System variables are read and
+     * set into the request.
+     *
+     * @param httpMethod the HTTP method to use
+     * @param url the url to execute
+     * @param httpHeaders optional http request headers which has to be sent within request
+     * @param content the content to be send to the given <code>url</code> or
+     *            <code>null</code> if no content should be send.
+     * @param contentType the content type of the given <code>content</code>
+     * @param timeout the socket timeout to wait for data
+     * @param handler processes the response
+     *
+     * @return the result of the <code>handler</code>
+     * @throws IOException if the request failed or the response could not be read
+     */
+    public static <T> T executeUrl(String httpMethod, String url, Properties httpHeaders, InputStream content,
+            String contentType, int timeout, HttpResponseHandler<T> handler) throws IOException {
+        Request request = createRequest(httpMethod, url, httpHeaders, content, contentType);
+        return getEngine().execute(request.method, request.hostConfiguration, request.state, timeout, handler);
+    }
 
-        if ("true".equalsIgnoreCase(proxySet)) {
-            proxyHost = System.getProperty("http.proxyHost");
-            String proxyPortString = System.getProperty("http.proxyPort");
-            if (StringUtils.isNotBlank(proxyPortString)) {
-                try {
-                    proxyPort = Integer.valueOf(proxyPortString);
-                } catch (NumberFormatException e) {
-                    logger.warn("'{}' is not a valid proxy port - using port 80 instead");
-                }
+    /**
+     * Executes the given <code>url</code> with the given <code>httpMethod</code> in the
+     * background. Furthermore the <code>http.proxyXXX</code> System variables are read and
+     * set into the request.
+     *
+     * @param httpMethod the HTTP method to use
+     * @param url the url to execute
+     * @param httpHeaders optional http request headers which has to be sent within request
+     * @param content the content to be send to the given <code>url</code> or
+     *            <code>null</code> if no content should be send.
+     * @param contentType the content type of the given <code>content</code>
+     * @param timeout the socket timeout to wait for data
+     * @param callback is notified about the response body, may be <code>null</code>
+     *
+     * @return the future response body, <code>NULL</code> if the response has no content
+     */
+    public static Future<String> executeUrlAsync(String httpMethod, String url, Properties httpHeaders,
+            InputStream content, String contentType, int timeout, HttpCallback<String> callback) {
+        return executeUrlAsync(httpMethod, url, httpHeaders, content, contentType, timeout, STRING_RESPONSE_HANDLER,
+                callback);
+    }
+
+    /**
+     * Executes the given <code>url</code> with the given <code>httpMethod</code> in the
+     * background and hands the response to the given <code>handler</code>. Furthermore the
+     * <code>http.proxyXXX</code> System variables are read and set into the request.
+     *
+     * @param httpMethod the HTTP method to use
+     * @param url the url to execute
+     * @param httpHeaders optional http request headers which has to be sent within request
+     * @param content the content to be send to the given <code>url</code> or
+     *            <code>null</code> if no content should be send.
+     * @param contentType the content type of the given <code>content</code>
+     * @param timeout the socket timeout to wait for data
+     * @param handler processes the response
+     * @param callback is notified about the result of the <code>handler</code>, may be <code>null</code>
+     *
+     * @return the future result of the <code>handler</code>
+     */
+    public static <T> Future<T> executeUrlAsync(String httpMethod, String url, Properties httpHeaders,
+            InputStream content, String contentType, int timeout, HttpResponseHandler<T> handler,
+            HttpCallback<T> callback) {
+        Request request;
+        try {
+            request = createRequest(httpMethod, url, httpHeaders, content, contentType);
+        } catch (URIException e) {
+            if (callback != null) {
+                callback.failed(e);
             }
-            proxyUser = System.getProperty("http.proxyUser");
-            proxyPassword = System.getProperty("http.proxyPassword");
-            nonProxyHosts = System.getProperty("http.nonProxyHosts");
+            FutureTask<T> failed = new FutureTask<T>(new FailedRequest<T>(e));
+            failed.run();
+            return failed;
         }
+        return getEngine().executeAsync(request.method, request.hostConfiguration, request.state, timeout, handler,
+                callback);
+    }
 
-        return executeUrl(httpMethod, url, httpHeaders, content, contentType, timeout, proxyHost, proxyPort, proxyUser,
-                proxyPassword, nonProxyHosts);
-
+    /**
+     * Returns the engine which executes the requests of this class. It is created on first use
+     * with the limits of the System variables <code>openhab.http.maxConnections</code> (defaults
+     * to 50) and <code>openhab.http.maxConnectionsPerHost</code> (defaults to 10).
+     *
+     * @return the shared engine
+     */
+    public static HttpClientEngine getEngine() {
+        HttpClientEngine current = engine;
+        if (current == null) {
+            synchronized (HttpUtil.class) {
+                current = engine;
+                if (current == null) {
+                    current = new HttpClientEngine(getIntProperty("openhab.http.maxConnections", 50),
+                            getIntProperty("openhab.http.maxConnectionsPerHost", 10));
+                    engine = current;
+                }
+            }
+        }
+        return current;
     }
 
     /**
@@ -156,19 +244,75 @@ public class HttpUtil {
             String contentType, int timeout, String proxyHost, Integer proxyPort, String proxyUser,
             String proxyPassword, String nonProxyHosts) {
 
-        HttpClient client = new HttpClient();
+        try {
+            return execute(createRequest(httpMethod, url, httpHeaders, content, contentType, proxyHost, proxyPort,
+                    proxyUser, proxyPassword, nonProxyHosts), timeout);
+        } catch (URIException e) {
+            logger.error("the given url {} is malformed: {}", url, e.getMessage());
+            return null;
+        }
+    }
 
-        // only configure a proxy if a host is provided
-        if (StringUtils.isNotBlank(proxyHost) && proxyPort != null && shouldUseProxy(url, nonProxyHosts)) {
-            client.getHostConfiguration().setProxy(proxyHost, proxyPort);
-            if (StringUtils.isNotBlank(proxyUser)) {
-                client.getState().setProxyCredentials(AuthScope.ANY,
-                        new UsernamePasswordCredentials(proxyUser, proxyPassword));
+    /**
+     * Executes the request and returns the response body, logging any error.
+     */
+    private static String execute(Request request, int timeout) {
+        if (logger.isDebugEnabled()) {
+            try {
+                logger.debug("About to execute '" + request.method.getURI().toString() + "'");
+            } catch (URIException e) {
+                logger.debug(e.getMessage());
             }
         }
 
+        try {
+            return getEngine().execute(request.method, request.hostConfiguration, request.state, timeout,
+                    STRING_RESPONSE_HANDLER);
+        } catch (HttpException he) {
+            logger.error("Fatal protocol violation: {}", he.toString());
+        } catch (IOException ioe) {
+            logger.error("Fatal transport error: {}", ioe.toString());
+        }
+
+        return null;
+    }
+
+    /**
+     * Creates a request which uses the proxy given by the <code>http.proxyXXX</code> System variables.
+     */
+    private static Request createRequest(String httpMethod, String url, Properties httpHeaders, InputStream content,
+            String contentType) throws URIException {
+        String proxySet = System.getProperty("http.proxySet");
+
+        String proxyHost = null;
+        int proxyPort = 80;
+        String proxyUser = null;
+        String proxyPassword = null;
+        String nonProxyHosts = null;
+
+        if ("true".equalsIgnoreCase(proxySet)) {
+            proxyHost = System.getProperty("http.proxyHost");
+            String proxyPortString = System.getProperty("http.proxyPort");
+            if (StringUtils.isNotBlank(proxyPortString)) {
+                try {
+                    proxyPort = Integer.valueOf(proxyPortString);
+                } catch (NumberFormatException e) {
+                    logger.warn("'{}' is not a valid proxy port - using port 80 instead");
+                }
+            }
+            proxyUser = System.getProperty("http.proxyUser");
+            proxyPassword = System.getProperty("http.proxyPassword");
+            nonProxyHosts = System.getProperty("http.nonProxyHosts");
+        }
+
+        return createRequest(httpMethod, url, httpHeaders, content, contentType, proxyHost, proxyPort, proxyUser,
+                proxyPassword, nonProxyHosts);
+    }
+
+    private static Request createRequest(String httpMethod, String url, Properties httpHeaders, InputStream content,
+            String contentType, String proxyHost, Integer proxyPort, String proxyUser, String proxyPassword,
+            String nonProxyHosts) throws URIException {
         HttpMethod method = HttpUtil.createHttpMethod(httpMethod, url);
-        method.getParams().setSoTimeout(timeout);
         method.getParams().setParameter(HttpMethodParams.RETRY_HANDLER, new DefaultHttpMethodRetryHandler(3, false));
         if (httpHeaders != null) {
             for (String httpHeaderKey : httpHeaders.stringPropertyNames()) {
@@ -181,23 +325,35 @@ public class HttpUtil {
             eeMethod.setRequestEntity(new InputStreamRequestEntity(content, contentType));
         }
 
-        Credentials credentials = extractCredentials(url);
-        if (credentials != null) {
-            client.getParams().setAuthenticationPreemptive(true);
-            client.getState().setCredentials(AuthScope.ANY, credentials);
-        }
+        HostConfiguration hostConfiguration = new HostConfiguration();
+        hostConfiguration.setHost(method.getURI());
+        // the credentials are kept per request, as all requests share the same client
+        HttpState state = new HttpState();
 
-        if (logger.isDebugEnabled()) {
-            try {
-                logger.debug("About to execute '" + method.getURI().toString() + "'");
-            } catch (URIException e) {
-                logger.debug(e.getMessage());
+        // only configure a proxy if a host is provided
+        if (StringUtils.isNotBlank(proxyHost) && proxyPort != null && shouldUseProxy(url, nonProxyHosts)) {
+            hostConfiguration.setProxy(proxyHost, proxyPort);
+            if (StringUtils.isNotBlank(proxyUser)) {
+                state.setProxyCredentials(AuthScope.ANY, new UsernamePasswordCredentials(proxyUser, proxyPassword));
             }
         }
 
-        try {
+        Credentials credentials = extractCredentials(url);
+        if (credentials != null) {
+            method.getHostAuthState().setPreemptive();
+            state.setCredentials(AuthScope.ANY, credentials);
+        }
+
+        return new Request(method, hostConfiguration, state);
+    }
 
-            int statusCode = client.executeMethod(method);
+    /**
+     * Reads the response body like all the <code>executeUrl</code> methods which return a String.
+     */
+    private static final HttpResponseHandler<String> STRING_RESPONSE_HANDLER = new HttpResponseHandler<String>() {
+        @Override
+        public String handleResponse(HttpMethod method, InputStream body) throws IOException {
+            int statusCode = method.getStatusCode();
             if (statusCode == HttpStatus.SC_NO_CONTENT || statusCode == HttpStatus.SC_ACCEPTED) {
                 // perfectly fine but we cannot expect any answer...
                 return null;
@@ -207,35 +363,56 @@ public class HttpUtil {
                 logger.warn("Method failed: " + method.getStatusLine());
             }
 
-            InputStream tmpResponseStream = method.getResponseBodyAsStream();
-            Header encodingHeader = method.getResponseHeader("Content-Encoding");
-            if (encodingHeader != null) {
-                for (HeaderElement ehElem : encodingHeader.getElements()) {
-                    if (ehElem.toString().matches(".*gzip.*")) {
-                        tmpResponseStream = new GZIPInputStream(tmpResponseStream);
-                        logger.debug("GZipped InputStream from {}", url);
-                    } else if (ehElem.toString().matches(".*deflate.*")) {
-                        tmpResponseStream = new InflaterInputStream(tmpResponseStream);
-                        logger.debug("Deflated InputStream from {}", url);
-                    }
-                }
+            if (body == null) {
+                return "";
             }
-
-            String responseBody = IOUtils.toString(tmpResponseStream);
+            String responseBody = IOUtils.toString(body);
             if (!responseBody.isEmpty()) {
                 logger.debug(responseBody);
             }
 
             return responseBody;
-        } catch (HttpException he) {
-            logger.error("Fatal protocol violation: {}", he.toString());
-        } catch (IOException ioe) {
-            logger.error("Fatal transport error: {}", ioe.toString());
-        } finally {
-            method.releaseConnection();
         }
+    };
 
-        return null;
+    /**
+     * A method together with the host configuration and credentials to execute it.
+     */
+    private static final class Request {
+        final HttpMethod method;
+        final HostConfiguration hostConfiguration;
+        final HttpState state;
+
+        Request(HttpMethod method, HostConfiguration hostConfiguration, HttpState state) {
+            this.method = method;
+            this.hostConfiguration = hostConfiguration;
+            this.state = state;
+        }
+    }
+
+    private static final class FailedRequest<T> implements Callable<T> {
+        private final Exception exception;
+
+        FailedRequest(Exception exception) {
+            this.exception = exception;
+        }
+
+        @Override
+        public T call() throws Exception {
+            throw exception;
+        }
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        String value = System.getProperty(name);
+        if (StringUtils.isNotBlank(value)) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                logger.warn("'{}' is not a valid value for '{}' - using {} instead", value, name, defaultValue);
+            }
+        }
+        return defaultValue;
     }
 
     /**
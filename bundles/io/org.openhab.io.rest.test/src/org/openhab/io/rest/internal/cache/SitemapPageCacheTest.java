@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.rest.internal.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.io.rest.internal.cache.SitemapPageCache.CachedPage;
+import org.openhab.io.rest.internal.resources.beans.PageBean;
+
+/**
+ * @author agent
+ * @since 1.9.0
+ */
+public class SitemapPageCacheTest {
+
+	private static final URI BASE_URI = URI.create("http://localhost:8080/rest/");
+
+	private CountingRenderer renderer;
+	private TestPageCache cache;
+
+	@Before
+	public void setUp() {
+		renderer = new CountingRenderer();
+		cache = new TestPageCache(renderer);
+		cache.itemsByPage.put("first", "Light");
+		cache.itemsByPage.put("second", "Temperature");
+	}
+
+	@Test
+	public void testPageIsRenderedOnce() {
+		cache.getPageBean("demo", "first", BASE_URI);
+		cache.getPageBean("demo", "first", BASE_URI);
+
+		assertEquals(1, renderer.renders);
+	}
+
+	@Test
+	public void testItemChangeOnlyInvalidatesThePagesShowingIt() {
+		cache.getPageBean("demo", "first", BASE_URI);
+		cache.getPageBean("demo", "second", BASE_URI);
+
+		cache.invalidateItem("Light");
+		cache.getPageBean("demo", "first", BASE_URI);
+		cache.getPageBean("demo", "second", BASE_URI);
+
+		assertEquals(3, renderer.renders);
+	}
+
+	@Test
+	public void testUnrelatedChangeWhileRenderingKeepsThePage() {
+		renderer.whileRendering = new Runnable() {
+			@Override
+			public void run() {
+				cache.invalidateItem("Temperature");
+			}
+		};
+		cache.getPageBean("demo", "first", BASE_URI);
+		cache.getPageBean("demo", "first", BASE_URI);
+
+		assertEquals(1, renderer.renders);
+	}
+
+	@Test
+	public void testChangeOfAnItemOfThePageWhileRenderingDropsThePage() {
+		renderer.whileRendering = new Runnable() {
+			@Override
+			public void run() {
+				cache.invalidateItem("Light");
+			}
+		};
+		cache.getPageBean("demo", "first", BASE_URI);
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testSitemapChangeWhileRenderingDropsThePage() {
+		renderer.whileRendering = new Runnable() {
+			@Override
+			public void run() {
+				cache.invalidateSitemap("demo");
+			}
+		};
+		cache.getPageBean("demo", "first", BASE_URI);
+		assertEquals(0, cache.size());
+
+		renderer.whileRendering = null;
+		cache.getPageBean("demo", "first", BASE_URI);
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testClearWhileRenderingDropsThePage() {
+		renderer.whileRendering = new Runnable() {
+			@Override
+			public void run() {
+				cache.clear();
+			}
+		};
+		cache.getPageBean("demo", "second", BASE_URI);
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testETagMatchesIfNoneMatch() {
+		CachedPage page = new CachedPage("{\"id\":\"first\"}".getBytes(), "application/json");
+		String etag = page.getETag();
+
+		assertTrue(page.matches(etag));
+		assertTrue(page.matches("W/" + etag));
+		assertTrue(page.matches("\"0-0\", " + etag));
+		assertTrue(page.matches("*"));
+		assertFalse(page.matches(null));
+		assertFalse(page.matches("\"0-0\""));
+	}
+
+	@Test
+	public void testETagChangesWithTheContent() {
+		CachedPage page = new CachedPage("{\"id\":\"first\"}".getBytes(), "application/json");
+		CachedPage same = new CachedPage("{\"id\":\"first\"}".getBytes(), "application/json");
+		CachedPage changed = new CachedPage("{\"id\":\"other\"}".getBytes(), "application/json");
+
+		assertEquals(page.getETag(), same.getETag());
+		assertFalse(changed.matches(page.getETag()));
+	}
+
+	private static class CountingRenderer implements SitemapPageCache.PageRenderer {
+		int renders;
+		Runnable whileRendering;
+
+		@Override
+		public PageBean render(String sitemapName, String pageId, URI uri) {
+			renders++;
+			if (whileRendering != null) {
+				whileRendering.run();
+			}
+			return new PageBean();
+		}
+	}
+
+	/**
+	 * Takes the items of the pages from a map instead of a sitemap model.
+	 */
+	private static class TestPageCache extends SitemapPageCache {
+		final Map<String, String> itemsByPage = new HashMap<String, String>();
+
+		TestPageCache(PageRenderer renderer) {
+			super(null, renderer, 10);
+		}
+
+		@Override
+		Set<String> getRelevantItemNames(String sitemapName, String pageId) {
+			return Collections.singleton(itemsByPage.get(pageId));
+		}
+	}
+
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.rest.internal.resources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.items.Item;
+import org.openhab.core.library.items.StringItem;
+import org.openhab.core.library.items.SwitchItem;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.StringType;
+
+/**
+ * @author agent
+ * @since 1.9.0
+ */
+public class BulkItemResourceTest {
+
+	private static final String ITEMS_URI = "http://localhost:8080/rest/items/";
+
+	private List<Item> items;
+
+	@Before
+	public void setUp() {
+		SwitchItem light = new SwitchItem("Light");
+		light.setState(OnOffType.ON);
+		light.getGroupNames().add("Lights");
+		StringItem message = new StringItem("Message");
+		message.setState(new StringType("say \"hi\""));
+		items = new ArrayList<Item>();
+		items.add(light);
+		items.add(message);
+	}
+
+	@Test
+	public void testSelectedFieldsOfAllItems() throws IOException {
+		assertEquals("[{\"name\":\"Light\",\"state\":\"ON\"},{\"name\":\"Message\",\"state\":\"say \\\"hi\\\"\"}]",
+				write(set("name", "state"), set(), set()));
+	}
+
+	@Test
+	public void testLinkAndGroups() throws IOException {
+		assertEquals("[{\"link\":\"" + ITEMS_URI + "Light\",\"groups\":[\"Lights\"]},"
+				+ "{\"link\":\"" + ITEMS_URI + "Message\",\"groups\":[]}]", write(set("link", "groups"), set(), set()));
+	}
+
+	@Test
+	public void testItemsOfTheGivenTypes() throws IOException {
+		assertEquals("[{\"name\":\"Message\",\"type\":\"StringItem\"}]",
+				write(set("name", "type"), set("string"), set()));
+		assertEquals("[{\"name\":\"Light\"}]", write(set("name"), set("switchitem"), set()));
+	}
+
+	@Test
+	public void testItemsOfTheGivenGroups() throws IOException {
+		assertEquals("[{\"name\":\"Light\"}]", write(set("name"), set(), set("Lights")));
+		assertEquals("[]", write(set("name"), set(), set("Heating")));
+	}
+
+	@Test
+	public void testGzipQualityValues() {
+		assertTrue(BulkItemResource.acceptsGzip("gzip, deflate"));
+		assertTrue(BulkItemResource.acceptsGzip("deflate, GZIP;q=0.5"));
+		assertTrue(BulkItemResource.acceptsGzip("*"));
+		assertFalse(BulkItemResource.acceptsGzip(null));
+		assertFalse(BulkItemResource.acceptsGzip("deflate"));
+		assertFalse(BulkItemResource.acceptsGzip("gzip;q=0"));
+		assertFalse(BulkItemResource.acceptsGzip("gzip; q=0.0, deflate"));
+		// an explicit gzip entry takes precedence over the wildcard
+		assertFalse(BulkItemResource.acceptsGzip("*, gzip;q=0"));
+	}
+
+	private String write(Set<String> fields, Set<String> types, Set<String> groups) throws IOException {
+		StringWriter writer = new StringWriter();
+		BulkItemResource.writeItems(writer, items, fields, types, groups, ITEMS_URI);
+		return writer.toString();
+	}
+
+	private static Set<String> set(String... values) {
+		return values.length == 0 ? Collections.<String> emptySet() : new HashSet<String>(Arrays.asList(values));
+	}
+
+}
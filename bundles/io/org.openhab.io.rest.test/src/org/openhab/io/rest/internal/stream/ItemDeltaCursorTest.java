@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.rest.internal.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.library.types.StringType;
+
+/**
+ * @author agent
+ * @since 1.9.0
+ */
+public class ItemDeltaCursorTest {
+
+	private ItemDeltaLog deltaLog;
+
+	@Before
+	public void setUp() {
+		deltaLog = new ItemDeltaLog(3);
+	}
+
+	@Test
+	public void testResumeReturnsTheMissedDeltas() {
+		append(3);
+		ItemDeltaCursor cursor = new ItemDeltaCursor(deltaLog, false);
+
+		String missed = cursor.resume(1L);
+		assertFalse(missed.contains("\"seq\":1,"));
+		assertTrue(missed.contains("\"seq\":2,"));
+		assertTrue(missed.contains("\"seq\":3,"));
+		assertEquals(3, cursor.getLastSequence());
+		assertNull(cursor.resume(3L));
+	}
+
+	@Test
+	public void testResumeAfterDroppedDeltasResets() {
+		append(5);
+		ItemDeltaCursor cursor = new ItemDeltaCursor(deltaLog, false);
+
+		assertEquals("{\"reset\":true,\"seq\":5}", cursor.resume(1L));
+		assertEquals(5, cursor.getLastSequence());
+	}
+
+	@Test
+	public void testResumeFromUnknownSequenceResets() {
+		// e.g. a client which has seen the sequence numbers before a restart
+		append(2);
+		ItemDeltaCursor cursor = new ItemDeltaCursor(deltaLog, false);
+
+		assertEquals("{\"reset\":true,\"seq\":2}", cursor.resume(10L));
+	}
+
+	@Test
+	public void testBroadcastDeltasAreSentOnceAndInOrder() {
+		ItemDelta first = deltaLog.append("Item", new StringType("1"));
+		ItemDeltaCursor cursor = new ItemDeltaCursor(deltaLog, false);
+		cursor.resume(0L);
+		ItemDelta second = deltaLog.append("Item", new StringType("2"));
+		ItemDelta third = deltaLog.append("Item", new StringType("3"));
+
+		// the first delta has been sent with the missed ones
+		assertNull(cursor.next(first));
+		// the second one has not reached the subscriber yet and is sent along with the third
+		String message = cursor.next(third);
+		assertTrue(message.indexOf("\"seq\":2,") < message.indexOf("\"seq\":3,"));
+		assertNull(cursor.next(second));
+		assertFalse(cursor.isBehind());
+	}
+
+	@Test
+	public void testNewSubscriberStartsAtTheCurrentSequence() {
+		append(2);
+		ItemDeltaCursor cursor = new ItemDeltaCursor(deltaLog, false);
+
+		assertNull(cursor.resume(null));
+		ItemDelta delta = deltaLog.append("Item", new StringType("3"));
+		assertTrue(cursor.isBehind());
+		assertEquals("[" + delta.toJson() + "]", cursor.next(delta));
+	}
+
+	@Test
+	public void testServerSentEventsCarryTheSequenceAsId() {
+		append(2);
+		ItemDeltaCursor cursor = new ItemDeltaCursor(deltaLog, true);
+
+		assertTrue(cursor.resume(0L).endsWith("]\r\nid: 2"));
+		ItemDelta delta = deltaLog.append("Item", new StringType("3"));
+		assertEquals("[" + delta.toJson() + "]\r\nid: 3", cursor.next(delta));
+	}
+
+	private void append(int count) {
+		for (int i = 0; i < count; i++) {
+			deltaLog.append("Item", new StringType(String.valueOf(i)));
+		}
+	}
+
+}
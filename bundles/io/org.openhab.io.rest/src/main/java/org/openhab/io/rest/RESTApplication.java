@@ -8,6 +8,7 @@
  */
 package org.openhab.io.rest;
 
+import java.net.URI;
 import java.util.Dictionary;
 import java.util.HashSet;
 import java.util.Hashtable;
@@ -23,9 +24,14 @@ import org.atmosphere.cpr.AtmosphereServlet;
 import org.openhab.core.events.EventPublisher;
 import org.openhab.core.items.ItemRegistry;
 import org.openhab.io.net.http.SecureHttpContext;
+import org.openhab.io.rest.internal.cache.SitemapPageCache;
+import org.openhab.io.rest.internal.resources.BulkItemResource;
 import org.openhab.io.rest.internal.resources.ItemResource;
 import org.openhab.io.rest.internal.resources.RootResource;
 import org.openhab.io.rest.internal.resources.SitemapResource;
+import org.openhab.io.rest.internal.resources.StreamResource;
+import org.openhab.io.rest.internal.resources.beans.PageBean;
+import org.openhab.io.rest.internal.stream.ItemDeltaLog;
 import org.openhab.io.servicediscovery.DiscoveryService;
 import org.openhab.io.servicediscovery.ServiceDescription;
 import org.openhab.model.core.ModelRepository;
@@ -53,6 +59,12 @@ public class RESTApplication extends Application {
 
 	public static final String REST_SERVLET_ALIAS = "/rest";
 
+	/** the number of item state changes kept for clients resuming the delta stream */
+	private static final int DELTA_LOG_CAPACITY = 1000;
+
+	/** the maximum number of rendered sitemap pages kept in the cache */
+	private static final int PAGE_CACHE_CAPACITY = 200;
+
 	private static final Logger logger = LoggerFactory.getLogger(RESTApplication.class);
 	
 	private int httpSSLPort;
@@ -69,6 +81,10 @@ public class RESTApplication extends Application {
 
 	static private ModelRepository modelRepository;
 
+	static private ItemDeltaLog itemDeltaLog;
+
+	static private SitemapPageCache sitemapPageCache;
+
 	public void setHttpService(HttpService httpService) {
 		this.httpService = httpService;
 	}
@@ -113,6 +129,14 @@ public class RESTApplication extends Application {
 		return modelRepository;
 	}
 
+	static public ItemDeltaLog getItemDeltaLog() {
+		return itemDeltaLog;
+	}
+
+	static public SitemapPageCache getSitemapPageCache() {
+		return sitemapPageCache;
+	}
+
 	public void setDiscoveryService(DiscoveryService discoveryService) {
 		this.discoveryService = discoveryService;
 	}
@@ -143,6 +167,20 @@ public class RESTApplication extends Application {
 
 			logger.info("Started REST API at {}", REST_SERVLET_ALIAS);
 
+			ItemDeltaLog deltaLog = new ItemDeltaLog(DELTA_LOG_CAPACITY);
+			deltaLog.start(itemUIRegistry);
+			itemDeltaLog = deltaLog;
+
+			SitemapPageCache pageCache = new SitemapPageCache(itemUIRegistry, new SitemapPageCache.PageRenderer() {
+				@Override
+				public PageBean render(String sitemapName, String pageId, URI uri) {
+					return SitemapResource.getPageBean(sitemapName, pageId, uri);
+				}
+			}, PAGE_CACHE_CAPACITY);
+			pageCache.start();
+			modelRepository.addModelRepositoryChangeListener(pageCache);
+			sitemapPageCache = pageCache;
+
  			if (discoveryService != null) {
  				discoveryService.registerService(getDefaultServiceDescription());
  				discoveryService.registerService(getSSLServiceDescription());
@@ -155,6 +193,19 @@ public class RESTApplication extends Application {
 	}
 	
 	public void deactivate() {
+		if (itemDeltaLog != null) {
+			itemDeltaLog.stop();
+			itemDeltaLog = null;
+		}
+
+		if (sitemapPageCache != null) {
+			if (modelRepository != null) {
+				modelRepository.removeModelRepositoryChangeListener(sitemapPageCache);
+			}
+			sitemapPageCache.stop();
+			sitemapPageCache = null;
+		}
+
         if (this.httpService != null) {
             httpService.unregister(REST_SERVLET_ALIAS);
             logger.info("Stopped REST API");
@@ -182,6 +233,8 @@ public class RESTApplication extends Application {
         result.add(RootResource.class);
         result.add(ItemResource.class);
         result.add(SitemapResource.class);
+        result.add(StreamResource.class);
+        result.add(BulkItemResource.class);
         return result;
     }
 
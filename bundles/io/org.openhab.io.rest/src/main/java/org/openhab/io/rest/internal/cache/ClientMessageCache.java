@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.rest.internal.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openhab.io.rest.internal.listeners.ResourceStateChangeListener.CacheEntry;
+
+/**
+ * Keeps the last message sent to each client, identified by its Atmosphere tracking id, to
+ * suppress duplicate broadcasts. The number of clients is bounded; when it is exceeded, the
+ * client which has not received a message for the longest time is evicted.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class ClientMessageCache {
+
+	private final int capacity;
+
+	private final LinkedHashMap<String, CacheEntry> entries;
+
+	private final AtomicLong delivered = new AtomicLong();
+	private final AtomicLong suppressed = new AtomicLong();
+	private final AtomicLong evicted = new AtomicLong();
+
+	/**
+	 * @param capacity the maximum number of clients
+	 */
+	public ClientMessageCache(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		this.entries = new LinkedHashMap<String, CacheEntry>(64, 0.75f, true);
+	}
+
+	/**
+	 * @return the last message of the client or <code>null</code>
+	 */
+	public synchronized CacheEntry get(String clientId) {
+		return entries.get(clientId);
+	}
+
+	/**
+	 * Records the message for the client.
+	 *
+	 * @return <code>true</code> if the client has received the same content with the last message
+	 */
+	public boolean isDuplicate(String clientId, Object message) {
+		CacheEntry entry = new CacheEntry(message);
+		CacheEntry previous;
+		synchronized (this) {
+			previous = entries.put(clientId, entry);
+			if (entries.size() > capacity) {
+				Iterator<CacheEntry> iterator = entries.values().iterator();
+				iterator.next();
+				iterator.remove();
+				evicted.incrementAndGet();
+			}
+		}
+		if (previous != null && previous.getHash() == entry.getHash()) {
+			suppressed.incrementAndGet();
+			return true;
+		}
+		delivered.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Removes the clients which have not received a message since the given time.
+	 */
+	public synchronized void removeOlderThan(long time) {
+		Iterator<Map.Entry<String, CacheEntry>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().getValue().getCacheTime() <= time) {
+				iterator.remove();
+			}
+		}
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public long getDeliveredCount() {
+		return delivered.get();
+	}
+
+	public long getSuppressedCount() {
+		return suppressed.get();
+	}
+
+	public long getEvictedCount() {
+		return evicted.get();
+	}
+
+	@Override
+	public String toString() {
+		return "ClientMessageCache [clients=" + size() + ", delivered=" + delivered + ", suppressed=" + suppressed
+				+ ", evicted=" + evicted + "]";
+	}
+
+}
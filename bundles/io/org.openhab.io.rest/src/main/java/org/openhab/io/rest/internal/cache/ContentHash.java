@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.rest.internal.cache;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Computes a 64 bit FNV-1a hash of the content of a response bean, i.e. of the values of its
+ * public fields, recursively. Two beans which would be serialized to the same JSON have the
+ * same hash, without serializing them.
+ * <p>
+ * Objects without public fields (e.g. wrappers like <code>JSONWithPadding</code>) are hashed
+ * by identity, so they are never considered equal to another object.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public final class ContentHash {
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private static final int MAX_DEPTH = 32;
+
+	private static final ConcurrentMap<Class<?>, Field[]> fields = new ConcurrentHashMap<Class<?>, Field[]>();
+
+	/** the last hashed object, a broadcast message is usually hashed for many clients */
+	private static volatile Memo memo;
+
+	private static class Memo {
+		final Object object;
+		final long hash;
+
+		Memo(Object object, long hash) {
+			this.object = object;
+			this.hash = hash;
+		}
+	}
+
+	private ContentHash() {
+	}
+
+	/**
+	 * @return the hash of the content of the given object
+	 */
+	public static long of(Object object) {
+		Memo last = memo;
+		if (last != null && last.object == object) {
+			return last.hash;
+		}
+		long hash = hash(FNV_OFFSET, object, 0);
+		memo = new Memo(object, hash);
+		return hash;
+	}
+
+	private static long hash(long h, Object value, int depth) {
+		if (value == null) {
+			return mix(h, 0);
+		}
+		if (value instanceof String) {
+			return mixString(mix(h, 's'), (String) value);
+		}
+		if (value instanceof Number || value instanceof Boolean || value instanceof Character
+				|| value instanceof Enum) {
+			return mixString(mix(h, 'v'), value.toString());
+		}
+		if (depth > MAX_DEPTH) {
+			return mix(h, System.identityHashCode(value));
+		}
+		if (value instanceof Collection) {
+			h = mix(h, '[');
+			for (Object element : (Collection<?>) value) {
+				h = hash(h, element, depth + 1);
+			}
+			return mix(h, ']');
+		}
+		if (value instanceof Object[]) {
+			h = mix(h, '[');
+			for (Object element : (Object[]) value) {
+				h = hash(h, element, depth + 1);
+			}
+			return mix(h, ']');
+		}
+
+		Field[] beanFields = getFields(value.getClass());
+		if (beanFields.length == 0) {
+			return mix(h, System.identityHashCode(value));
+		}
+		h = mixString(mix(h, '{'), value.getClass().getName());
+		for (Field field : beanFields) {
+			try {
+				h = hash(h, field.get(value), depth + 1);
+			} catch (IllegalAccessException e) {
+				h = mix(h, System.identityHashCode(value));
+			}
+		}
+		return mix(h, '}');
+	}
+
+	private static Field[] getFields(Class<?> type) {
+		Field[] result = fields.get(type);
+		if (result == null) {
+			List<Field> instanceFields = new ArrayList<Field>();
+			for (Field field : type.getFields()) {
+				if (!Modifier.isStatic(field.getModifiers())) {
+					instanceFields.add(field);
+				}
+			}
+			result = instanceFields.toArray(new Field[instanceFields.size()]);
+			// the order of getFields() is not specified
+			Arrays.sort(result, new Comparator<Field>() {
+				@Override
+				public int compare(Field f1, Field f2) {
+					return f1.getName().compareTo(f2.getName());
+				}
+			});
+			fields.putIfAbsent(type, result);
+		}
+		return result;
+	}
+
+	private static long mixString(long h, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			h = mix(h, value.charAt(i));
+		}
+		return mix(h, value.length());
+	}
+
+	private static long mix(long h, int value) {
+		return (h ^ value) * FNV_PRIME;
+	}
+
+}
@@ -0,0 +1,522 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.rest.internal.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import javax.ws.rs.core.MediaType;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.EObject;
+import org.openhab.core.items.GenericItem;
+import org.openhab.core.items.Item;
+import org.openhab.core.items.ItemRegistryChangeListener;
+import org.openhab.core.items.StateChangeListener;
+import org.openhab.core.types.State;
+import org.openhab.io.rest.RESTApplication;
+import org.openhab.io.rest.internal.resources.beans.PageBean;
+import org.openhab.model.core.EventType;
+import org.openhab.model.core.ModelRepository;
+import org.openhab.model.core.ModelRepositoryChangeListener;
+import org.openhab.model.sitemap.ColorArray;
+import org.openhab.model.sitemap.Frame;
+import org.openhab.model.sitemap.LinkableWidget;
+import org.openhab.model.sitemap.Sitemap;
+import org.openhab.model.sitemap.VisibilityRule;
+import org.openhab.model.sitemap.Widget;
+import org.openhab.ui.items.ItemUIRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.jersey.api.json.JSONJAXBContext;
+
+/**
+ * Caches the rendered sitemap pages, so that polling clients do not walk the widget tree
+ * on every request. A page is kept per sitemap, page id and base URI (the links in the page
+ * contain the host the client has used), together with its XML and JSON serialization and
+ * an ETag.
+ * <p>
+ * Pages are invalidated selectively: when an item changes whose state is shown on the page
+ * or used by a visibility or color rule of one of its widgets, only the pages depending on
+ * it are removed. A change of a sitemap model removes the pages of this sitemap, a change
+ * of the items removes all pages.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class SitemapPageCache implements StateChangeListener, ItemRegistryChangeListener,
+		ModelRepositoryChangeListener {
+
+	private static final Logger logger = LoggerFactory.getLogger(SitemapPageCache.class);
+
+	private static final String SITEMAP_FILEEXT = ".sitemap";
+
+	/**
+	 * Renders a page bean if it is not in the cache.
+	 */
+	public interface PageRenderer {
+		PageBean render(String sitemapName, String pageId, URI uri);
+	}
+
+	/**
+	 * A serialized page.
+	 */
+	public static class CachedPage {
+		private final byte[] content;
+		private final String mediaType;
+		private final String etag;
+
+		CachedPage(byte[] content, String mediaType) {
+			this.content = content;
+			this.mediaType = mediaType;
+			CRC32 crc = new CRC32();
+			crc.update(content);
+			this.etag = "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(content.length) + "\"";
+		}
+
+		public byte[] getContent() {
+			return content;
+		}
+
+		public String getMediaType() {
+			return mediaType;
+		}
+
+		/**
+		 * @return the quoted entity tag of the content
+		 */
+		public String getETag() {
+			return etag;
+		}
+
+		/**
+		 * @param ifNoneMatch the value of the If-None-Match request header, may be <code>null</code>
+		 * @return <code>true</code> if the client already has this content
+		 */
+		public boolean matches(String ifNoneMatch) {
+			if (ifNoneMatch == null) {
+				return false;
+			}
+			for (String tag : ifNoneMatch.split(",")) {
+				tag = tag.trim();
+				if (tag.startsWith("W/")) {
+					tag = tag.substring(2);
+				}
+				if (tag.equals(etag) || tag.equals("*")) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private static class Entry {
+		final String sitemapName;
+		final PageBean bean;
+		final Set<String> itemNames;
+		final Map<String, CachedPage> serialized = new HashMap<String, CachedPage>(4);
+
+		Entry(String sitemapName, PageBean bean, Set<String> itemNames) {
+			this.sitemapName = sitemapName;
+			this.bean = bean;
+			this.itemNames = itemNames;
+		}
+	}
+
+	private final int capacity;
+	private final PageRenderer renderer;
+	private final ItemUIRegistry itemUIRegistry;
+
+	/** the cached pages, least recently used first */
+	private final LinkedHashMap<String, Entry> entries;
+
+	/** the keys of the cached pages by the names of the items they depend on */
+	private final Map<String, Set<String>> keysByItem = new HashMap<String, Set<String>>();
+
+	/**
+	 * Incremented on every invalidation. A page rendered meanwhile is only stored if none of
+	 * its items and not its sitemap have changed since the rendering has started, so that a
+	 * change of an unrelated item does not keep a busy page out of the cache.
+	 */
+	private long generation = 0;
+
+	/** the generation of the last change of an item, for the items changed since the last {@link #clear()} */
+	private final Map<String, Long> itemGenerations = new HashMap<String, Long>();
+
+	/** the generation of the last change of a sitemap, for the sitemaps changed since the last {@link #clear()} */
+	private final Map<String, Long> sitemapGenerations = new HashMap<String, Long>();
+
+	/** the generation of the last {@link #clear()} */
+	private long clearGeneration = 0;
+
+	private JAXBContext xmlContext;
+	private JAXBContext jsonContext;
+
+	private long hits;
+	private long misses;
+	private long invalidations;
+
+	/**
+	 * @param itemUIRegistry the registry of the items and widgets
+	 * @param renderer renders the pages which are not in the cache
+	 * @param capacity the maximum number of cached pages
+	 */
+	public SitemapPageCache(ItemUIRegistry itemUIRegistry, PageRenderer renderer, int capacity) {
+		this.itemUIRegistry = itemUIRegistry;
+		this.renderer = renderer;
+		this.capacity = Math.max(1, capacity);
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	}
+
+	/**
+	 * Returns the bean of a page, rendering it if necessary. The bean is shared and must not
+	 * be modified.
+	 */
+	public PageBean getPageBean(String sitemapName, String pageId, URI uri) {
+		return getEntry(sitemapName, pageId, uri).bean;
+	}
+
+	/**
+	 * Returns the serialized page, rendering it if necessary.
+	 *
+	 * @param mediaType either {@link MediaType#APPLICATION_JSON} or {@link MediaType#APPLICATION_XML}
+	 */
+	public CachedPage getPage(String sitemapName, String pageId, URI uri, String mediaType) throws JAXBException {
+		Entry entry = getEntry(sitemapName, pageId, uri);
+		synchronized (entry) {
+			CachedPage page = entry.serialized.get(mediaType);
+			if (page == null) {
+				page = new CachedPage(serialize(entry.bean, mediaType), mediaType);
+				entry.serialized.put(mediaType, page);
+			}
+			return page;
+		}
+	}
+
+	/**
+	 * Removes all pages.
+	 */
+	public synchronized void clear() {
+		clearGeneration = ++generation;
+		itemGenerations.clear();
+		sitemapGenerations.clear();
+		invalidations += entries.size();
+		entries.clear();
+		keysByItem.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "SitemapPageCache [pages=" + entries.size() + ", hits=" + hits + ", misses=" + misses
+				+ ", invalidations=" + invalidations + "]";
+	}
+
+	private Entry getEntry(String sitemapName, String pageId, URI uri) {
+		String key = sitemapName + "/" + pageId + "@" + uri;
+		long renderGeneration;
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				hits++;
+				return entry;
+			}
+			misses++;
+			renderGeneration = generation;
+		}
+
+		// rendering may take a while and is done without holding the lock
+		PageBean bean = renderer.render(sitemapName, pageId, uri);
+		Entry entry = new Entry(sitemapName, bean, getRelevantItemNames(sitemapName, pageId));
+
+		synchronized (this) {
+			if (isOutdated(entry, renderGeneration)) {
+				// an item of the page has changed while rendering, the page may already be outdated
+				return entry;
+			}
+			entries.put(key, entry);
+			for (String itemName : entry.itemNames) {
+				Set<String> keys = keysByItem.get(itemName);
+				if (keys == null) {
+					keys = new HashSet<String>();
+					keysByItem.put(itemName, keys);
+				}
+				keys.add(key);
+			}
+			if (entries.size() > capacity) {
+				Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+				Map.Entry<String, Entry> eldest = iterator.next();
+				iterator.remove();
+				unindex(eldest.getKey(), eldest.getValue());
+			}
+		}
+		return entry;
+	}
+
+	private boolean isOutdated(Entry entry, long renderGeneration) {
+		if (clearGeneration > renderGeneration || changedSince(sitemapGenerations, entry.sitemapName, renderGeneration)) {
+			return true;
+		}
+		for (String itemName : entry.itemNames) {
+			if (changedSince(itemGenerations, itemName, renderGeneration)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean changedSince(Map<String, Long> generations, String name, long renderGeneration) {
+		Long changed = generations.get(name);
+		return changed != null && changed > renderGeneration;
+	}
+
+	private void unindex(String key, Entry entry) {
+		for (String itemName : entry.itemNames) {
+			Set<String> keys = keysByItem.get(itemName);
+			if (keys != null) {
+				keys.remove(key);
+				if (keys.isEmpty()) {
+					keysByItem.remove(itemName);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the pages which depend on the given item.
+	 */
+	public synchronized void invalidateItem(String itemName) {
+		itemGenerations.put(itemName, ++generation);
+		Set<String> keys = keysByItem.remove(itemName);
+		if (keys == null) {
+			return;
+		}
+		for (String key : keys) {
+			Entry entry = entries.remove(key);
+			if (entry != null) {
+				invalidations++;
+				unindex(key, entry);
+			}
+		}
+	}
+
+	/**
+	 * Removes the pages of the given sitemap.
+	 */
+	public synchronized void invalidateSitemap(String sitemapName) {
+		sitemapGenerations.put(sitemapName, ++generation);
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String, Entry> mapEntry = iterator.next();
+			if (mapEntry.getValue().sitemapName.equals(sitemapName)) {
+				iterator.remove();
+				invalidations++;
+				unindex(mapEntry.getKey(), mapEntry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Collects the items a page depends on: the items of its widgets, including those in
+	 * frames and the group members shown by group widgets, the items of their visibility
+	 * and color rules and the items of the page and its parents, which are part of the titles.
+	 */
+	Set<String> getRelevantItemNames(String sitemapName, String pageId) {
+		Set<String> itemNames = new HashSet<String>();
+		Sitemap sitemap = getSitemap(sitemapName);
+		if (sitemap == null) {
+			return itemNames;
+		}
+		if (pageId.equals(sitemap.getName())) {
+			collectItemNames(sitemap.getChildren(), itemNames);
+		} else {
+			Widget pageWidget = itemUIRegistry.getWidget(sitemap, pageId);
+			if (pageWidget instanceof LinkableWidget) {
+				collectItemNames(itemUIRegistry.getChildren((LinkableWidget) pageWidget), itemNames);
+			}
+			EObject parent = pageWidget;
+			while (parent instanceof Widget) {
+				collectRuleItemNames((Widget) parent, itemNames);
+				parent = parent.eContainer();
+			}
+		}
+		return itemNames;
+	}
+
+	private void collectItemNames(List<Widget> widgets, Set<String> itemNames) {
+		for (Widget widget : widgets) {
+			collectRuleItemNames(widget, itemNames);
+			if (widget instanceof Frame) {
+				// the widgets of a frame are part of the page, those of other linkable widgets are not
+				EList<Widget> children = itemUIRegistry.getChildren((Frame) widget);
+				collectItemNames(children, itemNames);
+			}
+		}
+	}
+
+	private static void collectRuleItemNames(Widget widget, Set<String> itemNames) {
+		if (widget.getItem() != null) {
+			itemNames.add(widget.getItem());
+		}
+		for (VisibilityRule rule : widget.getVisibility()) {
+			if (rule.getItem() != null) {
+				itemNames.add(rule.getItem());
+			}
+		}
+		for (ColorArray color : widget.getLabelColor()) {
+			if (color.getItem() != null) {
+				itemNames.add(color.getItem());
+			}
+		}
+		for (ColorArray color : widget.getValueColor()) {
+			if (color.getItem() != null) {
+				itemNames.add(color.getItem());
+			}
+		}
+	}
+
+	private byte[] serialize(PageBean bean, String mediaType) throws JAXBException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+		if (MediaType.APPLICATION_JSON.equals(mediaType)) {
+			JSONJAXBContext context = (JSONJAXBContext) getContext(true);
+			context.createJSONMarshaller().marshallToJSON(bean, out);
+		} else {
+			Marshaller marshaller = getContext(false).createMarshaller();
+			marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
+			marshaller.marshal(bean, out);
+		}
+		return out.toByteArray();
+	}
+
+	private synchronized JAXBContext getContext(boolean json) throws JAXBException {
+		if (json) {
+			if (jsonContext == null) {
+				// the same notation as the JSON provider of Jersey uses by default
+				jsonContext = new JSONJAXBContext(PageBean.class);
+			}
+			return jsonContext;
+		}
+		if (xmlContext == null) {
+			xmlContext = JAXBContext.newInstance(PageBean.class);
+		}
+		return xmlContext;
+	}
+
+	private Sitemap getSitemap(String sitemapName) {
+		ModelRepository repo = RESTApplication.getModelRepository();
+		if (repo == null) {
+			return null;
+		}
+		EObject model = repo.getModel(sitemapName + SITEMAP_FILEEXT);
+		return model instanceof Sitemap ? (Sitemap) model : null;
+	}
+
+	/**
+	 * Starts listening to the state changes of all items. Every change has to be seen, so that
+	 * pages rendered while an item changes are not stored.
+	 */
+	public void start() {
+		itemUIRegistry.addItemRegistryChangeListener(this);
+		for (Item item : itemUIRegistry.getItems()) {
+			observe(item, true);
+		}
+	}
+
+	public void stop() {
+		itemUIRegistry.removeItemRegistryChangeListener(this);
+		for (Item item : itemUIRegistry.getItems()) {
+			observe(item, false);
+		}
+		clear();
+		logger.debug("Sitemap page cache stopped: {}", this);
+	}
+
+	private void observe(Item item, boolean observe) {
+		if (item instanceof GenericItem) {
+			if (observe) {
+				((GenericItem) item).addStateChangeListener(this);
+			} else {
+				((GenericItem) item).removeStateChangeListener(this);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void stateChanged(Item item, State oldState, State newState) {
+		invalidateItem(item.getName());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void stateUpdated(Item item, State state) {
+		// only changes affect the pages
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void allItemsChanged(Collection<String> oldItemNames) {
+		for (Item item : itemUIRegistry.getItems()) {
+			observe(item, true);
+		}
+		clear();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void itemAdded(Item item) {
+		observe(item, true);
+		// the member lists of group widgets may have changed
+		clear();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void itemRemoved(Item item) {
+		observe(item, false);
+		clear();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void modelChanged(String modelName, EventType type) {
+		if (modelName.endsWith(SITEMAP_FILEEXT)) {
+			invalidateSitemap(modelName.substring(0, modelName.length() - SITEMAP_FILEEXT.length()));
+		}
+	}
+
+}
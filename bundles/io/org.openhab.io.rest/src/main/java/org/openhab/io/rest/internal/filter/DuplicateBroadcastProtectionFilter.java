@@ -8,19 +8,13 @@
  */
 package org.openhab.io.rest.internal.filter;
 
-import java.io.IOException;
-
 import javax.servlet.http.HttpServletRequest;
 
 import org.atmosphere.cpr.AtmosphereResource;
 import org.atmosphere.cpr.HeaderConfig;
 import org.atmosphere.cpr.BroadcastFilter.BroadcastAction.ACTION;
 import org.atmosphere.cpr.PerRequestBroadcastFilter;
-import org.codehaus.jackson.JsonGenerationException;
-import org.codehaus.jackson.map.JsonMappingException;
-import org.codehaus.jackson.map.ObjectMapper;
 import org.openhab.io.rest.internal.listeners.ResourceStateChangeListener;
-import org.openhab.io.rest.internal.listeners.ResourceStateChangeListener.CacheEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -62,8 +56,7 @@ public class DuplicateBroadcastProtectionFilter implements PerRequestBroadcastFi
 	}
 	
 	private boolean isDoubleBroadcast(HttpServletRequest request,
-			Object responseEntity) throws JsonGenerationException,
-			JsonMappingException, IOException {
+			Object responseEntity) {
 	
 		String clientId = request.getHeader(HeaderConfig.X_ATMOSPHERE_TRACKING_ID);
 
@@ -72,20 +65,8 @@ public class DuplicateBroadcastProtectionFilter implements PerRequestBroadcastFi
 			return false;
 		}
 
-		CacheEntry entry = ResourceStateChangeListener.getCachedEntries().put(
-				clientId, new CacheEntry(responseEntity));
-		// there was an existing cached entry, see if its the same
-		if (entry != null) {
-			ObjectMapper mapper = new ObjectMapper();
-			// cached data
-			final String firedResponse = mapper.writeValueAsString(entry.getData());
-			// new data
-			final String responseValue = mapper.writeValueAsString(responseEntity);
-			// the same ?
-			return responseValue.equals(firedResponse); 
-		}
-
-		return false;
+		// compares the content hash with the one of the last message sent to the client
+		return ResourceStateChangeListener.getCachedEntries().isDuplicate(clientId, responseEntity);
 	}
 
 }
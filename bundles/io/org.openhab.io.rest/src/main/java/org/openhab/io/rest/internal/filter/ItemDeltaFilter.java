@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.rest.internal.filter;
+
+import java.util.Collections;
+
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.BroadcastFilter.BroadcastAction.ACTION;
+import org.atmosphere.cpr.PerRequestBroadcastFilter;
+import org.openhab.io.rest.internal.stream.ItemDelta;
+import org.openhab.io.rest.internal.stream.ItemDeltaCursor;
+import org.openhab.io.rest.internal.stream.ItemDeltaLog;
+
+/**
+ * Turns a broadcast {@link ItemDelta} into the message for a single subscriber of the
+ * delta stream, using the {@link ItemDeltaCursor} stored with its request.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class ItemDeltaFilter implements PerRequestBroadcastFilter {
+
+	/** The request attribute holding the cursor of the subscriber */
+	public static final String CURSOR_ATTRIBUTE = ItemDeltaCursor.class.getName();
+
+	@Override
+	public BroadcastAction filter(String broadcasterId, Object originalMessage, Object message) {
+		return new BroadcastAction(message);
+	}
+
+	@Override
+	public BroadcastAction filter(String broadcasterId, AtmosphereResource resource, Object originalMessage,
+			Object message) {
+		if (!(message instanceof ItemDelta)) {
+			return new BroadcastAction(message);
+		}
+		ItemDelta delta = (ItemDelta) message;
+		Object cursor = resource.getRequest().getAttribute(CURSOR_ATTRIBUTE);
+		if (!(cursor instanceof ItemDeltaCursor)) {
+			return new BroadcastAction(ItemDeltaLog.toJson(Collections.singletonList(delta)));
+		}
+		String next = ((ItemDeltaCursor) cursor).next(delta);
+		if (next == null) {
+			// the subscriber has received this delta along with an earlier message
+			return new BroadcastAction(ACTION.ABORT, message);
+		}
+		return new BroadcastAction(next);
+	}
+
+}
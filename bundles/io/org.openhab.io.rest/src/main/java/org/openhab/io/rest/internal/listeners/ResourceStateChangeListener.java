@@ -11,8 +11,6 @@ package org.openhab.io.rest.internal.listeners;
 
 
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -29,7 +27,11 @@ import org.openhab.core.items.GenericItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.StateChangeListener;
 import org.openhab.core.types.State;
+import org.openhab.io.rest.RESTApplication;
 import org.openhab.io.rest.internal.broadcaster.GeneralBroadcaster;
+import org.openhab.io.rest.internal.cache.ClientMessageCache;
+import org.openhab.io.rest.internal.cache.ContentHash;
+import org.openhab.io.rest.internal.cache.SitemapPageCache;
 import org.openhab.io.rest.internal.filter.DuplicateBroadcastProtectionFilter;
 import org.openhab.io.rest.internal.filter.PollingDelayFilter;
 import org.openhab.io.rest.internal.filter.ResponseObjectFilter;
@@ -50,7 +52,9 @@ abstract public class ResourceStateChangeListener {
 
 	final static long CACHE_TIME = 300 * 1000; // 5 mins
 	
-	final static ConcurrentMap<String, CacheEntry> cachedEntries = new ConcurrentHashMap<String, CacheEntry>();
+	final static int MAX_CACHED_CLIENTS = 1000;
+	
+	final static ClientMessageCache cachedEntries = new ClientMessageCache(MAX_CACHED_CLIENTS);
 	
 	static ScheduledFuture<?> executorFuture;
 	
@@ -76,7 +80,7 @@ abstract public class ResourceStateChangeListener {
 		this.broadcaster = broadcaster;
 	}
 	
-	public static ConcurrentMap<String, CacheEntry> getCachedEntries() {
+	public static ClientMessageCache getCachedEntries() {
 		return cachedEntries;
 	}
 	
@@ -151,6 +155,11 @@ abstract public class ResourceStateChangeListener {
 			
 			public void stateChanged(final Item item, State oldState, State newState) {
 				lastChange = item;
+				// the pages are rendered asynchronously for the broadcast and must not come from the cache
+				SitemapPageCache pageCache = RESTApplication.getSitemapPageCache();
+				if (pageCache != null) {
+					pageCache.invalidateItem(item.getName());
+				}
 				broadcaster.broadcast(item);
 //				Collection<AtmosphereResource> resources = broadcaster.getAtmosphereResources();
 //				if(!resources.isEmpty()) {
@@ -268,10 +277,8 @@ abstract public class ResourceStateChangeListener {
 		 * difficult to know when these uuid's are really not valid anymore.
 		 */
 		long invalidCacheTime = System.currentTimeMillis() - CACHE_TIME;
-		for(String uuid : cachedEntries.keySet()){
-			if(cachedEntries.get(uuid).getCacheTime() <= invalidCacheTime )
-				cachedEntries.remove(uuid);
-		}
+		cachedEntries.removeOlderThan(invalidCacheTime);
+		logger.debug("Cleaned broadcast cache: {}", cachedEntries);
 	}
 	
 	/**
@@ -282,6 +289,7 @@ abstract public class ResourceStateChangeListener {
 	public static class CacheEntry {
 		long cacheTime;
 		Object data;
+		long hash;
 		/**
 		 * Create a new CacheEntry object the data to cache
 		 * @param data
@@ -289,6 +297,7 @@ abstract public class ResourceStateChangeListener {
 		public CacheEntry(Object data) {
 			super();
 			this.data = data;
+			this.hash = ContentHash.of(data);
 			this.cacheTime = System.currentTimeMillis();
 		}
 		/**
@@ -305,5 +314,12 @@ abstract public class ResourceStateChangeListener {
 		public Object getData() {
 			return data;
 		}
+		/**
+		 * 
+		 * @return the hash of the content of the cached data
+		 */
+		public long getHash() {
+			return hash;
+		}
 	}
 }
\ No newline at end of file
@@ -21,6 +21,7 @@ import org.atmosphere.cpr.BroadcasterConfig;
 import org.openhab.core.items.Item;
 import org.openhab.io.rest.RESTApplication;
 import org.openhab.io.rest.internal.cache.SingleMessageBroadcastCache;
+import org.openhab.io.rest.internal.cache.SitemapPageCache;
 import org.openhab.io.rest.internal.resources.ResponseTypeHelper;
 import org.openhab.io.rest.internal.resources.SitemapResource;
 import org.openhab.io.rest.internal.resources.beans.PageBean;
@@ -142,6 +143,10 @@ public class SitemapStateChangeListener extends ResourceStateChangeListener {
 		            	String pageId = pathSegments[2];
 		            	Sitemap sitemap = (Sitemap) RESTApplication.getModelRepository().getModel(sitemapName + ".sitemap");
 		            	if(sitemap!=null) {
+		            		SitemapPageCache pageCache = RESTApplication.getSitemapPageCache();
+		            		if(pageCache!=null) {
+		            			return pageCache.getPageBean(sitemapName, pageId, basePath);
+		            		}
 							return SitemapResource.getPageBean(sitemapName, pageId, basePath);
 		            	}
 		            }
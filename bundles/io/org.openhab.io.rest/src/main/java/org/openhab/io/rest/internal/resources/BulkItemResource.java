@@ -0,0 +1,249 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.rest.internal.resources;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+
+import org.apache.commons.lang.StringUtils;
+import org.openhab.core.items.Item;
+import org.openhab.io.rest.RESTApplication;
+import org.openhab.ui.items.ItemUIRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>This class acts as a REST resource which returns the states of many items at once. In contrast
+ * to the <code>items</code> resource, the items are written one by one to the response while
+ * it is sent, instead of building the complete bean tree first.</p>
+ *
+ * <p>The response is a JSON array like <code>[{"name":"Light","type":"SwitchItem","state":"ON"},...]</code>.
+ * It supports the query parameters</p>
+ * <ul>
+ * <li><code>fields</code>: the comma separated fields of each item, out of <code>name</code>,
+ * <code>type</code>, <code>state</code>, <code>link</code> and <code>groups</code>
+ * (defaults to name, type, state and link)</li>
+ * <li><code>type</code>: the comma separated item types to return, e.g. <code>Switch,Dimmer</code></li>
+ * <li><code>groups</code>: only return the items which are a member of one of these comma separated groups</li>
+ * </ul>
+ *
+ * <p>The response is compressed if the client accepts gzip. The JSON is written directly, so that
+ * the bundle needs no JSON library besides the one Jersey brings for the beans.</p>
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+@Path(BulkItemResource.PATH_BULK)
+public class BulkItemResource {
+
+	private static final Logger logger = LoggerFactory.getLogger(BulkItemResource.class);
+
+	/** The URI path to this resource */
+	public static final String PATH_BULK = "bulk";
+
+	private static final String FIELD_NAME = "name";
+	private static final String FIELD_TYPE = "type";
+	private static final String FIELD_STATE = "state";
+	private static final String FIELD_LINK = "link";
+	private static final String FIELD_GROUPS = "groups";
+
+	private static final String DEFAULT_FIELDS = "name,type,state,link";
+
+	@Context UriInfo uriInfo;
+
+	@GET @Path("/" + ItemResource.PATH_ITEMS)
+	@Produces( { MediaType.APPLICATION_JSON })
+	public Response getItems(
+			@QueryParam("fields") String fields,
+			@QueryParam("type") String types,
+			@QueryParam("groups") String groups,
+			@HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+		if (logger.isDebugEnabled()) logger.debug("Received HTTP GET request at '{}' for fields '{}'.", uriInfo.getPath(), fields);
+		final ItemUIRegistry registry = RESTApplication.getItemUIRegistry();
+		if (registry == null) {
+			throw new WebApplicationException(Response.Status.SERVICE_UNAVAILABLE);
+		}
+
+		final Set<String> fieldSet = split(StringUtils.isBlank(fields) ? DEFAULT_FIELDS : fields, false);
+		final Set<String> typeSet = split(types, true);
+		final Set<String> groupSet = split(groups, false);
+		final String itemsUri = uriInfo.getBaseUriBuilder().path(ItemResource.PATH_ITEMS).build().toASCIIString() + "/";
+		final boolean gzip = acceptsGzip(acceptEncoding);
+
+		StreamingOutput output = new StreamingOutput() {
+			@Override
+			public void write(OutputStream out) throws IOException {
+				OutputStream stream = gzip ? new GZIPOutputStream(out, 8192) : out;
+				Writer writer = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"), 8192);
+				writeItems(writer, registry.getItems(), fieldSet, typeSet, groupSet, itemsUri);
+				writer.flush();
+				if (gzip) {
+					((GZIPOutputStream) stream).finish();
+				}
+			}
+		};
+
+		Response.ResponseBuilder response = Response.ok(output, MediaType.APPLICATION_JSON)
+				.header("Vary", HttpHeaders.ACCEPT_ENCODING);
+		if (gzip) {
+			response.header("Content-Encoding", "gzip");
+		}
+		return response.build();
+	}
+
+	/**
+	 * Checks whether the client accepts a gzip encoded response, taking the quality values of
+	 * the <code>Accept-Encoding</code> header into account, e.g. <code>gzip;q=0</code> refuses gzip.
+	 *
+	 * @param acceptEncoding the value of the <code>Accept-Encoding</code> header, may be null
+	 * @return true if gzip or any encoding is accepted with a quality above zero
+	 */
+	static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		float gzip = -1;
+		float any = -1;
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.split(";");
+			String name = parts[0].trim().toLowerCase();
+			if (name.equals("gzip") || name.equals("x-gzip")) {
+				gzip = quality(parts);
+			} else if (name.equals("*")) {
+				any = quality(parts);
+			}
+		}
+		// an explicit gzip entry takes precedence over the wildcard
+		return gzip >= 0 ? gzip > 0 : any > 0;
+	}
+
+	private static float quality(String[] parts) {
+		for (int i = 1; i < parts.length; i++) {
+			String parameter = parts[i].trim();
+			if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+				try {
+					return Float.parseFloat(parameter.substring(2).trim());
+				} catch (NumberFormatException e) {
+					return 0;
+				}
+			}
+		}
+		return 1;
+	}
+
+	private static boolean matches(Item item, Set<String> types, Set<String> groups) {
+		if (!types.isEmpty()) {
+			String type = item.getClass().getSimpleName().toLowerCase();
+			if (!types.contains(type) && !types.contains(StringUtils.removeEnd(type, "item"))) {
+				return false;
+			}
+		}
+		if (!groups.isEmpty()) {
+			for (String groupName : item.getGroupNames()) {
+				if (groups.contains(groupName)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the matching items as JSON array.
+	 */
+	static void writeItems(Writer writer, Iterable<Item> items, Set<String> fields, Set<String> types,
+			Set<String> groups, String itemsUri) throws IOException {
+		writer.write('[');
+		boolean first = true;
+		for (Item item : items) {
+			if (matches(item, types, groups)) {
+				if (!first) {
+					writer.write(',');
+				}
+				first = false;
+				writeItem(writer, item, fields, itemsUri);
+			}
+		}
+		writer.write(']');
+	}
+
+	private static void writeItem(Writer writer, Item item, Set<String> fields, String itemsUri)
+			throws IOException {
+		writer.write('{');
+		boolean first = true;
+		if (fields.contains(FIELD_NAME)) {
+			first = writeField(writer, first, FIELD_NAME, JsonHelper.quote(item.getName()));
+		}
+		if (fields.contains(FIELD_TYPE)) {
+			first = writeField(writer, first, FIELD_TYPE, JsonHelper.quote(item.getClass().getSimpleName()));
+		}
+		if (fields.contains(FIELD_STATE)) {
+			first = writeField(writer, first, FIELD_STATE, JsonHelper.quote(item.getState().toString()));
+		}
+		if (fields.contains(FIELD_LINK)) {
+			first = writeField(writer, first, FIELD_LINK, JsonHelper.quote(itemsUri + item.getName()));
+		}
+		if (fields.contains(FIELD_GROUPS)) {
+			StringBuilder groupNames = new StringBuilder("[");
+			for (String groupName : item.getGroupNames()) {
+				if (groupNames.length() > 1) {
+					groupNames.append(',');
+				}
+				groupNames.append(JsonHelper.quote(groupName));
+			}
+			writeField(writer, first, FIELD_GROUPS, groupNames.append(']').toString());
+		}
+		writer.write('}');
+	}
+
+	private static boolean writeField(Writer writer, boolean first, String name, String json) throws IOException {
+		if (!first) {
+			writer.write(',');
+		}
+		writer.write('"');
+		writer.write(name);
+		writer.write("\":");
+		writer.write(json);
+		return false;
+	}
+
+	private static Set<String> split(String value, boolean lowerCase) {
+		Set<String> result = new HashSet<String>();
+		if (StringUtils.isNotBlank(value)) {
+			for (String part : value.split(",")) {
+				part = part.trim();
+				if (!part.isEmpty()) {
+					result.add(lowerCase ? part.toLowerCase() : part);
+				}
+			}
+		}
+		return result;
+	}
+
+}
@@ -29,6 +29,8 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
 
+import javax.xml.bind.JAXBException;
+
 import org.apache.commons.lang.StringUtils;
 import org.atmosphere.annotation.Suspend.SCOPE;
 import org.atmosphere.cpr.AtmosphereRequest;
@@ -42,6 +44,8 @@ import org.eclipse.emf.ecore.EObject;
 import org.openhab.core.items.Item;
 import org.openhab.io.rest.RESTApplication;
 import org.openhab.io.rest.internal.broadcaster.GeneralBroadcaster;
+import org.openhab.io.rest.internal.cache.SitemapPageCache;
+import org.openhab.io.rest.internal.cache.SitemapPageCache.CachedPage;
 import org.openhab.io.rest.internal.listeners.SitemapStateChangeListener;
 import org.openhab.io.rest.internal.resources.beans.MappingBean;
 import org.openhab.io.rest.internal.resources.beans.PageBean;
@@ -148,6 +152,21 @@ public class SitemapResource {
 		if(TRANSPORT.UNDEFINED.equals(resource.transport())) {
 			final String responseType = MediaTypeHelper.getResponseMediaType(headers.getAcceptableMediaTypes(), type);
 			if(responseType!=null) {
+				final CachedPage page = getCachedPage(sitemapname, pageId, responseType);
+				if(page!=null) {
+					if(page.matches(headers.getRequestHeaders().getFirst(HttpHeaders.IF_NONE_MATCH))) {
+						throw new WebApplicationException(
+								Response.notModified()
+								.header(HttpHeaders.ETAG, page.getETag())
+								.header(ATMOS_TIMEOUT_HEADER, DEFAULT_TIMEOUT_SECS + "")
+								.build());
+					}
+					throw new WebApplicationException(
+							Response.ok(page.getContent(), responseType)
+							.header(HttpHeaders.ETAG, page.getETag())
+							.header(ATMOS_TIMEOUT_HEADER, DEFAULT_TIMEOUT_SECS + "")
+							.build());
+				}
 				final PageBean content = getPageBean(sitemapname, pageId, uriInfo.getBaseUriBuilder().build());
 				final Object responseObject = ResponseHelper.wrapContentIfNeccessary(callback, responseType, content);
 		    	throw new WebApplicationException(
@@ -179,6 +198,24 @@ public class SitemapResource {
 			.outputComments(true).build(); 
     }
 	
+    /**
+     * Returns the serialized page from the cache, if the response type is XML or JSON.
+     * 
+     * @return the page or <code>null</code> if it has to be rendered
+     */
+    private CachedPage getCachedPage(String sitemapName, String pageId, String responseType) {
+    	SitemapPageCache pageCache = RESTApplication.getSitemapPageCache();
+    	if(pageCache==null || !(MediaType.APPLICATION_JSON.equals(responseType) || MediaType.APPLICATION_XML.equals(responseType))) {
+    		return null;
+    	}
+    	try {
+    		return pageCache.getPage(sitemapName, pageId, uriInfo.getBaseUriBuilder().build(), responseType);
+    	} catch (JAXBException e) {
+    		logger.warn("Could not serialize page '{}' of sitemap '{}': {}", pageId, sitemapName, e.getMessage());
+    		return null;
+    	}
+    }
+
     static public PageBean getPageBean(String sitemapName, String pageId, URI uri) {
 		ItemUIRegistry itemUIRegistry = RESTApplication.getItemUIRegistry();
 		Sitemap sitemap = getSitemap(sitemapName);
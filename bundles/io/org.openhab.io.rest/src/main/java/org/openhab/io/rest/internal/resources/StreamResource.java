@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.rest.internal.resources;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+import org.atmosphere.annotation.Suspend.SCOPE;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.AtmosphereResourceEvent;
+import org.atmosphere.cpr.AtmosphereResourceEventListenerAdapter;
+import org.atmosphere.cpr.AtmosphereResource.TRANSPORT;
+import org.atmosphere.cpr.Broadcaster;
+import org.atmosphere.cpr.BroadcasterFactory;
+import org.atmosphere.jersey.JerseyBroadcaster;
+import org.atmosphere.jersey.SuspendResponse;
+import org.openhab.io.rest.RESTApplication;
+import org.openhab.io.rest.internal.filter.ItemDeltaFilter;
+import org.openhab.io.rest.internal.stream.ItemDelta;
+import org.openhab.io.rest.internal.stream.ItemDeltaCursor;
+import org.openhab.io.rest.internal.stream.ItemDeltaLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>This class acts as a REST resource which streams the state changes of all items as
+ * compact deltas, instead of the complete item or page beans.</p>
+ *
+ * <p>Every message is a JSON array of deltas like <code>[{"seq":42,"name":"Light","state":"ON","ts":1462000000000}]</code>.
+ * Every delta is serialized once and written to all subscribers through a single broadcaster,
+ * which works with server-sent events, websockets, streaming and long-polling. Server-sent
+ * events carry the sequence number of their last delta as event id.</p>
+ *
+ * <p>After a reconnect, a client passes the last sequence number it has received as
+ * <code>since</code> query parameter (or as <code>Last-Event-ID</code> header) and first gets the
+ * changes it has missed. If they are not available any more, it gets
+ * <code>{"reset":true,"seq":&lt;current sequence&gt;}</code> and has to reload the items.
+ * A plain GET request returns the missed deltas without subscribing.</p>
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+@Path(StreamResource.PATH_STREAM)
+public class StreamResource {
+
+	private static final Logger logger = LoggerFactory.getLogger(StreamResource.class);
+
+	/** The URI path to this resource */
+	public static final String PATH_STREAM = "stream";
+
+	/** The id of the broadcaster all subscribers share */
+	private static final String BROADCASTER_ID = "/" + PATH_STREAM;
+
+	/** A single instance, so that it is added to the broadcaster only once */
+	private static final ItemDeltaFilter DELTA_FILTER = new ItemDeltaFilter();
+
+	@Context UriInfo uriInfo;
+
+	@GET
+	@Produces( { MediaType.APPLICATION_JSON })
+	public SuspendResponse<String> getDeltas(
+			@QueryParam("since") Long since,
+			@HeaderParam("Last-Event-ID") Long lastEventId,
+			@Context final AtmosphereResource resource) {
+		final ItemDeltaLog deltaLog = RESTApplication.getItemDeltaLog();
+		if (deltaLog == null) {
+			throw new WebApplicationException(Response.Status.SERVICE_UNAVAILABLE);
+		}
+		Long resumeFrom = since != null ? since : lastEventId;
+		TRANSPORT transport = resource.transport();
+		if (logger.isDebugEnabled()) logger.debug("Received HTTP GET request at '{}' from sequence {} with transport {}.", uriInfo.getPath(), resumeFrom, transport);
+
+		boolean streaming = TRANSPORT.SSE.equals(transport)
+				|| ResponseTypeHelper.isStreamingTransport(resource.getRequest());
+		if (TRANSPORT.UNDEFINED.equals(transport)) {
+			// nothing to wait for, the client gets the missed deltas right away
+			String missed = new ItemDeltaCursor(deltaLog, false).resume(resumeFrom);
+			throw new WebApplicationException(
+					Response.ok(missed != null ? missed : "[]", MediaType.APPLICATION_JSON).build());
+		}
+
+		// the deltas are broadcast before the missed ones are collected, so that none falls in between
+		BroadcasterFactory broadcasterFactory = resource.getAtmosphereConfig().getBroadcasterFactory();
+		final Broadcaster broadcaster = broadcasterFactory.lookup(JerseyBroadcaster.class, BROADCASTER_ID, true);
+		broadcaster.getBroadcasterConfig().addFilter(DELTA_FILTER);
+		deltaLog.setBroadcaster(broadcaster);
+
+		final ItemDeltaCursor cursor = new ItemDeltaCursor(deltaLog, TRANSPORT.SSE.equals(transport));
+		resource.getRequest().setAttribute(ItemDeltaFilter.CURSOR_ATTRIBUTE, cursor);
+		String missed = cursor.resume(resumeFrom);
+		if (!streaming && missed != null) {
+			throw new WebApplicationException(Response.ok(missed, MediaType.APPLICATION_JSON).build());
+		}
+
+		SuspendResponse.SuspendResponseBuilder<String> builder = new SuspendResponse.SuspendResponseBuilder<String>()
+				.scope(SCOPE.REQUEST)
+				.resumeOnBroadcast(!streaming)
+				.broadcaster(broadcaster)
+				.outputComments(true)
+				.addListener(new AtmosphereResourceEventListenerAdapter() {
+					@Override
+					public void onSuspend(AtmosphereResourceEvent event) {
+						// a delta recorded while the resource was being suspended has not reached it
+						ItemDelta latest = deltaLog.getLatest();
+						if (latest != null && cursor.isBehind()) {
+							broadcaster.broadcast(latest, resource);
+						}
+					}
+				});
+		if (missed != null) {
+			builder.entity(missed);
+		}
+		return builder.build();
+	}
+
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.rest.internal.stream;
+
+import org.openhab.io.rest.internal.resources.JsonHelper;
+
+/**
+ * A single state change of an item as it is sent to the stream subscribers. The JSON
+ * representation is created once, when the change happens, and shared by all subscribers.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class ItemDelta {
+
+	private final long sequence;
+	private final String name;
+	private final String state;
+	private final long timestamp;
+	private final String json;
+
+	public ItemDelta(long sequence, String name, String state, long timestamp) {
+		this.sequence = sequence;
+		this.name = name;
+		this.state = state;
+		this.timestamp = timestamp;
+		this.json = "{\"seq\":" + sequence + ",\"name\":" + JsonHelper.quote(name) + ",\"state\":" + JsonHelper.quote(state)
+				+ ",\"ts\":" + timestamp + "}";
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getState() {
+		return state;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return the JSON object of this delta, e.g. <code>{"seq":42,"name":"Light","state":"ON","ts":1462000000000}</code>
+	 */
+	public String toJson() {
+		return json;
+	}
+
+	@Override
+	public String toString() {
+		return json;
+	}
+
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.rest.internal.stream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps track of the last delta a single subscriber has received and creates the messages
+ * for it. A broadcast delta which the subscriber has already received is skipped, and the
+ * deltas it has missed in between, e.g. while it was subscribing, are sent along with it,
+ * so that every subscriber gets every delta exactly once and in order.
+ * <p>
+ * For server-sent events, every message ends with an <code>id</code> field carrying the
+ * sequence number of its last delta, which the browser sends back as
+ * <code>Last-Event-ID</code> when it reconnects. The <code>data:</code> prefix and the empty
+ * line which ends the event are written by Atmosphere.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class ItemDeltaCursor {
+
+	private final ItemDeltaLog deltaLog;
+	private final boolean eventIds;
+
+	/** the sequence number of the last delta sent to the subscriber */
+	private long lastSequence;
+
+	/**
+	 * @param deltaLog the log to take missed deltas from
+	 * @param eventIds whether the messages end with a server-sent event id
+	 */
+	public ItemDeltaCursor(ItemDeltaLog deltaLog, boolean eventIds) {
+		this.deltaLog = deltaLog;
+		this.eventIds = eventIds;
+	}
+
+	/**
+	 * Positions the cursor for a subscriber which has received the deltas up to the given
+	 * sequence number, or for a new subscriber if it is <code>null</code>.
+	 *
+	 * @return the missed deltas, a reset message if they are not available any more, or
+	 *         <code>null</code> if the subscriber has not missed anything
+	 */
+	public synchronized String resume(Long since) {
+		if (since == null) {
+			lastSequence = deltaLog.getSequence();
+			return null;
+		}
+		List<ItemDelta> deltas = deltaLog.getDeltasSince(since);
+		if (deltas == null) {
+			return reset(deltaLog.getSequence());
+		}
+		lastSequence = since;
+		return deltas.isEmpty() ? null : send(deltas);
+	}
+
+	/**
+	 * Creates the message of a broadcast delta.
+	 *
+	 * @return the message, or <code>null</code> if the subscriber has already received the delta
+	 */
+	public synchronized String next(ItemDelta delta) {
+		long seq = delta.getSequence();
+		if (seq <= lastSequence) {
+			return null;
+		}
+		if (seq == lastSequence + 1) {
+			return send(Collections.singletonList(delta));
+		}
+		List<ItemDelta> missed = deltaLog.getDeltasSince(lastSequence);
+		if (missed == null) {
+			return reset(seq);
+		}
+		List<ItemDelta> deltas = new ArrayList<ItemDelta>(missed.size());
+		for (ItemDelta candidate : missed) {
+			// later deltas follow with their own broadcast
+			if (candidate.getSequence() <= seq) {
+				deltas.add(candidate);
+			}
+		}
+		return send(deltas);
+	}
+
+	/**
+	 * @return <code>true</code> if deltas have been recorded which the subscriber has not received
+	 */
+	public synchronized boolean isBehind() {
+		return deltaLog.getSequence() > lastSequence;
+	}
+
+	public synchronized long getLastSequence() {
+		return lastSequence;
+	}
+
+	private String send(List<ItemDelta> deltas) {
+		lastSequence = deltas.get(deltas.size() - 1).getSequence();
+		return withId(ItemDeltaLog.toJson(deltas));
+	}
+
+	private String reset(long seq) {
+		lastSequence = seq;
+		return withId("{\"reset\":true,\"seq\":" + seq + "}");
+	}
+
+	private String withId(String message) {
+		return eventIds ? message + "\r\nid: " + lastSequence : message;
+	}
+
+}
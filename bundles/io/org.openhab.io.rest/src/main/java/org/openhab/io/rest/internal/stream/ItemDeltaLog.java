@@ -0,0 +1,215 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.rest.internal.stream;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.atmosphere.cpr.Broadcaster;
+import org.openhab.core.items.GenericItem;
+import org.openhab.core.items.Item;
+import org.openhab.core.items.ItemRegistry;
+import org.openhab.core.items.ItemRegistryChangeListener;
+import org.openhab.core.items.StateChangeListener;
+import org.openhab.core.types.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the state changes of all items for the delta stream. There is a single
+ * {@link StateChangeListener} for all items, no matter how many clients are subscribed,
+ * and every change is serialized once and handed to one broadcaster, which writes it to
+ * all subscribers through their {@link ItemDeltaCursor}.
+ * <p>
+ * The latest changes are kept in a ring buffer, so that a client which reconnects can
+ * ask for the changes after the last sequence number it has seen. If these changes are
+ * not available any more, the client has to reload the item states.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class ItemDeltaLog implements StateChangeListener, ItemRegistryChangeListener {
+
+	private static final Logger logger = LoggerFactory.getLogger(ItemDeltaLog.class);
+
+	private final ItemDelta[] ring;
+
+	/** the sequence number of the latest delta, 0 if there has been none */
+	private long sequence = 0;
+
+	private ItemRegistry itemRegistry;
+
+	private volatile Broadcaster broadcaster;
+
+	/**
+	 * @param capacity the number of deltas kept for resuming clients
+	 */
+	public ItemDeltaLog(int capacity) {
+		this.ring = new ItemDelta[Math.max(1, capacity)];
+	}
+
+	/**
+	 * Starts listening to the state changes of all items of the registry.
+	 */
+	public void start(ItemRegistry itemRegistry) {
+		this.itemRegistry = itemRegistry;
+		itemRegistry.addItemRegistryChangeListener(this);
+		for (Item item : itemRegistry.getItems()) {
+			itemAdded(item);
+		}
+		logger.debug("Item delta stream started with {} items", itemRegistry.getItems().size());
+	}
+
+	public void stop() {
+		if (itemRegistry != null) {
+			itemRegistry.removeItemRegistryChangeListener(this);
+			for (Item item : itemRegistry.getItems()) {
+				itemRemoved(item);
+			}
+			itemRegistry = null;
+		}
+		broadcaster = null;
+	}
+
+	/**
+	 * Sets the broadcaster to which new deltas are sent.
+	 */
+	public void setBroadcaster(Broadcaster broadcaster) {
+		this.broadcaster = broadcaster;
+	}
+
+	public Broadcaster getBroadcaster() {
+		return broadcaster;
+	}
+
+	/**
+	 * @return the sequence number of the latest delta
+	 */
+	public synchronized long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Returns the deltas after the given sequence number.
+	 *
+	 * @param since the last sequence number the client has received
+	 * @return the deltas in the order of their sequence numbers, or <code>null</code> if some
+	 *         of them have already been dropped from the ring buffer or the sequence number
+	 *         is unknown, e.g. from before a restart
+	 */
+	public synchronized List<ItemDelta> getDeltasSince(long since) {
+		if (since == sequence) {
+			return new ArrayList<ItemDelta>(0);
+		}
+		if (since < 0 || since > sequence || sequence - since > ring.length) {
+			return null;
+		}
+		List<ItemDelta> deltas = new ArrayList<ItemDelta>((int) (sequence - since));
+		for (long seq = since + 1; seq <= sequence; seq++) {
+			deltas.add(ring[(int) (seq % ring.length)]);
+		}
+		return deltas;
+	}
+
+	/**
+	 * @return the latest delta, or <code>null</code> if there has been none
+	 */
+	public synchronized ItemDelta getLatest() {
+		return sequence == 0 ? null : ring[(int) (sequence % ring.length)];
+	}
+
+	/**
+	 * Records a state change and broadcasts it to the subscribers. The broadcast happens
+	 * under the lock, so that the deltas are handed to the broadcaster in the order of their
+	 * sequence numbers; it only queues the delta and does not wait for the subscribers.
+	 */
+	public synchronized ItemDelta append(String itemName, State state) {
+		ItemDelta delta = new ItemDelta(sequence + 1, itemName, state.toString(), System.currentTimeMillis());
+		sequence = delta.getSequence();
+		ring[(int) (sequence % ring.length)] = delta;
+		Broadcaster currentBroadcaster = broadcaster;
+		if (currentBroadcaster != null && !currentBroadcaster.getAtmosphereResources().isEmpty()) {
+			try {
+				currentBroadcaster.broadcast(delta);
+			} catch (IllegalStateException e) {
+				// the broadcaster has been destroyed after being idle, the next subscriber sets a new one
+				logger.debug("Item delta broadcaster is not available any more: {}", e.getMessage());
+				broadcaster = null;
+			}
+		}
+		return delta;
+	}
+
+	/**
+	 * @return the deltas as JSON array
+	 */
+	public static String toJson(Collection<ItemDelta> deltas) {
+		StringBuilder sb = new StringBuilder(deltas.size() * 64 + 2);
+		sb.append('[');
+		for (ItemDelta delta : deltas) {
+			if (sb.length() > 1) {
+				sb.append(',');
+			}
+			sb.append(delta.toJson());
+		}
+		return sb.append(']').toString();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void stateChanged(Item item, State oldState, State newState) {
+		append(item.getName(), newState);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void stateUpdated(Item item, State state) {
+		// only changes are streamed
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void allItemsChanged(Collection<String> oldItemNames) {
+		if (itemRegistry == null) {
+			return;
+		}
+		for (Item item : itemRegistry.getItems()) {
+			// the listeners are kept in a set, so adding it again does no harm
+			itemAdded(item);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void itemAdded(Item item) {
+		if (item instanceof GenericItem) {
+			((GenericItem) item).addStateChangeListener(this);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void itemRemoved(Item item) {
+		if (item instanceof GenericItem) {
+			((GenericItem) item).removeStateChangeListener(this);
+		}
+	}
+
+}
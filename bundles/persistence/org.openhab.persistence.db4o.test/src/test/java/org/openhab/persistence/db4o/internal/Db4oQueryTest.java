@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.db4o.internal;
+
+import java.io.File;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+import org.openhab.core.persistence.HistoricItem;
+
+import com.db4o.Db4oEmbedded;
+import com.db4o.ObjectContainer;
+import com.db4o.config.EmbeddedConfiguration;
+
+import junit.framework.Assert;
+
+/**
+ * @author agent
+ * @since 1.9.0
+ */
+public class Db4oQueryTest {
+
+    private static final long MINUTE = 60L * 1000;
+
+    private File dbFile;
+    private ObjectContainer container;
+    private long now;
+
+    @Before
+    public void init() {
+        dbFile = new File("./target/etc/db4o/query-test.db4o");
+        dbFile.getParentFile().mkdirs();
+        dbFile.delete();
+
+        EmbeddedConfiguration config = Db4oEmbedded.newConfiguration();
+        Db4oItem.configure(config.common());
+        container = Db4oEmbedded.openFile(config, dbFile.getPath());
+
+        // one value per hour over the last ten days, the newest one a minute ago
+        now = System.currentTimeMillis();
+        for (int index = 0; index < 240; index++) {
+            store("Temperature", index, new Date(now - MINUTE - index * 60 * MINUTE));
+            store("Humidity", index, new Date(now - 2 * MINUTE - index * 60 * MINUTE));
+        }
+        container.commit();
+    }
+
+    @After
+    public void cleanup() {
+        container.close();
+        dbFile.delete();
+    }
+
+    @Test
+    public void testLatestValue() {
+        FilterCriteria filter = new FilterCriteria().setItemName("Temperature").setOrdering(Ordering.DESCENDING)
+                .setPageSize(1);
+
+        List<HistoricItem> result = Db4oPersistenceService.query(container, filter);
+
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals(new DecimalType(0), result.get(0).getState());
+    }
+
+    @Test
+    public void testDescendingPageBeyondFirstWindow() {
+        FilterCriteria filter = new FilterCriteria().setItemName("Temperature").setOrdering(Ordering.DESCENDING)
+                .setPageSize(10).setPageNumber(3);
+
+        List<HistoricItem> result = Db4oPersistenceService.query(container, filter);
+
+        Assert.assertEquals(10, result.size());
+        for (int index = 0; index < 10; index++) {
+            Assert.assertEquals(new DecimalType(30 + index), result.get(index).getState());
+        }
+    }
+
+    @Test
+    public void testAscendingFromBeginDate() {
+        Date begin = new Date(now - MINUTE - 100 * 60 * MINUTE);
+        FilterCriteria filter = new FilterCriteria().setItemName("Temperature").setOrdering(Ordering.ASCENDING)
+                .setBeginDate(begin).setPageSize(5);
+
+        List<HistoricItem> result = Db4oPersistenceService.query(container, filter);
+
+        Assert.assertEquals(5, result.size());
+        for (int index = 0; index < 5; index++) {
+            Assert.assertEquals(new DecimalType(100 - index), result.get(index).getState());
+        }
+    }
+
+    @Test
+    public void testLastPageIsIncomplete() {
+        FilterCriteria filter = new FilterCriteria().setItemName("Humidity").setOrdering(Ordering.DESCENDING)
+                .setPageSize(100).setPageNumber(2);
+
+        List<HistoricItem> result = Db4oPersistenceService.query(container, filter);
+
+        Assert.assertEquals(40, result.size());
+        Assert.assertEquals(new DecimalType(200), result.get(0).getState());
+        Assert.assertEquals(new DecimalType(239), result.get(39).getState());
+    }
+
+    private void store(String name, int value, Date timestamp) {
+        Db4oItem item = new Db4oItem();
+        item.setName(name);
+        item.setState(new DecimalType(value));
+        item.setTimestamp(timestamp);
+        container.store(item);
+    }
+
+}
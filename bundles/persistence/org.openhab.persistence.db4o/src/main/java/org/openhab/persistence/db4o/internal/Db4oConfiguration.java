@@ -40,6 +40,12 @@ public class Db4oConfiguration {
     /** the amount of backup files allowed in DB_FOLDER_NAME (optional, defaults to '7') */
     public static int maxBackups = 7;
 
+    /**
+     * the defragmentation interval as Cron-Expression (optional, defaults to no defragmentation). The
+     * database cannot be used while it is defragmented, so a time of low activity should be chosen.
+     */
+    public static String defragInterval = null;
+
     /**
      * {@inheritDoc}
      */
@@ -58,6 +64,11 @@ public class Db4oConfiguration {
             }
         }
 
+        String defragIntervalString = (String) config.get("defraginterval");
+        if (StringUtils.isNotBlank(defragIntervalString)) {
+            defragInterval = defragIntervalString;
+        }
+
         String maxBackupsString = (String) config.get("maxbackups");
         if (StringUtils.isNotBlank(maxBackupsString)) {
             try {
@@ -14,7 +14,7 @@ import java.util.Date;
 import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.types.State;
 
-import com.db4o.config.Configuration;
+import com.db4o.config.CommonConfiguration;
 
 /**
  * This is a Java bean used to persist item states with timestamps in the database.
@@ -61,7 +61,7 @@ public class Db4oItem implements HistoricItem {
         return DateFormat.getDateTimeInstance().format(timestamp) + ": " + name + " -> " + state.toString();
     }
 
-    static /* default */ void configure(Configuration config) {
+    static /* default */ void configure(CommonConfiguration config) {
         config.objectClass(Db4oItem.class).objectField("name").indexed(true);
         config.objectClass(Db4oItem.class).objectField("timestamp").indexed(true);
 
@@ -16,13 +16,18 @@ import static org.quartz.impl.matchers.GroupMatcher.jobGroupEquals;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.apache.commons.lang.StringUtils;
 import org.openhab.core.items.Item;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
@@ -47,6 +52,9 @@ import org.slf4j.LoggerFactory;
 import com.db4o.Db4oEmbedded;
 import com.db4o.ObjectContainer;
 import com.db4o.ObjectSet;
+import com.db4o.config.EmbeddedConfiguration;
+import com.db4o.defragment.Defragment;
+import com.db4o.defragment.DefragmentConfig;
 import com.db4o.ext.DatabaseClosedException;
 import com.db4o.ext.Db4oException;
 import com.db4o.ext.ExtObjectContainer;
@@ -68,10 +76,22 @@ public class Db4oPersistenceService implements QueryablePersistenceService {
     private static final String DB_FOLDER = getUserPersistenceDataFolder() + File.separator + "db4o";
     private static final String DB_FILE_NAME = "store.db4o";
 
+    private static final String DEFRAG_BACKUP_SUFFIX = ".defrag";
+
     private static final String SCHEDULER_GROUP = "DB4O_SchedulerGroup";
 
+    /** the time span in milliseconds of the first window of a query, widened by factor 4 up to MAX_WINDOW */
+    private static final long INITIAL_WINDOW = 60L * 60 * 1000;
+    private static final long MAX_WINDOW = 400L * 24 * 60 * 60 * 1000;
+
     private static ObjectContainer db;
 
+    /**
+     * Guards the database against being closed for defragmentation while it is used. Stores,
+     * queries and commits share the read lock, the defragmentation takes the write lock.
+     */
+    private static final ReadWriteLock lock = new ReentrantReadWriteLock();
+
     @Override
     public String getName() {
         return SERVICE_NAME;
@@ -83,7 +103,6 @@ public class Db4oPersistenceService implements QueryablePersistenceService {
             folder.mkdirs();
         }
         openDbFile();
-        Db4oItem.configure(db.ext().configure());
 
         scheduleJob();
     }
@@ -91,9 +110,14 @@ public class Db4oPersistenceService implements QueryablePersistenceService {
     public void deactivate() {
         cancelAllJobs();
 
-        if (db != null) {
-            db.close();
-            db = null;
+        lock.writeLock().lock();
+        try {
+            if (db != null) {
+                db.close();
+                db = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
@@ -113,75 +137,149 @@ public class Db4oPersistenceService implements QueryablePersistenceService {
         historicItem.setState(item.getState());
         historicItem.setTimestamp(new Date());
 
+        lock.readLock().lock();
         try {
+            if (db == null) {
+                // the database could not be reopened after the last defragmentation
+                logger.warn("Database is not open, dropping state for item '{}' as '{}'", item.getName(), alias);
+                return;
+            }
             db.store(historicItem);
             logger.debug("Stored item state '{}' -> '{}'", historicItem.getName(), historicItem.getState().toString());
         } catch (Db4oException e) {
             db.rollback();
             logger.warn("Error storing state for item '{}' as '{}': {}", item.getName(), alias, e.getMessage());
+        } finally {
+            lock.readLock().unlock();
         }
     }
 
     @Override
     public Iterable<HistoricItem> query(FilterCriteria filter) {
-        Query query = queryWithReconnect();
-
-        if (query != null) {
-            query.constrain(Db4oItem.class);
-
-            if (filter == null) {
-                filter = new FilterCriteria();
-            }
-            if (filter.getBeginDate() != null) {
-                query.descend("timestamp").constrain(filter.getBeginDate()).greater().equal();
-            }
-            if (filter.getEndDate() != null) {
-                query.descend("timestamp").constrain(filter.getEndDate()).smaller().equal();
+        if (filter == null) {
+            filter = new FilterCriteria();
+        }
+        lock.readLock().lock();
+        try {
+            if (queryWithReconnect() == null) {
+                return Collections.emptyList();
             }
-            if (filter.getItemName() != null) {
-                query.descend("name").constrain(filter.getItemName()).equal();
+            return query(db, filter);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the requested page of a query. Queries for a single item, ordered away from a known
+     * time bound, are first run on a time window next to that bound, which is evaluated by the
+     * timestamp index alone. The window is widened until it contains the requested page, so that
+     * e.g. the latest value of an item is found without looking at all of its values.
+     *
+     * @param container the database to query
+     * @param filter the query
+     * @return the page as a detached list
+     */
+    static List<HistoricItem> query(ObjectContainer container, FilterCriteria filter) {
+        int startIndex = filter.getPageNumber() * filter.getPageSize();
+        long needed = (long) startIndex + filter.getPageSize();
+
+        if (filter.getItemName() != null && filter.getPageSize() < Integer.MAX_VALUE) {
+            boolean descending = filter.getOrdering() != Ordering.ASCENDING;
+            Date bound = descending ? filter.getEndDate() : filter.getBeginDate();
+            Date limit = descending ? filter.getBeginDate() : filter.getEndDate();
+            if (bound == null && descending) {
+                bound = new Date();
             }
-            if (filter.getState() != null && filter.getOperator() != null) {
-                switch (filter.getOperator()) {
-                    case EQ:
-                        query.descend("state").constrain(filter.getState()).equal();
-                        break;
-                    case GT:
-                        query.descend("state").constrain(filter.getState()).greater();
-                        break;
-                    case LT:
-                        query.descend("state").constrain(filter.getState()).smaller();
-                        break;
-                    case NEQ:
-                        query.descend("state").constrain(filter.getState()).equal().not();
-                        break;
-                    case GTE:
-                        query.descend("state").constrain(filter.getState()).greater().equal();
-                        break;
-                    case LTE:
-                        query.descend("state").constrain(filter.getState()).smaller().equal();
+            if (bound != null) {
+                for (long window = INITIAL_WINDOW; window <= MAX_WINDOW; window *= 4) {
+                    Date edge = new Date(descending ? bound.getTime() - window : bound.getTime() + window);
+                    if (limit != null && (descending ? !edge.after(limit) : !edge.before(limit))) {
+                        // the window covers the whole range
                         break;
+                    }
+                    ObjectSet<HistoricItem> results = buildQuery(container, filter, descending ? edge : null,
+                            descending ? null : edge).execute();
+                    if (results.size() >= needed) {
+                        return page(results, startIndex, filter.getPageSize());
+                    }
                 }
             }
+        }
 
-            if (filter.getOrdering() == Ordering.ASCENDING) {
-                query.descend("timestamp").orderAscending();
-            } else {
-                query.descend("timestamp").orderDescending();
-            }
-            ObjectSet<HistoricItem> results = query.execute();
+        ObjectSet<HistoricItem> results = buildQuery(container, filter, null, null).execute();
+        return page(results, startIndex, filter.getPageSize());
+    }
 
-            int startIndex = filter.getPageNumber() * filter.getPageSize();
-            if (startIndex < results.size()) {
-                int endIndex = startIndex + filter.getPageSize();
-                if (endIndex > results.size()) {
-                    endIndex = results.size();
-                }
-                return results.subList(startIndex, endIndex);
+    /**
+     * Builds a query for the filter, additionally restricted to timestamps from <code>from</code>
+     * or up to <code>to</code>, if given.
+     */
+    private static Query buildQuery(ObjectContainer container, FilterCriteria filter, Date from, Date to) {
+        Query query = container.query();
+        query.constrain(Db4oItem.class);
+
+        if (filter.getBeginDate() != null) {
+            query.descend("timestamp").constrain(filter.getBeginDate()).greater().equal();
+        }
+        if (filter.getEndDate() != null) {
+            query.descend("timestamp").constrain(filter.getEndDate()).smaller().equal();
+        }
+        if (from != null) {
+            query.descend("timestamp").constrain(from).greater().equal();
+        }
+        if (to != null) {
+            query.descend("timestamp").constrain(to).smaller().equal();
+        }
+        if (filter.getItemName() != null) {
+            query.descend("name").constrain(filter.getItemName()).equal();
+        }
+        if (filter.getState() != null && filter.getOperator() != null) {
+            switch (filter.getOperator()) {
+                case EQ:
+                    query.descend("state").constrain(filter.getState()).equal();
+                    break;
+                case GT:
+                    query.descend("state").constrain(filter.getState()).greater();
+                    break;
+                case LT:
+                    query.descend("state").constrain(filter.getState()).smaller();
+                    break;
+                case NEQ:
+                    query.descend("state").constrain(filter.getState()).equal().not();
+                    break;
+                case GTE:
+                    query.descend("state").constrain(filter.getState()).greater().equal();
+                    break;
+                case LTE:
+                    query.descend("state").constrain(filter.getState()).smaller().equal();
+                    break;
             }
         }
 
-        return Collections.emptyList();
+        if (filter.getOrdering() == Ordering.ASCENDING) {
+            query.descend("timestamp").orderAscending();
+        } else {
+            query.descend("timestamp").orderDescending();
+        }
+        return query;
+    }
+
+    /**
+     * Copies a page of the result, activating only the objects of that page. The copy stays
+     * valid when the database is closed for defragmentation.
+     */
+    private static List<HistoricItem> page(ObjectSet<HistoricItem> results, int startIndex, int pageSize) {
+        int size = results.size();
+        if (startIndex >= size) {
+            return Collections.emptyList();
+        }
+        int endIndex = (int) Math.min((long) startIndex + pageSize, size);
+        List<HistoricItem> page = new ArrayList<HistoricItem>(endIndex - startIndex);
+        for (int index = startIndex; index < endIndex; index++) {
+            page.add(results.get(index));
+        }
+        return page;
     }
 
     /**
@@ -194,6 +292,9 @@ public class Db4oPersistenceService implements QueryablePersistenceService {
      */
     private Query queryWithReconnect() {
         Query query = null;
+        if (db == null) {
+            return null;
+        }
         try {
             query = db.query();
         } catch (DatabaseClosedException dce) {
@@ -204,8 +305,26 @@ public class Db4oPersistenceService implements QueryablePersistenceService {
         return query;
     }
 
+    /**
+     * Opens the database again after a defragmentation. If that fails, the handle stays
+     * <code>null</code> and the stores are dropped until the service is activated again.
+     */
+    private static void reopenDbFile(String fileName) {
+        try {
+            openDbFile();
+        } catch (Db4oException e) {
+            logger.error("Could not reopen database '{}' after defragmentation: {}", fileName, e.getMessage());
+        }
+    }
+
     private static void openDbFile() {
-        db = Db4oEmbedded.openFile(Db4oEmbedded.newConfiguration(), DB_FOLDER + File.separator + DB_FILE_NAME);
+        db = Db4oEmbedded.openFile(newConfiguration(), DB_FOLDER + File.separator + DB_FILE_NAME);
+    }
+
+    private static EmbeddedConfiguration newConfiguration() {
+        EmbeddedConfiguration config = Db4oEmbedded.newConfiguration();
+        Db4oItem.configure(config.common());
+        return config;
     }
 
     /**
@@ -233,6 +352,18 @@ public class Db4oPersistenceService implements QueryablePersistenceService {
 
             sched.scheduleJob(backupJob, backupTrigger);
             logger.debug("Scheduled Backup-Job with cron expression '{}'", backupInterval);
+
+            // schedule defragment-job
+            if (StringUtils.isNotBlank(defragInterval)) {
+                JobDetail defragJob = newJob(DefragmentJob.class).withIdentity("Defragment_DB", SCHEDULER_GROUP)
+                        .build();
+
+                CronTrigger defragTrigger = newTrigger().withIdentity("Defragment_DB", SCHEDULER_GROUP)
+                        .withSchedule(CronScheduleBuilder.cronSchedule(defragInterval)).build();
+
+                sched.scheduleJob(defragJob, defragTrigger);
+                logger.debug("Scheduled Defragment-Job with cron expression '{}'", defragInterval);
+            }
         } catch (SchedulerException e) {
             logger.warn("Could not create Job: {}", e.getMessage());
         }
@@ -267,7 +398,11 @@ public class Db4oPersistenceService implements QueryablePersistenceService {
         @Override
         public void execute(JobExecutionContext context) throws JobExecutionException {
             long startTime = System.currentTimeMillis();
+            lock.readLock().lock();
             try {
+                if (db == null) {
+                    return;
+                }
                 db.commit();
                 logger.trace("successfully commited db4o transaction in {}ms", System.currentTimeMillis() - startTime);
             } catch (Db4oException e) {
@@ -278,6 +413,8 @@ public class Db4oPersistenceService implements QueryablePersistenceService {
                     // ignore a failed rollback if database is closed (what happens regularly during shutdown)
                     logger.debug("Cannot roll back transaction because database is closed: {}", e.getMessage());
                 }
+            } finally {
+                lock.readLock().unlock();
             }
         }
 
@@ -352,6 +489,58 @@ public class Db4oPersistenceService implements QueryablePersistenceService {
 
     }
 
+    /**
+     * A quartz scheduler job to defragment the db4o database, which reclaims the space of
+     * deleted and updated objects and rebuilds the indexes. The database is closed while the
+     * job runs; stores and queries wait until it is reopened.
+     *
+     * @author agent
+     * @since 1.9.0
+     */
+    @DisallowConcurrentExecution
+    public static class DefragmentJob implements Job {
+
+        @Override
+        public void execute(JobExecutionContext context) throws JobExecutionException {
+            long startTime = System.currentTimeMillis();
+            String fileName = DB_FOLDER + File.separator + DB_FILE_NAME;
+            File file = new File(fileName);
+
+            lock.writeLock().lock();
+            try {
+                if (db == null) {
+                    return;
+                }
+                long sizeBefore = file.length();
+                db.commit();
+                db.close();
+                db = null;
+                try {
+                    DefragmentConfig config = new DefragmentConfig(fileName, fileName + DEFRAG_BACKUP_SUFFIX);
+                    config.forceBackupDelete(true);
+                    config.db4oConfig(newConfiguration());
+                    Defragment.defrag(config);
+                    logger.debug("successfully defragmented DB4O database from {} to {} bytes in {}ms",
+                            new Object[] { sizeBefore, file.length(), System.currentTimeMillis() - startTime });
+                    // the backup is only needed while Defragment runs and would double the disk usage
+                    File backup = new File(config.backupPath());
+                    if (backup.exists() && !backup.delete()) {
+                        logger.warn("Could not delete the defragmentation backup '{}'", backup.getPath());
+                    }
+                } catch (IOException e) {
+                    logger.warn("Error defragmenting database '{}': {}", fileName, e.getMessage());
+                } catch (Db4oException e) {
+                    logger.warn("Error defragmenting database '{}': {}", fileName, e.getMessage());
+                } finally {
+                    reopenDbFile(fileName);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+    }
+
     static private String getUserPersistenceDataFolder() {
         String progArg = System.getProperty("smarthome.userdata");
         if (progArg != null) {
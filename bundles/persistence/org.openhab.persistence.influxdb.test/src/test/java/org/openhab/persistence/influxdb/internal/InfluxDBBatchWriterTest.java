@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.BatchPoints;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.Assert;
+import retrofit.RetrofitError;
+import retrofit.client.Header;
+import retrofit.client.Response;
+
+/**
+ * @author agent
+ * @since 1.9.0
+ */
+public class InfluxDBBatchWriterTest {
+
+    private File directory;
+    private FakeInfluxDB fake;
+
+    @Before
+    public void init() throws IOException {
+        directory = new File("./target/influxdb-test");
+        FileUtils.deleteDirectory(directory);
+        directory.mkdirs();
+        fake = new FakeInfluxDB();
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testPointsAreWrittenInBatches() {
+        InfluxDBBatchWriter writer = newWriter(2, 100, 100, null);
+        writer.start();
+        for (int index = 0; index < 5; index++) {
+            writer.add("Item", index, index);
+        }
+        writer.stop();
+
+        Assert.assertEquals(5, writer.getWrittenCount());
+        Assert.assertEquals(5, fake.points);
+        Assert.assertTrue(fake.batches.size() >= 3);
+        for (Integer size : fake.batches) {
+            Assert.assertTrue(size <= 2);
+        }
+    }
+
+    @Test
+    public void testFailedBatchIsRetried() {
+        fake.failures = 1;
+        InfluxDBBatchWriter writer = newWriter(10, 100, 100, null);
+        writer.start();
+        for (int index = 0; index < 3; index++) {
+            writer.add("Item", index, index);
+        }
+        awaitWritten(writer, 3);
+        writer.stop();
+
+        Assert.assertEquals(1, writer.getFailedBatchCount());
+        Assert.assertEquals(3, writer.getWrittenCount());
+        Assert.assertEquals(0, writer.getDroppedCount());
+    }
+
+    @Test
+    public void testRejectedBatchIsDropped() {
+        fake.reject = true;
+        InfluxDBBatchWriter writer = newWriter(10, 100, 100, null);
+        writer.start();
+        for (int index = 0; index < 3; index++) {
+            writer.add("Item", index, index);
+        }
+        writer.stop();
+
+        Assert.assertEquals(0, writer.getWrittenCount());
+        Assert.assertEquals(3, writer.getDroppedCount());
+        Assert.assertEquals(0, writer.getQueueDepth());
+    }
+
+    @Test
+    public void testSpilledPointsAreOnDiskBeforeStop() throws IOException {
+        fake.failures = Integer.MAX_VALUE;
+        File spillFile = new File(directory, "spill");
+        InfluxDBBatchWriter writer = newWriter(1, 60000, 1, spillFile);
+        // not started, so the buffer of one point stays full and the older points are spilled
+        writer.add("Item", 0, 0);
+        writer.add("Item", 1.5, 1);
+        writer.add("Item", "two", 2);
+
+        Assert.assertEquals(2, writer.getSpilledCount());
+        Assert.assertEquals(1, writer.getQueueDepth());
+        List<Object> values = new ArrayList<Object>();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile)));
+        try {
+            InfluxDBBatchWriter.PendingPoint point;
+            while ((point = InfluxDBBatchWriter.readPoint(in)) != null) {
+                values.add(point.value);
+            }
+        } finally {
+            in.close();
+        }
+        Assert.assertEquals(2, values.size());
+        Assert.assertEquals(BigInteger.ZERO, values.get(0));
+        Assert.assertEquals(1.5, values.get(1));
+    }
+
+    private InfluxDBBatchWriter newWriter(int batchSize, long flushInterval, int bufferSize, File spillFile) {
+        InfluxDB influxDB = (InfluxDB) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { InfluxDB.class }, fake);
+        return new InfluxDBBatchWriter(influxDB, "test", "default", batchSize, flushInterval, bufferSize, spillFile);
+    }
+
+    private void awaitWritten(InfluxDBBatchWriter writer, long count) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writer.getWrittenCount() < count && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Records the written batches; fails or rejects them on demand.
+     */
+    private static class FakeInfluxDB implements InvocationHandler {
+        final List<Integer> batches = Collections.synchronizedList(new ArrayList<Integer>());
+        volatile int points;
+        volatile int failures;
+        volatile boolean reject;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (!"write".equals(method.getName()) || args.length != 1) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            if (reject) {
+                String url = "http://localhost:8086/write";
+                throw RetrofitError.httpError(url,
+                        new Response(url, 400, "Bad Request", Collections.<Header> emptyList(), null), null, null);
+            }
+            if (failures > 0) {
+                failures--;
+                throw new RuntimeException("connection refused");
+            }
+            BatchPoints batchPoints = (BatchPoints) args[0];
+            batches.add(batchPoints.getPoints().size());
+            points += batchPoints.getPoints().size();
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,369 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.Point;
+import org.openhab.persistence.spool.WriteBehindBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import retrofit.RetrofitError;
+
+/**
+ * Writes points to InfluxDB in batches through a {@link WriteBehindBuffer}. A batch is sent as
+ * soon as <code>batchSize</code> points are waiting or <code>flushInterval</code> has passed.
+ * <p>
+ * Points of a batch which could not be written are put back into the bounded buffer and retried
+ * with an increasing delay. Points which do not fit into the buffer any more, the oldest first,
+ * are appended to a spill file, if one is configured, and replayed once InfluxDB accepts writes
+ * again; otherwise they are dropped. Batches which InfluxDB rejects as invalid are dropped instead
+ * of being retried. {@link #add(String, Object, long)} never blocks on the database.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class InfluxDBBatchWriter implements WriteBehindBuffer.Writer<InfluxDBBatchWriter.PendingPoint>,
+        WriteBehindBuffer.Spill<InfluxDBBatchWriter.PendingPoint> {
+
+    private static final Logger logger = LoggerFactory.getLogger(InfluxDBBatchWriter.class);
+
+    private static final String VALUE_COLUMN_NAME = "value";
+    private static final TimeUnit timeUnit = TimeUnit.MILLISECONDS;
+
+    private static final byte TYPE_INTEGER = 0;
+    private static final byte TYPE_DOUBLE = 1;
+    private static final byte TYPE_STRING = 2;
+
+    /**
+     * A point waiting to be written. Points are built when the batch is sent, so that waiting
+     * points can be written to the spill file.
+     */
+    static class PendingPoint {
+        final String name;
+        final Object value;
+        final long time;
+
+        PendingPoint(String name, Object value, long time) {
+            this.name = name;
+            this.value = value;
+            this.time = time;
+        }
+
+        Point toPoint() {
+            return Point.measurement(name).field(VALUE_COLUMN_NAME, value).time(time, timeUnit).build();
+        }
+    }
+
+    private final InfluxDB influxDB;
+    private final String dbName;
+    private final String retentionPolicy;
+    private final int batchSize;
+    private final File spillFile;
+
+    private final WriteBehindBuffer<PendingPoint> buffer;
+    private final Object spillLock = new Object();
+    private DataOutputStream spillOut;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+
+    /**
+     * @param influxDB the client to write with
+     * @param dbName the database name
+     * @param retentionPolicy the retention policy of the points
+     * @param batchSize the number of points which are sent as one batch
+     * @param flushInterval the time in milliseconds after which waiting points are sent
+     * @param bufferSize the maximum number of points kept in memory
+     * @param spillFile the file points are moved to when the buffer is full, or <code>null</code> to drop them
+     */
+    public InfluxDBBatchWriter(InfluxDB influxDB, String dbName, String retentionPolicy, int batchSize,
+            long flushInterval, int bufferSize, File spillFile) {
+        this.influxDB = influxDB;
+        this.dbName = dbName;
+        this.retentionPolicy = retentionPolicy;
+        this.batchSize = Math.max(1, batchSize);
+        this.spillFile = spillFile;
+        this.buffer = new WriteBehindBuffer<PendingPoint>("InfluxDB batch writer", this, this.batchSize,
+                (int) Math.min(Integer.MAX_VALUE, flushInterval), bufferSize, spillFile != null ? this : null);
+    }
+
+    public void start() {
+        buffer.start();
+    }
+
+    /**
+     * Stops the buffer after a last attempt to write the waiting points. Points which still could
+     * not be written are moved to the spill file, if there is one.
+     */
+    public void stop() {
+        buffer.stop();
+        closeSpill();
+        logger.debug("influxdb batch writer stopped: {}", this);
+    }
+
+    /**
+     * Queues a value for writing.
+     *
+     * @param name the measurement name
+     * @param value the field value
+     * @param time the time in milliseconds
+     */
+    public void add(String name, Object value, long time) {
+        buffer.add(new PendingPoint(name, value, time));
+    }
+
+    /**
+     * @return <code>false</code> if the batch could not be written and should be retried
+     */
+    @Override
+    public boolean write(List<PendingPoint> batch) {
+        BatchPoints batchPoints = BatchPoints.database(dbName).retentionPolicy(retentionPolicy).build();
+        for (PendingPoint point : batch) {
+            batchPoints.point(point.toPoint());
+        }
+        try {
+            influxDB.write(batchPoints);
+        } catch (RuntimeException e) {
+            logger.error("storing {} points failed", batch.size());
+            InfluxDBPersistenceService.handleDatabaseException(e);
+            if (isRejected(e)) {
+                // the points would be rejected again on every retry
+                rejected.addAndGet(batch.size());
+                logger.warn("influxdb rejected the batch, dropped {} points", batch.size());
+                return true;
+            }
+            return false;
+        }
+        logger.trace("wrote {} points to influxdb", batch.size());
+        return true;
+    }
+
+    /**
+     * @return <code>true</code> if InfluxDB has answered the write with a client error, e.g. for an invalid point
+     */
+    static boolean isRejected(RuntimeException e) {
+        if (!(e instanceof RetrofitError)) {
+            return false;
+        }
+        RetrofitError error = (RetrofitError) e;
+        return error.getKind() == RetrofitError.Kind.HTTP && error.getResponse() != null
+                && error.getResponse().getStatus() >= 400 && error.getResponse().getStatus() < 500
+                && error.getResponse().getStatus() != 401 && error.getResponse().getStatus() != 403;
+    }
+
+    @Override
+    public boolean spill(List<PendingPoint> points) {
+        synchronized (spillLock) {
+            try {
+                if (spillOut == null) {
+                    spillOut = new DataOutputStream(
+                            new BufferedOutputStream(new FileOutputStream(spillFile, true)));
+                }
+                for (PendingPoint point : points) {
+                    writePoint(spillOut, point);
+                }
+                // the points must not be lost in the stream's buffer if openHAB is killed
+                spillOut.flush();
+                return true;
+            } catch (IOException e) {
+                logger.error("could not spill {} points to '{}': {}", points.size(), spillFile, e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    private void closeSpill() {
+        synchronized (spillLock) {
+            if (spillOut != null) {
+                try {
+                    spillOut.close();
+                } catch (IOException e) {
+                    logger.error("could not close spill file '{}': {}", spillFile, e.getMessage());
+                }
+                spillOut = null;
+            }
+        }
+    }
+
+    /**
+     * Writes the points of the spill file, once the buffer has been emptied. The file is read in
+     * chunks of the batch size. Once a chunk cannot be written, it and all following points are
+     * spilled again.
+     */
+    @Override
+    public void replay() {
+        File replayFile = new File(spillFile.getPath() + ".replay");
+        synchronized (spillLock) {
+            if (!replayFile.exists()) {
+                closeSpill();
+                if (!spillFile.exists() || spillFile.length() == 0 || !spillFile.renameTo(replayFile)) {
+                    return;
+                }
+            }
+        }
+        logger.debug("replaying spilled points from '{}'", replayFile);
+        List<PendingPoint> batch = new ArrayList<PendingPoint>(batchSize);
+        boolean ok = true;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(replayFile)));
+            try {
+                PendingPoint point;
+                while ((point = readPoint(in)) != null) {
+                    batch.add(point);
+                    if (batch.size() >= batchSize) {
+                        ok = replayChunk(batch, ok);
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            logger.error("could not read spill file '{}': {}", replayFile, e.getMessage());
+        }
+        replayChunk(batch, ok);
+        if (!replayFile.delete()) {
+            logger.warn("could not delete replayed spill file '{}'", replayFile);
+        }
+    }
+
+    /**
+     * Writes a chunk of spilled points, or spills it again if it cannot be written.
+     *
+     * @param write <code>false</code> if a previous chunk has failed and the points are spilled right away
+     * @return <code>false</code> if the chunk has been spilled again
+     */
+    private boolean replayChunk(List<PendingPoint> batch, boolean write) {
+        if (batch.isEmpty()) {
+            return write;
+        }
+        boolean ok = write && write(batch);
+        if (ok) {
+            replayed.addAndGet(batch.size());
+        } else if (!spill(batch)) {
+            logger.warn("dropped {} spilled points", batch.size());
+        }
+        batch.clear();
+        return ok;
+    }
+
+    static void writePoint(DataOutputStream out, PendingPoint point) throws IOException {
+        out.writeUTF(point.name);
+        out.writeLong(point.time);
+        Object value = point.value;
+        if (value instanceof BigInteger || value instanceof Long || value instanceof Integer) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeUTF(value.toString());
+        } else if (value instanceof Number) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else {
+            out.writeByte(TYPE_STRING);
+            out.writeUTF(String.valueOf(value));
+        }
+    }
+
+    /**
+     * @return the next point, or <code>null</code> at the end of the file
+     */
+    static PendingPoint readPoint(DataInputStream in) throws IOException {
+        String name;
+        try {
+            name = in.readUTF();
+        } catch (EOFException e) {
+            return null;
+        }
+        long time = in.readLong();
+        byte type = in.readByte();
+        Object value;
+        switch (type) {
+            case TYPE_INTEGER:
+                value = new BigInteger(in.readUTF());
+                break;
+            case TYPE_DOUBLE:
+                value = in.readDouble();
+                break;
+            case TYPE_STRING:
+                value = in.readUTF();
+                break;
+            default:
+                throw new IOException("Unknown value type " + type);
+        }
+        return new PendingPoint(name, value, time);
+    }
+
+    /**
+     * @return the number of points waiting in memory
+     */
+    public int getQueueDepth() {
+        return buffer.getQueueDepth();
+    }
+
+    /**
+     * @return the number of points accepted by InfluxDB
+     */
+    public long getWrittenCount() {
+        return buffer.getWrittenCount() + replayed.get() - rejected.get();
+    }
+
+    public long getFailedBatchCount() {
+        return buffer.getFailedBatchCount();
+    }
+
+    /**
+     * @return the number of points which were rejected by InfluxDB or did not fit into the buffer
+     */
+    public long getDroppedCount() {
+        return buffer.getDroppedCount() + rejected.get();
+    }
+
+    public long getSpilledCount() {
+        return buffer.getSpilledCount();
+    }
+
+    public long getBatchCount() {
+        return buffer.getBatchCount();
+    }
+
+    /**
+     * @return the duration of the last successful write in milliseconds
+     */
+    public long getLastLatency() {
+        return buffer.getLastLatency();
+    }
+
+    /**
+     * @return the average duration of the successful writes in milliseconds
+     */
+    public long getAverageLatency() {
+        return buffer.getAverageLatency();
+    }
+
+    @Override
+    public String toString() {
+        return "InfluxDBBatchWriter [" + buffer + ", replayed=" + replayed + ", rejected=" + rejected + "]";
+    }
+
+}
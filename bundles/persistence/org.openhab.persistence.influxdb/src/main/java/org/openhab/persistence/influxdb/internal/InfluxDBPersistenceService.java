@@ -10,6 +10,7 @@ package org.openhab.persistence.influxdb.internal;
 
 import static org.apache.commons.lang.StringUtils.isBlank;
 
+import java.io.File;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -21,7 +22,6 @@ import java.util.concurrent.TimeUnit;
 
 import org.influxdb.InfluxDB;
 import org.influxdb.InfluxDBFactory;
-import org.influxdb.dto.Point;
 import org.influxdb.dto.Pong;
 import org.influxdb.dto.Query;
 import org.influxdb.dto.QueryResult.Result;
@@ -68,6 +68,10 @@ import retrofit.RetrofitError;
  * The defaults for the database name, the database user and the database url are "openhab",
  * "openhab" and "http://127.0.0.1:8086".
  *
+ * Values are not written by {@link #store(Item, String)} itself but handed to an
+ * {@link InfluxDBBatchWriter}, which sends them in batches and keeps them while InfluxDB is not
+ * reachable.
+ *
  * @author Theo Weiss - Initial Contribution, rewrite of org.openhab.persistence.influxdb > 0.9
  *         support
  * @since 1.8.0
@@ -80,6 +84,10 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
     private static final String DIGITAL_VALUE_OFF = "0";
     private static final String DIGITAL_VALUE_ON = "1";
     private static final String VALUE_COLUMN_NAME = "value";
+    private static final String RETENTION_POLICY = "default";
+    private static final int DEFAULT_BATCH_SIZE = 200;
+    private static final int DEFAULT_FLUSH_INTERVAL = 1000;
+    private static final int DEFAULT_BUFFER_SIZE = 10000;
     private ItemRegistry itemRegistry;
     private InfluxDB influxDB;
     private static final Logger logger = LoggerFactory.getLogger(InfluxDBPersistenceService.class);
@@ -91,6 +99,11 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
     private String password;
     private boolean isProperlyConfigured;
     private boolean connected;
+    private int batchSize;
+    private int flushInterval;
+    private int bufferSize;
+    private File spillFile;
+    private volatile InfluxDBBatchWriter batchWriter;
 
     public void setItemRegistry(ItemRegistry itemRegistry) {
         this.itemRegistry = itemRegistry;
@@ -129,6 +142,12 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
             logger.debug("using default db name {}", DEFAULT_DB);
         }
 
+        batchSize = getIntConfig(config, "batchSize", DEFAULT_BATCH_SIZE);
+        flushInterval = getIntConfig(config, "flushInterval", DEFAULT_FLUSH_INTERVAL);
+        bufferSize = getIntConfig(config, "bufferSize", DEFAULT_BUFFER_SIZE);
+        String spillFileName = (String) config.get("spillFile");
+        spillFile = isBlank(spillFileName) ? null : new File(spillFileName.trim());
+
         isProperlyConfigured = true;
 
         connect();
@@ -150,7 +169,11 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
             // reuse an existing InfluxDB object because concerning the database it has no state
             // connection
             influxDB = InfluxDBFactory.connect(url, user, password);
-            influxDB.enableBatch(200, 100, timeUnit);
+        }
+        if (batchWriter == null) {
+            batchWriter = new InfluxDBBatchWriter(influxDB, dbName, RETENTION_POLICY, batchSize, flushInterval,
+                    bufferSize, spillFile);
+            batchWriter.start();
         }
         connected = true;
     }
@@ -182,7 +205,25 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
         return dbStatus;
     }
 
+    private int getIntConfig(Map<String, Object> config, String key, int defaultValue) {
+        String value = (String) config.get(key);
+        if (isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("invalid value '{}' for influxdb:{}, using {}", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
     private void disconnect() {
+        if (batchWriter != null) {
+            batchWriter.stop();
+            logger.info("influxdb writer statistics: {}", batchWriter);
+            batchWriter = null;
+        }
         influxDB = null;
         connected = false;
     }
@@ -237,17 +278,23 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
         }
         Object value = stateToObject(state);
         logger.trace("storing {} in influxdb value {}, {}", name, value, item);
-        Point point = Point.measurement(name).field(VALUE_COLUMN_NAME, value).time(System.currentTimeMillis(), timeUnit)
-                .build();
-        try {
-            influxDB.write(dbName, "default", point);
-        } catch (RuntimeException e) {
-            logger.error("storing failed with exception for item: {}", name);
-            handleDatabaseException(e);
+        InfluxDBBatchWriter writer = batchWriter;
+        if (writer == null) {
+            // disconnected concurrently
+            logger.warn("InfluxDB is not connected, dropped the value of {}", name);
+            return;
         }
+        writer.add(name, value, System.currentTimeMillis());
+    }
+
+    /**
+     * @return the writer sending the stored values, or <code>null</code> if not connected
+     */
+    InfluxDBBatchWriter getBatchWriter() {
+        return batchWriter;
     }
 
-    private void handleDatabaseException(Exception e) {
+    static void handleDatabaseException(Exception e) {
         if (e instanceof RetrofitError) {
             // e.g. raised if influxdb is not running
             logger.error("database connection error {}", e.getMessage());
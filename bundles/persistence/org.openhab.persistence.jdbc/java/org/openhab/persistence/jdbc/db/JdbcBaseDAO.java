@@ -9,16 +9,25 @@
 package org.openhab.persistence.jdbc.db;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.joda.time.DateTime;
+import org.apache.commons.dbutils.QueryRunner;
+import org.apache.commons.dbutils.ResultSetHandler;
+import org.apache.commons.lang.StringUtils;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.knowm.yank.Yank;
@@ -45,8 +54,10 @@ import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.types.State;
 import org.openhab.persistence.jdbc.model.ItemVO;
 import org.openhab.persistence.jdbc.model.ItemsVO;
+import org.openhab.persistence.jdbc.model.JdbcFilterCriteria.Aggregate;
 import org.openhab.persistence.jdbc.model.JdbcItem;
 import org.openhab.persistence.jdbc.utils.StringUtilsExt;
+import org.openhab.persistence.jdbc.utils.TimeBucketAggregator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -67,6 +78,20 @@ public class JdbcBaseDAO {
     protected String SQL_GET_ITEM_TABLES;
     protected String SQL_CREATE_ITEM_TABLE;
     protected String SQL_INSERT_ITEM_VALUE;
+    protected String SQL_INSERT_ITEM_VALUE_BATCH;
+    protected String SQL_ROUND_VALUE;
+    protected String SQL_PAGING;
+    // bucket number of a row for a bucket size in seconds, null if the dialect can't group by time
+    protected String SQL_TIME_BUCKET;
+
+    // fetch size of streamed history queries, 0 keeps the driver default
+    protected int fetchSize = 1000;
+
+    /**
+     * The SQL texts which have already been generated for an item table, keyed by table and statement shape.
+     * Reusing the identical text allows the drivers and databases to reuse their prepared statements and plans.
+     */
+    private final Map<String, String> sqlCache = new ConcurrentHashMap<String, String>();
 
     /********
      * INIT *
@@ -99,6 +124,11 @@ public class JdbcBaseDAO {
         SQL_GET_ITEM_TABLES = "SELECT table_name FROM information_schema.tables WHERE table_type='BASE TABLE' AND table_schema=#jdbcUriDatabaseName# AND NOT table_name=#itemsManageTable#";
         SQL_CREATE_ITEM_TABLE = "CREATE TABLE IF NOT EXISTS #tableName# (time TIMESTAMP NOT NULL, value #dbType#, PRIMARY KEY(time))";
         SQL_INSERT_ITEM_VALUE = "INSERT INTO #tableName# (TIME, VALUE) VALUES( NOW(), ? ) ON DUPLICATE KEY UPDATE VALUE= ?";
+        SQL_INSERT_ITEM_VALUE_BATCH = "INSERT INTO #tableName# (TIME, VALUE) VALUES( ?, ? ) ON DUPLICATE KEY UPDATE VALUE= VALUES(VALUE)";
+        SQL_ROUND_VALUE = "ROUND(value,#decimals#)";
+        // parameters are bound by pagingParams(offset, limit)
+        SQL_PAGING = " LIMIT ?,?";
+        SQL_TIME_BUCKET = "FLOOR(UNIX_TIMESTAMP(time) / ?)";
     }
 
     /**
@@ -259,6 +289,7 @@ public class JdbcBaseDAO {
     public void doUpdateItemTableNames(List<ItemVO> vol) {
         String sql = updateItemTableNamesProvider(vol);
         Yank.execute(sql, null);
+        sqlCache.clear();
     }
 
     public void doCreateItemTable(ItemVO vo) {
@@ -269,24 +300,127 @@ public class JdbcBaseDAO {
 
     public void doStoreItemValue(Item item, ItemVO vo) {
         vo = storeItemValueProvider(item, vo);
-        String sql = StringUtilsExt.replaceArrayMerge(SQL_INSERT_ITEM_VALUE, new String[] { "#tableName#" },
-                new String[] { vo.getTableName() });
+        String sql = insertItemValueProvider(vo);
         Object[] params = new Object[] { vo.getValue(), vo.getValue() };
         logger.debug("JDBC::doStoreItemValue sql={} value='{}'", sql, vo.getValue());
         Yank.execute(sql, params);
     }
 
-    public List<HistoricItem> doGetHistItemFilterQuery(Item item, FilterCriteria filter, int numberDecimalcount,
-            String table, String name) {
-        String sql = histItemFilterQueryProvider(filter, numberDecimalcount, table, name);
-        logger.debug("JDBC::doGetHistItemFilterQuery sql={}", sql);
-        List<Object[]> m = Yank.queryObjectArrays(sql, null);
+    /**
+     * Converts the state of the item into the value to store, without storing it.
+     * The value is stored later on through {@link #doStoreItemValues(List)}.
+     */
+    public ItemVO doPrepareItemValue(Item item, ItemVO vo) {
+        return storeItemValueProvider(item, vo);
+    }
+
+    /**
+     * Stores several prepared values of the same item table with a single JDBC batch.
+     * Every value is stored with its own time instead of the current database time.
+     *
+     * @return true if the batch has been executed successfully
+     */
+    public boolean doStoreItemValues(List<ItemVO> vol) {
+        String sql = insertItemValuesProvider(vol.get(0));
+        Object[][] params = new Object[vol.size()][];
+        for (int i = 0; i < vol.size(); i++) {
+            params[i] = new Object[] { new Timestamp(vol.get(i).getTime().getTime()), vol.get(i).getValue() };
+        }
+        logger.debug("JDBC::doStoreItemValues sql={} count={}", sql, vol.size());
+        return Yank.executeBatch(sql, params) != null;
+    }
+
+    public List<HistoricItem> doGetHistItemFilterQuery(final Item item, FilterCriteria filter,
+            int numberDecimalcount, String table, String name) {
+        List<Object> params = new ArrayList<Object>(4);
+        String sql = histItemFilterQueryProvider(filter, numberDecimalcount, table, name, params);
+        logger.debug("JDBC::doGetHistItemFilterQuery sql={} params={}", sql, params);
+        try {
+            return queryStreaming(sql, params.toArray(), new ResultSetHandler<List<HistoricItem>>() {
+                @Override
+                public List<HistoricItem> handle(ResultSet rs) throws SQLException {
+                    List<HistoricItem> items = new ArrayList<HistoricItem>();
+                    while (rs.next()) {
+                        items.add(new JdbcItem(item.getName(), getState(item, rs.getObject(2)),
+                                objectAsDate(rs.getObject(1))));
+                    }
+                    return items;
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("JDBC::doGetHistItemFilterQuery: query failed sql={} : {}", sql, e.getMessage());
+            return new ArrayList<HistoricItem>();
+        }
+    }
 
-        List<HistoricItem> items = new ArrayList<HistoricItem>();
-        for (int i = 0; i < m.size(); i++) {
-            items.add(new JdbcItem(item.getName(), getState(item, m.get(i)[1]), objectAsDate(m.get(i)[0])));
+    /**
+     * Returns the filtered values downsampled into buckets of the given resolution, one historic item per bucket.
+     * Numeric items are aggregated by the database if the dialect supports grouping by time, otherwise the rows are
+     * streamed and aggregated in Java. Paging applies to the buckets.
+     *
+     * @param resolution the bucket size in milliseconds
+     */
+    public List<HistoricItem> doGetHistItemDownsampledQuery(Item item, FilterCriteria filter, int numberDecimalcount,
+            String table, long resolution, Aggregate aggregate) {
+        boolean paged = filter.getPageSize() != 0x7fffffff;
+        final BucketCollector collector = new BucketCollector(item, numberDecimalcount,
+                paged ? filter.getPageNumber() * filter.getPageSize() : 0,
+                paged ? filter.getPageSize() : Integer.MAX_VALUE);
+        boolean grouped = SQL_TIME_BUCKET != null && aggregate != Aggregate.LAST && resolution >= 1000
+                && isNumericItemType(getItemType(item));
+
+        List<Object> params = new ArrayList<Object>(4);
+        String sql = histItemDownsampleQueryProvider(filter, table, grouped ? aggregate : null, resolution, params);
+        logger.debug("JDBC::doGetHistItemDownsampledQuery sql={} params={}", sql, params);
+        try {
+            if (grouped) {
+                return queryStreaming(sql, params.toArray(), new ResultSetHandler<List<HistoricItem>>() {
+                    @Override
+                    public List<HistoricItem> handle(ResultSet rs) throws SQLException {
+                        while (rs.next()) {
+                            if (!collector.bucket(objectAsDate(rs.getObject(1)), rs.getObject(2))) {
+                                break;
+                            }
+                        }
+                        return collector.items;
+                    }
+                });
+            }
+            final TimeBucketAggregator aggregator = new TimeBucketAggregator(resolution, aggregate, collector);
+            return queryStreaming(sql, params.toArray(), new ResultSetHandler<List<HistoricItem>>() {
+                @Override
+                public List<HistoricItem> handle(ResultSet rs) throws SQLException {
+                    while (rs.next()) {
+                        if (!aggregator.add(objectAsDate(rs.getObject(1)), rs.getObject(2))) {
+                            break;
+                        }
+                    }
+                    aggregator.finish();
+                    return collector.items;
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("JDBC::doGetHistItemDownsampledQuery: query failed sql={} : {}", sql, e.getMessage());
+            return new ArrayList<HistoricItem>();
         }
-        return items;
+    }
+
+    /**
+     * Runs a query on the pool of Yank and hands the open result set to the handler, so that rows can be processed
+     * while they are read instead of being collected into a list first.
+     */
+    protected <T> T queryStreaming(String sql, Object[] params, ResultSetHandler<T> handler) throws SQLException {
+        QueryRunner runner = new QueryRunner(Yank.getDataSource()) {
+            @Override
+            protected PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException {
+                PreparedStatement stmt = super.prepareStatement(conn, sql);
+                if (fetchSize != 0) {
+                    stmt.setFetchSize(fetchSize);
+                }
+                return stmt;
+            }
+        };
+        return runner.query(sql, handler, params);
     }
 
     /*************
@@ -294,35 +428,165 @@ public class JdbcBaseDAO {
      *************/
     static final DateTimeFormatter jdbcDateFormat = DateTimeFormat.forPattern("yyyy-MM-dd HH:mm:ss");
 
-    private String histItemFilterQueryProvider(FilterCriteria filter, int numberDecimalcount, String table,
-            String simpleName) {
+    /**
+     * Returns the SQL text of a history query and adds the values of its bind parameters to the given list.
+     * The text only depends on the table and on the shape of the filter, so it is generated once and then
+     * taken from the cache.
+     */
+    protected String histItemFilterQueryProvider(FilterCriteria filter, int numberDecimalcount, String table,
+            String simpleName, List<Object> params) {
         logger.debug(
                 "JDBC::getHistItemFilterQueryProvider filter = {}, numberDecimalcount = {}, table = {}, simpleName = {}",
-                filter.toString(), numberDecimalcount, table, simpleName);
+                StringUtilsExt.filterToString(filter), numberDecimalcount, table, simpleName);
+
+        boolean begin = filter.getBeginDate() != null;
+        boolean end = filter.getEndDate() != null;
+        boolean ascending = filter.getOrdering() == Ordering.ASCENDING;
+        boolean paged = filter.getPageSize() != 0x7fffffff;
+        int decimals = "NUMBERITEM".equalsIgnoreCase(simpleName) && numberDecimalcount > -1 ? numberDecimalcount
+                : -1;
+
+        String key = "select:" + table + ":" + (begin ? "b" : "") + (end ? "e" : "") + (ascending ? "a" : "d")
+                + (paged ? "p" : "") + decimals;
+        String sql = sqlCache.get(key);
+        if (sql == null) {
+            sql = histItemFilterQuerySql(table, begin, end, ascending, paged, decimals);
+            sqlCache.put(key, sql);
+            logger.debug("JDBC::query queryString = {}", sql);
+        }
 
-        String filterString = "";
-        if (filter.getBeginDate() != null) {
-            filterString += filterString.isEmpty() ? " WHERE" : " AND";
-            filterString += " TIME>'" + jdbcDateFormat.print(new DateTime(filter.getBeginDate().getTime())) + "'";
+        if (begin) {
+            params.add(timeParam(filter.getBeginDate()));
         }
-        if (filter.getEndDate() != null) {
-            filterString += filterString.isEmpty() ? " WHERE" : " AND";
-            filterString += " TIME<'" + jdbcDateFormat.print(new DateTime(filter.getEndDate().getTime())) + "'";
+        if (end) {
+            params.add(timeParam(filter.getEndDate()));
         }
-        filterString += (filter.getOrdering() == Ordering.ASCENDING) ? " ORDER BY time ASC" : " ORDER BY time DESC ";
-        if (filter.getPageSize() != 0x7fffffff) {
-            filterString += " LIMIT " + filter.getPageNumber() * filter.getPageSize() + "," + filter.getPageSize();
+        if (paged) {
+            Collections.addAll(params,
+                    pagingParams(filter.getPageNumber() * filter.getPageSize(), filter.getPageSize()));
         }
+        return sql;
+    }
+
+    /**
+     * Generates the SQL text of a history query with bind parameters for the time bounds and the paging.
+     *
+     * @param decimals the number of decimals the value is rounded to, or -1 to not round it
+     */
+    protected String histItemFilterQuerySql(String table, boolean begin, boolean end, boolean ascending,
+            boolean paged, int decimals) {
         // SELECT time, ROUND(value,3) FROM number_item_0114 ORDER BY time DESC LIMIT 0,1
         // rounding HALF UP
-        String queryString = "NUMBERITEM".equalsIgnoreCase(simpleName) && numberDecimalcount > -1
-                ? "SELECT time, ROUND(value," + numberDecimalcount + ") FROM " + table
-                : "SELECT time, value FROM " + table;
-        if (!filterString.isEmpty()) {
-            queryString += filterString;
+        StringBuilder sql = new StringBuilder("SELECT time, ");
+        sql.append(decimals > -1 ? roundValueProvider(decimals) : "value");
+        sql.append(" FROM ").append(table);
+        if (begin) {
+            sql.append(" WHERE TIME>?");
         }
-        logger.debug("JDBC::query queryString = {}", queryString);
-        return queryString;
+        if (end) {
+            sql.append(begin ? " AND" : " WHERE").append(" TIME<?");
+        }
+        sql.append(ascending ? " ORDER BY time ASC" : " ORDER BY time DESC");
+        if (paged) {
+            sql.append(SQL_PAGING);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Returns the SQL text of a downsampled history query and adds the values of its bind parameters to the list.
+     *
+     * @param aggregate the aggregate to group by time in SQL, or null to select the raw rows for the aggregation
+     *            in Java
+     */
+    protected String histItemDownsampleQueryProvider(FilterCriteria filter, String table, Aggregate aggregate,
+            long resolution, List<Object> params) {
+        boolean begin = filter.getBeginDate() != null;
+        boolean end = filter.getEndDate() != null;
+        boolean ascending = filter.getOrdering() == Ordering.ASCENDING;
+
+        String key = "downsample:" + table + ":" + (begin ? "b" : "") + (end ? "e" : "") + (ascending ? "a" : "d")
+                + aggregate;
+        String sql = sqlCache.get(key);
+        if (sql == null) {
+            sql = aggregate == null ? histItemFilterQuerySql(table, begin, end, ascending, false, -1)
+                    : histItemDownsampleQuerySql(table, begin, end, ascending, aggregate);
+            sqlCache.put(key, sql);
+            logger.debug("JDBC::query queryString = {}", sql);
+        }
+
+        if (begin) {
+            params.add(timeParam(filter.getBeginDate()));
+        }
+        if (end) {
+            params.add(timeParam(filter.getEndDate()));
+        }
+        if (aggregate != null) {
+            params.add(resolution / 1000);
+        }
+        return sql;
+    }
+
+    /**
+     * Generates the SQL text of a history query which groups the rows by {@link #SQL_TIME_BUCKET}. The first column
+     * is the time of the earliest row of a bucket, the second one the aggregated value.
+     */
+    protected String histItemDownsampleQuerySql(String table, boolean begin, boolean end, boolean ascending,
+            Aggregate aggregate) {
+        // SELECT MIN(time), AVG(value) FROM number_item_0114 WHERE TIME>? GROUP BY FLOOR(UNIX_TIMESTAMP(time) / ?)
+        StringBuilder sql = new StringBuilder("SELECT MIN(time), ");
+        sql.append(aggregate.name()).append("(value) FROM ").append(table);
+        if (begin) {
+            sql.append(" WHERE TIME>?");
+        }
+        if (end) {
+            sql.append(begin ? " AND" : " WHERE").append(" TIME<?");
+        }
+        sql.append(" GROUP BY ").append(SQL_TIME_BUCKET);
+        sql.append(ascending ? " ORDER BY MIN(time) ASC" : " ORDER BY MIN(time) DESC");
+        return sql.toString();
+    }
+
+    protected String roundValueProvider(int decimals) {
+        return StringUtils.replace(SQL_ROUND_VALUE, "#decimals#", String.valueOf(decimals));
+    }
+
+    protected String insertItemValueProvider(ItemVO vo) {
+        return cachedSqlProvider("insert:" + vo.getTableName(), SQL_INSERT_ITEM_VALUE, vo.getTableName(),
+                vo.getDbType());
+    }
+
+    protected String insertItemValuesProvider(ItemVO vo) {
+        return cachedSqlProvider("batch:" + vo.getTableName(), SQL_INSERT_ITEM_VALUE_BATCH, vo.getTableName(),
+                vo.getDbType());
+    }
+
+    /**
+     * Replaces all occurrences of #tableName# and #dbType# in the template, the result is cached under the given
+     * key.
+     */
+    protected String cachedSqlProvider(String key, String template, String tableName, String dbType) {
+        String sql = sqlCache.get(key);
+        if (sql == null) {
+            sql = StringUtils.replaceEach(template, new String[] { "#tableName#", "#dbType#" },
+                    new String[] { tableName, dbType });
+            sqlCache.put(key, sql);
+        }
+        return sql;
+    }
+
+    /**
+     * Converts a time bound of a query into its bind parameter.
+     */
+    protected Object timeParam(Date date) {
+        return new Timestamp(date.getTime());
+    }
+
+    /**
+     * Returns the bind parameters of {@link #SQL_PAGING} in the order the dialect expects them.
+     */
+    protected Object[] pagingParams(int offset, int limit) {
+        return new Object[] { offset, limit };
     }
 
     private String updateItemTableNamesProvider(List<ItemVO> namesList) {
@@ -453,6 +717,37 @@ public class JdbcBaseDAO {
         }
     }
 
+    /**
+     * Converts an aggregated value into the state of the item. Aggregates of numeric columns are returned by the
+     * databases in various number types, so they are not converted by the column type like in
+     * {@link #getState(Item, Object)}.
+     */
+    protected State getAggregatedState(Item item, Object v, int numberDecimalcount) {
+        if (v instanceof Number) {
+            if (item instanceof NumberItem) {
+                BigDecimal d = v instanceof BigDecimal ? (BigDecimal) v : new BigDecimal(v.toString());
+                if (numberDecimalcount > -1) {
+                    d = d.setScale(numberDecimalcount, RoundingMode.HALF_UP);
+                }
+                return new DecimalType(d);
+            } else if (item instanceof DimmerItem || item instanceof RollershutterItem) {
+                return new PercentType((int) Math.round(((Number) v).doubleValue()));
+            }
+        }
+        return getState(item, v);
+    }
+
+    protected boolean isNumericItemType(String itemType) {
+        if ("DIMMERITEM".equals(itemType) || "ROLLERSHUTTERITEM".equals(itemType)) {
+            return true;
+        }
+        if ("NUMBERITEM".equals(itemType)) {
+            String it = getSqlTypes().get(itemType).toUpperCase();
+            return it.contains("DOUBLE") || it.contains("DECIMAL") || it.contains("NUMERIC") || it.contains("INT");
+        }
+        return false;
+    }
+
     protected Date objectAsDate(Object v) {
         if (v instanceof java.lang.String) {
             // toInstant is Java8 only: return Date.from(Timestamp.valueOf(v.toString()).toInstant());
@@ -512,6 +807,34 @@ public class JdbcBaseDAO {
         return itemType;
     }
 
+    /**
+     * Collects the buckets of a downsampled query as historic items, applying the paging of the filter.
+     */
+    private class BucketCollector implements TimeBucketAggregator.Sink {
+        private final List<HistoricItem> items = new ArrayList<HistoricItem>();
+        private final Item item;
+        private final int numberDecimalcount;
+        private final int limit;
+        private int skip;
+
+        BucketCollector(Item item, int numberDecimalcount, int skip, int limit) {
+            this.item = item;
+            this.numberDecimalcount = numberDecimalcount;
+            this.skip = skip;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean bucket(Date time, Object value) {
+            if (skip > 0) {
+                skip--;
+                return true;
+            }
+            items.add(new JdbcItem(item.getName(), getAggregatedState(item, value, numberDecimalcount), time));
+            return items.size() < limit;
+        }
+    }
+
     /******************************
      * public Getters and Setters *
      ******************************/
@@ -8,20 +8,10 @@
  */
 package org.openhab.persistence.jdbc.db;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormat;
-import org.joda.time.format.DateTimeFormatter;
 import org.knowm.yank.Yank;
 import org.openhab.core.items.Item;
-import org.openhab.core.persistence.FilterCriteria;
-import org.openhab.core.persistence.FilterCriteria.Ordering;
-import org.openhab.core.persistence.HistoricItem;
 import org.openhab.persistence.jdbc.model.ItemVO;
 import org.openhab.persistence.jdbc.model.ItemsVO;
-import org.openhab.persistence.jdbc.model.JdbcItem;
 import org.openhab.persistence.jdbc.utils.StringUtilsExt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,6 +46,10 @@ public class JdbcDerbyDAO extends JdbcBaseDAO {
         // Prevent error against duplicate time value (seldom): No powerful Merge found:
         // http://www.codeproject.com/Questions/162627/how-to-insert-new-record-in-my-table-if-not-exists
         SQL_INSERT_ITEM_VALUE = "INSERT INTO #tableName# (TIME, VALUE) VALUES( CURRENT_TIMESTAMP, CAST( ? as #dbType#) )";
+        SQL_INSERT_ITEM_VALUE_BATCH = "INSERT INTO #tableName# (TIME, VALUE) VALUES( ?, CAST( ? as #dbType#) )";
+        SQL_PAGING = " OFFSET ? ROWS FETCH FIRST ? ROWS ONLY";
+        // no epoch function, downsampled queries are aggregated in Java
+        SQL_TIME_BUCKET = null;
     }
 
     private void initSqlTypes() {
@@ -136,91 +130,46 @@ public class JdbcDerbyDAO extends JdbcBaseDAO {
     @Override
     public void doStoreItemValue(Item item, ItemVO vo) {
         vo = storeItemValueProvider(item, vo);
-        String sql = StringUtilsExt.replaceArrayMerge(SQL_INSERT_ITEM_VALUE, new String[] { "#tableName#", "#dbType#" },
-                new String[] { vo.getTableName().toUpperCase(), vo.getDbType() });
+        String sql = insertItemValueProvider(vo);
         Object[] params = new Object[] { vo.getValue() };
         logger.debug("JDBC::doStoreItemValue sql={} value='{}'", sql, vo.getValue());
         Yank.execute(sql, params);
     }
 
-    @Override
-    public List<HistoricItem> doGetHistItemFilterQuery(Item item, FilterCriteria filter, int numberDecimalcount,
-            String table, String name) {
-        String sql = histItemFilterQueryProvider(filter, numberDecimalcount, table, name);
-        List<Object[]> m = Yank.queryObjectArrays(sql, null);
-
-        logger.debug("JDBC::doGetHistItemFilterQuery gor Array length={}", m.size());
-
-        List<HistoricItem> items = new ArrayList<HistoricItem>();
-        for (int i = 0; i < m.size(); i++) {
-            logger.debug("JDBC::doGetHistItemFilterQuery 0='{}' 1='{}'", m.get(i)[0], m.get(i)[1]);
-            items.add(new JdbcItem(item.getName(), getState(item, m.get(i)[1]), objectAsDate(m.get(i)[0])));
-        }
-        return items;
-    }
-
     /****************************
      * SQL generation Providers *
      ****************************/
-    static final DateTimeFormatter jdbcDateFormat = DateTimeFormat.forPattern("yyyy-MM-dd HH:mm:ss");
+    @Override
+    protected String histItemFilterQuerySql(String table, boolean begin, boolean end, boolean ascending,
+            boolean paged, int decimals) {
+        return super.histItemFilterQuerySql(table.toUpperCase(), begin, end, ascending, paged, decimals);
+    }
 
     /**
-     * @param filter
-     * @param numberDecimalcount
-     * @param table
-     * @return
+     * http://www.seemoredata.com/en/showthread.php?132-Round-function-in-Apache-Derby
+     * simulated round function in Derby: CAST(value + 0.0005 AS DECIMAL(31,3))
      */
-    private String histItemFilterQueryProvider(FilterCriteria filter, int numberDecimalcount, String table,
-            String simpleName) {
-        logger.debug(
-                "JDBC::getHistItemFilterQueryProvider filter = {}, numberDecimalcount = {}, table = {}, simpleName = {}",
-                StringUtilsExt.filterToString(filter), numberDecimalcount, table, simpleName);
-
-        String filterString = "";
-        if (filter.getBeginDate() != null) {
-            filterString += filterString.isEmpty() ? " WHERE" : " AND";
-            filterString += " TIME>'" + jdbcDateFormat.print(new DateTime(filter.getBeginDate().getTime())) + "'";
-        }
-        if (filter.getEndDate() != null) {
-            filterString += filterString.isEmpty() ? " WHERE" : " AND";
-            filterString += " TIME<'" + jdbcDateFormat.print(new DateTime(filter.getEndDate().getTime())) + "'";
-        }
-        filterString += (filter.getOrdering() == Ordering.ASCENDING) ? " ORDER BY time ASC" : " ORDER BY time DESC";
-        if (filter.getPageSize() != 0x7fffffff) {
-            // TODO: TESTING!!!
-            // filterString += " LIMIT " + filter.getPageNumber() *
-            // filter.getPageSize() + "," + filter.getPageSize();
-            // SELECT time, value FROM ohscriptfiles_sw_ace_paths_0001 ORDER BY
-            // time DESC OFFSET 1 ROWS FETCH NEXT 0 ROWS ONLY
-            // filterString += " OFFSET " + filter.getPageSize() +" ROWS FETCH
-            // FIRST||NEXT " + filter.getPageNumber() * filter.getPageSize() + "
-            // ROWS ONLY";
-            filterString += " OFFSET " + filter.getPageSize() + " ROWS FETCH FIRST "
-                    + (filter.getPageNumber() * filter.getPageSize() + 1) + " ROWS ONLY";
+    @Override
+    protected String roundValueProvider(int decimals) {
+        // rounding HALF UP
+        String round = "CAST(value + 0.";
+        for (int i = 0; i < decimals; i++) {
+            round += "0";
         }
+        // 31 is DECIMAL max precision https://db.apache.org/derby/docs/10.0/manuals/develop/develop151.html
+        return round + "5 AS DECIMAL(31," + decimals + "))";
+    }
 
-        // http://www.seemoredata.com/en/showthread.php?132-Round-function-in-Apache-Derby
-        // simulated round function in Derby: CAST(value 0.0005 AS DECIMAL(15,3))
-        // simulated round function in Derby: "CAST(value 0.0005 AS DECIMAL(15,"+numberDecimalcount+"))"
-
-        String queryString = "SELECT time,";
-        if ("NUMBERITEM".equalsIgnoreCase(simpleName) && numberDecimalcount > -1) {
-            // rounding HALF UP
-            queryString += "CAST(value 0.";
-            for (int i = 0; i < numberDecimalcount; i++) {
-                queryString += "0";
-            }
-            queryString += "5 AS DECIMAL(31," + numberDecimalcount + "))"; // 31 is DECIMAL max precision
-                                                                           // https://db.apache.org/derby/docs/10.0/manuals/develop/develop151.html
-        } else {
-            queryString += " value FROM " + table.toUpperCase();
-        }
+    @Override
+    protected String insertItemValueProvider(ItemVO vo) {
+        return cachedSqlProvider("insert:" + vo.getTableName(), SQL_INSERT_ITEM_VALUE,
+                vo.getTableName().toUpperCase(), vo.getDbType());
+    }
 
-        if (!filterString.isEmpty()) {
-            queryString += filterString;
-        }
-        logger.debug("JDBC::query queryString = {}", queryString);
-        return queryString;
+    @Override
+    protected String insertItemValuesProvider(ItemVO vo) {
+        return cachedSqlProvider("batch:" + vo.getTableName(), SQL_INSERT_ITEM_VALUE_BATCH,
+                vo.getTableName().toUpperCase(), vo.getDbType());
     }
 
     /*****************
@@ -11,7 +11,6 @@ package org.openhab.persistence.jdbc.db;
 import org.knowm.yank.Yank;
 import org.openhab.core.items.Item;
 import org.openhab.persistence.jdbc.model.ItemVO;
-import org.openhab.persistence.jdbc.utils.StringUtilsExt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,6 +41,9 @@ public class JdbcH2DAO extends JdbcBaseDAO {
         // SQL_INSERT_ITEM_VALUE = "INSERT INTO #tableName# (TIME, VALUE) VALUES( NOW(), CAST( ? as #dbType#) )";
         // http://stackoverflow.com/questions/19768051/h2-sql-database-insert-if-the-record-does-not-exist
         SQL_INSERT_ITEM_VALUE = "MERGE INTO #tableName# (TIME, VALUE) VALUES( NOW(), CAST( ? as #dbType#) )";
+        SQL_INSERT_ITEM_VALUE_BATCH = "MERGE INTO #tableName# (TIME, VALUE) VALUES( ?, CAST( ? as #dbType#) )";
+        SQL_PAGING = " LIMIT ? OFFSET ?";
+        SQL_TIME_BUCKET = "FLOOR(DATEDIFF('SECOND', TIMESTAMP '1970-01-01 00:00:00', time) / ?)";
     }
 
     /**
@@ -71,8 +73,7 @@ public class JdbcH2DAO extends JdbcBaseDAO {
     @Override
     public void doStoreItemValue(Item item, ItemVO vo) {
         vo = storeItemValueProvider(item, vo);
-        String sql = StringUtilsExt.replaceArrayMerge(SQL_INSERT_ITEM_VALUE, new String[] { "#tableName#", "#dbType#" },
-                new String[] { vo.getTableName(), vo.getDbType() });
+        String sql = insertItemValueProvider(vo);
         Object[] params = new Object[] { vo.getValue() };
         logger.debug("JDBC::doStoreItemValue sql={} value='{}'", sql, vo.getValue());
         Yank.execute(sql, params);
@@ -81,6 +82,10 @@ public class JdbcH2DAO extends JdbcBaseDAO {
     /****************************
      * SQL generation Providers *
      ****************************/
+    @Override
+    protected Object[] pagingParams(int offset, int limit) {
+        return new Object[] { limit, offset };
+    }
 
     /*****************
      * H E L P E R S *
@@ -49,6 +49,11 @@ public class JdbcHsqldbDAO extends JdbcBaseDAO {
         SQL_INSERT_ITEM_VALUE = "MERGE INTO #tableName# "
                 + "USING (VALUES NOW(), CAST( ? as #dbType#)) temp (TIME, VALUE) ON (#tableName#.TIME=temp.TIME) "
                 + "WHEN NOT MATCHED THEN INSERT (TIME, VALUE) VALUES (temp.TIME, temp.VALUE)";
+        SQL_INSERT_ITEM_VALUE_BATCH = "MERGE INTO #tableName# "
+                + "USING (VALUES CAST( ? AS TIMESTAMP), CAST( ? as #dbType#)) temp (TIME, VALUE) ON (#tableName#.TIME=temp.TIME) "
+                + "WHEN NOT MATCHED THEN INSERT (TIME, VALUE) VALUES (temp.TIME, temp.VALUE)";
+        SQL_PAGING = " LIMIT ? OFFSET ?";
+        SQL_TIME_BUCKET = "FLOOR(UNIX_TIMESTAMP(time) / ?)";
     }
 
     /**
@@ -103,9 +108,7 @@ public class JdbcHsqldbDAO extends JdbcBaseDAO {
     @Override
     public void doStoreItemValue(Item item, ItemVO vo) {
         vo = storeItemValueProvider(item, vo);
-        String sql = StringUtilsExt.replaceArrayMerge(SQL_INSERT_ITEM_VALUE,
-                new String[] { "#tableName#", "#dbType#", "#tableName#" },
-                new String[] { vo.getTableName(), vo.getDbType(), vo.getTableName() });
+        String sql = insertItemValueProvider(vo);
         Object[] params = new Object[] { vo.getValue() };
         logger.debug("JDBC::doStoreItemValue sql={} value='{}'", sql, vo.getValue());
         Yank.execute(sql, params);
@@ -114,6 +117,10 @@ public class JdbcHsqldbDAO extends JdbcBaseDAO {
     /****************************
      * SQL generation Providers *
      ****************************/
+    @Override
+    protected Object[] pagingParams(int offset, int limit) {
+        return new Object[] { limit, offset };
+    }
 
     /*****************
      * H E L P E R S *
@@ -54,8 +54,12 @@ public class JdbcMysqlDAO extends JdbcBaseDAO {
         databaseProps.setProperty("dataSource.cachePrepStmts", "true");
         databaseProps.setProperty("dataSource.prepStmtCacheSize", "250");
         databaseProps.setProperty("dataSource.prepStmtCacheSqlLimit", "2048");
+        // rewrite write-behind batches into multi-row INSERT statements
+        databaseProps.setProperty("dataSource.rewriteBatchedStatements", "true");
         databaseProps.setProperty("dataSource.jdbcCompliantTruncation", "false");// jdbc standard max varchar max length
                                                                                  // of 21845
+        // Connector/J only streams result sets with this fetch size, otherwise all rows are read into memory
+        fetchSize = Integer.MIN_VALUE;
 
         // Properties for HikariCP
         // Use driverClassName
@@ -8,6 +8,9 @@
  */
 package org.openhab.persistence.jdbc.db;
 
+import java.util.Date;
+import java.util.List;
+
 import org.knowm.yank.Yank;
 import org.openhab.core.items.Item;
 import org.openhab.persistence.jdbc.model.ItemVO;
@@ -42,6 +45,10 @@ public class JdbcSqliteDAO extends JdbcBaseDAO {
         SQL_IF_TABLE_EXISTS = "SELECT name FROM sqlite_master WHERE type='table' AND name='#searchTable#'";
         SQL_CREATE_ITEMS_TABLE_IF_NOT = "CREATE TABLE IF NOT EXISTS #itemsManageTable# (ItemId INTEGER PRIMARY KEY AUTOINCREMENT, #colname# #coltype# NOT NULL)";
         SQL_INSERT_ITEM_VALUE = "INSERT OR IGNORE INTO #tableName# (TIME, VALUE) VALUES( DATETIME('now'), CAST( ? as #dbType#) )";
+        // the time is bound as milliseconds, DATETIME(..., 'unixepoch') stores it in the same format as DATETIME('now')
+        SQL_INSERT_ITEM_VALUE_BATCH = "INSERT OR IGNORE INTO #tableName# (TIME, VALUE) VALUES( DATETIME(? / 1000, 'unixepoch'), CAST( ? as #dbType#) )";
+        SQL_PAGING = " LIMIT ? OFFSET ?";
+        SQL_TIME_BUCKET = "(CAST(strftime('%s', time) AS INTEGER) / ?)";
     }
 
     /**
@@ -80,16 +87,38 @@ public class JdbcSqliteDAO extends JdbcBaseDAO {
     @Override
     public void doStoreItemValue(Item item, ItemVO vo) {
         vo = storeItemValueProvider(item, vo);
-        String sql = StringUtilsExt.replaceArrayMerge(SQL_INSERT_ITEM_VALUE, new String[] { "#tableName#", "#dbType#" },
-                new String[] { vo.getTableName(), vo.getDbType() });
+        String sql = insertItemValueProvider(vo);
         Object[] params = new Object[] { vo.getValue() };
         logger.debug("JDBC::doStoreItemValue sql={} value='{}'", sql, vo.getValue());
         Yank.execute(sql, params);
     }
 
+    @Override
+    public boolean doStoreItemValues(List<ItemVO> vol) {
+        String sql = insertItemValuesProvider(vol.get(0));
+        Object[][] params = new Object[vol.size()][];
+        for (int i = 0; i < vol.size(); i++) {
+            params[i] = new Object[] { vol.get(i).getTime().getTime(), vol.get(i).getValue() };
+        }
+        logger.debug("JDBC::doStoreItemValues sql={} count={}", sql, vol.size());
+        return Yank.executeBatch(sql, params) != null;
+    }
+
     /****************************
      * SQL generation Providers *
      ****************************/
+    /**
+     * TIME is stored as text, so the bounds are compared as text as well.
+     */
+    @Override
+    protected Object timeParam(Date date) {
+        return jdbcDateFormat.print(date.getTime());
+    }
+
+    @Override
+    protected Object[] pagingParams(int offset, int limit) {
+        return new Object[] { limit, offset };
+    }
 
     /*****************
      * H E L P E R S *
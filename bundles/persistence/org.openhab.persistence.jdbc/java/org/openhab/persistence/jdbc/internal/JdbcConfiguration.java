@@ -52,6 +52,15 @@ public class JdbcConfiguration {
 
     private int errReconnectThreshold = 0;
 
+    private boolean writeBehind = false;
+    private int writeBehindQueueSize = 10000;
+    private int writeBehindBatchSize = 500;
+    private int writeBehindInterval = 1000;
+    private String writeBehindPolicy = "block";
+    private String writeBehindSpillFile = "etc/jdbc-writebehind.spool";
+
+    private int downsampleMaxPoints = 0;
+
     public int timerCount = 0;
     public int time1000Statements = 0;
     public long timer1000 = 0;
@@ -194,6 +203,48 @@ public class JdbcConfiguration {
             rebuildTableNames = "true".equals(rt) ? Boolean.parseBoolean(rt) : false;
             logger.debug("JDBC::updateConfig: rebuildTableNames={}", rebuildTableNames);
         }
+        String wb = (String) configuration.get("writeBehind");
+        if (StringUtils.isNotBlank(wb)) {
+            writeBehind = "true".equals(wb) ? Boolean.parseBoolean(wb) : false;
+            logger.debug("JDBC::updateConfig: writeBehind={}", writeBehind);
+        }
+
+        String wq = (String) configuration.get("writeBehindQueueSize");
+        if (StringUtils.isNotBlank(wq)) {
+            writeBehindQueueSize = Integer.parseInt(wq);
+            logger.debug("JDBC::updateConfig: writeBehindQueueSize={}", writeBehindQueueSize);
+        }
+
+        String wbs = (String) configuration.get("writeBehindBatchSize");
+        if (StringUtils.isNotBlank(wbs)) {
+            writeBehindBatchSize = Integer.parseInt(wbs);
+            logger.debug("JDBC::updateConfig: writeBehindBatchSize={}", writeBehindBatchSize);
+        }
+
+        String wi = (String) configuration.get("writeBehindInterval");
+        if (StringUtils.isNotBlank(wi)) {
+            writeBehindInterval = Integer.parseInt(wi);
+            logger.debug("JDBC::updateConfig: writeBehindInterval={}", writeBehindInterval);
+        }
+
+        String wp = (String) configuration.get("writeBehindPolicy");
+        if (StringUtils.isNotBlank(wp)) {
+            writeBehindPolicy = wp;
+            logger.debug("JDBC::updateConfig: writeBehindPolicy={}", writeBehindPolicy);
+        }
+
+        String wf = (String) configuration.get("writeBehindSpillFile");
+        if (StringUtils.isNotBlank(wf)) {
+            writeBehindSpillFile = wf;
+            logger.debug("JDBC::updateConfig: writeBehindSpillFile={}", writeBehindSpillFile);
+        }
+
+        String dm = (String) configuration.get("downsampleMaxPoints");
+        if (StringUtils.isNotBlank(dm)) {
+            downsampleMaxPoints = Integer.parseInt(dm);
+            logger.debug("JDBC::updateConfig: downsampleMaxPoints={}", downsampleMaxPoints);
+        }
+
         // undocumented
         String ac = (String) configuration.get("maximumPoolSize");
         if (StringUtils.isNotBlank(ac)) {
@@ -298,6 +349,34 @@ public class JdbcConfiguration {
         return numberDecimalcount;
     }
 
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    public int getWriteBehindQueueSize() {
+        return writeBehindQueueSize;
+    }
+
+    public int getWriteBehindBatchSize() {
+        return writeBehindBatchSize;
+    }
+
+    public int getWriteBehindInterval() {
+        return writeBehindInterval;
+    }
+
+    public String getWriteBehindPolicy() {
+        return writeBehindPolicy;
+    }
+
+    public String getWriteBehindSpillFile() {
+        return writeBehindSpillFile;
+    }
+
+    public int getDownsampleMaxPoints() {
+        return downsampleMaxPoints;
+    }
+
     public boolean getTableUseRealItemNames() {
         return tableUseRealItemNames;
     }
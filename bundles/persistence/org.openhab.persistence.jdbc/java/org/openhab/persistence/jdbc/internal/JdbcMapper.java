@@ -9,6 +9,7 @@
 package org.openhab.persistence.jdbc.internal;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -19,6 +20,8 @@ import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.HistoricItem;
 import org.openhab.persistence.jdbc.model.ItemVO;
 import org.openhab.persistence.jdbc.model.ItemsVO;
+import org.openhab.persistence.jdbc.model.JdbcFilterCriteria;
+import org.openhab.persistence.jdbc.model.JdbcFilterCriteria.Aggregate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -137,6 +140,31 @@ public class JdbcMapper {
         return item;
     }
 
+    public ItemVO prepareItemValue(Item item) {
+        logger.debug("JDBC::prepareItemValue: Item={}", item.toString());
+        String tableName = getTable(item);
+        if (tableName == null) {
+            logger.error("JDBC::store: Unable to store item '{}'.", item.getName());
+            return null;
+        }
+        ItemVO vo = conf.getDBDAO().doPrepareItemValue(item, new ItemVO(tableName, null));
+        vo.setTime(new Date());
+        return vo;
+    }
+
+    public boolean storeItemValues(List<ItemVO> vol) {
+        logger.debug("JDBC::storeItemValues: count={}", vol.size());
+        long timerStart = System.currentTimeMillis();
+        boolean ret = conf.getDBDAO().doStoreItemValues(vol);
+        logTime("storeItemValues", timerStart, System.currentTimeMillis());
+        if (ret) {
+            errCnt = 0;
+        } else {
+            errCnt++;
+        }
+        return ret;
+    }
+
     public List<HistoricItem> getHistItemFilterQuery(FilterCriteria filter, int numberDecimalcount, String table,
             Item item) {
         logger.debug(
@@ -144,8 +172,17 @@ public class JdbcMapper {
                 (filter != null), numberDecimalcount, table, item, item.getName());
         if (table != null) {
             long timerStart = System.currentTimeMillis();
-            List<HistoricItem> r = conf.getDBDAO().doGetHistItemFilterQuery(item, filter, numberDecimalcount, table,
-                    item.getName());
+            long resolution = getResolution(filter);
+            List<HistoricItem> r;
+            if (resolution > 0) {
+                Aggregate aggregate = filter instanceof JdbcFilterCriteria
+                        ? ((JdbcFilterCriteria) filter).getAggregate() : Aggregate.AVG;
+                r = conf.getDBDAO().doGetHistItemDownsampledQuery(item, filter, numberDecimalcount, table,
+                        resolution, aggregate);
+            } else {
+                r = conf.getDBDAO().doGetHistItemFilterQuery(item, filter, numberDecimalcount, table,
+                        item.getName());
+            }
             logTime("insertItemValue", timerStart, System.currentTimeMillis());
             return r;
         } else {
@@ -154,6 +191,25 @@ public class JdbcMapper {
         return null;
     }
 
+    /**
+     * Returns the bucket size in milliseconds a query is downsampled with, 0 to return the raw rows.
+     * Without an explicit resolution, closed and unpaged time ranges are downsampled to
+     * downsampleMaxPoints buckets if configured.
+     */
+    private long getResolution(FilterCriteria filter) {
+        if (filter instanceof JdbcFilterCriteria) {
+            return ((JdbcFilterCriteria) filter).getResolution();
+        }
+        int maxPoints = conf.getDownsampleMaxPoints();
+        if (maxPoints <= 0 || filter.getBeginDate() == null || filter.getEndDate() == null
+                || filter.getPageSize() != 0x7fffffff) {
+            return 0;
+        }
+        long resolution = (filter.getEndDate().getTime() - filter.getBeginDate().getTime()) / maxPoints;
+        // ranges which already fit into the chart at one row per second are not worth grouping
+        return resolution >= 1000 ? resolution : 0;
+    }
+
     /***********************
      * DATABASE CONNECTION *
      ***********************/
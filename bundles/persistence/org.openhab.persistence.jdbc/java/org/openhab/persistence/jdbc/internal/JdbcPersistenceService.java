@@ -22,6 +22,7 @@ import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.persistence.PersistenceService;
 import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.types.UnDefType;
+import org.openhab.persistence.jdbc.model.ItemVO;
 import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +46,11 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
     @SuppressWarnings("unused")
     private BundleContext bundleContext;
 
+    /**
+     * The write-behind queue, only set if 'writeBehind' is enabled.
+     */
+    private volatile JdbcWriteBehindQueue writeBehindQueue;
+
     /**
      * Called by the SCR to activate the component with its configuration read
      * from CAS
@@ -80,6 +86,7 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
      */
     public void deactivate(final int reason) {
         logger.debug("JDBC::deactivate:  persistence bundle stopping. Disconnecting from database. reason={}", reason);
+        stopWriteBehind();
         // closeConnection();
         this.bundleContext = null;
         initialized = false;
@@ -123,13 +130,30 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
             logger.warn("JDBC::store: ignore Item '{}' because it is UnDefType", item.getName());
             return;
         }
+        long timerStart = System.currentTimeMillis();
+        JdbcWriteBehindQueue queue = writeBehindQueue;
+        if (queue != null) {
+            // values are queued even while the database is unreachable, the writeBehindPolicy decides what
+            // happens to them; only items without a table yet need the database to be prepared
+            if (!sqlTables.containsKey(item.getName()) && !checkDBAccessability()) {
+                logger.warn("JDBC::store: No connection to database. Can not create a table for item '{}'!", item);
+                return;
+            }
+            ItemVO vo = prepareItemValue(item);
+            if (vo != null) {
+                queue.enqueue(vo);
+                logger.debug("JDBC: Queued item '{}' as '{}' in {}ms, queue depth {}.", item.getName(),
+                        item.getState().toString(), System.currentTimeMillis() - timerStart,
+                        queue.getQueueDepth());
+            }
+            return;
+        }
         if (!checkDBAccessability()) {
             logger.warn(
                     "JDBC::store:  No connection to database. Can not persist item '{}'! Will retry connecting to database when error count:{} equals errReconnectThreshold:{}",
                     item, errCnt, conf.getErrReconnectThreshold());
             return;
         }
-        long timerStart = System.currentTimeMillis();
         storeItemValue(item);
         logger.debug("JDBC: Stored item '{}' as '{}' in SQL database at {} in {}ms.", item.getName(),
                 item.getState().toString(), (new java.util.Date()).toString(), System.currentTimeMillis() - timerStart);
@@ -214,6 +238,7 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
     public void updateConfig(Map<Object, Object> configuration) {
         logger.debug("JDBC::updateConfig");
 
+        stopWriteBehind();
         conf = new JdbcConfiguration(configuration);
         if (checkDBAccessability()) {
             checkDBSchema();
@@ -222,7 +247,27 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
         } else {
             initialized = false;
         }
+        if (conf.isWriteBehind()) {
+            writeBehindQueue = new JdbcWriteBehindQueue(this, conf);
+            writeBehindQueue.start();
+        }
 
         logger.debug("JDBC::updateConfig: configuration complete for service={}.", getName());
     }
+
+    /**
+     * Returns the write-behind queue, e.g. to inspect its depth, batch size and flush latency.
+     *
+     * @return the write-behind queue or null if 'writeBehind' is disabled
+     */
+    public JdbcWriteBehindQueue getWriteBehindQueue() {
+        return writeBehindQueue;
+    }
+
+    private void stopWriteBehind() {
+        if (writeBehindQueue != null) {
+            writeBehindQueue.stop();
+            writeBehindQueue = null;
+        }
+    }
 }
@@ -0,0 +1,359 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openhab.persistence.jdbc.model.ItemVO;
+import org.openhab.persistence.spool.WriteBehindBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-behind stage of the JDBC persistence service. Prepared item values are collected in a
+ * {@link WriteBehindBuffer} and written by its thread, grouped by item table into JDBC batches.
+ * A batch is flushed as soon as it reaches the configured size or the configured interval
+ * has elapsed.
+ * <p>
+ * The values of a table which could not be written because the database was unreachable are put
+ * back into the buffer and written again later. If the buffer is full, the configured
+ * {@link Policy} decides whether the caller is blocked, the oldest value is dropped or the oldest
+ * value is spilled to a local file. Spilled values are written again once the buffer is empty. A
+ * batch which fails while the database is reachable is split up, so that only the values which
+ * cannot be written at all (e.g. duplicate rows) are dropped.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class JdbcWriteBehindQueue implements WriteBehindBuffer.Writer<ItemVO>, WriteBehindBuffer.Spill<ItemVO> {
+    private static final Logger logger = LoggerFactory.getLogger(JdbcWriteBehindQueue.class);
+
+    /**
+     * What to do with a value if the queue is full.
+     */
+    public enum Policy {
+        BLOCK,
+        DROP_OLDEST,
+        SPILL;
+
+        public static Policy fromConfig(String value) {
+            if ("dropOldest".equalsIgnoreCase(value)) {
+                return DROP_OLDEST;
+            } else if ("spill".equalsIgnoreCase(value)) {
+                return SPILL;
+            } else if (!"block".equalsIgnoreCase(value)) {
+                logger.warn("JDBC::writeBehind: unknown writeBehindPolicy '{}', using 'block'", value);
+            }
+            return BLOCK;
+        }
+    }
+
+    private final JdbcMapper mapper;
+    private final WriteBehindBuffer<ItemVO> buffer;
+    private final int batchSize;
+    private final Policy policy;
+    private final File spillFile;
+    private final Object spillLock = new Object();
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public JdbcWriteBehindQueue(JdbcMapper mapper, JdbcConfiguration conf) {
+        this.mapper = mapper;
+        this.batchSize = Math.max(1, conf.getWriteBehindBatchSize());
+        this.policy = Policy.fromConfig(conf.getWriteBehindPolicy());
+        this.spillFile = new File(conf.getWriteBehindSpillFile());
+        this.buffer = new WriteBehindBuffer<ItemVO>("JDBC write-behind", this, batchSize,
+                conf.getWriteBehindInterval(), conf.getWriteBehindQueueSize(), policy == Policy.SPILL ? this : null);
+    }
+
+    public void start() {
+        buffer.start();
+        logger.debug("JDBC::writeBehind: started with batchSize={} policy={}", batchSize, policy);
+    }
+
+    /**
+     * Stops the buffer, which writes all values which are still queued before it returns.
+     */
+    public void stop() {
+        buffer.stop();
+        logger.debug("JDBC::writeBehind: stopped, {}", this);
+    }
+
+    /**
+     * Adds a prepared value to the queue, applying the configured {@link Policy} if the queue is full.
+     */
+    public void enqueue(ItemVO vo) {
+        enqueued.incrementAndGet();
+        if (policy != Policy.BLOCK) {
+            buffer.add(vo);
+            return;
+        }
+        try {
+            buffer.put(vo);
+        } catch (InterruptedException e) {
+            logger.warn("JDBC::writeBehind: interrupted while waiting for room, dropped value of table '{}'",
+                    vo.getTableName());
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the given values grouped by item table, one JDBC batch per table. The values of the
+     * tables which have been written are removed from the batch, so that only the values of an
+     * unreachable database are written again.
+     */
+    @Override
+    public boolean write(List<ItemVO> batch) {
+        Map<String, List<ItemVO>> tables = new LinkedHashMap<String, List<ItemVO>>();
+        for (ItemVO vo : batch) {
+            List<ItemVO> vol = tables.get(vo.getTableName());
+            if (vol == null) {
+                vol = new ArrayList<ItemVO>();
+                tables.put(vo.getTableName(), vol);
+            }
+            vol.add(vo);
+        }
+        for (Map.Entry<String, List<ItemVO>> table : tables.entrySet()) {
+            List<ItemVO> vol = table.getValue();
+            if (!mapper.storeItemValues(vol)) {
+                if (!mapper.pingDB()) {
+                    logger.warn("JDBC::writeBehind: could not write {} values to table '{}', database unreachable",
+                            vol.size(), table.getKey());
+                    removeTablesBefore(batch, table.getKey(), tables);
+                    return false;
+                }
+                storeSplit(vol);
+            }
+        }
+        logger.debug("JDBC::writeBehind: flushed {} values to {} tables, queue depth {}", batch.size(),
+                tables.size(), buffer.getQueueDepth());
+        return true;
+    }
+
+    /**
+     * Removes the values of the tables which have been written before the given table from the batch.
+     */
+    private static void removeTablesBefore(List<ItemVO> batch, String tableName, Map<String, List<ItemVO>> tables) {
+        List<String> done = new ArrayList<String>();
+        for (String table : tables.keySet()) {
+            if (table.equals(tableName)) {
+                break;
+            }
+            done.add(table);
+        }
+        for (Iterator<ItemVO> iterator = batch.iterator(); iterator.hasNext();) {
+            if (done.contains(iterator.next().getTableName())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Writes the values of a failed batch in halves, down to single rows, so that one row which
+     * cannot be written does not fail the others.
+     */
+    private void storeSplit(List<ItemVO> vol) {
+        if (vol.size() == 1) {
+            rejected.incrementAndGet();
+            logger.warn("JDBC::writeBehind: dropped value '{}' of {} rejected by table '{}'", vol.get(0).getValue(),
+                    vol.get(0).getTime(), vol.get(0).getTableName());
+            return;
+        }
+        int half = vol.size() / 2;
+        List<ItemVO> head = vol.subList(0, half);
+        List<ItemVO> tail = vol.subList(half, vol.size());
+        storePart(head);
+        storePart(tail);
+    }
+
+    private void storePart(List<ItemVO> part) {
+        if (!mapper.storeItemValues(part)) {
+            storeSplit(part);
+        }
+    }
+
+    /**
+     * Appends the given values to the spill file. Every record is written as length prefixed
+     * serialized {@link ItemVO}.
+     */
+    @Override
+    public boolean spill(List<ItemVO> vol) {
+        synchronized (spillLock) {
+            File folder = spillFile.getAbsoluteFile().getParentFile();
+            if (folder != null && !folder.exists()) {
+                folder.mkdirs();
+            }
+            DataOutputStream out = null;
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile, true)));
+                for (ItemVO vo : vol) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    ObjectOutputStream oos = new ObjectOutputStream(bytes);
+                    oos.writeObject(vo);
+                    oos.close();
+                    out.writeInt(bytes.size());
+                    bytes.writeTo(out);
+                }
+                return true;
+            } catch (IOException e) {
+                logger.error("JDBC::writeBehind: could not spill {} values to '{}': {}", vol.size(),
+                        spillFile.getAbsolutePath(), e.getMessage());
+                return false;
+            } finally {
+                closeQuietly(out);
+            }
+        }
+    }
+
+    /**
+     * Writes the values of the spill file once the queue has been drained. The spill file is
+     * renamed before it is read, so that values which fail again are spilled to a new file. The
+     * records are read and written in chunks of the batch size, the file is never held in memory
+     * as a whole.
+     */
+    @Override
+    public void replay() {
+        File replayFile = new File(spillFile.getPath() + ".replay");
+        synchronized (spillLock) {
+            // a replay file left behind by an interrupted replay is written first
+            if (!replayFile.exists()) {
+                if (!spillFile.exists()) {
+                    return;
+                }
+                if (!spillFile.renameTo(replayFile)) {
+                    logger.error("JDBC::writeBehind: could not rename spill file '{}'", spillFile.getAbsolutePath());
+                    return;
+                }
+            }
+        }
+        logger.info("JDBC::writeBehind: writing spilled values of '{}'", replayFile.getAbsolutePath());
+        List<ItemVO> vol = new ArrayList<ItemVO>(batchSize);
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(replayFile)));
+            ItemVO vo;
+            while ((vo = readRecord(in)) != null) {
+                vol.add(vo);
+                if (vol.size() >= batchSize) {
+                    replayChunk(vol);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("JDBC::writeBehind: spill file '{}' is damaged, its remaining values are dropped: {}",
+                    replayFile.getAbsolutePath(), e.getMessage());
+        } catch (ClassNotFoundException e) {
+            logger.error("JDBC::writeBehind: spill file '{}' is damaged, its remaining values are dropped: {}",
+                    replayFile.getAbsolutePath(), e.getMessage());
+        } finally {
+            closeQuietly(in);
+        }
+        replayChunk(vol);
+        if (!replayFile.delete()) {
+            logger.error("JDBC::writeBehind: could not delete spill file '{}'", replayFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Writes a chunk of spilled values, the values which fail again are spilled anew.
+     */
+    private void replayChunk(List<ItemVO> vol) {
+        if (!vol.isEmpty() && !write(vol)) {
+            spill(vol);
+        }
+        vol.clear();
+    }
+
+    /**
+     * Reads the next record of the spill file.
+     *
+     * @return the value or null at the end of the file
+     */
+    private static ItemVO readRecord(DataInputStream in) throws IOException, ClassNotFoundException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        byte[] record = new byte[length];
+        in.readFully(record);
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(record));
+        return (ItemVO) ois.readObject();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /******************************
+     * public Getters and Setters *
+     ******************************/
+    public int getQueueDepth() {
+        return buffer.getQueueDepth();
+    }
+
+    public long getEnqueuedCount() {
+        return enqueued.get();
+    }
+
+    public long getWrittenCount() {
+        return buffer.getWrittenCount();
+    }
+
+    public long getDroppedCount() {
+        return buffer.getDroppedCount() + rejected.get();
+    }
+
+    public long getSpilledCount() {
+        return buffer.getSpilledCount();
+    }
+
+    public long getLastFlushTime() {
+        return buffer.getLastLatency();
+    }
+
+    public long getMaxFlushTime() {
+        return buffer.getMaxLatency();
+    }
+
+    public long getAverageFlushTime() {
+        return buffer.getAverageLatency();
+    }
+
+    @Override
+    public String toString() {
+        return "JdbcWriteBehindQueue [" + buffer + ", enqueued=" + enqueued + ", rejected=" + rejected + "]";
+    }
+}
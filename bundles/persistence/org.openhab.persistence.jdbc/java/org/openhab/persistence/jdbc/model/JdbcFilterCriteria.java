@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.jdbc.model;
+
+import org.openhab.core.persistence.FilterCriteria;
+
+/**
+ * A {@link FilterCriteria} which asks the JDBC persistence service to downsample the result.
+ * The time range is split into buckets of the given resolution and every bucket is returned
+ * as a single historic item, carrying the aggregated value and the time of its first row.
+ * Paging applies to the buckets, not to the raw rows.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class JdbcFilterCriteria extends FilterCriteria {
+
+    /** How the values of a bucket are combined. Non-numeric items always use {@link #LAST}. */
+    public enum Aggregate {
+        AVG,
+        MIN,
+        MAX,
+        LAST
+    }
+
+    private long resolution = 0;
+    private Aggregate aggregate = Aggregate.AVG;
+
+    /**
+     * @return the bucket size in milliseconds, 0 if the result is not downsampled
+     */
+    public long getResolution() {
+        return resolution;
+    }
+
+    public Aggregate getAggregate() {
+        return aggregate;
+    }
+
+    public JdbcFilterCriteria setResolution(long resolution) {
+        this.resolution = resolution;
+        return this;
+    }
+
+    public JdbcFilterCriteria setAggregate(Aggregate aggregate) {
+        this.aggregate = aggregate;
+        return this;
+    }
+
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.jdbc.utils;
+
+import java.util.Date;
+
+import org.openhab.persistence.jdbc.model.JdbcFilterCriteria.Aggregate;
+
+/**
+ * Downsamples a time ordered stream of rows into buckets of a fixed size, holding only the
+ * bucket which is currently filled. It is used for dialects which cannot group by time in SQL
+ * and for aggregates which cannot be expressed as a GROUP BY.
+ * <p>
+ * Numeric values are aggregated as double, other values keep the latest value of their bucket.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class TimeBucketAggregator {
+
+    /**
+     * Receives the completed buckets.
+     */
+    public interface Sink {
+        /**
+         * @param time the time of the earliest row of the bucket
+         * @param value the aggregated value, a {@link Double} for numeric rows
+         * @return <code>false</code> if no more buckets are needed
+         */
+        boolean bucket(Date time, Object value);
+    }
+
+    private final long resolution;
+    private final Aggregate aggregate;
+    private final Sink sink;
+
+    private boolean open = false;
+    private boolean done = false;
+    private long bucket;
+    private long firstTime;
+    private long lastTime;
+    private Object lastValue;
+    private double sum;
+    private double min;
+    private double max;
+    private int count;
+
+    /**
+     * @param resolution the bucket size in milliseconds
+     * @param aggregate how the numeric values of a bucket are combined
+     * @param sink receives the completed buckets
+     */
+    public TimeBucketAggregator(long resolution, Aggregate aggregate, Sink sink) {
+        if (resolution < 1) {
+            throw new IllegalArgumentException("The resolution must be at least 1ms, but was " + resolution);
+        }
+        this.resolution = resolution;
+        this.aggregate = aggregate;
+        this.sink = sink;
+    }
+
+    /**
+     * Adds a row. Rows must be ordered by time, either ascending or descending.
+     *
+     * @return <code>false</code> if the sink does not need any more buckets
+     */
+    public boolean add(Date time, Object value) {
+        if (done) {
+            return false;
+        }
+        long t = time.getTime();
+        long b = floorDiv(t, resolution);
+        if (open && b != bucket) {
+            emit();
+            if (done) {
+                return false;
+            }
+        }
+        if (!open) {
+            open = true;
+            bucket = b;
+            firstTime = t;
+            lastTime = t;
+            lastValue = value;
+            count = 0;
+            sum = 0;
+            min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+        }
+        if (t < firstTime) {
+            firstTime = t;
+        }
+        if (t >= lastTime) {
+            lastTime = t;
+            lastValue = value;
+        }
+        if (value instanceof Number) {
+            double d = ((Number) value).doubleValue();
+            sum += d;
+            min = Math.min(min, d);
+            max = Math.max(max, d);
+            count++;
+        }
+        return true;
+    }
+
+    /**
+     * Emits the bucket which is currently filled.
+     */
+    public void finish() {
+        if (open && !done) {
+            emit();
+        }
+    }
+
+    private void emit() {
+        open = false;
+        Object value = lastValue;
+        if (count > 0 && value instanceof Number) {
+            switch (aggregate) {
+                case AVG:
+                    value = sum / count;
+                    break;
+                case MIN:
+                    value = min;
+                    break;
+                case MAX:
+                    value = max;
+                    break;
+                default:
+                    value = ((Number) lastValue).doubleValue();
+                    break;
+            }
+        }
+        if (!sink.bucket(new Date(firstTime), value)) {
+            done = true;
+        }
+    }
+
+    private static long floorDiv(long x, long y) {
+        long r = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            r--;
+        }
+        return r;
+    }
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.jpa.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.types.UnDefType;
+import org.openhab.persistence.jpa.internal.model.JpaPersistentItem;
+
+import junit.framework.Assert;
+
+/**
+ * @author agent
+ * @since 1.9.0
+ */
+public class JpaPersistenceServiceTest {
+
+    private RecordingWriteBuffer buffer;
+    private JpaPersistenceService service;
+
+    @Before
+    public void setUp() {
+        JpaConfiguration.isInitialized = true;
+        JpaConfiguration.batchSize = 10;
+        service = new JpaPersistenceService() {
+            @Override
+            protected synchronized JpaWriteBuffer getWriteBuffer() {
+                return buffer;
+            }
+        };
+        buffer = new RecordingWriteBuffer(service);
+    }
+
+    @After
+    public void tearDown() {
+        JpaConfiguration.isInitialized = false;
+        JpaConfiguration.batchSize = 0;
+    }
+
+    @Test
+    public void testStoredValueIsQueued() {
+        NumberItem item = new NumberItem("Temperature");
+        item.setState(new DecimalType("21.5"));
+
+        service.store(item, "Outside");
+        buffer.flush();
+
+        Assert.assertEquals(1, buffer.items.size());
+        JpaPersistentItem pItem = buffer.items.get(0);
+        Assert.assertEquals("Outside", pItem.getName());
+        Assert.assertEquals("Temperature", pItem.getRealName());
+        Assert.assertEquals("21.5", pItem.getValue());
+        Assert.assertNotNull(pItem.getTimestamp());
+    }
+
+    @Test
+    public void testUndefinedStateIsNotStored() {
+        NumberItem item = new NumberItem("Temperature");
+        item.setState(UnDefType.UNDEF);
+
+        service.store(item);
+
+        Assert.assertEquals(0, buffer.getQueueDepth());
+    }
+
+    @Test
+    public void testFailedTransactionResetsTheIds() {
+        buffer.failures = 1;
+        NumberItem item = new NumberItem("Temperature");
+        item.setState(new DecimalType(1));
+        service.store(item);
+
+        Assert.assertFalse(buffer.flush());
+        Assert.assertEquals(1, buffer.getQueueDepth());
+        // the item is persisted with a new id once the database is back
+        Assert.assertTrue(buffer.flush());
+        Assert.assertEquals(Collections.singletonList(Long.valueOf(2)), buffer.ids);
+    }
+
+    /**
+     * Records the persisted items instead of using a database; fails on demand.
+     */
+    private static class RecordingWriteBuffer extends JpaWriteBuffer {
+        final List<JpaPersistentItem> items = new ArrayList<JpaPersistentItem>();
+        final List<Long> ids = new ArrayList<Long>();
+        int failures;
+        long nextId = 1;
+
+        RecordingWriteBuffer(JpaPersistenceService service) {
+            super(service, 10, 60000, 100);
+        }
+
+        @Override
+        void persist(List<JpaPersistentItem> batch) throws Exception {
+            for (JpaPersistentItem pItem : batch) {
+                Assert.assertNull(pItem.getId());
+                pItem.setId(nextId++);
+            }
+            if (failures > 0) {
+                failures--;
+                throw new Exception("database not available");
+            }
+            for (JpaPersistentItem pItem : batch) {
+                items.add(pItem);
+                ids.add(pItem.getId());
+            }
+        }
+    }
+
+}
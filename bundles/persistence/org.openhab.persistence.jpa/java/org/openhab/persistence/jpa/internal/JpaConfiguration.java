@@ -29,6 +29,8 @@ public class JpaConfiguration {
     private static final String CFG_USERNAME = "user";
     private static final String CFG_PASSWORD = "password";
     private static final String CFG_SYNCMAPPING = "syncmappings";
+    private static final String CFG_BATCHSIZE = "batchsize";
+    private static final String CFG_FLUSHINTERVAL = "flushinterval";
 
     public static boolean isInitialized = false;
 
@@ -37,6 +39,8 @@ public class JpaConfiguration {
     public static String dbUserName = "";
     public static String dbPassword = "";
     public static String dbSyncMapping = "";
+    public static int batchSize = 0;
+    public static int flushInterval = 1000;
 
     public void activate(final BundleContext bundleContext, final Map<String, Object> properties) {
         logger.debug("Update config...");
@@ -81,8 +85,25 @@ public class JpaConfiguration {
         }
         dbSyncMapping = (String) properties.get(CFG_SYNCMAPPING);
 
+        batchSize = parseInt(properties, CFG_BATCHSIZE, 0);
+        flushInterval = parseInt(properties, CFG_FLUSHINTERVAL, 1000);
+        logger.debug("batchsize: {}, flushinterval: {}", batchSize, flushInterval);
+
         isInitialized = true;
         logger.debug("Update config...done");
     }
 
+    private static int parseInt(Map<String, Object> properties, String key, int defaultValue) {
+        String param = (String) properties.get(key);
+        if (StringUtils.isBlank(param)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(param.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value '{}' for {} in openhab.cfg, using {}", param, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
 }
@@ -135,6 +135,7 @@ public class JpaHistoricItem implements HistoricItem {
             state = new StringType(pItem.getValue());
         }
 
-        return new JpaHistoricItem(item.getName(), state, pItem.getTimestamp());
+        // the item may be missing from the registry, the queried name is the persisted real name
+        return new JpaHistoricItem(pItem.getRealName(), state, pItem.getTimestamp());
     }
 }
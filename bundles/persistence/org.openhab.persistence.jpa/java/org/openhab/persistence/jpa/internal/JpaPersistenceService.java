@@ -8,6 +8,11 @@
  */
 package org.openhab.persistence.jpa.internal;
 
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -43,8 +48,19 @@ public class JpaPersistenceService implements QueryablePersistenceService {
 
     protected ItemRegistry itemRegistry;
 
+    /** name of the index on (realName, timestamp) which is created for the queries */
+    private static final String INDEX_NAME = "HISTORIC_ITEM_NAME_TS";
+
     private EntityManagerFactory emf = null;
 
+    private volatile JpaWriteBuffer writeBuffer = null;
+
+    /**
+     * whether the index has been created or found; OpenJPA creates the table on the first write,
+     * so on a fresh database the index is created after that
+     */
+    private volatile boolean indexEnsured = false;
+
     /**
      * lazy loading because update() is called after activate()
      * 
@@ -53,6 +69,7 @@ public class JpaPersistenceService implements QueryablePersistenceService {
     protected EntityManagerFactory getEntityManagerFactory() {
         if (emf == null) {
             emf = newEntityManagerFactory();
+            indexEnsured = ensureIndex(emf);
         }
         return emf;
     }
@@ -67,6 +84,7 @@ public class JpaPersistenceService implements QueryablePersistenceService {
      */
     public void deactivate() {
         logger.debug("Deactivating jpa binding...");
+        stopWriteBuffer();
         closeEntityManagerFactory();
         logger.debug("Deactivating jpa binding...done");
     }
@@ -119,6 +137,12 @@ public class JpaPersistenceService implements QueryablePersistenceService {
         pItem.setRealName(item.getName());
         pItem.setTimestamp(new Date());
 
+        if (JpaConfiguration.batchSize > 0) {
+            getWriteBuffer().add(pItem);
+            logger.debug("Storing item...queued");
+            return;
+        }
+
         EntityManager em = getEntityManagerFactory().createEntityManager();
         try {
             logger.debug("Persisting item...");
@@ -127,6 +151,7 @@ public class JpaPersistenceService implements QueryablePersistenceService {
             em.persist(pItem);
             em.getTransaction().commit();
             logger.debug("Persisting item...done");
+            persisted();
         } catch (Exception e) {
             logger.error("Error on persisting item! Rolling back!");
             logger.error(e.getMessage(), e);
@@ -150,6 +175,12 @@ public class JpaPersistenceService implements QueryablePersistenceService {
         String itemName = filter.getItemName();
         Item item = getItemFromRegistry(itemName);
 
+        // values still waiting in the write buffer must be found as well, on every page
+        JpaWriteBuffer buffer = writeBuffer;
+        if (buffer != null) {
+            buffer.flush();
+        }
+
         String sortOrder;
         if (filter.getOrdering() == Ordering.ASCENDING) {
             sortOrder = "ASC";
@@ -180,7 +211,7 @@ public class JpaPersistenceService implements QueryablePersistenceService {
 
             logger.debug("Creating query...");
             Query query = em.createQuery(queryString);
-            query.setParameter("itemName", item.getName());
+            query.setParameter("itemName", itemName);
             if (hasBeginDate) {
                 query.setParameter("beginDate", filter.getBeginDate());
             }
@@ -238,6 +269,10 @@ public class JpaPersistenceService implements QueryablePersistenceService {
         if (JpaConfiguration.dbUserName != null && JpaConfiguration.dbPassword == null) {
             logger.warn("JPA persistence - it is recommended to use a password to protect data store");
         }
+        if (JpaConfiguration.batchSize > 0) {
+            // lets OpenJPA send the inserts of a write-behind transaction as JDBC batches
+            properties.put("openjpa.jdbc.DBDictionary", "batchLimit=" + JpaConfiguration.batchSize);
+        }
         if (JpaConfiguration.dbSyncMapping != null && !StringUtils.isBlank(JpaConfiguration.dbSyncMapping)) {
             logger.warn("You are settings openjpa.jdbc.SynchronizeMappings, I hope you know what you're doing!");
             properties.put("openjpa.jdbc.SynchronizeMappings", JpaConfiguration.dbSyncMapping);
@@ -249,6 +284,126 @@ public class JpaPersistenceService implements QueryablePersistenceService {
         return fac;
     }
 
+    /**
+     * Returns the write-behind buffer, creating it on first use.
+     *
+     * @return the running write buffer
+     */
+    protected synchronized JpaWriteBuffer getWriteBuffer() {
+        if (writeBuffer == null) {
+            writeBuffer = new JpaWriteBuffer(this, JpaConfiguration.batchSize, JpaConfiguration.flushInterval,
+                    Math.max(JpaConfiguration.batchSize * 20, 10000));
+            writeBuffer.start();
+        }
+        return writeBuffer;
+    }
+
+    /**
+     * Persists the waiting items and stops the write-behind buffer
+     */
+    protected void stopWriteBuffer() {
+        JpaWriteBuffer buffer;
+        synchronized (this) {
+            buffer = writeBuffer;
+            writeBuffer = null;
+        }
+        // persisting the remaining items may take a while, store() must not wait for the lock meanwhile
+        if (buffer != null) {
+            buffer.stop();
+            logger.info("JPA write-behind statistics: {}", buffer);
+        }
+    }
+
+    /**
+     * Creates the index once the first values have been persisted, if the table did not exist
+     * when the EntityManagerFactory was created.
+     */
+    void persisted() {
+        if (!indexEnsured) {
+            synchronized (this) {
+                if (!indexEnsured && emf != null) {
+                    indexEnsured = ensureIndex(emf);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the index on (realName, timestamp) used by the queries, if the table exists and
+     * the index is missing. JPA 2.0 has no means to declare a compound index, so it is created
+     * through JDBC, looking up the actual table and column names in the database meta data.
+     *
+     * @param factory the factory to get a connection from
+     * @return <code>false</code> if the table does not exist yet, so that it has to be tried again
+     */
+    protected boolean ensureIndex(EntityManagerFactory factory) {
+        EntityManager em = factory.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Connection connection = em.unwrap(Connection.class);
+            DatabaseMetaData meta = connection.getMetaData();
+
+            String table = findName(meta.getTables(null, null, "%", new String[] { "TABLE" }), "TABLE_NAME",
+                    "HISTORIC_ITEM");
+            if (table == null) {
+                logger.debug("Table HISTORIC_ITEM does not exist yet, creating the index after the first write");
+                em.getTransaction().commit();
+                return false;
+            }
+            String nameColumn = findName(meta.getColumns(null, null, table, "%"), "COLUMN_NAME", "REALNAME");
+            // OpenJPA may rename columns named like reserved words, e.g. to TIMESTAMP0
+            String timeColumn = findName(meta.getColumns(null, null, table, "%"), "COLUMN_NAME", "TIMESTAMP");
+            if (timeColumn == null) {
+                timeColumn = findName(meta.getColumns(null, null, table, "%"), "COLUMN_NAME", "TIMESTAMP0");
+            }
+            if (nameColumn == null || timeColumn == null) {
+                logger.warn("Could not find the columns of table {}, not creating index", table);
+                em.getTransaction().commit();
+                return true;
+            }
+            if (findName(meta.getIndexInfo(null, null, table, false, true), "INDEX_NAME", INDEX_NAME) == null) {
+                String quote = meta.getIdentifierQuoteString().trim();
+                String sql = "CREATE INDEX " + INDEX_NAME + " ON " + quote + table + quote + " (" + quote + nameColumn
+                        + quote + ", " + quote + timeColumn + quote + ")";
+                logger.info("Creating index: {}", sql);
+                Statement statement = connection.createStatement();
+                try {
+                    statement.executeUpdate(sql);
+                } finally {
+                    statement.close();
+                }
+            }
+            em.getTransaction().commit();
+        } catch (Exception e) {
+            logger.warn("Could not create index {}: {}", INDEX_NAME, e.getMessage());
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+        } finally {
+            em.close();
+        }
+        return true;
+    }
+
+    /**
+     * Searches a meta data result set for a name, ignoring the case, and closes it.
+     *
+     * @return the name as stored in the database, or null if not found
+     */
+    private String findName(ResultSet rs, String column, String name) throws SQLException {
+        try {
+            while (rs.next()) {
+                String found = rs.getString(column);
+                if (name.equalsIgnoreCase(found)) {
+                    return found;
+                }
+            }
+            return null;
+        } finally {
+            rs.close();
+        }
+    }
+
     /**
      * Closes EntityManagerFactory
      */
@@ -257,6 +412,7 @@ public class JpaPersistenceService implements QueryablePersistenceService {
             emf.close();
             emf = null;
         }
+        indexEnsured = false;
         logger.debug("Closing down entity objects...done");
     }
 
@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.jpa.internal;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
+
+import org.openhab.persistence.jpa.internal.model.JpaPersistentItem;
+import org.openhab.persistence.spool.WriteBehindBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists the stored items through a {@link WriteBehindBuffer}, one transaction per batch
+ * instead of one transaction per stored value. The items of a failed transaction are put back
+ * in front of the waiting ones and persisted again with the next flush.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class JpaWriteBuffer implements WriteBehindBuffer.Writer<JpaPersistentItem> {
+
+    private static final Logger logger = LoggerFactory.getLogger(JpaWriteBuffer.class);
+
+    private final JpaPersistenceService service;
+    private final WriteBehindBuffer<JpaPersistentItem> buffer;
+
+    /**
+     * @param service provides the entity manager factory
+     * @param batchSize the maximum number of items persisted in one transaction
+     * @param interval the flush interval in milliseconds
+     * @param capacity the maximum number of waiting items, the oldest items are dropped beyond it
+     */
+    public JpaWriteBuffer(JpaPersistenceService service, int batchSize, int interval, int capacity) {
+        this.service = service;
+        this.buffer = new WriteBehindBuffer<JpaPersistentItem>("JPA write-behind", this, batchSize, interval,
+                capacity);
+    }
+
+    public void start() {
+        buffer.start();
+    }
+
+    /**
+     * Stops the timer and persists the remaining items before returning.
+     */
+    public void stop() {
+        buffer.stop();
+    }
+
+    /**
+     * Adds an item to the next transaction.
+     */
+    public void add(JpaPersistentItem pItem) {
+        buffer.add(pItem);
+    }
+
+    /**
+     * Persists the waiting items on the calling thread, e.g. before a query which must find them.
+     *
+     * @return <code>true</code> if no items are left waiting
+     */
+    public boolean flush() {
+        return buffer.flush();
+    }
+
+    @Override
+    public boolean write(List<JpaPersistentItem> batch) {
+        try {
+            persist(batch);
+        } catch (Exception e) {
+            logger.error("Error on persisting {} items! Rolling back!", batch.size());
+            logger.error(e.getMessage(), e);
+            for (JpaPersistentItem pItem : batch) {
+                // ids assigned by the failed transaction must not be reused
+                pItem.setId(null);
+            }
+            return false;
+        }
+        service.persisted();
+        return true;
+    }
+
+    /**
+     * Persists the items in a single transaction.
+     */
+    void persist(List<JpaPersistentItem> batch) throws Exception {
+        EntityManager em = service.getEntityManagerFactory().createEntityManager();
+        try {
+            em.setFlushMode(FlushModeType.COMMIT);
+            em.getTransaction().begin();
+            for (JpaPersistentItem pItem : batch) {
+                em.persist(pItem);
+            }
+            em.getTransaction().commit();
+        } catch (Exception e) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            throw e;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * @return the number of items waiting to be persisted
+     */
+    public int getQueueDepth() {
+        return buffer.getQueueDepth();
+    }
+
+    public long getWrittenCount() {
+        return buffer.getWrittenCount();
+    }
+
+    public long getDroppedCount() {
+        return buffer.getDroppedCount();
+    }
+
+    public long getTransactionCount() {
+        return buffer.getBatchCount();
+    }
+
+    @Override
+    public String toString() {
+        return "JpaWriteBuffer [" + buffer + "]";
+    }
+
+}
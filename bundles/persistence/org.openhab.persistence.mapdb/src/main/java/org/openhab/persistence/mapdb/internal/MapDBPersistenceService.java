@@ -17,10 +17,15 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.StringUtils;
+import org.mapdb.Atomic;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
 import org.mapdb.Serializer;
@@ -68,11 +73,27 @@ public class MapDBPersistenceService implements QueryablePersistenceService {
 
     private static final String SCHEDULER_GROUP = "MapDB_SchedulerGroup";
 
+    /** name of the record holding the format version of the item store */
+    private static final String FORMAT_VERSION_NAME = "itemStoreFormat";
+
     private static int commitInterval = 5;
 
     private static boolean commitSameState = false;
 
-    private static boolean needsCommit = false;
+    /**
+     * values stored since the last commit, written into the map by the {@link CommitJob}; they are
+     * removed only once they have been committed, so that queries and rollbacks never lose them
+     */
+    private static final Map<String, MapDBItem> pending = new ConcurrentHashMap<String, MapDBItem>();
+
+    /** whether a state has changed since the last commit, only then the {@link CommitJob} commits */
+    private static final AtomicBoolean changed = new AtomicBoolean();
+
+    /** the last state of every item, used to detect updates which don't change the state */
+    private static final Map<String, State> lastStates = new ConcurrentHashMap<String, State>();
+
+    private static final AtomicLong skippedUpdates = new AtomicLong();
+    private static final AtomicLong writtenUpdates = new AtomicLong();
 
     private static final Logger logger = LoggerFactory.getLogger(MapDBPersistenceService.class);
 
@@ -109,15 +130,20 @@ public class MapDBPersistenceService implements QueryablePersistenceService {
         db = DBMaker.newFileDB(dbFile).closeOnJvmShutdown().make();
         Serializer<MapDBItem> serializer = new MapDBitemSerializer();
         map = db.createTreeMap("itemStore").valueSerializer(serializer).makeOrGet();
+        migrate();
         scheduleJob();
     }
 
     public void deactivate(final int reason) {
         logger.debug("mapdb persistence service deactivated");
+        cancelAllJobs();
         if (db != null) {
+            commitPending();
             db.close();
         }
-        cancelAllJobs();
+        lastStates.clear();
+        logger.debug("mapdb updates: {} written, {} skipped as unchanged", writtenUpdates.get(),
+                skippedUpdates.get());
     }
 
     @Override
@@ -149,31 +175,121 @@ public class MapDBPersistenceService implements QueryablePersistenceService {
         } else if (item instanceof ColorItem) {
             state = item.getStateAs(HSBType.class);
         }
+        State lastState = lastState(alias);
+        boolean sameState = isSameState(lastState, state);
+
         MapDBItem mItem = new MapDBItem();
         mItem.setName(alias);
-        mItem.setState(state);
+        // an unchanged state only moves the timestamp, the known state instance is kept
+        mItem.setState(sameState ? lastState : state);
         mItem.setTimestamp(new Date());
-        MapDBItem oldItem = map.put(alias, mItem);
+        pending.put(alias, mItem);
+        if (sameState) {
+            skippedUpdates.incrementAndGet();
+            if (commitSameState) {
+                changed.set(true);
+            }
+            logger.trace("Updated timestamp of '{}', state '{}' is unchanged", alias, state);
+        } else {
+            lastStates.put(alias, state);
+            writtenUpdates.incrementAndGet();
+            changed.set(true);
+            logger.debug("Stored '{}' with state '{}' in mapdb database", alias, state.toString());
+        }
+    }
 
-        if (!commitSameState) {
-            if (oldItem != null) {
-                if (!oldItem.getState().toString().equals(state.toString())) {
-                    needsCommit = true;
-                }
+    /**
+     * @return the number of updates which only moved the timestamp because the state did not change
+     */
+    public static long getSkippedUpdates() {
+        return skippedUpdates.get();
+    }
+
+    /**
+     * @return the number of updates which have been handed to the database
+     */
+    public static long getWrittenUpdates() {
+        return writtenUpdates.get();
+    }
+
+    private State lastState(String alias) {
+        State state = lastStates.get(alias);
+        if (state == null) {
+            MapDBItem item = map.get(alias);
+            if (item != null) {
+                state = item.getState();
+                lastStates.put(alias, state);
             }
         }
-        logger.debug("Stored '{}' with state '{}' in mapdb database", alias, state.toString());
+        return state;
+    }
+
+    /**
+     * Compares two states by type and value, e.g. 1.0 and 1.00 are the same decimal.
+     */
+    private static boolean isSameState(State oldState, State newState) {
+        return oldState != null && oldState.getClass() == newState.getClass() && oldState.equals(newState);
+    }
+
+    /**
+     * Writes the pending values into the map and commits them. Each value replaces the stored one in
+     * a single put and stays pending until the commit has succeeded, unless it has been replaced by
+     * a newer value in the meantime.
+     */
+    private static void commitPending() {
+        if (pending.isEmpty() || db.isClosed()) {
+            return;
+        }
+        Map<String, MapDBItem> committing = new HashMap<String, MapDBItem>(pending);
+        for (Map.Entry<String, MapDBItem> entry : committing.entrySet()) {
+            map.put(entry.getKey(), entry.getValue());
+        }
+        db.commit();
+        for (Map.Entry<String, MapDBItem> entry : committing.entrySet()) {
+            pending.remove(entry.getKey(), entry.getValue());
+        }
     }
 
     @Override
     public Iterable<HistoricItem> query(FilterCriteria filter) {
-        HistoricItem item = map.get(filter.getItemName());
+        MapDBItem item = pending.get(filter.getItemName());
+        if (item == null) {
+            item = map.get(filter.getItemName());
+        }
         if (item != null) {
-            return Collections.singletonList(item);
+            // the name is the key of the map, it is not part of the stored record
+            item.setName(filter.getItemName());
+            return Collections.<HistoricItem> singletonList(item);
         }
         return Collections.emptyList();
     }
 
+    /**
+     * Rewrites all records of the item store which were written in an older format, so that they are
+     * decoded by the current format from then on.
+     */
+    private void migrate() {
+        Atomic.Integer format = db.getAtomicInteger(FORMAT_VERSION_NAME);
+        int oldVersion = format.get();
+        if (oldVersion >= MapDBitemSerializer.FORMAT_VERSION) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        int count = 0;
+        for (String name : new ArrayList<String>(map.keySet())) {
+            MapDBItem item = map.get(name);
+            if (item != null) {
+                item.setName(name);
+                map.put(name, item);
+                count++;
+            }
+        }
+        format.set(MapDBitemSerializer.FORMAT_VERSION);
+        db.commit();
+        logger.info("Migrated {} mapdb items from format {} to {} in {}ms", count, oldVersion,
+                MapDBitemSerializer.FORMAT_VERSION, System.currentTimeMillis() - startTime);
+    }
+
     /**
      * Schedules new quartz scheduler jobs for committing transactions and
      * backing up the database
@@ -226,15 +342,16 @@ public class MapDBPersistenceService implements QueryablePersistenceService {
         public void execute(JobExecutionContext context) throws JobExecutionException {
             long startTime = System.currentTimeMillis();
             try {
-                if (!db.isClosed() && (needsCommit || commitSameState)) {
-                    needsCommit = false;
-                    db.commit();
-                    logger.trace("successfully commited mapdb transaction in {}ms",
-                            System.currentTimeMillis() - startTime);
+                if (!db.isClosed() && changed.getAndSet(false)) {
+                    commitPending();
+                    logger.trace("successfully commited mapdb transaction in {}ms ({} written, {} skipped)",
+                            System.currentTimeMillis() - startTime, writtenUpdates.get(), skippedUpdates.get());
                 }
             } catch (Exception e) {
                 try {
                     logger.warn("Error committing transaction : {}", e.getMessage());
+                    // the rolled back values are still pending and are written again by the next commit
+                    changed.set(true);
                     if (!db.isClosed()) {
                         db.rollback();
                     }
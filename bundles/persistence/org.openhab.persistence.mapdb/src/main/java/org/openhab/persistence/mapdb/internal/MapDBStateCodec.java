@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.mapdb.internal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.HSBType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.types.State;
+
+/**
+ * Encodes states in a compact binary form: a one byte type tag followed by the raw value,
+ * e.g. the unscaled value and scale of a decimal or the ordinal of an enum. States of other
+ * types are stored by their string representation and restored as {@link StringType},
+ * as it has always been done.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public final class MapDBStateCodec {
+
+    static final byte TAG_STRING = 0;
+    static final byte TAG_DECIMAL = 1;
+    static final byte TAG_PERCENT = 2;
+    static final byte TAG_HSB = 3;
+    static final byte TAG_ON_OFF = 4;
+    static final byte TAG_OPEN_CLOSED = 5;
+    static final byte TAG_DATE_TIME = 6;
+
+    /** a decimal whose unscaled value fits into a long */
+    private static final byte DECIMAL_COMPACT = 0;
+    /** any other decimal, stored as the bytes of its unscaled value */
+    private static final byte DECIMAL_BIG = 1;
+
+    private MapDBStateCodec() {
+    }
+
+    public static void write(DataOutput out, State state) throws IOException {
+        // PercentType extends DecimalType, so it has to be tested first
+        if (state instanceof PercentType) {
+            out.writeByte(TAG_PERCENT);
+            writeDecimal(out, ((PercentType) state).toBigDecimal());
+        } else if (state instanceof DecimalType) {
+            out.writeByte(TAG_DECIMAL);
+            writeDecimal(out, ((DecimalType) state).toBigDecimal());
+        } else if (state instanceof HSBType) {
+            HSBType hsb = (HSBType) state;
+            out.writeByte(TAG_HSB);
+            writeDecimal(out, hsb.getHue().toBigDecimal());
+            writeDecimal(out, hsb.getSaturation().toBigDecimal());
+            writeDecimal(out, hsb.getBrightness().toBigDecimal());
+        } else if (state instanceof OnOffType) {
+            out.writeByte(TAG_ON_OFF);
+            out.writeByte(((OnOffType) state).ordinal());
+        } else if (state instanceof OpenClosedType) {
+            out.writeByte(TAG_OPEN_CLOSED);
+            out.writeByte(((OpenClosedType) state).ordinal());
+        } else if (state instanceof DateTimeType) {
+            Calendar calendar = ((DateTimeType) state).getCalendar();
+            out.writeByte(TAG_DATE_TIME);
+            out.writeLong(calendar.getTimeInMillis());
+            out.writeUTF(calendar.getTimeZone().getID());
+        } else {
+            out.writeByte(TAG_STRING);
+            out.writeUTF(state.toString());
+        }
+    }
+
+    public static State read(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case TAG_STRING:
+                return StringType.valueOf(in.readUTF());
+            case TAG_DECIMAL:
+                return new DecimalType(readDecimal(in));
+            case TAG_PERCENT:
+                return new PercentType(readDecimal(in));
+            case TAG_HSB:
+                return new HSBType(new DecimalType(readDecimal(in)), new PercentType(readDecimal(in)),
+                        new PercentType(readDecimal(in)));
+            case TAG_ON_OFF:
+                return OnOffType.values()[in.readByte()];
+            case TAG_OPEN_CLOSED:
+                return OpenClosedType.values()[in.readByte()];
+            case TAG_DATE_TIME:
+                long time = in.readLong();
+                Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone(in.readUTF()));
+                calendar.setTimeInMillis(time);
+                return new DateTimeType(calendar);
+            default:
+                throw new IOException("Unknown state type tag " + tag);
+        }
+    }
+
+    private static void writeDecimal(DataOutput out, BigDecimal value) throws IOException {
+        BigInteger unscaled = value.unscaledValue();
+        if (unscaled.bitLength() < 64) {
+            out.writeByte(DECIMAL_COMPACT);
+            out.writeLong(unscaled.longValue());
+        } else {
+            byte[] bytes = unscaled.toByteArray();
+            out.writeByte(DECIMAL_BIG);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.writeInt(value.scale());
+    }
+
+    private static BigDecimal readDecimal(DataInput in) throws IOException {
+        byte kind = in.readByte();
+        BigInteger unscaled;
+        if (kind == DECIMAL_COMPACT) {
+            unscaled = BigInteger.valueOf(in.readLong());
+        } else {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            unscaled = new BigInteger(bytes);
+        }
+        return new BigDecimal(unscaled, in.readInt());
+    }
+
+}
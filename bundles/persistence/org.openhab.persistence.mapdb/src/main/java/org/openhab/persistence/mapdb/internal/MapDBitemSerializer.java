@@ -8,7 +8,9 @@
  */
 package org.openhab.persistence.mapdb.internal;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.io.Serializable;
@@ -26,6 +28,11 @@ import org.openhab.core.types.State;
 
 /**
  * Serializer to serialize items to and from Mapdb format
+ * <p>
+ * Records start with {@link #FORMAT_MARKER} and a format version, followed by the state encoded by
+ * {@link MapDBStateCodec} and the timestamp. The item name is not stored, it is the key of the map.
+ * Records of the initial format (item name, state class name and state as strings) are still read,
+ * they never start with the marker as item names are much shorter than 65280 bytes.
  *
  * @author Jens Viebig
  * @since 1.7.0
@@ -35,21 +42,51 @@ public class MapDBitemSerializer implements Serializer<MapDBItem>, Serializable
 
     private static final long serialVersionUID = 1L;
 
+    /** first byte of all versioned records */
+    static final int FORMAT_MARKER = 0xFF;
+
+    /** the format version written by this serializer */
+    static final int FORMAT_VERSION = 1;
+
     public MapDBitemSerializer() {
     }
 
     @Override
     public void serialize(DataOutput out, MapDBItem item) throws IOException {
-        out.writeUTF(item.getName());
-        out.writeUTF(item.getState().getClass().getSimpleName());
-        out.writeUTF(item.getState().toString());
+        out.writeByte(FORMAT_MARKER);
+        out.writeByte(FORMAT_VERSION);
+        MapDBStateCodec.write(out, item.getState());
         out.writeLong(item.getTimestamp().getTime());
     }
 
     @Override
     public MapDBItem deserialize(DataInput in, int available) throws IOException {
+        int first = in.readUnsignedByte();
+        if (first != FORMAT_MARKER) {
+            return deserializeInitialFormat(in, first);
+        }
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported mapdb item format version " + version);
+        }
+        MapDBItem item = new MapDBItem();
+        item.setState(MapDBStateCodec.read(in));
+        item.setTimestamp(new Date(in.readLong()));
+        return item;
+    }
+
+    /**
+     * Reads a record of the initial format, whose first byte has already been consumed.
+     */
+    private MapDBItem deserializeInitialFormat(DataInput in, int first) throws IOException {
+        int second = in.readUnsignedByte();
+        byte[] name = new byte[2 + ((first << 8) | second)];
+        name[0] = (byte) first;
+        name[1] = (byte) second;
+        in.readFully(name, 2, name.length - 2);
+
         MapDBItem item = new MapDBItem();
-        item.setName(in.readUTF());
+        item.setName(new DataInputStream(new ByteArrayInputStream(name)).readUTF());
         String stateType = in.readUTF();
 
         String stateStr = in.readUTF();
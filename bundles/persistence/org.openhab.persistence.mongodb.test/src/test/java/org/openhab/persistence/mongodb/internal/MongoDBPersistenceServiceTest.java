@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.mongodb.internal;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.openhab.core.items.Item;
+import org.openhab.core.library.items.DateTimeItem;
+import org.openhab.core.library.items.DimmerItem;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.items.StringItem;
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.StringType;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
+
+import junit.framework.Assert;
+
+/**
+ * @author agent
+ * @since 1.9.0
+ */
+public class MongoDBPersistenceServiceTest {
+
+    private final MongoDBPersistenceService service = new MongoDBPersistenceService();
+
+    @Test
+    public void testDocumentOfANumberItem() {
+        NumberItem item = new NumberItem("Temperature");
+        item.setState(new DecimalType("21.5"));
+        Date timestamp = new Date(1000);
+
+        DBObject obj = service.toDocument(item, null, timestamp);
+
+        Assert.assertTrue(obj.get(MongoDBPersistenceService.FIELD_ID) instanceof ObjectId);
+        Assert.assertEquals("Temperature", obj.get(MongoDBPersistenceService.FIELD_ITEM));
+        Assert.assertEquals("Temperature", obj.get(MongoDBPersistenceService.FIELD_REALNAME));
+        Assert.assertEquals(timestamp, obj.get(MongoDBPersistenceService.FIELD_TIMESTAMP));
+        Assert.assertEquals(21.5, obj.get(MongoDBPersistenceService.FIELD_VALUE));
+    }
+
+    @Test
+    public void testAliasIsStoredAsItemName() {
+        NumberItem item = new NumberItem("Temperature");
+        item.setState(new DecimalType("21.5"));
+
+        DBObject obj = service.toDocument(item, "Outside", new Date());
+
+        Assert.assertEquals("Outside", obj.get(MongoDBPersistenceService.FIELD_ITEM));
+        Assert.assertEquals("Temperature", obj.get(MongoDBPersistenceService.FIELD_REALNAME));
+    }
+
+    @Test
+    public void testValuesAreStoredAsNativeTypes() {
+        DimmerItem dimmer = new DimmerItem("Dimmer");
+        dimmer.setState(new PercentType(40));
+        Calendar calendar = Calendar.getInstance();
+        DateTimeItem dateTime = new DateTimeItem("DateTime");
+        dateTime.setState(new DateTimeType(calendar));
+        StringItem string = new StringItem("String");
+        string.setState(new StringType("open"));
+
+        Assert.assertEquals(40.0, valueOf(dimmer));
+        Assert.assertEquals(calendar.getTime(), valueOf(dateTime));
+        Assert.assertEquals("open", valueOf(string));
+    }
+
+    @Test
+    public void testDocumentsAreKeptWhileTheServerIsUnreachable() {
+        RecordingWriteBuffer buffer = new RecordingWriteBuffer();
+        buffer.failures = 1;
+        buffer.add(new BasicDBObject(MongoDBPersistenceService.FIELD_ITEM, "Item"));
+
+        // a query flushes the buffer first, the documents stay if the server cannot be reached
+        Assert.assertFalse(buffer.flush());
+        Assert.assertEquals(1, buffer.getQueueDepth());
+        Assert.assertTrue(buffer.flush());
+        Assert.assertEquals(0, buffer.getQueueDepth());
+        Assert.assertEquals(Collections.singletonList("Item"), buffer.items);
+    }
+
+    private Object valueOf(Item item) {
+        return service.toDocument(item, null, new Date()).get(MongoDBPersistenceService.FIELD_VALUE);
+    }
+
+    /**
+     * Records the inserted documents instead of sending them to a server; fails on demand.
+     */
+    private static class RecordingWriteBuffer extends MongoDBWriteBuffer {
+        final List<Object> items = new ArrayList<Object>();
+        int failures;
+
+        RecordingWriteBuffer() {
+            super(null, WriteConcern.ACKNOWLEDGED, 10, 60000, 100);
+        }
+
+        @Override
+        int insert(List<DBObject> bulk) {
+            if (failures > 0) {
+                failures--;
+                throw new MongoException("not connected");
+            }
+            for (DBObject obj : bulk) {
+                items.add(obj.get(MongoDBPersistenceService.FIELD_ITEM));
+            }
+            return bulk.size();
+        }
+    }
+
+}
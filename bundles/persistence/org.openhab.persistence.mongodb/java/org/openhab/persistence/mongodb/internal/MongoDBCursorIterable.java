@@ -0,0 +1,256 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.mongodb.internal;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.openhab.core.items.Item;
+import org.openhab.core.library.items.ColorItem;
+import org.openhab.core.library.items.ContactItem;
+import org.openhab.core.library.items.DateTimeItem;
+import org.openhab.core.library.items.DimmerItem;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.items.RollershutterItem;
+import org.openhab.core.library.items.SwitchItem;
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.HSBType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.types.State;
+import org.openhab.persistence.mongodb.internal.MongoDBPersistenceService.MongoDBItem;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+
+/**
+ * The result of a query, which converts the documents into {@link HistoricItem}s chunk by chunk
+ * instead of building a list of all of them. Every chunk is read with its own cursor, which is
+ * closed before the chunk is returned, so that a result which is not read to the end does not
+ * leave a cursor open on the server. The chunks following the first one continue after the sort
+ * key of the previous chunk. Every call of {@link #iterator()} runs the query again.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+class MongoDBCursorIterable implements Iterable<HistoricItem> {
+
+    /**
+     * Receives the sort key of the last document of a completely read page.
+     */
+    interface PageListener {
+        void pageRead(Object lastTimestamp, Object lastId);
+    }
+
+    /**
+     * Converts the stored value into the state of an item type. The type is looked up once per
+     * query, not once per document.
+     */
+    enum ValueReader {
+        NUMBER {
+            @Override
+            State read(BasicDBObject obj) {
+                return new DecimalType(obj.getDouble(MongoDBPersistenceService.FIELD_VALUE));
+            }
+        },
+        PERCENT {
+            @Override
+            State read(BasicDBObject obj) {
+                return new PercentType(obj.getInt(MongoDBPersistenceService.FIELD_VALUE));
+            }
+        },
+        ON_OFF {
+            @Override
+            State read(BasicDBObject obj) {
+                return OnOffType.valueOf(obj.getString(MongoDBPersistenceService.FIELD_VALUE));
+            }
+        },
+        OPEN_CLOSED {
+            @Override
+            State read(BasicDBObject obj) {
+                return OpenClosedType.valueOf(obj.getString(MongoDBPersistenceService.FIELD_VALUE));
+            }
+        },
+        HSB {
+            @Override
+            State read(BasicDBObject obj) {
+                return new HSBType(obj.getString(MongoDBPersistenceService.FIELD_VALUE));
+            }
+        },
+        DATE_TIME {
+            @Override
+            State read(BasicDBObject obj) {
+                Calendar cal = Calendar.getInstance();
+                cal.setTime(obj.getDate(MongoDBPersistenceService.FIELD_VALUE));
+                return new DateTimeType(cal);
+            }
+        },
+        STRING {
+            @Override
+            State read(BasicDBObject obj) {
+                return new StringType(obj.getString(MongoDBPersistenceService.FIELD_VALUE));
+            }
+        };
+
+        abstract State read(BasicDBObject obj);
+
+        static ValueReader forItem(Item item) {
+            if (item instanceof NumberItem) {
+                return NUMBER;
+            } else if (item instanceof DimmerItem || item instanceof RollershutterItem) {
+                return PERCENT;
+            } else if (item instanceof SwitchItem) {
+                return ON_OFF;
+            } else if (item instanceof ContactItem) {
+                return OPEN_CLOSED;
+            } else if (item instanceof ColorItem) {
+                return HSB;
+            } else if (item instanceof DateTimeItem) {
+                return DATE_TIME;
+            } else {
+                return STRING;
+            }
+        }
+    }
+
+    /** the maximum number of documents read with one cursor */
+    static final int CHUNK_SIZE = 1000;
+
+    private final DBCollection collection;
+    private final BasicDBObject query;
+    private final DBObject sort;
+    private final int skip;
+    private final int limit;
+    private final String name;
+    private final ValueReader reader;
+    private final PageListener listener;
+
+    /**
+     * @param collection the collection to query
+     * @param query the query document
+     * @param sort the sort document
+     * @param skip the number of documents to skip, 0 for keyset pages
+     * @param limit the page size
+     * @param name the item name of the historic items
+     * @param reader converts the stored values
+     * @param listener is told about the end of the page once it has been read completely, may be null
+     */
+    MongoDBCursorIterable(DBCollection collection, BasicDBObject query, DBObject sort, int skip, int limit,
+            String name, ValueReader reader, PageListener listener) {
+        this.collection = collection;
+        this.query = query;
+        this.sort = sort;
+        this.skip = skip;
+        this.limit = limit;
+        this.name = name;
+        this.reader = reader;
+        this.listener = listener;
+    }
+
+    @Override
+    public Iterator<HistoricItem> iterator() {
+        return new ChunkIterator();
+    }
+
+    /**
+     * Restricts a query to the documents following the given sort key.
+     *
+     * @param sortDir 1 for ascending, -1 for descending order
+     */
+    static BasicDBObject afterKey(BasicDBObject query, Object timestamp, Object id, int sortDir) {
+        String op = sortDir > 0 ? "$gt" : "$lt";
+        List<DBObject> after = new ArrayList<DBObject>(2);
+        after.add(new BasicDBObject(MongoDBPersistenceService.FIELD_TIMESTAMP, new BasicDBObject(op, timestamp)));
+        after.add(new BasicDBObject(MongoDBPersistenceService.FIELD_TIMESTAMP, timestamp)
+                .append(MongoDBPersistenceService.FIELD_ID, new BasicDBObject(op, id)));
+        List<DBObject> and = new ArrayList<DBObject>(2);
+        and.add(query);
+        and.add(new BasicDBObject("$or", after));
+        return new BasicDBObject("$and", and);
+    }
+
+    private class ChunkIterator implements Iterator<HistoricItem> {
+
+        private Iterator<HistoricItem> chunk;
+        private boolean lastChunk = false;
+        private int count = 0;
+        private Object lastTimestamp;
+        private Object lastId;
+
+        @Override
+        public boolean hasNext() {
+            if (chunk != null && chunk.hasNext()) {
+                return true;
+            }
+            if (lastChunk) {
+                return false;
+            }
+            readChunk();
+            return chunk.hasNext();
+        }
+
+        @Override
+        public HistoricItem next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return chunk.next();
+        }
+
+        private void readChunk() {
+            int size = limit > 0 ? Math.min(CHUNK_SIZE, limit - count) : CHUNK_SIZE;
+            DBCursor cursor;
+            if (chunk == null) {
+                cursor = collection.find(query).sort(sort);
+                if (skip > 0) {
+                    cursor.skip(skip);
+                }
+            } else {
+                int sortDir = ((Number) sort.get(MongoDBPersistenceService.FIELD_TIMESTAMP)).intValue();
+                cursor = collection.find(afterKey(query, lastTimestamp, lastId, sortDir)).sort(sort);
+            }
+            cursor.limit(size).batchSize(size);
+            List<HistoricItem> items = new ArrayList<HistoricItem>(Math.min(size, 64));
+            try {
+                while (cursor.hasNext()) {
+                    BasicDBObject obj = (BasicDBObject) cursor.next();
+                    lastTimestamp = obj.get(MongoDBPersistenceService.FIELD_TIMESTAMP);
+                    lastId = obj.get(MongoDBPersistenceService.FIELD_ID);
+                    items.add(new MongoDBItem(name, reader.read(obj),
+                            obj.getDate(MongoDBPersistenceService.FIELD_TIMESTAMP)));
+                }
+            } finally {
+                cursor.close();
+            }
+            count += items.size();
+            chunk = items.iterator();
+            if (items.size() < size || (limit > 0 && count >= limit)) {
+                lastChunk = true;
+                if (listener != null && limit > 0 && count == limit) {
+                    listener.pageRead(lastTimestamp, lastId);
+                }
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
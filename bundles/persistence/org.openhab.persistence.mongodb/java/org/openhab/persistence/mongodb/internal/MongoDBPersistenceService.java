@@ -9,32 +9,21 @@
 package org.openhab.persistence.mongodb.internal;
 
 import java.text.DateFormat;
-import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
-import java.util.List;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.bson.types.ObjectId;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.items.ItemRegistry;
-import org.openhab.core.library.items.ColorItem;
-import org.openhab.core.library.items.ContactItem;
-import org.openhab.core.library.items.DateTimeItem;
-import org.openhab.core.library.items.DimmerItem;
-import org.openhab.core.library.items.NumberItem;
-import org.openhab.core.library.items.RollershutterItem;
-import org.openhab.core.library.items.SwitchItem;
 import org.openhab.core.library.types.DateTimeType;
 import org.openhab.core.library.types.DecimalType;
-import org.openhab.core.library.types.HSBType;
-import org.openhab.core.library.types.OnOffType;
-import org.openhab.core.library.types.OpenClosedType;
 import org.openhab.core.library.types.PercentType;
-import org.openhab.core.library.types.StringType;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.FilterCriteria.Operator;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
@@ -49,10 +38,10 @@ import org.slf4j.LoggerFactory;
 
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
-import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientURI;
+import com.mongodb.WriteConcern;
 
 /**
  * This is the implementation of the MongoDB {@link PersistenceService}.
@@ -62,23 +51,46 @@ import com.mongodb.MongoClientURI;
  */
 public class MongoDBPersistenceService implements QueryablePersistenceService {
 
-    private static final String FIELD_ID = "_id";
-    private static final String FIELD_ITEM = "item";
-    private static final String FIELD_REALNAME = "realName";
-    private static final String FIELD_TIMESTAMP = "timestamp";
-    private static final String FIELD_VALUE = "value";
+    static final String FIELD_ID = "_id";
+    static final String FIELD_ITEM = "item";
+    static final String FIELD_REALNAME = "realName";
+    static final String FIELD_TIMESTAMP = "timestamp";
+    static final String FIELD_VALUE = "value";
+
+    /** the number of page ends remembered for keyset pagination */
+    private static final int PAGE_CACHE_SIZE = 100;
+
+    private static final int DEFAULT_FLUSH_INTERVAL = 1000;
 
     private static final Logger logger = LoggerFactory.getLogger(MongoDBPersistenceService.class);
 
     private String url;
     private String db;
     private String collection;
+    private WriteConcern writeConcern = WriteConcern.ACKNOWLEDGED;
+    private int bulkSize;
+    private int flushInterval;
 
     private boolean initialized = false;
     protected ItemRegistry itemRegistry;
 
     private MongoClient cl;
     private DBCollection mongoCollection;
+    private volatile MongoDBWriteBuffer writeBuffer;
+
+    /**
+     * The sort key of the last document of recently read pages, so that the following page can
+     * continue after it instead of skipping all previous documents.
+     */
+    private final Map<String, Object[]> pageEnds = Collections
+            .synchronizedMap(new LinkedHashMap<String, Object[]>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Object[]> eldest) {
+                    return size() > PAGE_CACHE_SIZE;
+                }
+            });
 
     public void activate(final BundleContext bundleContext, final Map<String, Object> config) {
         url = (String) config.get("url");
@@ -100,6 +112,20 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
                     "The MongoDB database collection is missing - please configure the mongodb:collection parameter in openhab.cfg");
         }
 
+        String concern = (String) config.get("writeConcern");
+        writeConcern = WriteConcern.ACKNOWLEDGED;
+        if (StringUtils.isNotBlank(concern)) {
+            WriteConcern configured = WriteConcern.valueOf(concern.trim().toUpperCase());
+            if (configured == null) {
+                logger.warn("Unknown MongoDB write concern '{}', using ACKNOWLEDGED", concern);
+            } else {
+                writeConcern = configured;
+            }
+        }
+        bulkSize = getIntConfig(config, "bulkSize", 0);
+        flushInterval = getIntConfig(config, "flushInterval", DEFAULT_FLUSH_INTERVAL);
+        logger.debug("MongoDB write concern {}, bulk size {}", writeConcern, bulkSize);
+
         disconnectFromDatabase();
         connectToDatabase();
 
@@ -107,6 +133,19 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
         initialized = true;
     }
 
+    private int getIntConfig(Map<String, Object> config, String key, int defaultValue) {
+        String value = (String) config.get(key);
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value '{}' for mongodb:{}, using {}", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
     public void deactivate(final int reason) {
         logger.debug("MongoDB persistence bundle stopping. Disconnecting from database.");
         disconnectFromDatabase();
@@ -157,22 +196,37 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
             return;
         }
 
-        String realName = item.getName();
-        String name = (alias != null) ? alias : realName;
-        Object value = this.convertValue(item.getState());
+        DBObject obj = toDocument(item, alias, new Date());
+        MongoDBWriteBuffer buffer = writeBuffer;
+        if (buffer != null) {
+            buffer.add(obj);
+        } else {
+            this.mongoCollection.insert(obj, writeConcern);
+        }
 
+        logger.debug("MongoDB save {}={}", obj.get(FIELD_ITEM), obj.get(FIELD_VALUE));
+    }
+
+    /**
+     * Creates the document which stores the current state of an item.
+     *
+     * @param item the item
+     * @param alias the name to store the state under, or <code>null</code> to use the item name
+     * @param timestamp the time of the state
+     * @return the document
+     */
+    DBObject toDocument(Item item, String alias, Date timestamp) {
+        String realName = item.getName();
         DBObject obj = new BasicDBObject();
         obj.put(FIELD_ID, new ObjectId());
-        obj.put(FIELD_ITEM, name);
+        obj.put(FIELD_ITEM, (alias != null) ? alias : realName);
         obj.put(FIELD_REALNAME, realName);
-        obj.put(FIELD_TIMESTAMP, new Date());
-        obj.put(FIELD_VALUE, value);
-        this.mongoCollection.save(obj);
-
-        logger.debug("MongoDB save {}={}", name, value);
+        obj.put(FIELD_TIMESTAMP, timestamp);
+        obj.put(FIELD_VALUE, convertValue(item.getState()));
+        return obj;
     }
 
-    private Object convertValue(State state) {
+    Object convertValue(State state) {
         Object value;
         if (state instanceof PercentType) {
             value = ((PercentType) state).toBigDecimal().doubleValue();
@@ -212,9 +266,12 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
             this.cl = new MongoClient(new MongoClientURI(this.url));
             mongoCollection = cl.getDB(this.db).getCollection(this.collection);
 
-            BasicDBObject idx = new BasicDBObject();
-            idx.append(FIELD_TIMESTAMP, 1).append(FIELD_ITEM, 1);
-            this.mongoCollection.createIndex(idx);
+            ensureIndexes();
+            if (bulkSize > 0) {
+                writeBuffer = new MongoDBWriteBuffer(mongoCollection, writeConcern, bulkSize, flushInterval,
+                        Math.max(bulkSize * 20, 10000));
+                writeBuffer.start();
+            }
             logger.debug("Connect MongoDB ... done");
         } catch (Exception e) {
             logger.error("Failed to connect to database {}", this.url);
@@ -222,10 +279,39 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
         }
     }
 
+    /**
+     * Creates the indexes the queries rely on, if they do not exist yet. Indexes are built in the
+     * background, so that a large existing collection stays usable meanwhile.
+     */
+    private void ensureIndexes() {
+        Set<String> existing = new HashSet<String>();
+        for (DBObject info : mongoCollection.getIndexInfo()) {
+            existing.add(String.valueOf(info.get("name")));
+        }
+        // queries of a single item, sorted by time; _id makes the order unique for keyset paging
+        ensureIndex(existing, new BasicDBObject(FIELD_ITEM, 1).append(FIELD_TIMESTAMP, 1).append(FIELD_ID, 1));
+        // queries over all items
+        ensureIndex(existing, new BasicDBObject(FIELD_TIMESTAMP, 1).append(FIELD_ITEM, 1));
+    }
+
+    private void ensureIndex(Set<String> existing, DBObject keys) {
+        String indexName = DBCollection.genIndexName(keys);
+        if (existing.contains(indexName)) {
+            return;
+        }
+        logger.info("Creating MongoDB index {} on collection {}", indexName, collection);
+        mongoCollection.createIndex(keys, new BasicDBObject("name", indexName).append("background", true));
+    }
+
     /**
      * Disconnects from the database
      */
     private void disconnectFromDatabase() {
+        if (this.writeBuffer != null) {
+            this.writeBuffer.stop();
+            logger.info("MongoDB bulk writer statistics: {}", writeBuffer);
+            this.writeBuffer = null;
+        }
         this.mongoCollection = null;
         if (this.cl != null) {
             this.cl.close();
@@ -247,11 +333,16 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
             return Collections.emptyList();
         }
 
+        // documents still waiting in the write buffer must be found as well
+        MongoDBWriteBuffer buffer = writeBuffer;
+        if (buffer != null) {
+            buffer.flush();
+        }
+
         String name = filter.getItemName();
         Item item = getItem(name);
 
-        List<HistoricItem> items = new ArrayList<HistoricItem>();
-        DBObject query = new BasicDBObject();
+        BasicDBObject query = new BasicDBObject();
         if (filter.getItemName() != null) {
             query.put(FIELD_ITEM, filter.getItemName());
         }
@@ -260,45 +351,54 @@ public class MongoDBPersistenceService implements QueryablePersistenceService {
             Object value = convertValue(filter.getState());
             query.put(FIELD_VALUE, new BasicDBObject(op, value));
         }
-        if (filter.getBeginDate() != null) {
-            query.put(FIELD_TIMESTAMP, new BasicDBObject("$gte", filter.getBeginDate()));
-        }
-        if (filter.getEndDate() != null) {
-            query.put(FIELD_TIMESTAMP, new BasicDBObject("$lte", filter.getEndDate()));
-        }
-
-        Integer sortDir = (filter.getOrdering() == Ordering.ASCENDING) ? 1 : -1;
-        DBCursor cursor = this.mongoCollection.find(query).sort(new BasicDBObject(FIELD_TIMESTAMP, sortDir))
-                .skip(filter.getPageNumber() * filter.getPageSize()).limit(filter.getPageSize());
-
-        while (cursor.hasNext()) {
-            BasicDBObject obj = (BasicDBObject) cursor.next();
-
-            final State state;
-            if (item instanceof NumberItem) {
-                state = new DecimalType(obj.getDouble(FIELD_VALUE));
-            } else if (item instanceof DimmerItem) {
-                state = new PercentType(obj.getInt(FIELD_VALUE));
-            } else if (item instanceof SwitchItem) {
-                state = OnOffType.valueOf(obj.getString(FIELD_VALUE));
-            } else if (item instanceof ContactItem) {
-                state = OpenClosedType.valueOf(obj.getString(FIELD_VALUE));
-            } else if (item instanceof RollershutterItem) {
-                state = new PercentType(obj.getInt(FIELD_VALUE));
-            } else if (item instanceof ColorItem) {
-                state = new HSBType(obj.getString(FIELD_VALUE));
-            } else if (item instanceof DateTimeItem) {
-                Calendar cal = Calendar.getInstance();
-                cal.setTime(obj.getDate(FIELD_VALUE));
-                state = new DateTimeType(cal);
-            } else {
-                state = new StringType(obj.getString(FIELD_VALUE));
+        if (filter.getBeginDate() != null || filter.getEndDate() != null) {
+            BasicDBObject range = new BasicDBObject();
+            if (filter.getBeginDate() != null) {
+                range.put("$gte", filter.getBeginDate());
+            }
+            if (filter.getEndDate() != null) {
+                range.put("$lte", filter.getEndDate());
             }
+            query.put(FIELD_TIMESTAMP, range);
+        }
 
-            items.add(new MongoDBItem(name, state, obj.getDate(FIELD_TIMESTAMP)));
+        final int sortDir = (filter.getOrdering() == Ordering.ASCENDING) ? 1 : -1;
+        DBObject sort = new BasicDBObject(FIELD_TIMESTAMP, sortDir).append(FIELD_ID, sortDir);
+
+        int pageSize = filter.getPageSize();
+        int pageNumber = filter.getPageNumber();
+        final String pageKey = getPageKey(filter);
+        int skip = 0;
+        if (pageNumber > 0) {
+            Object[] previousEnd = pageEnds.get(pageKey + "#" + (pageNumber - 1));
+            if (previousEnd != null) {
+                query = MongoDBCursorIterable.afterKey(query, previousEnd[0], previousEnd[1], sortDir);
+            } else {
+                // the previous page has not been read, so there is no key to continue from
+                skip = pageNumber * pageSize;
+            }
         }
 
-        return items;
+        final String pageEndKey = pageKey + "#" + pageNumber;
+        MongoDBCursorIterable.PageListener listener = new MongoDBCursorIterable.PageListener() {
+            @Override
+            public void pageRead(Object lastTimestamp, Object lastId) {
+                pageEnds.put(pageEndKey, new Object[] { lastTimestamp, lastId });
+            }
+        };
+
+        return new MongoDBCursorIterable(this.mongoCollection, query, sort, skip, pageSize, name,
+                MongoDBCursorIterable.ValueReader.forItem(item), listener);
+    }
+
+    /**
+     * @return a key identifying all pages of the same query
+     */
+    private String getPageKey(FilterCriteria filter) {
+        return filter.getItemName() + "|" + filter.getOperator() + "|" + filter.getState() + "|"
+                + (filter.getBeginDate() == null ? "" : filter.getBeginDate().getTime()) + "|"
+                + (filter.getEndDate() == null ? "" : filter.getEndDate().getTime()) + "|" + filter.getOrdering()
+                + "|" + filter.getPageSize();
     }
 
     private String convertOperator(Operator operator) {
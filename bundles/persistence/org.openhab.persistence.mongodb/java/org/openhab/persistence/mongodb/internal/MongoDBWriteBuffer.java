@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.mongodb.internal;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openhab.persistence.spool.WriteBehindBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteResult;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
+
+/**
+ * Inserts the stored documents with unordered bulk operations through a {@link WriteBehindBuffer}.
+ * <p>
+ * If a bulk fails as a whole, e.g. because the server is not reachable, the buffer puts its
+ * documents back in front of the waiting ones. Documents rejected by the server, e.g. duplicate
+ * keys, are counted and logged, but not retried, since the server would reject them again.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class MongoDBWriteBuffer implements WriteBehindBuffer.Writer<DBObject> {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoDBWriteBuffer.class);
+
+    private final DBCollection collection;
+    private final WriteConcern writeConcern;
+    private final WriteBehindBuffer<DBObject> buffer;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param collection the collection to insert into
+     * @param writeConcern the write concern of the bulk operations
+     * @param bulkSize the maximum number of documents of a bulk
+     * @param interval the flush interval in milliseconds
+     * @param capacity the maximum number of waiting documents, the oldest documents are dropped beyond it
+     */
+    public MongoDBWriteBuffer(DBCollection collection, WriteConcern writeConcern, int bulkSize, int interval,
+            int capacity) {
+        this.collection = collection;
+        this.writeConcern = writeConcern;
+        this.buffer = new WriteBehindBuffer<DBObject>("MongoDB bulk writer", this, bulkSize, interval, capacity);
+    }
+
+    public void start() {
+        buffer.start();
+    }
+
+    /**
+     * Stops the timer and writes the remaining documents before returning.
+     */
+    public void stop() {
+        buffer.stop();
+    }
+
+    /**
+     * Inserts the waiting documents on the calling thread, e.g. before a query which must find them.
+     *
+     * @return <code>false</code> if a bulk could not be inserted
+     */
+    public boolean flush() {
+        return buffer.flush();
+    }
+
+    /**
+     * Adds a document to the next bulk.
+     */
+    public void add(DBObject obj) {
+        buffer.add(obj);
+    }
+
+    @Override
+    public boolean write(List<DBObject> bulk) {
+        try {
+            int inserted = insert(bulk);
+            logger.trace("MongoDB inserted {} of {} documents", inserted, bulk.size());
+            return true;
+        } catch (BulkWriteException e) {
+            // the server has processed the bulk, but rejected some of the documents
+            int errors = e.getWriteErrors().size();
+            rejected.addAndGet(errors);
+            logger.error("MongoDB rejected {} of {} documents: {}", errors, bulk.size(), e.getMessage());
+            return true;
+        } catch (MongoException e) {
+            logger.error("MongoDB bulk insert of {} documents failed: {}", bulk.size(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Inserts the documents with one unordered bulk operation.
+     *
+     * @return the number of inserted documents, or the number of documents if the write is not acknowledged
+     */
+    int insert(List<DBObject> bulk) {
+        BulkWriteOperation operation = collection.initializeUnorderedBulkOperation();
+        for (DBObject obj : bulk) {
+            operation.insert(obj);
+        }
+        BulkWriteResult result = operation.execute(writeConcern);
+        return result.isAcknowledged() ? result.getInsertedCount() : bulk.size();
+    }
+
+    /**
+     * @return the number of documents waiting to be written
+     */
+    public int getQueueDepth() {
+        return buffer.getQueueDepth();
+    }
+
+    /**
+     * @return the number of documents handed to the server, including the rejected ones
+     */
+    public long getWrittenCount() {
+        return buffer.getWrittenCount();
+    }
+
+    /**
+     * @return the number of documents rejected by the server
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getDroppedCount() {
+        return buffer.getDroppedCount();
+    }
+
+    public long getBulkCount() {
+        return buffer.getBatchCount();
+    }
+
+    @Override
+    public String toString() {
+        return "MongoDBWriteBuffer [" + buffer + ", rejected=" + rejected + "]";
+    }
+
+}
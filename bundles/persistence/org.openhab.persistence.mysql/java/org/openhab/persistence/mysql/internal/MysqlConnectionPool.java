@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.mysql.internal;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A small pool of MySQL connections. Connections are only validated when they have been idle
+ * for a while, instead of on every use. Prepared statements are cached per connection by
+ * Connector/J, batches are rewritten into multi-row INSERT statements.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class MysqlConnectionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(MysqlConnectionPool.class);
+
+    /** idle time in milliseconds after which a connection is validated before it is handed out */
+    private static final long VALIDATE_AFTER_IDLE = 30000;
+
+    /** time in seconds to wait for a free connection */
+    private static final long BORROW_TIMEOUT = 30;
+
+    private static class PooledConnection {
+        final Connection connection;
+        long lastUsed = System.currentTimeMillis();
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    private final String url;
+    private final Properties properties = new Properties();
+    private final int waitTimeout;
+
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+    private final Semaphore permits;
+    private volatile boolean closed = false;
+
+    /**
+     * @param url the JDBC url
+     * @param user the database user
+     * @param password the password, may be null
+     * @param maxConnections the maximum number of open connections
+     * @param waitTimeout the session wait_timeout in seconds, -1 to keep the server default
+     */
+    public MysqlConnectionPool(String url, String user, String password, int maxConnections, int waitTimeout) {
+        this.url = url;
+        this.waitTimeout = waitTimeout;
+        this.permits = new Semaphore(Math.max(1, maxConnections), true);
+        properties.setProperty("user", user);
+        if (password != null) {
+            properties.setProperty("password", password);
+        }
+        properties.setProperty("cachePrepStmts", "true");
+        properties.setProperty("prepStmtCacheSize", "250");
+        properties.setProperty("prepStmtCacheSqlLimit", "2048");
+        properties.setProperty("rewriteBatchedStatements", "true");
+    }
+
+    /**
+     * Returns a connection of the pool, opening a new one if none is idle.
+     * Every connection must be handed back through {@link #release(Connection, boolean)}.
+     *
+     * @throws SQLException if no connection could be opened or the pool is exhausted
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("The connection pool has been closed");
+        }
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT, TimeUnit.SECONDS)) {
+                throw new SQLException("Timed out waiting for a free database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection");
+        }
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (System.currentTimeMillis() - pooled.lastUsed < VALIDATE_AFTER_IDLE
+                        || pooled.connection.isValid(5)) {
+                    return pooled.connection;
+                }
+                logger.debug("mySQL: Discarding invalid pooled connection");
+                closeQuietly(pooled.connection);
+            }
+            return open();
+        } catch (SQLException e) {
+            permits.release();
+            throw e;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Hands a connection back to the pool.
+     *
+     * @param connection the borrowed connection
+     * @param broken <code>true</code> if an error occurred on the connection, it is closed then
+     */
+    public void release(Connection connection, boolean broken) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            if (broken || closed) {
+                closeQuietly(connection);
+            } else {
+                PooledConnection pooled = new PooledConnection(connection);
+                // most recently used first, so that surplus connections time out on the server side
+                idle.offerFirst(pooled);
+                // close() may have drained the idle connections before the offer, only one of both
+                // removes the connection again and closes it
+                if (closed && idle.remove(pooled)) {
+                    closeQuietly(connection);
+                }
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes all idle connections. Borrowed connections are closed when they are released.
+     */
+    public void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            closeQuietly(pooled.connection);
+        }
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    private Connection open() throws SQLException {
+        logger.debug("mySQL: Opening pooled connection to {}", url);
+        Connection connection = DriverManager.getConnection(url, properties);
+        if (waitTimeout != -1) {
+            Statement st = connection.createStatement();
+            try {
+                st.executeUpdate("SET SESSION wait_timeout=" + waitTimeout);
+            } finally {
+                st.close();
+            }
+        }
+        return connection;
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException hidden) {
+        }
+    }
+
+}
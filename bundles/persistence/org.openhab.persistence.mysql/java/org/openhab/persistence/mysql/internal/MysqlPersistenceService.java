@@ -8,12 +8,14 @@
  */
 package org.openhab.persistence.mysql.internal;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -23,6 +25,12 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -52,6 +60,8 @@ import org.openhab.core.persistence.PersistenceService;
 import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.types.State;
 import org.openhab.core.types.UnDefType;
+import org.openhab.persistence.spool.PersistenceSpool;
+import org.openhab.persistence.spool.SpoolRecord;
 import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -98,14 +108,30 @@ public class MysqlPersistenceService implements QueryablePersistenceService {
     protected ItemRegistry itemRegistry;
 
     // Error counter - used to reconnect to database on error
-    private int errCnt;
+    private final AtomicInteger errCnt = new AtomicInteger();
     private int errReconnectThreshold = 0;
 
     private int waitTimeout = -1;
 
-    private Connection connection = null;
-
-    private Map<String, String> sqlTables = new HashMap<String, String>();
+    private int maxConnections = 4;
+    private int batchInterval = 1000;
+    private int batchSize = 500;
+    private int maxPending = 10000;
+
+    private volatile MysqlConnectionPool pool = null;
+    private MysqlWriteBuffer writeBuffer = null;
+
+    // Values which could not be written are kept in the spool until the database is back
+    private static final int SPOOL_SEGMENT_SIZE = 1024 * 1024;
+    private static final int SPOOL_REPLAY_INTERVAL = 10;
+    /** the number of rows per replayed batch if the rows are not written in batches */
+    private static final int SPOOL_REPLAY_BATCH_SIZE = 500;
+    private String spoolDir;
+    private int spoolMaxSize = 64;
+    private volatile PersistenceSpool spool = null;
+    private ScheduledExecutorService spoolReplayer = null;
+
+    private Map<String, String> sqlTables = new ConcurrentHashMap<String, String>();
     private Map<String, String> sqlTypes = new HashMap<String, String>();
 
     /**
@@ -147,6 +173,8 @@ public class MysqlPersistenceService implements QueryablePersistenceService {
             sqlTypes.put(itemType, value);
         }
 
+        stopWriteBuffer();
+        closeSpool();
         disconnectFromDatabase();
 
         url = (String) config.get("url");
@@ -164,7 +192,8 @@ public class MysqlPersistenceService implements QueryablePersistenceService {
         password = (String) config.get("password");
         if (StringUtils.isBlank(password)) {
             logger.warn(
-                    "The SQL password is missing. Attempting to connect without password. To specify a password configure the sql:password parameter in openhab.cfg.");
+                    "The SQL password is missing. Attempting to connect without password. "
+                            + "To specify a password configure the sql:password parameter in openhab.cfg.");
         }
 
         String tmpString = (String) config.get("reconnectCnt");
@@ -177,9 +206,48 @@ public class MysqlPersistenceService implements QueryablePersistenceService {
             waitTimeout = Integer.parseInt(tmpString);
         }
 
+        tmpString = (String) config.get("maxConnections");
+        if (StringUtils.isNotBlank(tmpString)) {
+            maxConnections = Integer.parseInt(tmpString);
+        }
+
+        tmpString = (String) config.get("batchInterval");
+        if (StringUtils.isNotBlank(tmpString)) {
+            batchInterval = Integer.parseInt(tmpString);
+        }
+
+        tmpString = (String) config.get("batchSize");
+        if (StringUtils.isNotBlank(tmpString)) {
+            batchSize = Integer.parseInt(tmpString);
+        }
+
+        tmpString = (String) config.get("maxPending");
+        if (StringUtils.isNotBlank(tmpString)) {
+            maxPending = Integer.parseInt(tmpString);
+        }
+
+        spoolDir = (String) config.get("spoolDir");
+
+        tmpString = (String) config.get("spoolMaxSize");
+        if (StringUtils.isNotBlank(tmpString)) {
+            spoolMaxSize = Integer.parseInt(tmpString);
+        }
+
         // reconnect to the database in case the configuration has changed.
         connectToDatabase();
 
+        if (batchInterval > 0) {
+            writeBuffer = new MysqlWriteBuffer(new MysqlWriteBuffer.Writer() {
+                @Override
+                public boolean write(String table, List<MysqlWriteBuffer.Row> rows) {
+                    return writeRows(table, rows) || spoolRows(table, rows);
+                }
+            }, batchInterval, batchSize, maxConnections, maxPending);
+            writeBuffer.start();
+        }
+
+        openSpool();
+
         // connection has been established ... initialization completed!
         initialized = true;
 
@@ -188,6 +256,8 @@ public class MysqlPersistenceService implements QueryablePersistenceService {
 
     public void deactivate(final int reason) {
         logger.debug("mySQL persistence bundle stopping. Disconnecting from database.");
+        stopWriteBuffer();
+        closeSpool();
         disconnectFromDatabase();
     }
 
@@ -218,12 +288,14 @@ public class MysqlPersistenceService implements QueryablePersistenceService {
             item = ((GroupItem) i).getBaseItem();
             if (item == null) {// if GroupItem:<ItemType> is not defined in *.items using StringType
                 logger.debug(
-                        "mySQL: Cannot detect ItemType for {} because the GroupItems' base type isn't set in *.items File.",
+                        "mySQL: Cannot detect ItemType for {} "
+                                + "because the GroupItems' base type isn't set in *.items File.",
                         i.getName());
                 item = ((GroupItem) i).getMembers().get(0);
                 if (item == null) {
                     logger.debug(
-                            "mySQL: No ItemType found for first Child-Member of GroupItem {}, use ItemType STRINGITEM ({}) as Fallback",
+                            "mySQL: No ItemType found for first Child-Member of GroupItem {}, "
+                                    + "use ItemType STRINGITEM ({}) as Fallback",
                             i.getName(), sqlTypes.get("STRINGITEM"));
                     return sqlTypes.get("STRINGITEM");
                 }
@@ -242,6 +314,36 @@ public class MysqlPersistenceService implements QueryablePersistenceService {
     }
 
     private String getTable(Item item) {
+        String tableName = sqlTables.get(item.getName());
+        // Table already exists - return the name
+        if (tableName != null) {
+            return tableName;
+        }
+        synchronized (this) {
+            MysqlConnectionPool currentPool = pool;
+            if (currentPool == null) {
+                return null;
+            }
+            Connection connection = null;
+            boolean broken = false;
+            try {
+                connection = currentPool.borrow();
+                return createTable(connection, item);
+            } catch (SQLException e) {
+                errCnt.incrementAndGet();
+                broken = true;
+                logger.error("mySQL: Could not get a connection to create the table for item '{}': {}",
+                        item.getName(), e.getMessage());
+                return null;
+            } finally {
+                if (connection != null) {
+                    currentPool.release(connection, broken);
+                }
+            }
+        }
+    }
+
+    private String createTable(Connection connection, Item item) {
         PreparedStatement statement = null;
         String sqlCmd = null;
         int rowId = 0;
@@ -278,7 +380,7 @@ public class MysqlPersistenceService implements QueryablePersistenceService {
             tableName = new String("Item" + rowId);
             logger.debug("mySQL: new item {} is Item{}", itemName, rowId);
         } catch (SQLException e) {
-            errCnt++;
+            errCnt.incrementAndGet();
             logger.error("mySQL: Could not create entry for '{}' in table 'Items' with statement '{}': {}", itemName,
                     sqlCmd, e.getMessage());
         } finally {
@@ -310,7 +412,7 @@ public class MysqlPersistenceService implements QueryablePersistenceService {
             logger.debug("mySQL: Table created for item '{}' with datatype {} in SQL database.", itemName, mysqlType);
             sqlTables.put(itemName, tableName);
         } catch (Exception e) {
-            errCnt++;
+            errCnt.incrementAndGet();
 
             logger.error("mySQL: Could not create table for item '{}' with statement '{}': {}", itemName, sqlCmd,
                     e.getMessage());
@@ -336,7 +438,7 @@ public class MysqlPersistenceService implements QueryablePersistenceService {
                 statement.setString(1, itemName);
                 statement.executeUpdate();
             } catch (Exception e) {
-                errCnt++;
+                errCnt.incrementAndGet();
 
                 logger.error("mySQL: Could not remove index for item '{}' with statement '{}': ", itemName, sqlCmd,
                         e.getMessage());
@@ -373,12 +475,19 @@ public class MysqlPersistenceService implements QueryablePersistenceService {
             connectToDatabase();
         }
 
-        // If we still didn't manage to connect, then return!
+        // If we still didn't manage to connect, keep the value in the spool if the table is known
         if (!isConnected()) {
+            String knownTable = sqlTables.get(item.getName());
+            if (knownTable != null && spoolRows(knownTable, Collections.singletonList(
+                    new MysqlWriteBuffer.Row(knownTable, new Timestamp(System.currentTimeMillis()), getValue(item))))) {
+                logger.debug("mySQL: No connection to database. Spooled item '{}' for table {}.", item.getName(),
+                        knownTable);
+                return;
+            }
             logger.warn(
                     "mySQL: No connection to database. Can not persist item '{}'! "
                             + "Will retry connecting to database when error count:{} equals errReconnectThreshold:{}",
-                    item, errCnt, errReconnectThreshold);
+                    item, errCnt.get(), errReconnectThreshold);
             return;
         }
 
@@ -389,11 +498,31 @@ public class MysqlPersistenceService implements QueryablePersistenceService {
             return;
         }
 
-        // Do some type conversion to ensure we know the data type.
-        // This is necessary for items that have multiple types and may return their
-        // state in a format that's not preferred or compatible with the MySQL type.
-        // eg. DimmerItem can return OnOffType (ON, OFF), or PercentType (0-100).
-        // We need to make sure we cover the best type for serialisation.
+        String value = getValue(item);
+
+        MysqlWriteBuffer.Row row = new MysqlWriteBuffer.Row(tableName, new Timestamp(System.currentTimeMillis()),
+                value);
+        MysqlWriteBuffer buffer = writeBuffer;
+        if (buffer != null) {
+            buffer.add(row);
+            logger.debug("mySQL: Queued item '{}' as '{}'[{}] for table {}.", item.getName(),
+                    item.getState().toString(), value, tableName);
+        } else if (writeRows(tableName, Collections.singletonList(row))) {
+            logger.debug("mySQL: Stored item '{}' as '{}'[{}] in SQL database at {}.", item.getName(),
+                    item.getState().toString(), value, row.getTime());
+        } else {
+            spoolRows(tableName, Collections.singletonList(row));
+        }
+    }
+
+    /**
+     * Do some type conversion to ensure we know the data type.
+     * This is necessary for items that have multiple types and may return their
+     * state in a format that's not preferred or compatible with the MySQL type.
+     * eg. DimmerItem can return OnOffType (ON, OFF), or PercentType (0-100).
+     * We need to make sure we cover the best type for serialisation.
+     */
+    private String getValue(Item item) {
         String value;
         if (item instanceof ColorItem) {
             value = item.getStateAs(HSBType.class).toString();
@@ -417,28 +546,47 @@ public class MysqlPersistenceService implements QueryablePersistenceService {
             // All other items should return the best format by default
             value = item.getState().toString();
         }
+        return value;
+    }
 
-        String sqlCmd = null;
+    /**
+     * Writes the given rows into an item table with a single JDBC batch. Connector/J caches the
+     * prepared statement per connection and rewrites the batch into a multi-row INSERT.
+     *
+     * @return true if the rows have been written
+     */
+    private boolean writeRows(String tableName, List<MysqlWriteBuffer.Row> rows) {
+        MysqlConnectionPool currentPool = pool;
+        if (currentPool == null) {
+            logger.warn("mySQL: No connection to database. Can not write {} values of table {}.", rows.size(),
+                    tableName);
+            return false;
+        }
+        String sqlCmd = "INSERT INTO " + tableName
+                + " (TIME, VALUE) VALUES(?,?) ON DUPLICATE KEY UPDATE VALUE=VALUES(VALUE)";
+        Connection connection = null;
         PreparedStatement statement = null;
+        boolean broken = false;
         try {
-            sqlCmd = new String(
-                    "INSERT INTO " + tableName + " (TIME, VALUE) VALUES(NOW(),?) ON DUPLICATE KEY UPDATE VALUE=?;");
+            connection = currentPool.borrow();
             statement = connection.prepareStatement(sqlCmd);
-            statement.setString(1, value);
-            statement.setString(2, value);
-            statement.executeUpdate();
-
-            logger.debug("mySQL: Stored item '{}' as '{}'[{}] in SQL database at {}.", item.getName(),
-                    item.getState().toString(), value, (new java.util.Date()).toString());
-            logger.debug("mySQL: query: {}", sqlCmd);
+            for (MysqlWriteBuffer.Row row : rows) {
+                statement.setTimestamp(1, row.getTime());
+                statement.setString(2, row.getValue());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            logger.debug("mySQL: query: {} ({} rows)", sqlCmd, rows.size());
 
             // Success
-            errCnt = 0;
-        } catch (Exception e) {
-            errCnt++;
-
-            logger.error("mySQL: Could not store item '{}' in database with " + "statement '{}': {}", item.getName(),
-                    sqlCmd, e.getMessage());
+            errCnt.set(0);
+            return true;
+        } catch (SQLException e) {
+            errCnt.incrementAndGet();
+            broken = true;
+            logger.error("mySQL: Could not store {} values in table '{}' with statement '{}': {}", rows.size(),
+                    tableName, sqlCmd, e.getMessage());
+            return false;
         } finally {
             if (statement != null) {
                 try {
@@ -446,6 +594,9 @@ public class MysqlPersistenceService implements QueryablePersistenceService {
                 } catch (Exception hidden) {
                 }
             }
+            if (connection != null) {
+                currentPool.release(connection, broken);
+            }
         }
     }
 
@@ -458,59 +609,49 @@ public class MysqlPersistenceService implements QueryablePersistenceService {
     }
 
     /**
-     * Checks if we have a database connection
+     * Checks if we have a database connection. The connections themselves are validated by the pool
+     * when they have been idle for a while.
      * 
      * @return true if connection has been established, false otherwise
      */
     private boolean isConnected() {
-        // Check if connection is valid
-        try {
-            if (connection != null && !connection.isValid(5000)) {
-                errCnt++;
-                logger.error("mySQL: Connection is not valid!");
-            }
-        } catch (SQLException e) {
-            errCnt++;
-
-            logger.error("mySQL: Error while checking connection: {}", e);
-        }
-
         // Error check. If we have 'errReconnectThreshold' errors in a row, then
         // reconnect to the database
-        if (errReconnectThreshold != 0 && errCnt >= errReconnectThreshold) {
+        if (errReconnectThreshold != 0 && errCnt.get() >= errReconnectThreshold) {
             logger.error("mySQL: Error count exceeded {}. Disconnecting database.", errReconnectThreshold);
             disconnectFromDatabase();
         }
-        return connection != null;
+        return pool != null;
     }
 
     /**
      * Connects to the database
      */
-    private void connectToDatabase() {
+    private synchronized void connectToDatabase() {
+        if (pool != null) {
+            return;
+        }
+        MysqlConnectionPool newPool = null;
+        Connection connection = null;
         try {
             // Reset the error counter
-            errCnt = 0;
+            errCnt.set(0);
 
             logger.debug("mySQL: Attempting to connect to database {}", url);
             Class.forName(driverClass).newInstance();
-            connection = DriverManager.getConnection(url, user, password);
+            newPool = new MysqlConnectionPool(url, user, password, maxConnections, waitTimeout);
+            connection = newPool.borrow();
             logger.debug("mySQL: Connected to database {}", url);
 
             Statement st = connection.createStatement();
             int result = st.executeUpdate("SHOW TABLES LIKE 'Items'");
             st.close();
 
-            if (waitTimeout != -1) {
-                logger.debug("mySQL: Setting wait_timeout to {} seconds.", waitTimeout);
-                st = connection.createStatement();
-                st.executeUpdate("SET SESSION wait_timeout=" + waitTimeout);
-                st.close();
-            }
             if (result == 0) {
                 st = connection.createStatement();
                 st.executeUpdate(
-                        "CREATE TABLE Items (ItemId INT NOT NULL AUTO_INCREMENT,ItemName VARCHAR(200) NOT NULL,PRIMARY KEY (ItemId));",
+                        "CREATE TABLE Items (ItemId INT NOT NULL AUTO_INCREMENT,"
+                                + "ItemName VARCHAR(200) NOT NULL,PRIMARY KEY (ItemId));",
                         Statement.RETURN_GENERATED_KEYS);
                 st.close();
             }
@@ -526,7 +667,14 @@ public class MysqlPersistenceService implements QueryablePersistenceService {
             }
             rs.close();
             st.close();
+
+            newPool.release(connection, false);
+            pool = newPool;
         } catch (Exception e) {
+            if (newPool != null) {
+                newPool.release(connection, true);
+                newPool.close();
+            }
             logger.error(
                     "mySQL: Failed connecting to the SQL database using: driverClass={}, url={}, user={}, password={}",
                     driverClass, url, user, password, e);
@@ -536,15 +684,141 @@ public class MysqlPersistenceService implements QueryablePersistenceService {
     /**
      * Disconnects from the database
      */
-    private void disconnectFromDatabase() {
-        if (connection != null) {
+    private synchronized void disconnectFromDatabase() {
+        if (pool != null) {
+            pool.close();
+            logger.debug("mySQL: Disconnected from database {}", url);
+            pool = null;
+        }
+    }
+
+    /**
+     * Writes the values which are still buffered and stops the write timer.
+     */
+    private void stopWriteBuffer() {
+        if (writeBuffer != null) {
+            writeBuffer.stop();
+            logger.debug("mySQL: Write buffer stopped: {}", writeBuffer);
+            writeBuffer = null;
+        }
+    }
+
+    /**
+     * Opens the spool, if a spool directory is configured, and starts replaying it periodically.
+     */
+    private void openSpool() {
+        if (StringUtils.isBlank(spoolDir)) {
+            return;
+        }
+        try {
+            spool = new PersistenceSpool(new File(spoolDir), SPOOL_SEGMENT_SIZE, Math.max(2, spoolMaxSize));
+        } catch (IOException e) {
+            logger.error("mySQL: Could not open spool directory {}: {}", spoolDir, e.getMessage());
+            return;
+        }
+        spoolReplayer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "mySQL spool replay");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        spoolReplayer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                replaySpool();
+            }
+        }, SPOOL_REPLAY_INTERVAL, SPOOL_REPLAY_INTERVAL, TimeUnit.SECONDS);
+        logger.debug("mySQL: Spool opened: {}", spool);
+    }
+
+    /**
+     * Stops the replay and writes the spool to the disk. The remaining values are replayed after the next start.
+     */
+    private void closeSpool() {
+        if (spoolReplayer != null) {
+            spoolReplayer.shutdown();
             try {
-                connection.close();
-                logger.debug("mySQL: Disconnected from database {}", url);
-            } catch (Exception e) {
-                logger.error("mySQL: Failed disconnecting from the SQL database {}", e);
+                spoolReplayer.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            connection = null;
+            spoolReplayer = null;
+        }
+        if (spool != null) {
+            spool.close();
+            logger.debug("mySQL: Spool closed: {}", spool);
+            spool = null;
+        }
+    }
+
+    /**
+     * Keeps rows which could not be written in the spool.
+     *
+     * @return true if the rows have been spooled
+     */
+    private boolean spoolRows(String tableName, List<MysqlWriteBuffer.Row> rows) {
+        PersistenceSpool currentSpool = spool;
+        if (currentSpool == null) {
+            return false;
+        }
+        List<SpoolRecord> records = new ArrayList<SpoolRecord>(rows.size());
+        for (MysqlWriteBuffer.Row row : rows) {
+            records.add(new SpoolRecord(row.getTime().getTime(), tableName, row.getValue()));
+        }
+        // the spool may be closed by deactivate() meanwhile, its methods synchronize on the spool itself
+        synchronized (currentSpool) {
+            if (currentSpool.isClosed()) {
+                logger.warn("mySQL: Spool is closed. Dropping {} values of table {}.", rows.size(), tableName);
+                return false;
+            }
+            if (!currentSpool.append(records)) {
+                logger.warn("mySQL: Spool is full. Dropping {} values of table {}.", rows.size(), tableName);
+                return false;
+            }
+        }
+        logger.debug("mySQL: Spooled {} values of table {}.", rows.size(), tableName);
+        return true;
+    }
+
+    /**
+     * Writes the spooled rows into the database, one batch per table, as long as the database is reachable.
+     */
+    private void replaySpool() {
+        PersistenceSpool currentSpool = spool;
+        if (currentSpool == null || currentSpool.isEmpty() || !isConnected()) {
+            return;
+        }
+        try {
+            int replayBatchSize = batchSize > 1 ? batchSize : SPOOL_REPLAY_BATCH_SIZE;
+            int count = currentSpool.replay(replayBatchSize, new PersistenceSpool.Handler() {
+                @Override
+                public boolean handle(List<SpoolRecord> records) {
+                    Map<String, List<MysqlWriteBuffer.Row>> tables = new HashMap<String, List<MysqlWriteBuffer.Row>>();
+                    for (SpoolRecord record : records) {
+                        List<MysqlWriteBuffer.Row> rows = tables.get(record.getKey());
+                        if (rows == null) {
+                            rows = new ArrayList<MysqlWriteBuffer.Row>();
+                            tables.put(record.getKey(), rows);
+                        }
+                        rows.add(new MysqlWriteBuffer.Row(record.getKey(), new Timestamp(record.getTime()),
+                                record.getValue()));
+                    }
+                    // rows are written with ON DUPLICATE KEY UPDATE, so a partly written batch can be repeated
+                    for (Map.Entry<String, List<MysqlWriteBuffer.Row>> table : tables.entrySet()) {
+                        if (!writeRows(table.getKey(), table.getValue())) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+            });
+            if (count > 0) {
+                logger.info("mySQL: Replayed {} spooled values: {}", count, currentSpool);
+            }
+        } catch (RuntimeException e) {
+            logger.error("mySQL: Error replaying the spool: {}", e.getMessage());
         }
     }
 
@@ -638,9 +912,18 @@ public class MysqlPersistenceService implements QueryablePersistenceService {
             filterString += " LIMIT " + filter.getPageNumber() * filter.getPageSize() + "," + filter.getPageSize();
         }
 
+        MysqlConnectionPool currentPool = pool;
+        if (currentPool == null) {
+            logger.debug("Query aborted on item {} - mySQL has been disconnected!", filter.getItemName());
+            return Collections.emptyList();
+        }
+        Connection connection = null;
+        boolean broken = false;
         try {
             long timerStart = System.currentTimeMillis();
 
+            connection = currentPool.borrow();
+
             // Retrieve the table array
             Statement st = connection.createStatement();
 
@@ -694,12 +977,17 @@ public class MysqlPersistenceService implements QueryablePersistenceService {
             logger.debug("mySQL: query returned {} rows in {}ms", count, timerStop - timerStart);
 
             // Success
-            errCnt = 0;
+            errCnt.set(0);
 
             return items;
         } catch (SQLException e) {
-            errCnt++;
+            errCnt.incrementAndGet();
+            broken = true;
             logger.error("mySQL: Error running querying : ", e.getMessage());
+        } finally {
+            if (connection != null) {
+                currentPool.release(connection, broken);
+            }
         }
         return null;
     }
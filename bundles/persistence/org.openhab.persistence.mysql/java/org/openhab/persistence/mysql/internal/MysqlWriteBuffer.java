@@ -0,0 +1,254 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.mysql.internal;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openhab.persistence.spool.WriteBehindBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the values to store in a {@link WriteBehindBuffer} and writes each batch as one batch
+ * per item table. The tables of a batch are written concurrently by a fixed number of writer
+ * threads. The batches are written one after the other, so that the order of the values of an
+ * item is kept.
+ * <p>
+ * The rows of a table which could not be written are put back in front of the waiting rows and
+ * written again with a later flush. The number of waiting rows is limited; when the buffer is
+ * full, the oldest rows are dropped.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class MysqlWriteBuffer implements WriteBehindBuffer.Writer<MysqlWriteBuffer.Row> {
+
+    private static final Logger logger = LoggerFactory.getLogger(MysqlWriteBuffer.class);
+
+    /**
+     * A single value waiting to be written.
+     */
+    public static class Row {
+        private final String table;
+        private final Timestamp time;
+        private final String value;
+
+        public Row(String table, Timestamp time, String value) {
+            this.table = table;
+            this.time = time;
+            this.value = value;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public Timestamp getTime() {
+            return time;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * Writes the rows of one item table.
+     */
+    public interface Writer {
+        /**
+         * @return <code>true</code> if the rows have been written
+         */
+        boolean write(String table, List<Row> rows);
+    }
+
+    private final Writer writer;
+    private final int writerCount;
+    private final WriteBehindBuffer<Row> buffer;
+
+    private ExecutorService writers;
+
+    /**
+     * @param writer writes the batches
+     * @param interval the flush interval in milliseconds
+     * @param batchSize the number of rows which triggers a flush before the interval has passed
+     * @param writerCount the number of tables written concurrently
+     * @param maxPending the maximum number of waiting rows
+     */
+    public MysqlWriteBuffer(Writer writer, int interval, int batchSize, int writerCount, int maxPending) {
+        this.writer = writer;
+        this.writerCount = Math.max(1, writerCount);
+        this.buffer = new WriteBehindBuffer<Row>("mySQL flush", this, batchSize, interval, maxPending);
+    }
+
+    public void start() {
+        synchronized (this) {
+            if (writers != null) {
+                return;
+            }
+            writers = Executors.newFixedThreadPool(writerCount, new NamedThreadFactory("mySQL writer"));
+        }
+        buffer.start();
+    }
+
+    /**
+     * Stops the timer and writes the remaining rows before returning.
+     */
+    public void stop() {
+        buffer.stop();
+        synchronized (this) {
+            if (writers != null) {
+                writers.shutdown();
+                writers = null;
+            }
+        }
+    }
+
+    /**
+     * Adds a value to the next batch.
+     */
+    public void add(Row row) {
+        buffer.add(row);
+    }
+
+    /**
+     * Writes the rows of a batch, one batch per table. The rows of the tables which have been
+     * written are removed from the batch.
+     */
+    @Override
+    public boolean write(List<Row> batch) {
+        final Map<String, List<Row>> tables = new LinkedHashMap<String, List<Row>>();
+        for (Row row : batch) {
+            List<Row> rows = tables.get(row.getTable());
+            if (rows == null) {
+                rows = new ArrayList<Row>();
+                tables.put(row.getTable(), rows);
+            }
+            rows.add(row);
+        }
+        Set<String> written = new HashSet<String>();
+        ExecutorService executor;
+        synchronized (this) {
+            executor = writers;
+        }
+        if (tables.size() == 1 || executor == null) {
+            // stop() writes the last rows on the calling thread
+            for (Map.Entry<String, List<Row>> table : tables.entrySet()) {
+                if (writeTable(table.getKey(), table.getValue())) {
+                    written.add(table.getKey());
+                }
+            }
+        } else {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(tables.size());
+            final List<String> names = new ArrayList<String>(tables.keySet());
+            for (final String table : names) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return writeTable(table, tables.get(table));
+                    }
+                }));
+            }
+            for (int i = 0; i < names.size(); i++) {
+                if (await(results.get(i))) {
+                    written.add(names.get(i));
+                }
+            }
+        }
+        if (written.size() == tables.size()) {
+            return true;
+        }
+        for (Iterator<Row> iterator = batch.iterator(); iterator.hasNext();) {
+            if (written.contains(iterator.next().getTable())) {
+                iterator.remove();
+            }
+        }
+        logger.warn("mySQL: Could not write {} values, retrying with a later flush.", batch.size());
+        return false;
+    }
+
+    private boolean writeTable(String table, List<Row> rows) {
+        try {
+            return writer.write(table, rows);
+        } catch (RuntimeException e) {
+            logger.error("mySQL: Error writing batch to table '{}': {}", table, e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean await(Future<Boolean> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the number of values waiting to be written
+     */
+    public int getQueueDepth() {
+        return buffer.getQueueDepth();
+    }
+
+    public long getWrittenCount() {
+        return buffer.getWrittenCount();
+    }
+
+    public long getFailedBatchCount() {
+        return buffer.getFailedBatchCount();
+    }
+
+    public long getDroppedCount() {
+        return buffer.getDroppedCount();
+    }
+
+    public long getBatchCount() {
+        return buffer.getBatchCount();
+    }
+
+    @Override
+    public String toString() {
+        return "MysqlWriteBuffer [" + buffer + "]";
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + " " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.rrd4j;
+
+/**
+ * The values of a single rrd database within a time window, stored as primitive columns.
+ * Timestamps are given in seconds, missing values are represented by {@link Double#NaN}.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class RRD4jSeries {
+
+    private final String name;
+    private final long step;
+    private final long[] timestamps;
+    private final double[] values;
+
+    public RRD4jSeries(String name, long step, long[] timestamps, double[] values) {
+        this.name = name;
+        this.step = step;
+        this.timestamps = timestamps;
+        this.values = values;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the distance in seconds between two rows
+     */
+    public long getStep() {
+        return step;
+    }
+
+    public long[] getTimestamps() {
+        return timestamps;
+    }
+
+    public double[] getValues() {
+        return values;
+    }
+
+    public int getRowCount() {
+        return timestamps.length;
+    }
+
+    /**
+     * Returns the value of the row which covers the given point in time.
+     *
+     * @param timestamp the point in time in seconds
+     * @return the value or {@link Double#NaN} if the time is outside of this series
+     */
+    public double getValue(long timestamp) {
+        if (timestamps.length == 0 || step <= 0) {
+            return Double.NaN;
+        }
+        // rrd rows hold the consolidated value of the step which ends at their timestamp
+        long index = (timestamp - timestamps[0] + step - 1) / step;
+        if (timestamp <= timestamps[0] - step || index >= timestamps.length) {
+            return Double.NaN;
+        }
+        return values[(int) index];
+    }
+
+}
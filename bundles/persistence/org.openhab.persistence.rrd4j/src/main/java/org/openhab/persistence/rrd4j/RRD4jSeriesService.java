@@ -0,0 +1,35 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.rrd4j;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Reads the values of several rrd4j databases at once, e.g. to draw a chart.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public interface RRD4jSeriesService {
+
+    /**
+     * Fetches the values of several databases over a shared time window. The archive of every database is
+     * chosen according to the requested resolution, so that e.g. a chart only has to process about one row
+     * per pixel. Databases which do not exist are skipped.
+     *
+     * @param names the names of the databases
+     * @param start the start of the time window in seconds
+     * @param end the end of the time window in seconds
+     * @param resolution the requested distance between two rows in seconds
+     * @return the fetched series by name, in the order of the given names
+     */
+    Map<String, RRD4jSeries> fetch(Collection<String> names, long start, long end, long resolution);
+
+}
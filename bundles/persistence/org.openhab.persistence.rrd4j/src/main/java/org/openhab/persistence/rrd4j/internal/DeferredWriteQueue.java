@@ -0,0 +1,292 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects samples which could not be written because the rrd file has already been updated in the
+ * same second. Samples are coalesced per rrd file (the last value wins) and written in one batch
+ * by a single shared thread once per second.
+ * <p>
+ * All writes of an rrd file, direct and deferred, go through {@link #store(String, double)} and
+ * {@link #flush()} under a lock per rrd file, so a sample is never written after a newer one. The lock
+ * of an rrd file is dropped again once no sample of it is pending.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class DeferredWriteQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeferredWriteQueue.class);
+
+    /** the interval in milliseconds in which deferred samples are written */
+    private static final long FLUSH_INTERVAL = 1000;
+
+    /** how often pending samples are flushed on shutdown before the remaining ones are dropped */
+    private static final int SHUTDOWN_FLUSH_ROUNDS = 3;
+
+    /**
+     * Writes a sample to the rrd file of the given name.
+     */
+    public interface Writer {
+        /**
+         * @param name the name of the rrd file
+         * @param value the value to store
+         * @return <code>false</code> if the sample must be deferred again, <code>true</code> otherwise
+         */
+        boolean write(String name, double value);
+    }
+
+    private final Writer writer;
+
+    private final ConcurrentHashMap<String, Double> pending = new ConcurrentHashMap<String, Double>();
+
+    private final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+    private final AtomicLong deferred = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private ScheduledExecutorService executor;
+
+    public DeferredWriteQueue(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Starts the thread which writes the deferred samples.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "rrd4j deferred writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the writing thread. Samples which are still pending are written until the queue is empty;
+     * samples which still cannot be written after a few seconds are dropped.
+     */
+    public synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+        for (int round = 0; round < SHUTDOWN_FLUSH_ROUNDS && !pending.isEmpty(); round++) {
+            if (round > 0) {
+                try {
+                    // samples are only deferred because their rrd file has been updated in the same second
+                    Thread.sleep(FLUSH_INTERVAL);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            flush();
+        }
+        int remaining = 0;
+        for (String name : pending.keySet()) {
+            Object lock = getLock(name);
+            synchronized (lock) {
+                if (locks.get(name) == lock) {
+                    if (pending.remove(name) != null) {
+                        remaining++;
+                    }
+                    releaseLock(name, lock);
+                }
+            }
+        }
+        if (remaining > 0) {
+            dropped.addAndGet(remaining);
+            logger.debug("Dropped {} deferred rrd4j samples on shutdown", remaining);
+        }
+    }
+
+    /**
+     * Writes the given sample, or defers it if it cannot be written yet or an older sample for the same
+     * rrd file is still pending. A pending sample is replaced by the new one.
+     *
+     * @param name the name of the rrd file
+     * @param value the value to store
+     */
+    public void store(String name, double value) {
+        while (true) {
+            Object lock = getLock(name);
+            synchronized (lock) {
+                if (locks.get(name) != lock) {
+                    // the lock has been dropped while we were waiting for it
+                    continue;
+                }
+                if (pending.containsKey(name) || !writer.write(name, value)) {
+                    put(name, value);
+                }
+                releaseLock(name, lock);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Defers the given sample. If a sample for the same rrd file is already pending, it is replaced.
+     *
+     * @param name the name of the rrd file
+     * @param value the value to store
+     */
+    public void defer(String name, double value) {
+        while (true) {
+            Object lock = getLock(name);
+            synchronized (lock) {
+                if (locks.get(name) != lock) {
+                    continue;
+                }
+                put(name, value);
+                return;
+            }
+        }
+    }
+
+    private void put(String name, double value) {
+        if (pending.put(name, value) != null) {
+            merged.incrementAndGet();
+        } else {
+            deferred.incrementAndGet();
+        }
+    }
+
+    /**
+     * @param name the name of the rrd file
+     * @return <code>true</code> if a sample for the given rrd file is waiting to be written
+     */
+    public boolean isPending(String name) {
+        return pending.containsKey(name);
+    }
+
+    /**
+     * Writes all pending samples. Samples which still cannot be written stay in the queue.
+     */
+    public void flush() {
+        for (String name : pending.keySet()) {
+            Object lock = getLock(name);
+            synchronized (lock) {
+                if (locks.get(name) != lock) {
+                    // the sample has been written by a concurrent store or flush
+                    continue;
+                }
+                Double value = pending.get(name);
+                if (value != null) {
+                    try {
+                        if (writer.write(name, value)) {
+                            pending.remove(name);
+                            written.incrementAndGet();
+                        }
+                    } catch (RuntimeException e) {
+                        pending.remove(name);
+                        dropped.incrementAndGet();
+                        logger.warn("Could not write deferred sample for '{}' to rrd4j database: {}", name,
+                                e.getMessage());
+                    }
+                }
+                releaseLock(name, lock);
+            }
+        }
+    }
+
+    private Object getLock(String name) {
+        Object lock = locks.get(name);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = locks.putIfAbsent(name, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Drops the lock of the given rrd file if none of its samples is pending. Must be called while
+     * holding the lock; threads waiting for the dropped lock take a new one.
+     */
+    private void releaseLock(String name, Object lock) {
+        if (!pending.containsKey(name)) {
+            locks.remove(name, lock);
+        }
+    }
+
+    /**
+     * @return the number of rrd files with a pending sample
+     */
+    public int getQueueDepth() {
+        return pending.size();
+    }
+
+    /**
+     * @return the number of samples which have been deferred
+     */
+    public long getDeferredCount() {
+        return deferred.get();
+    }
+
+    /**
+     * @return the number of samples which have been replaced by a newer value before being written
+     */
+    public long getMergedCount() {
+        return merged.get();
+    }
+
+    /**
+     * @return the number of deferred samples which have been written
+     */
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    /**
+     * @return the number of deferred samples which could not be written at all
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public String toString() {
+        return "DeferredWriteQueue [depth=" + getQueueDepth() + ", deferred=" + deferred + ", merged=" + merged
+                + ", written=" + written + ", dropped=" + dropped + "]";
+    }
+
+}
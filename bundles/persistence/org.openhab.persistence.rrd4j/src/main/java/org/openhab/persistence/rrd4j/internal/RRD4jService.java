@@ -11,16 +11,17 @@ package org.openhab.persistence.rrd4j.internal;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.lang.StringUtils;
 import org.openhab.core.items.Item;
@@ -41,6 +42,8 @@ import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.persistence.PersistenceService;
 import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.types.State;
+import org.openhab.persistence.rrd4j.RRD4jSeries;
+import org.openhab.persistence.rrd4j.RRD4jSeriesService;
 import org.rrd4j.ConsolFun;
 import org.rrd4j.DsType;
 import org.rrd4j.core.FetchData;
@@ -59,7 +62,7 @@ import org.slf4j.LoggerFactory;
  * @author Jan N. Klug
  * @since 1.0.0
  */
-public class RRD4jService implements QueryablePersistenceService {
+public class RRD4jService implements QueryablePersistenceService, RRD4jSeriesService {
 
     private ConcurrentHashMap<String, RrdDefConfig> rrdDefs = new ConcurrentHashMap<String, RrdDefConfig>();
 
@@ -69,7 +72,22 @@ public class RRD4jService implements QueryablePersistenceService {
 
     private static final Logger logger = LoggerFactory.getLogger(RRD4jService.class);
 
-    private Map<String, Timer> timers = new HashMap<String, Timer>();
+    private static final String CONFIG_CACHE_SIZE = "cache.size";
+
+    private final RrdDbCache dbCache = new RrdDbCache(RrdDbCache.DEFAULT_CAPACITY);
+
+    private final DeferredWriteQueue deferredWrites = new DeferredWriteQueue(new DeferredWriteQueue.Writer() {
+        @Override
+        public boolean write(String name, double value) {
+            return writeValue(name, value);
+        }
+    });
+
+    /** stores hold the read lock, activate and deactivate the write lock */
+    private final ReadWriteLock lifecycleLock = new ReentrantReadWriteLock();
+
+    /** whether values are accepted, guarded by {@link #lifecycleLock} */
+    private boolean active = false;
 
     protected ItemRegistry itemRegistry;
 
@@ -93,12 +111,58 @@ public class RRD4jService implements QueryablePersistenceService {
      * @{inheritDoc}
      */
     @Override
-    public synchronized void store(final Item item, final String alias) {
+    public void store(final Item item, final String alias) {
         final String name = alias == null ? item.getName() : alias;
-        RrdDb db = getDB(name);
-        if (db != null) {
-            ConsolFun function = getConsolidationFunction(db);
+        DecimalType state = (DecimalType) item.getStateAs(DecimalType.class);
+        if (state != null) {
+            storeValue(name, state.toBigDecimal().doubleValue());
+        }
+    }
+
+    /**
+     * Stores a value in the database of the given name. If the database has already been updated in the current
+     * second or an older value is still waiting to be written, the value is handed to the {@link DeferredWriteQueue}.
+     * Values which arrive while the service is not active are dropped, so that the databases closed on deactivation
+     * are not opened again.
+     *
+     * @param name the name of the database
+     * @param value the value to store
+     */
+    private void storeValue(String name, double value) {
+        lifecycleLock.readLock().lock();
+        try {
+            if (!active) {
+                logger.debug("rrd4j is not active, dropping the value of '{}'", name);
+                return;
+            }
+            deferredWrites.store(name, value);
+        } finally {
+            lifecycleLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes a value to the database of the given name.
+     *
+     * @param name the name of the database
+     * @param value the value to store
+     * @return <code>false</code> if the database has already been updated in the current second and the value must be
+     *         written later, <code>true</code> otherwise
+     */
+    private boolean writeValue(String name, double value) {
+        RrdDbCache.Handle handle = getDB(name);
+        if (handle == null) {
+            return true;
+        }
+        handle.lock();
+        try {
+            RrdDb db = handle.getDb();
             long now = System.currentTimeMillis() / 1000;
+            if (now <= db.getLastUpdateTime()) {
+                // rrd4j requires at least one second step between two samples
+                return false;
+            }
+            ConsolFun function = getConsolidationFunction(db);
             if (function != ConsolFun.AVERAGE) {
                 try {
                     // we store the last value again, so that the value change in the database is not interpolated, but
@@ -111,8 +175,7 @@ public class RRD4jService implements QueryablePersistenceService {
                             sample.setTime(now - 1);
                             sample.setValue(DATASOURCE_STATE, lastValue);
                             sample.update();
-                            logger.debug("Stored '{}' with state '{}' in rrd4j database (again)", name,
-                                    mapToState(lastValue, item.getName()));
+                            logger.debug("Stored '{}' with value '{}' in rrd4j database (again)", name, lastValue);
                         }
                     }
                 } catch (IOException e) {
@@ -122,48 +185,30 @@ public class RRD4jService implements QueryablePersistenceService {
             try {
                 Sample sample = db.createSample();
                 sample.setTime(now);
-
-                DecimalType state = (DecimalType) item.getStateAs(DecimalType.class);
-                if (state != null) {
-                    double value = state.toBigDecimal().doubleValue();
-                    if (db.getDatasource(DATASOURCE_STATE).getType() == DsType.COUNTER) { // counter values must be
-                                                                                          // adjusted by stepsize
-                        value = value * db.getRrdDef().getStep();
-                    }
-                    sample.setValue(DATASOURCE_STATE, value);
-                    sample.update();
-                    logger.debug("Stored '{}' with state '{}' in rrd4j database", name, state);
+                double storedValue = value;
+                if (db.getDatasource(DATASOURCE_STATE).getType() == DsType.COUNTER) { // counter values must be
+                                                                                      // adjusted by stepsize
+                    storedValue = value * db.getRrdDef().getStep();
                 }
+                sample.setValue(DATASOURCE_STATE, storedValue);
+                sample.update();
+                logger.debug("Stored '{}' with value '{}' in rrd4j database", name, value);
             } catch (IllegalArgumentException e) {
                 if (e.getMessage().contains("at least one second step is required")) {
-
-                    // we try to store the value one second later
-                    TimerTask task = new TimerTask() {
-                        @Override
-                        public void run() {
-                            store(item, name);
-                        }
-                    };
-                    Timer timer = timers.get(name);
-                    if (timer != null) {
-                        timer.cancel();
-                        timers.remove(name);
-                    }
-                    timer = new Timer();
-                    timers.put(name, timer);
-                    timer.schedule(task, 1000);
+                    return false;
                 } else {
                     logger.warn("Could not persist '{}' to rrd4j database: {}", new String[] { name, e.getMessage() });
                 }
             } catch (Exception e) {
                 logger.warn("Could not persist '{}' to rrd4j database: {}", new String[] { name, e.getMessage() });
             }
-            try {
-                db.close();
-            } catch (IOException e) {
-                logger.debug("Error closing rrd4j database: {}", e.getMessage());
-            }
+        } catch (IOException e) {
+            logger.warn("Could not persist '{}' to rrd4j database: {}", new String[] { name, e.getMessage() });
+        } finally {
+            handle.unlock();
+            dbCache.release(handle);
         }
+        return true;
     }
 
     /**
@@ -177,8 +222,13 @@ public class RRD4jService implements QueryablePersistenceService {
     @Override
     public Iterable<HistoricItem> query(FilterCriteria filter) {
         String itemName = filter.getItemName();
-        RrdDb db = getDB(itemName);
-        if (db != null) {
+        RrdDbCache.Handle handle = getDB(itemName);
+        if (handle == null) {
+            return Collections.emptyList();
+        }
+        handle.lock();
+        try {
+            RrdDb db = handle.getDb();
             ConsolFun consolidationFunction = getConsolidationFunction(db);
             long start = 0L;
             long end = filter.getEndDate() == null ? System.currentTimeMillis() / 1000
@@ -231,26 +281,70 @@ public class RRD4jService implements QueryablePersistenceService {
                 logger.warn("Could not query rrd4j database for item '{}': {}",
                         new String[] { itemName, e.getMessage() });
             }
+        } finally {
+            handle.unlock();
+            dbCache.release(handle);
         }
         return Collections.emptyList();
     }
 
-    protected synchronized RrdDb getDB(String alias) {
-        RrdDb db = null;
-        File file = new File(DB_FOLDER + File.separator + alias + ".rrd");
+    /**
+     * @{inheritDoc}
+     */
+    @Override
+    public Map<String, RRD4jSeries> fetch(Collection<String> names, long start, long end, long resolution) {
+        Map<String, RRD4jSeries> result = new LinkedHashMap<String, RRD4jSeries>();
+        for (String name : names) {
+            if (result.containsKey(name) || !new File(DB_FOLDER + File.separator + name + ".rrd").exists()) {
+                continue;
+            }
+            RrdDbCache.Handle handle = getDB(name);
+            if (handle == null) {
+                continue;
+            }
+            handle.lock();
+            try {
+                RrdDb db = handle.getDb();
+                FetchRequest request = db.createFetchRequest(getConsolidationFunction(db), start, end, resolution);
+                FetchData data = request.fetchData();
+                result.put(name, new RRD4jSeries(name, data.getStep(), data.getTimestamps(),
+                        data.getValues(DATASOURCE_STATE)));
+            } catch (IOException e) {
+                logger.warn("Could not query rrd4j database '{}': {}", name, e.getMessage());
+            } finally {
+                handle.unlock();
+                dbCache.release(handle);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a handle to the (cached) database for the given alias, creating the database file if it does not
+     * exist yet. The returned handle must be released through {@link RrdDbCache#release(RrdDbCache.Handle)}.
+     *
+     * @param alias the name of the database
+     * @return the handle of the open database or <code>null</code> if it could not be opened
+     */
+    protected RrdDbCache.Handle getDB(final String alias) {
+        final File file = new File(DB_FOLDER + File.separator + alias + ".rrd");
         try {
-            if (file.exists()) {
-                // recreate the RrdDb instance from the file
-                db = new RrdDb(file.getAbsolutePath());
-            } else {
-                File folder = new File(DB_FOLDER);
-                if (!folder.exists()) {
-                    folder.mkdirs();
+            return dbCache.acquire(file.getAbsolutePath(), new RrdDbCache.Opener() {
+                @Override
+                public RrdDb open() throws IOException {
+                    if (file.exists()) {
+                        // recreate the RrdDb instance from the file
+                        return new RrdDb(file.getAbsolutePath());
+                    } else {
+                        File folder = new File(DB_FOLDER);
+                        if (!folder.exists()) {
+                            folder.mkdirs();
+                        }
+                        // create a new database file
+                        return new RrdDb(getRrdDef(alias, file));
+                    }
                 }
-                // create a new database file
-                // db = new RrdDb(getRrdDef(function, file));
-                db = new RrdDb(getRrdDef(alias, file));
-            }
+            });
         } catch (IOException e) {
             logger.error("Could not create rrd4j database file '{}': {}",
                     new String[] { file.getAbsolutePath(), e.getMessage() });
@@ -259,7 +353,7 @@ public class RRD4jService implements QueryablePersistenceService {
             logger.debug("Could not create rrd4j database file '{}': {}",
                     new String[] { file.getAbsolutePath(), e.getMessage() });
         }
-        return db;
+        return null;
     }
 
     private RrdDefConfig getRrdDefConfig(String itemName) {
@@ -346,6 +440,14 @@ public class RRD4jService implements QueryablePersistenceService {
      */
     public void activate(final Map<String, Object> config) {
 
+        lifecycleLock.writeLock().lock();
+        try {
+            deferredWrites.start();
+            active = true;
+        } finally {
+            lifecycleLock.writeLock().unlock();
+        }
+
         // add default configurations
         RrdDefConfig defaultNumeric = new RrdDefConfig("default_numeric");
         defaultNumeric.setDef("GAUGE,60,U,U,60");
@@ -373,6 +475,15 @@ public class RRD4jService implements QueryablePersistenceService {
                 continue;
             }
 
+            if (key.equals(CONFIG_CACHE_SIZE)) {
+                try {
+                    dbCache.setCapacity(Integer.parseInt(((String) config.get(key)).trim()));
+                } catch (IllegalArgumentException e) {
+                    logger.warn("Ignoring illegal cache size '{}'", config.get(key));
+                }
+                continue;
+            }
+
             String[] subkeys = key.split("\\.");
             if (subkeys.length != 2) {
                 logger.debug("config '{}' should have the format 'name.configkey'", key);
@@ -424,6 +535,39 @@ public class RRD4jService implements QueryablePersistenceService {
         }
     }
 
+    /**
+     * Stops accepting values, writes the deferred samples and closes all cached databases.
+     */
+    public void deactivate() {
+        lifecycleLock.writeLock().lock();
+        try {
+            active = false;
+            deferredWrites.stop();
+            logger.debug("Closing rrd4j databases: {}, {}", dbCache, deferredWrites);
+            dbCache.clear();
+        } finally {
+            lifecycleLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the cache of open databases, e.g. to inspect its hit, miss and eviction counters.
+     *
+     * @return the cache of open databases
+     */
+    public RrdDbCache getDbCache() {
+        return dbCache;
+    }
+
+    /**
+     * Returns the queue of deferred samples, e.g. to inspect its depth and its merge and drop counters.
+     *
+     * @return the queue of deferred samples
+     */
+    public DeferredWriteQueue getDeferredWrites() {
+        return deferredWrites;
+    }
+
     private class RrdArchiveDef {
         public ConsolFun fcn;
         public double xff;
@@ -0,0 +1,270 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.rrd4j.core.RrdDb;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded cache of open {@link RrdDb} instances, keyed by the path of the rrd file.
+ * The least recently used handles are closed once the cache exceeds its capacity.
+ * Handles which are currently acquired by a caller are never closed; they are
+ * closed once they have been released if they were evicted in the meantime.
+ * <p>
+ * Every handle carries its own lock, so that writes to different rrd files
+ * can happen concurrently while writes to the same file are serialized.
+ * Databases are opened outside of the cache's lock; callers asking for a database
+ * which is being opened wait for that open to finish.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class RrdDbCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RrdDbCache.class);
+
+    /** the default number of rrd files which are kept open */
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    /**
+     * Opens a {@link RrdDb} if it is not yet contained in the cache.
+     */
+    public interface Opener {
+        RrdDb open() throws IOException;
+    }
+
+    /**
+     * An open {@link RrdDb} together with its lock and reference count.
+     */
+    public static final class Handle {
+        private final String path;
+        private final ReentrantLock lock = new ReentrantLock();
+        private RrdDb db;
+        private IOException failure;
+        private boolean opened;
+        private int refCount;
+        private boolean evicted;
+
+        private Handle(String path) {
+            this.path = path;
+        }
+
+        public synchronized RrdDb getDb() {
+            return db;
+        }
+
+        private synchronized void opened(RrdDb db, IOException failure) {
+            this.db = db;
+            this.failure = failure;
+            this.opened = true;
+            notifyAll();
+        }
+
+        private synchronized void awaitOpened() throws IOException {
+            boolean interrupted = false;
+            while (!opened) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw new IOException(failure.getMessage(), failure);
+            }
+        }
+
+        public void lock() {
+            lock.lock();
+        }
+
+        public void unlock() {
+            lock.unlock();
+        }
+    }
+
+    private final Map<String, Handle> handles = new LinkedHashMap<String, Handle>(16, 0.75f, true);
+
+    private int capacity;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public RrdDbCache(int capacity) {
+        setCapacity(capacity);
+    }
+
+    /**
+     * Sets the maximum number of rrd files which are kept open. If the cache currently
+     * holds more handles, the least recently used ones are closed.
+     *
+     * @param capacity the new capacity, must be at least 1
+     */
+    public synchronized void setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be at least 1, but was " + capacity);
+        }
+        this.capacity = capacity;
+        evict();
+    }
+
+    /**
+     * Returns the handle for the given path, opening the database if necessary.
+     * Every successful call must be followed by a call to {@link #release(Handle)}.
+     *
+     * @param path the absolute path of the rrd file
+     * @param opener used to open the database if it is not cached
+     * @return the handle of the open database
+     * @throws IOException if the database could not be opened
+     */
+    public Handle acquire(String path, Opener opener) throws IOException {
+        Handle handle;
+        boolean open;
+        synchronized (this) {
+            handle = handles.get(path);
+            open = handle == null;
+            if (open) {
+                misses.incrementAndGet();
+                handle = new Handle(path);
+                handles.put(path, handle);
+            } else {
+                hits.incrementAndGet();
+            }
+            handle.refCount++;
+        }
+
+        if (!open) {
+            try {
+                handle.awaitOpened();
+            } catch (IOException e) {
+                release(handle);
+                throw e;
+            }
+            return handle;
+        }
+
+        try {
+            handle.opened(opener.open(), null);
+        } catch (IOException e) {
+            failed(handle, e);
+            throw e;
+        } catch (RuntimeException e) {
+            failed(handle, new IOException(e.getMessage(), e));
+            throw e;
+        }
+        synchronized (this) {
+            evict();
+        }
+        return handle;
+    }
+
+    private synchronized void failed(Handle handle, IOException e) {
+        if (handles.get(handle.path) == handle) {
+            handles.remove(handle.path);
+        }
+        handle.refCount--;
+        handle.opened(null, e);
+    }
+
+    /**
+     * Hands a handle back to the cache after it has been acquired.
+     *
+     * @param handle the handle to release
+     */
+    public synchronized void release(Handle handle) {
+        handle.refCount--;
+        if (handle.evicted && handle.refCount == 0) {
+            close(handle);
+        }
+    }
+
+    /**
+     * Closes all cached databases. Handles which are still in use are closed as soon as
+     * they are released.
+     */
+    public synchronized void clear() {
+        for (Handle handle : handles.values()) {
+            handle.evicted = true;
+            if (handle.refCount == 0) {
+                close(handle);
+            }
+        }
+        handles.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public synchronized int size() {
+        return handles.size();
+    }
+
+    @Override
+    public String toString() {
+        return "RrdDbCache [size=" + size() + ", capacity=" + capacity + ", hits=" + hits + ", misses=" + misses
+                + ", evictions=" + evictions + "]";
+    }
+
+    private void evict() {
+        if (handles.size() <= capacity) {
+            return;
+        }
+        List<Handle> evicted = new ArrayList<Handle>();
+        Iterator<Handle> iterator = handles.values().iterator();
+        while (handles.size() > capacity && iterator.hasNext()) {
+            Handle handle = iterator.next();
+            // handles in use are skipped, the cache may temporarily exceed its capacity
+            if (handle.refCount == 0) {
+                iterator.remove();
+                handle.evicted = true;
+                evicted.add(handle);
+            }
+        }
+        for (Handle handle : evicted) {
+            evictions.incrementAndGet();
+            close(handle);
+        }
+    }
+
+    private void close(Handle handle) {
+        RrdDb db = handle.getDb();
+        if (db == null) {
+            return;
+        }
+        try {
+            db.close();
+        } catch (IOException e) {
+            logger.debug("Error closing rrd4j database '{}': {}", handle.path, e.getMessage());
+        }
+    }
+
+}
@@ -11,11 +11,12 @@ package org.openhab.persistence.rrd4j.internal.charts;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 
 import javax.imageio.ImageIO;
@@ -30,14 +31,14 @@ import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.library.items.NumberItem;
 import org.openhab.io.net.http.SecureHttpContext;
-import org.openhab.persistence.rrd4j.internal.RRD4jService;
+import org.openhab.persistence.rrd4j.RRD4jSeries;
+import org.openhab.persistence.rrd4j.RRD4jSeriesService;
 import org.openhab.ui.chart.ChartProvider;
 import org.openhab.ui.items.ItemUIRegistry;
 import org.osgi.service.http.HttpContext;
 import org.osgi.service.http.HttpService;
 import org.osgi.service.http.NamespaceException;
-import org.rrd4j.ConsolFun;
-import org.rrd4j.core.RrdDb;
+import org.rrd4j.data.Plottable;
 import org.rrd4j.graph.RrdGraph;
 import org.rrd4j.graph.RrdGraphDef;
 import org.slf4j.Logger;
@@ -93,6 +94,7 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
 
     protected HttpService httpService;
     protected ItemUIRegistry itemUIRegistry;
+    protected RRD4jSeriesService rrd4jService;
 
     public void setHttpService(HttpService httpService) {
         this.httpService = httpService;
@@ -110,6 +112,14 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
         this.itemUIRegistry = null;
     }
 
+    public void setRRD4jService(RRD4jSeriesService rrd4jService) {
+        this.rrd4jService = rrd4jService;
+    }
+
+    public void unsetRRD4jService(RRD4jSeriesService rrd4jService) {
+        this.rrd4jService = null;
+    }
+
     protected void activate() {
         try {
             logger.debug("Starting up rrd chart servlet at " + SERVLET_NAME);
@@ -171,30 +181,26 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
      * 
      * @param graphDef the graph definition to fill
      * @param item the item to add a line for
+     * @param series the values of the item
      * @param counter defines the number of the datasource and is used to determine the line color
      */
-    protected void addLine(RrdGraphDef graphDef, Item item, int counter) {
+    protected void addLine(RrdGraphDef graphDef, Item item, final RRD4jSeries series, int counter) {
         Color color = LINECOLORS[counter % LINECOLORS.length];
         String label = itemUIRegistry.getLabel(item.getName());
-        String rrdName = RRD4jService.DB_FOLDER + File.separator + item.getName() + ".rrd";
-        ConsolFun consolFun;
         if (label != null && label.contains("[") && label.contains("]")) {
             label = label.substring(0, label.indexOf('['));
         }
-        try {
-            RrdDb db = new RrdDb(rrdName);
-            consolFun = db.getRrdDef().getArcDefs()[0].getConsolFun();
-            db.close();
-        } catch (IOException e) {
-            consolFun = ConsolFun.MAX;
-        }
+        graphDef.datasource(Integer.toString(counter), new Plottable() {
+            @Override
+            public double getValue(long timestamp) {
+                return series.getValue(timestamp);
+            }
+        });
         if (item instanceof NumberItem) {
             // we only draw a line
-            graphDef.datasource(Integer.toString(counter), rrdName, "state", consolFun); // RRD4jService.getConsolidationFunction(item));
             graphDef.line(Integer.toString(counter), color, label, 2);
         } else {
             // we draw a line and fill the area beneath it with a transparent color
-            graphDef.datasource(Integer.toString(counter), rrdName, "state", consolFun); // RRD4jService.getConsolidationFunction(item));
             Color areaColor = AREACOLORS[counter % LINECOLORS.length];
 
             graphDef.area(Integer.toString(counter), areaColor);
@@ -267,33 +273,49 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
         graphDef.setLargeFont(new Font("SansSerif", Font.PLAIN, 15));
         graphDef.setSmallFont(new Font("SansSerif", Font.PLAIN, 11));
 
-        int seriesCounter = 0;
-
-        // Loop through all the items
+        // Collect all items to draw
+        List<Item> chartItems = new ArrayList<Item>();
         if (items != null) {
             String[] itemNames = items.split(",");
             for (String itemName : itemNames) {
-                Item item = itemUIRegistry.getItem(itemName);
-                addLine(graphDef, item, seriesCounter++);
+                chartItems.add(itemUIRegistry.getItem(itemName));
             }
         }
 
-        // Loop through all the groups and add each item from each group
+        // Add each item from each group
         if (groups != null) {
             String[] groupNames = groups.split(",");
             for (String groupName : groupNames) {
                 Item item = itemUIRegistry.getItem(groupName);
                 if (item instanceof GroupItem) {
                     GroupItem groupItem = (GroupItem) item;
-                    for (Item member : groupItem.getMembers()) {
-                        addLine(graphDef, member, seriesCounter++);
-                    }
+                    chartItems.addAll(groupItem.getMembers());
                 } else {
                     throw new ItemNotFoundException("Item '" + item.getName() + "' defined in groups is not a group.");
                 }
             }
         }
 
+        // Fetch all series in one pass, with about one row per pixel
+        long end = endTime.getTime() / 1000;
+        long start = startTime.getTime() / 1000;
+        List<String> names = new ArrayList<String>(chartItems.size());
+        for (Item item : chartItems) {
+            names.add(item.getName());
+        }
+        Map<String, RRD4jSeries> series = rrd4jService.fetch(names, start, end, Math.max(1, (end - start) / width));
+
+        int seriesCounter = 0;
+        for (Item item : chartItems) {
+            RRD4jSeries itemSeries = series.get(item.getName());
+            if (itemSeries != null) {
+                addLine(graphDef, item, itemSeries, seriesCounter);
+            } else {
+                logger.debug("No rrd4j database found for item '{}'", item.getName());
+            }
+            seriesCounter++;
+        }
+
         // Write the chart as a PNG image
         RrdGraph graph;
         try {
@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.spool;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * @author agent
+ * @since 1.9.0
+ */
+public class PersistenceSpoolTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    private File directory;
+    private PersistenceSpool spool;
+
+    @Before
+    public void init() throws IOException {
+        directory = new File("./target/spool-test");
+        FileUtils.deleteDirectory(directory);
+        spool = new PersistenceSpool(directory, SEGMENT_SIZE, 4);
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        spool.close();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testReplayInOrder() {
+        for (int index = 0; index < 10; index++) {
+            Assert.assertTrue(spool.append(index, "Item" + (index % 2), "value" + index));
+        }
+
+        Collector collector = new Collector();
+        Assert.assertEquals(10, spool.replay(3, collector));
+
+        Assert.assertEquals(4, collector.batches);
+        Assert.assertEquals(10, collector.records.size());
+        for (int index = 0; index < 10; index++) {
+            SpoolRecord record = collector.records.get(index);
+            Assert.assertEquals(index, record.getTime());
+            Assert.assertEquals("Item" + (index % 2), record.getKey());
+            Assert.assertEquals("value" + index, record.getValue());
+        }
+        Assert.assertTrue(spool.isEmpty());
+    }
+
+    @Test
+    public void testFailedBatchIsReplayedAgain() {
+        for (int index = 0; index < 5; index++) {
+            spool.append(index, "Item", "value" + index);
+        }
+
+        Collector failing = new Collector();
+        failing.fail = true;
+        Assert.assertEquals(0, spool.replay(10, failing));
+        Assert.assertFalse(spool.isEmpty());
+
+        Collector collector = new Collector();
+        Assert.assertEquals(5, spool.replay(10, collector));
+        Assert.assertEquals("value0", collector.records.get(0).getValue());
+    }
+
+    @Test
+    public void testRecoveryAfterReopen() throws IOException {
+        for (int index = 0; index < 6; index++) {
+            spool.append(index, "Item", "value" + index);
+        }
+        Collector collector = new Collector();
+        collector.limit = 1;
+        spool.replay(2, collector);
+        spool.close();
+
+        spool = new PersistenceSpool(directory, SEGMENT_SIZE, 4);
+        Assert.assertFalse(spool.isEmpty());
+        spool.append(6, "Item", "value6");
+
+        collector = new Collector();
+        Assert.assertEquals(5, spool.replay(10, collector));
+        Assert.assertEquals("value2", collector.records.get(0).getValue());
+        Assert.assertEquals("value6", collector.records.get(4).getValue());
+    }
+
+    @Test
+    public void testSegmentsAreDeletedAfterReplay() {
+        String value = new String(new char[500]).replace('\0', 'x');
+        int count = 0;
+        while (spool.getSegmentCount() < 3) {
+            Assert.assertTrue(spool.append(count, "Item", value));
+            count++;
+        }
+
+        Collector collector = new Collector();
+        Assert.assertEquals(count, spool.replay(5, collector));
+        Assert.assertEquals(count, collector.records.size());
+        Assert.assertEquals(1, spool.getSegmentCount());
+        Assert.assertEquals(1, directory.list().length - 1);
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        String value = new String(new char[500]).replace('\0', 'x');
+        int count = 0;
+        while (spool.append(count, "Item", value)) {
+            count++;
+        }
+
+        Assert.assertEquals(4, spool.getSegmentCount());
+        Assert.assertEquals(1, spool.getRejectedCount());
+
+        // the spool accepts values again after it has been replayed
+        Assert.assertEquals(count, spool.replay(100, new Collector()));
+        Assert.assertTrue(spool.append(count, "Item", value));
+    }
+
+    @Test
+    public void testAppendAllOrNothing() {
+        String value = new String(new char[500]).replace('\0', 'x');
+        List<SpoolRecord> records = new ArrayList<SpoolRecord>();
+        for (int index = 0; index < 10; index++) {
+            records.add(new SpoolRecord(index, "Item", value));
+        }
+        // the records span two segments
+        Assert.assertTrue(spool.append(records));
+
+        int count = records.size();
+        while (spool.getSegmentCount() < 4) {
+            Assert.assertTrue(spool.append(count, "Item", value));
+            count++;
+        }
+        Assert.assertFalse(spool.append(records));
+        Assert.assertEquals(4, spool.getSegmentCount());
+        Assert.assertEquals(count, spool.getAppendedCount());
+        Assert.assertEquals(records.size(), spool.getRejectedCount());
+
+        Collector collector = new Collector();
+        Assert.assertEquals(count, spool.replay(100, collector));
+        Assert.assertEquals(count - 1, collector.records.get(count - 1).getTime());
+    }
+
+    @Test
+    public void testClosedSpool() {
+        Assert.assertFalse(spool.isClosed());
+        spool.close();
+        Assert.assertTrue(spool.isClosed());
+    }
+
+    @Test
+    public void testAppendWhileReplaying() {
+        spool.append(0, "Item", "value0");
+
+        final boolean[] appended = new boolean[1];
+        Collector collector = new Collector() {
+            @Override
+            public boolean handle(List<SpoolRecord> batch) {
+                if (appended[0]) {
+                    return super.handle(batch);
+                }
+                // the handler writes to the database while other threads keep appending
+                Thread thread = new Thread() {
+                    @Override
+                    public void run() {
+                        appended[0] = spool.append(1, "Item", "value1");
+                    }
+                };
+                thread.start();
+                try {
+                    thread.join(5000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.handle(batch);
+            }
+        };
+        collector.limit = 1;
+        Assert.assertEquals(1, spool.replay(10, collector));
+        Assert.assertTrue(appended[0]);
+        Assert.assertFalse(spool.isEmpty());
+
+        collector = new Collector();
+        Assert.assertEquals(1, spool.replay(10, collector));
+        Assert.assertEquals("value1", collector.records.get(0).getValue());
+    }
+
+    private static class Collector implements PersistenceSpool.Handler {
+        private final List<SpoolRecord> records = new ArrayList<SpoolRecord>();
+        private int batches;
+        private int limit = Integer.MAX_VALUE;
+        private boolean fail;
+
+        @Override
+        public boolean handle(List<SpoolRecord> batch) {
+            if (fail || batches >= limit) {
+                return false;
+            }
+            batches++;
+            records.addAll(batch);
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.spool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * @author agent
+ * @since 1.9.0
+ */
+public class WriteBehindBufferTest {
+
+    @Test
+    public void testFailedBatchIsRetriedInOrder() {
+        Recorder recorder = new Recorder();
+        recorder.failures = 1;
+        WriteBehindBuffer<Integer> buffer = new WriteBehindBuffer<Integer>("test", recorder, 2, 60000, 10);
+        buffer.add(1);
+        buffer.add(2);
+        buffer.add(3);
+
+        Assert.assertFalse(buffer.flush());
+        Assert.assertEquals(3, buffer.getQueueDepth());
+        buffer.add(4);
+        Assert.assertTrue(buffer.flush());
+
+        Assert.assertEquals(Arrays.asList(1, 2, 3, 4), recorder.values);
+        Assert.assertEquals(4, buffer.getWrittenCount());
+        Assert.assertEquals(1, buffer.getFailedBatchCount());
+        Assert.assertEquals(0, buffer.getDroppedCount());
+    }
+
+    @Test
+    public void testRequeueDropsTheOldestValues() {
+        final Recorder recorder = new Recorder();
+        recorder.failures = 1;
+        final WriteBehindBuffer<Integer> buffer = new WriteBehindBuffer<Integer>("test", recorder, 2, 60000, 3);
+        recorder.whileWriting = new Runnable() {
+            @Override
+            public void run() {
+                // values added while the first batch is written fill the buffer
+                buffer.add(3);
+                buffer.add(4);
+                recorder.whileWriting = null;
+            }
+        };
+        buffer.add(1);
+        buffer.add(2);
+
+        Assert.assertFalse(buffer.flush());
+        Assert.assertEquals(1, buffer.getDroppedCount());
+        Assert.assertTrue(buffer.flush());
+        Assert.assertEquals(Arrays.asList(2, 3, 4), recorder.values);
+    }
+
+    @Test
+    public void testFullBufferDropsTheOldestValue() {
+        Recorder recorder = new Recorder();
+        WriteBehindBuffer<Integer> buffer = new WriteBehindBuffer<Integer>("test", recorder, 2, 60000, 2);
+        Assert.assertTrue(buffer.add(1));
+        Assert.assertTrue(buffer.add(2));
+        Assert.assertFalse(buffer.add(3));
+        Assert.assertEquals(1, buffer.getDroppedCount());
+
+        Assert.assertTrue(buffer.flush());
+        Assert.assertEquals(Arrays.asList(2, 3), recorder.values);
+    }
+
+    @Test
+    public void testFullBufferSpillsTheOldestValues() {
+        Recorder recorder = new Recorder();
+        recorder.failures = 1;
+        Spiller spiller = new Spiller();
+        WriteBehindBuffer<Integer> buffer = new WriteBehindBuffer<Integer>("test", recorder, 2, 60000, 2, spiller);
+        buffer.add(1);
+        buffer.add(2);
+        buffer.add(3);
+        Assert.assertFalse(buffer.flush());
+
+        Assert.assertEquals(Arrays.asList(1), spiller.values);
+        Assert.assertEquals(1, buffer.getSpilledCount());
+        Assert.assertEquals(0, buffer.getDroppedCount());
+    }
+
+    @Test
+    public void testStopSpillsWhatCannotBeWritten() {
+        Recorder recorder = new Recorder();
+        recorder.failures = Integer.MAX_VALUE;
+        Spiller spiller = new Spiller();
+        WriteBehindBuffer<Integer> buffer = new WriteBehindBuffer<Integer>("test", recorder, 10, 60000, 10, spiller);
+        buffer.start();
+        buffer.add(1);
+        buffer.add(2);
+        buffer.stop();
+
+        Assert.assertEquals(Arrays.asList(1, 2), spiller.values);
+        Assert.assertFalse(buffer.hasPending());
+    }
+
+    @Test
+    public void testOnlyTheRemainingValuesOfAPartlyWrittenBatchAreRetried() {
+        final List<Integer> values = new ArrayList<Integer>();
+        WriteBehindBuffer.Writer<Integer> writer = new WriteBehindBuffer.Writer<Integer>() {
+            boolean failed;
+
+            @Override
+            public boolean write(List<Integer> batch) {
+                if (!failed) {
+                    // the first value is written, the second fails
+                    failed = true;
+                    values.add(batch.remove(0));
+                    return false;
+                }
+                values.addAll(batch);
+                return true;
+            }
+        };
+        WriteBehindBuffer<Integer> buffer = new WriteBehindBuffer<Integer>("test", writer, 2, 60000, 10);
+        buffer.add(1);
+        buffer.add(2);
+
+        Assert.assertFalse(buffer.flush());
+        Assert.assertEquals(1, buffer.getQueueDepth());
+        Assert.assertTrue(buffer.flush());
+        Assert.assertEquals(Arrays.asList(1, 2), values);
+        Assert.assertEquals(2, buffer.getWrittenCount());
+    }
+
+    @Test
+    public void testFullBatchIsWrittenWithoutWaitingForTheInterval() throws InterruptedException {
+        Recorder recorder = new Recorder();
+        WriteBehindBuffer<Integer> buffer = new WriteBehindBuffer<Integer>("test", recorder, 2, 60000, 10);
+        buffer.start();
+        try {
+            buffer.add(1);
+            buffer.add(2);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (buffer.getWrittenCount() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(Arrays.asList(1, 2), recorder.values);
+        } finally {
+            buffer.stop();
+        }
+    }
+
+    @Test
+    public void testStopWritesTheRest() {
+        Recorder recorder = new Recorder();
+        WriteBehindBuffer<Integer> buffer = new WriteBehindBuffer<Integer>("test", recorder, 10, 60000, 10);
+        buffer.start();
+        buffer.add(1);
+        buffer.stop();
+
+        Assert.assertEquals(Collections.singletonList(1), recorder.values);
+        Assert.assertFalse(buffer.hasPending());
+    }
+
+    private static class Spiller implements WriteBehindBuffer.Spill<Integer> {
+        final List<Integer> values = Collections.synchronizedList(new ArrayList<Integer>());
+
+        @Override
+        public boolean spill(List<Integer> spilled) {
+            values.addAll(spilled);
+            return true;
+        }
+
+        @Override
+        public void replay() {
+        }
+    }
+
+    private static class Recorder implements WriteBehindBuffer.Writer<Integer> {
+        final List<Integer> values = Collections.synchronizedList(new ArrayList<Integer>());
+        volatile int failures;
+        volatile Runnable whileWriting;
+
+        @Override
+        public boolean write(List<Integer> batch) {
+            Runnable runnable = whileWriting;
+            if (runnable != null) {
+                runnable.run();
+            }
+            if (failures > 0) {
+                failures--;
+                return false;
+            }
+            values.addAll(batch);
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,519 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.spool;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A write-ahead spool for persistence services, which keeps the values that could not be written
+ * to the database while it is not reachable. Values are appended to memory-mapped segment files of
+ * a fixed size and handed back in the order they were appended, once the database has recovered.
+ * Segments are deleted as soon as all of their records have been acknowledged, and the number of
+ * segments is limited, so that the disk usage is bounded.
+ * <p>
+ * Every record has the layout
+ *
+ * <pre>
+ * int   payload length (0 marks the end of the written data, -1 the end of the segment)
+ * int   CRC32 of the payload
+ * long  time
+ * short key length, key bytes (UTF-8)
+ * int   value length, value bytes (UTF-8)
+ * </pre>
+ *
+ * The length is written last, so that a record only becomes visible once it is complete. The read
+ * position is kept in a small memory-mapped cursor file, so that acknowledged records are not
+ * replayed again after a restart.
+ * <p>
+ * A typical use in a persistence service:
+ *
+ * <pre>
+ * if (!write(values)) {
+ *     spool.append(time, table, value);
+ * }
+ * ...
+ * // periodically, while the database is reachable
+ * spool.replay(100, new PersistenceSpool.Handler() {
+ *     public boolean handle(List&lt;SpoolRecord&gt; records) {
+ *         return write(records);
+ *     }
+ * });
+ * </pre>
+ *
+ * The methods are thread-safe.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class PersistenceSpool {
+
+    private static final Logger logger = LoggerFactory.getLogger(PersistenceSpool.class);
+
+    /**
+     * Writes replayed records to the database.
+     */
+    public interface Handler {
+        /**
+         * @param records the next records in the order they were appended
+         * @return <code>true</code> if the records have been written and can be removed from the spool
+         */
+        boolean handle(List<SpoolRecord> records);
+    }
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final String CURSOR_FILE = "cursor.dat";
+
+    private static final int HEADER_SIZE = 8;
+    private static final int END_OF_SEGMENT = -1;
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    /** the mapped segments, by sequence number */
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<Long, MappedByteBuffer>();
+
+    private long writeSegment;
+    private int writePosition;
+    private long readSegment;
+    private int readPosition;
+
+    private MappedByteBuffer cursor;
+
+    /** serializes the replays, so that a batch is not handed out twice */
+    private final Object replayLock = new Object();
+
+    private long appended;
+    private long replayed;
+    private long rejected;
+
+    /**
+     * Opens the spool in the given directory, recovering the records of a previous run.
+     *
+     * @param directory the directory of the segment files, created if it does not exist
+     * @param segmentSize the size of a segment file in bytes
+     * @param maxSegments the maximum number of segment files
+     * @throws IOException if the directory or the files cannot be opened
+     */
+    public PersistenceSpool(File directory, int segmentSize, int maxSegments) throws IOException {
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("The segment size must be at least 1024 bytes, but was " + segmentSize);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create spool directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(2, maxSegments);
+
+        cursor = map(new File(directory, CURSOR_FILE), 16);
+        readSegment = cursor.getLong(0);
+        readPosition = cursor.getInt(8);
+
+        for (long sequence : findSegments()) {
+            if (sequence < readSegment) {
+                // acknowledged before, but could not be deleted
+                deleteSegment(sequence);
+            } else {
+                segments.put(sequence, map(segmentFile(sequence), segmentSize));
+            }
+        }
+        if (segments.isEmpty()) {
+            readSegment = Math.max(readSegment, 1);
+            readPosition = 0;
+            writeSegment = readSegment;
+            writePosition = 0;
+            segments.put(writeSegment, map(segmentFile(writeSegment), segmentSize));
+        } else {
+            if (segments.firstKey() > readSegment) {
+                readSegment = segments.firstKey();
+                readPosition = 0;
+            }
+            writeSegment = segments.lastKey();
+            writePosition = recoverEnd(segments.get(writeSegment));
+        }
+        saveCursor();
+        logger.debug("Opened persistence spool {} at segment {}, position {}", directory, readSegment, readPosition);
+    }
+
+    /**
+     * Appends a record. It never blocks on anything but the disk.
+     *
+     * @return <code>false</code> if the spool is full or the record is too large
+     */
+    public synchronized boolean append(long time, String key, String value) {
+        if (cursor == null) {
+            throw new IllegalStateException("The spool has been closed");
+        }
+        byte[] keyBytes = key.getBytes(UTF8);
+        byte[] valueBytes = value.getBytes(UTF8);
+        int payloadSize = 8 + 2 + keyBytes.length + 4 + valueBytes.length;
+        int recordSize = HEADER_SIZE + payloadSize;
+        if (keyBytes.length > Short.MAX_VALUE || recordSize + 4 > segmentSize) {
+            rejected++;
+            logger.warn("Record of key '{}' is too large for the spool", key);
+            return false;
+        }
+
+        // keep room for the end marker behind the record
+        if (writePosition + recordSize + 4 > segmentSize) {
+            if (segments.size() >= maxSegments) {
+                rejected++;
+                return false;
+            }
+            try {
+                MappedByteBuffer next = map(segmentFile(writeSegment + 1), segmentSize);
+                segments.get(writeSegment).putInt(writePosition, END_OF_SEGMENT);
+                writeSegment++;
+                writePosition = 0;
+                segments.put(writeSegment, next);
+            } catch (IOException e) {
+                rejected++;
+                logger.error("Could not create spool segment {}: {}", writeSegment + 1, e.getMessage());
+                return false;
+            }
+        }
+
+        MappedByteBuffer buffer = segments.get(writeSegment);
+        int payloadStart = writePosition + HEADER_SIZE;
+        buffer.position(payloadStart);
+        buffer.putLong(time);
+        buffer.putShort((short) keyBytes.length);
+        buffer.put(keyBytes);
+        buffer.putInt(valueBytes.length);
+        buffer.put(valueBytes);
+        buffer.putInt(payloadStart + payloadSize, 0);
+
+        buffer.putInt(writePosition + 4, crc(buffer, payloadStart, payloadSize));
+        buffer.putInt(writePosition, payloadSize);
+        writePosition += recordSize;
+        appended++;
+        return true;
+    }
+
+    /**
+     * Appends several records, either all of them or none.
+     *
+     * @return <code>false</code> if the spool is full or a record is too large, in which case none of the records has
+     *         been appended
+     */
+    public synchronized boolean append(List<SpoolRecord> records) {
+        long segment = writeSegment;
+        int position = writePosition;
+        long appendedBefore = appended;
+        long rejectedBefore = rejected;
+        for (SpoolRecord record : records) {
+            if (!append(record.getTime(), record.getKey(), record.getValue())) {
+                truncate(segment, position);
+                appended = appendedBefore;
+                rejected = rejectedBefore + records.size();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hands the spooled records to the handler in batches, in the order they were appended,
+     * until the spool is empty or the handler fails. Segments which have been replayed
+     * completely are deleted.
+     * <p>
+     * The handler is called without holding the lock of the spool, so that values can be
+     * appended while a batch is written to the database. Concurrent replays are serialized.
+     *
+     * @param batchSize the maximum number of records per call of the handler
+     * @param handler writes the records
+     * @return the number of records which have been replayed
+     */
+    public int replay(int batchSize, Handler handler) {
+        int count = 0;
+        synchronized (replayLock) {
+            while (true) {
+                List<SpoolRecord> batch = new ArrayList<SpoolRecord>(batchSize);
+                long segment;
+                int position;
+                synchronized (this) {
+                    if (cursor == null) {
+                        break;
+                    }
+                    segment = readSegment;
+                    position = readPosition;
+                    while (batch.size() < batchSize) {
+                        MappedByteBuffer buffer = segments.get(segment);
+                        int length = buffer == null || position + HEADER_SIZE > segmentSize ? 0
+                                : buffer.getInt(position);
+                        // a missing end marker means the process stopped right after creating the next segment
+                        if ((length == END_OF_SEGMENT || length == 0) && segment < writeSegment) {
+                            segment++;
+                            position = 0;
+                            continue;
+                        }
+                        if (length <= 0) {
+                            break;
+                        }
+                        SpoolRecord record = read(buffer, position, length);
+                        if (record == null) {
+                            logger.error("Spool segment {} is corrupt at position {}, skipping the rest of it",
+                                    segment, position);
+                            if (segment < writeSegment) {
+                                segment++;
+                                position = 0;
+                                continue;
+                            }
+                            break;
+                        }
+                        batch.add(record);
+                        position += HEADER_SIZE + length;
+                    }
+                    if (batch.isEmpty()) {
+                        if (segment != readSegment || position != readPosition) {
+                            // only empty or corrupt segments have been skipped
+                            acknowledge(segment, position);
+                        }
+                        break;
+                    }
+                }
+
+                if (!handler.handle(batch)) {
+                    break;
+                }
+
+                synchronized (this) {
+                    if (cursor == null) {
+                        // closed while the batch was written, it is replayed again after the next start
+                        break;
+                    }
+                    count += batch.size();
+                    replayed += batch.size();
+                    acknowledge(segment, position);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return <code>true</code> if the spool has been closed and must not be appended to
+     */
+    public synchronized boolean isClosed() {
+        return cursor == null;
+    }
+
+    /**
+     * @return <code>true</code> if there are no records waiting to be replayed
+     */
+    public synchronized boolean isEmpty() {
+        return readSegment == writeSegment && readPosition == writePosition;
+    }
+
+    /**
+     * @return the number of segment files in use
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public synchronized long getAppendedCount() {
+        return appended;
+    }
+
+    public synchronized long getReplayedCount() {
+        return replayed;
+    }
+
+    /**
+     * @return the number of records which have not been accepted because the spool was full
+     */
+    public synchronized long getRejectedCount() {
+        return rejected;
+    }
+
+    /**
+     * Forces the written records and the cursor to the disk.
+     */
+    public synchronized void sync() {
+        if (cursor == null) {
+            return;
+        }
+        for (MappedByteBuffer buffer : segments.values()) {
+            buffer.force();
+        }
+        cursor.force();
+    }
+
+    /**
+     * Writes everything to the disk and releases the segments. The spool must not be used afterwards.
+     */
+    public synchronized void close() {
+        sync();
+        segments.clear();
+        cursor = null;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PersistenceSpool [directory=" + directory + ", segments=" + segments.size() + ", appended="
+                + appended + ", replayed=" + replayed + ", rejected=" + rejected + "]";
+    }
+
+    /**
+     * Moves the read position behind the replayed records and deletes the segments before it.
+     */
+    private void acknowledge(long segment, int position) {
+        while (readSegment < segment) {
+            segments.remove(readSegment);
+            deleteSegment(readSegment);
+            readSegment++;
+        }
+        readPosition = position;
+        if (readSegment == writeSegment && readPosition == writePosition && writePosition > 0
+                && segments.size() == 1) {
+            // everything has been replayed, start over with a fresh segment
+            try {
+                MappedByteBuffer next = map(segmentFile(writeSegment + 1), segmentSize);
+                segments.remove(writeSegment);
+                deleteSegment(writeSegment);
+                writeSegment++;
+                writePosition = 0;
+                readSegment = writeSegment;
+                readPosition = 0;
+                segments.put(writeSegment, next);
+            } catch (IOException e) {
+                logger.debug("Could not roll over to a new spool segment: {}", e.getMessage());
+            }
+        }
+        saveCursor();
+    }
+
+    /**
+     * Removes the records appended behind the given write position.
+     */
+    private void truncate(long segment, int position) {
+        while (writeSegment > segment) {
+            segments.remove(writeSegment);
+            deleteSegment(writeSegment);
+            writeSegment--;
+        }
+        segments.get(segment).putInt(position, 0);
+        writePosition = position;
+    }
+
+    private void saveCursor() {
+        cursor.putLong(0, readSegment);
+        cursor.putInt(8, readPosition);
+    }
+
+    private SpoolRecord read(MappedByteBuffer buffer, int position, int length) {
+        int payloadStart = position + HEADER_SIZE;
+        if (length < 14 || payloadStart + length > segmentSize) {
+            return null;
+        }
+        if (crc(buffer, payloadStart, length) != buffer.getInt(position + 4)) {
+            return null;
+        }
+        buffer.position(payloadStart);
+        long time = buffer.getLong();
+        byte[] key = new byte[buffer.getShort()];
+        buffer.get(key);
+        byte[] value = new byte[buffer.getInt()];
+        buffer.get(value);
+        return new SpoolRecord(time, new String(key, UTF8), new String(value, UTF8));
+    }
+
+    /**
+     * Finds the end of the valid records of a segment after a restart.
+     */
+    private int recoverEnd(MappedByteBuffer buffer) {
+        int position = 0;
+        while (position + HEADER_SIZE <= segmentSize) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || read(buffer, position, length) == null) {
+                break;
+            }
+            position += HEADER_SIZE + length;
+        }
+        if (position + 4 <= segmentSize) {
+            // cut off a record which has not been completed
+            buffer.putInt(position, 0);
+        }
+        return position;
+    }
+
+    private static int crc(MappedByteBuffer buffer, int start, int length) {
+        CRC32 crc = new CRC32();
+        for (int index = start; index < start + length; index++) {
+            crc.update(buffer.get(index));
+        }
+        return (int) crc.getValue();
+    }
+
+    private List<Long> findSegments() {
+        String[] names = directory.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        List<Long> sequences = new ArrayList<Long>();
+        if (names != null) {
+            for (String name : names) {
+                try {
+                    sequences.add(Long.parseLong(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    logger.debug("Ignoring file {} in spool directory", name);
+                }
+            }
+        }
+        Long[] sorted = sequences.toArray(new Long[sequences.size()]);
+        Arrays.sort(sorted);
+        return Arrays.asList(sorted);
+    }
+
+    private File segmentFile(long sequence) {
+        return new File(directory, String.format("%s%012d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+    }
+
+    private void deleteSegment(long sequence) {
+        File file = segmentFile(sequence);
+        if (file.exists() && !file.delete()) {
+            // a mapped file cannot be deleted on some platforms; it is removed on the next start
+            logger.debug("Could not delete spool segment {}", file);
+        }
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            // the mapping stays valid after the channel has been closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            raf.close();
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.spool;
+
+/**
+ * A value written to a {@link PersistenceSpool}. The meaning of key and value is up to the
+ * persistence service, e.g. the item table and the already converted value.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class SpoolRecord {
+
+    private final long time;
+    private final String key;
+    private final String value;
+
+    public SpoolRecord(long time, String key, String value) {
+        this.time = time;
+        this.key = key;
+        this.value = value;
+    }
+
+    /**
+     * @return the time of the value in milliseconds
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "SpoolRecord [time=" + time + ", key=" + key + ", value=" + value + "]";
+    }
+
+}
@@ -0,0 +1,420 @@
+/**
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.spool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded write-behind buffer for persistence services, which collects the values to store and
+ * hands them to a {@link Writer} in batches. A batch is written by the buffer's own thread when
+ * <code>batchSize</code> values are waiting and when the flush interval has passed, and by the
+ * calling thread on {@link #flush()} and {@link #stop()}.
+ * <p>
+ * A batch which fails is put back in front of the waiting values, so that the values keep their
+ * order, and is written again with a later flush. After a failed flush the buffer's own thread
+ * waits twice as long before the next attempt, up to a minute, so that an unreachable database is
+ * not hammered. If the buffer is full, the oldest waiting values make room for the new ones. They
+ * are handed to the {@link Spill}, if there is one, and dropped otherwise.
+ * <p>
+ * The methods are thread-safe.
+ *
+ * @author agent
+ * @since 1.9.0
+ */
+public class WriteBehindBuffer<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+    /** maximum delay in milliseconds between two attempts after failed flushes */
+    private static final long MAX_RETRY_DELAY = 60000;
+
+    /** how long stop() waits for a running flush, in seconds */
+    private static final long STOP_TIMEOUT = 30;
+
+    /**
+     * Writes a batch of values to the database.
+     */
+    public interface Writer<T> {
+        /**
+         * Writes a batch. If only a part of the batch has been written, the written values may be
+         * removed from the list before returning <code>false</code>, so that only the remaining
+         * values are written again.
+         *
+         * @param batch the next values in the order they were added
+         * @return <code>false</code> if the batch has not been written and should be retried
+         */
+        boolean write(List<T> batch);
+    }
+
+    /**
+     * Keeps the values which do not fit into the buffer any more, e.g. in a local file, and
+     * writes them again once the database accepts writes.
+     */
+    public interface Spill<T> {
+        /**
+         * @param values the values which have been pushed out of the buffer, the oldest first
+         * @return <code>false</code> if the values could not be kept and are lost
+         */
+        boolean spill(List<T> values);
+
+        /**
+         * Called by the buffer's own thread after all waiting values have been written, to write
+         * the spilled values again.
+         */
+        void replay();
+    }
+
+    private final String name;
+    private final Writer<T> writer;
+    private final Spill<T> spill;
+    private final int batchSize;
+    private final int interval;
+
+    private final LinkedBlockingDeque<T> pending;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private volatile long lastLatency;
+    private volatile long maxLatency;
+
+    /** serializes the flushes, so that the batches are written in order */
+    private final Object flushLock = new Object();
+
+    /** delay before the next attempt of the buffer's own thread, only changed holding the flush lock */
+    private long retryDelay;
+    private volatile long nextAttempt;
+
+    private volatile ScheduledExecutorService scheduler;
+
+    /**
+     * @param name the name of the writer thread, also used in log messages
+     * @param writer writes the batches
+     * @param batchSize the maximum number of values of a batch
+     * @param interval the flush interval in milliseconds
+     * @param capacity the maximum number of waiting values
+     */
+    public WriteBehindBuffer(String name, Writer<T> writer, int batchSize, int interval, int capacity) {
+        this(name, writer, batchSize, interval, capacity, null);
+    }
+
+    /**
+     * @param name the name of the writer thread, also used in log messages
+     * @param writer writes the batches
+     * @param batchSize the maximum number of values of a batch
+     * @param interval the flush interval in milliseconds
+     * @param capacity the maximum number of waiting values
+     * @param spill keeps the values which do not fit into the buffer, <code>null</code> to drop them
+     */
+    public WriteBehindBuffer(String name, Writer<T> writer, int batchSize, int interval, int capacity,
+            Spill<T> spill) {
+        this.name = name;
+        this.writer = writer;
+        this.spill = spill;
+        this.batchSize = Math.max(1, batchSize);
+        this.interval = Math.max(1, interval);
+        this.retryDelay = this.interval;
+        this.pending = new LinkedBlockingDeque<T>(Math.max(this.batchSize, capacity));
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                if (scheduledFlush() && spill != null) {
+                    try {
+                        spill.replay();
+                    } catch (RuntimeException e) {
+                        logger.error("{}: unexpected error replaying spilled values", name, e);
+                    }
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        scheduler = executor;
+    }
+
+    /**
+     * Stops the timer and makes a last attempt to write the waiting values before returning.
+     * Values which still cannot be written are spilled or dropped.
+     */
+    public void stop() {
+        ScheduledExecutorService oldScheduler;
+        synchronized (this) {
+            if (scheduler == null) {
+                return;
+            }
+            oldScheduler = scheduler;
+            scheduler = null;
+        }
+        oldScheduler.shutdown();
+        try {
+            oldScheduler.awaitTermination(STOP_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // a flush which is still running holds the flush lock, so the rest is never taken twice
+        if (!flush()) {
+            List<T> rest = new ArrayList<T>();
+            pending.drainTo(rest);
+            overflow(rest);
+            logger.warn("{}: {} values could not be written on shutdown", name, rest.size());
+        }
+        logger.debug("{} stopped: {}", name, this);
+    }
+
+    /**
+     * Adds a value to the next batch. If the buffer is full, the oldest waiting value is spilled
+     * or dropped to make room for it.
+     *
+     * @return <code>false</code> if the buffer was full and a waiting value has been pushed out
+     */
+    public boolean add(T value) {
+        boolean full = false;
+        while (!pending.offerLast(value)) {
+            full = true;
+            T oldest = pending.pollFirst();
+            if (oldest != null) {
+                overflow(Collections.singletonList(oldest));
+            }
+        }
+        triggerFlush();
+        return !full;
+    }
+
+    /**
+     * Adds a value to the next batch, waiting for room if the buffer is full.
+     *
+     * @throws InterruptedException if the thread has been interrupted while waiting, the value is not added then
+     */
+    public void put(T value) throws InterruptedException {
+        pending.putLast(value);
+        triggerFlush();
+    }
+
+    /**
+     * Has a full batch written by the buffer's own thread, without waiting for the interval.
+     */
+    private void triggerFlush() {
+        if (pending.size() < batchSize || !flushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        ScheduledExecutorService executor = scheduler;
+        if (executor == null) {
+            flushScheduled.set(false);
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flushScheduled.set(false);
+                    scheduledFlush();
+                }
+            });
+        } catch (RuntimeException e) {
+            flushScheduled.set(false);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if values are waiting to be written
+     */
+    public boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * @return a copy of the waiting values in the order they were added, without the batch which is being written
+     */
+    public List<T> getPending() {
+        return new ArrayList<T>(pending);
+    }
+
+    /**
+     * A flush of the buffer's own thread, which is skipped while the retry delay of a failed flush
+     * has not passed.
+     *
+     * @return <code>true</code> if all waiting values have been written
+     */
+    private boolean scheduledFlush() {
+        if (System.currentTimeMillis() < nextAttempt) {
+            return false;
+        }
+        return flush();
+    }
+
+    /**
+     * Writes all waiting values batch by batch. A failed batch is put back in front of the
+     * waiting values and the flush ends.
+     *
+     * @return <code>false</code> if a batch could not be written
+     */
+    public boolean flush() {
+        synchronized (flushLock) {
+            List<T> batch = new ArrayList<T>(batchSize);
+            while (pending.drainTo(batch, batchSize) > 0) {
+                int size = batch.size();
+                long start = System.nanoTime();
+                boolean ok;
+                try {
+                    ok = writer.write(batch);
+                } catch (RuntimeException e) {
+                    logger.error("{}: unexpected error writing {} values", name, batch.size(), e);
+                    ok = false;
+                }
+                if (!ok) {
+                    written.addAndGet(size - batch.size());
+                    failedBatches.incrementAndGet();
+                    requeue(batch);
+                    retryDelay = nextAttempt == 0 ? interval : Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+                    nextAttempt = System.currentTimeMillis() + retryDelay;
+                    logger.debug("{}: writing {} values failed, retrying in {} ms", name, batch.size(), retryDelay);
+                    return false;
+                }
+                long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                lastLatency = latency;
+                if (latency > maxLatency) {
+                    maxLatency = latency;
+                }
+                totalLatency.addAndGet(latency);
+                batches.incrementAndGet();
+                written.addAndGet(size);
+                batch.clear();
+            }
+            retryDelay = interval;
+            nextAttempt = 0;
+            return true;
+        }
+    }
+
+    /**
+     * Puts a failed batch back in front of the values which have been added since. The values
+     * which do not fit any more are the oldest ones, they are spilled or dropped.
+     */
+    private void requeue(List<T> batch) {
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            if (!pending.offerFirst(batch.get(i))) {
+                overflow(batch.subList(0, i + 1));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Hands values which have been pushed out of the buffer to the spill, or drops them.
+     */
+    private void overflow(List<T> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        if (spill != null) {
+            boolean ok;
+            try {
+                ok = spill.spill(values);
+            } catch (RuntimeException e) {
+                logger.error("{}: unexpected error spilling {} values", name, values.size(), e);
+                ok = false;
+            }
+            if (ok) {
+                spilled.addAndGet(values.size());
+                return;
+            }
+        }
+        long before = dropped.getAndAdd(values.size());
+        // log the first drop and then once per buffer size, not once per value
+        int capacity = pending.size() + pending.remainingCapacity();
+        if (before == 0 || before / capacity != (before + values.size()) / capacity) {
+            logger.warn("{}: buffer is full, dropped the oldest values ({} in total)", name, before + values.size());
+        }
+    }
+
+    /**
+     * @return the number of values waiting to be written
+     */
+    public int getQueueDepth() {
+        return pending.size();
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getSpilledCount() {
+        return spilled.get();
+    }
+
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    public long getFailedBatchCount() {
+        return failedBatches.get();
+    }
+
+    /**
+     * @return the duration of the last successful batch in milliseconds
+     */
+    public long getLastLatency() {
+        return lastLatency;
+    }
+
+    /**
+     * @return the duration of the slowest successful batch in milliseconds
+     */
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * @return the average duration of the successful batches in milliseconds
+     */
+    public long getAverageLatency() {
+        long count = batches.get();
+        return count == 0 ? 0 : totalLatency.get() / count;
+    }
+
+    @Override
+    public String toString() {
+        return "depth=" + pending.size() + ", batches=" + batches + ", written=" + written + ", failedBatches="
+                + failedBatches + ", spilled=" + spilled + ", dropped=" + dropped + ", avgLatency="
+                + getAverageLatency() + "ms, maxLatency=" + maxLatency + "ms, lastLatency=" + lastLatency + "ms";
+    }
+
+}